@@ -0,0 +1,58 @@
+package de.nocoffeetech.smallhttp.base;
+
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.CommonContentTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures how many new connections per second the server can take, with each connection sending a single request and closing afterwards.
+ * Compares a single acceptor with multiple acceptors bound via SO_REUSEPORT, with and without an executor per acceptor.
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+public class ConnectionRateBenchmark {
+    private static final int PORT = 8450;
+    private static final byte[] REQUEST = "GET / HTTP/1.1\r\nConnection: close\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    @Param({"1", "4"})
+    public int acceptorCount;
+
+    @Param({"false", "true"})
+    public boolean shardExecutorPerAcceptor;
+
+    private HTTPServer server;
+
+    @Setup
+    public void setup() throws IOException {
+        this.server = HTTPServerBuilder.create(PORT, (request, responseWriter) -> responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Passt"))
+                .setAcceptorCount(this.acceptorCount)
+                .setShardExecutorPerAcceptor(this.shardExecutorPerAcceptor)
+                // Enough threads, so connections are not rejected while a handler is still winding down
+                .setThreadCount(256)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.server.shutdown(true);
+    }
+
+    @Benchmark
+    public int connectAndRequest() throws IOException {
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.getOutputStream().write(REQUEST);
+            socket.getOutputStream().flush();
+            return socket.getInputStream().readAllBytes().length;
+        }
+    }
+}
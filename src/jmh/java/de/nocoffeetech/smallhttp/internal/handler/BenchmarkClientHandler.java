@@ -16,7 +16,7 @@ public class BenchmarkClientHandler extends HTTPClientHandler {
     private final BlackholeOutputStream outputStream;
 
     public BenchmarkClientHandler(ErrorHandler errorHandler, RequestHandler handler, ClientHandlerTracker tracker, byte[] toRead, Blackhole blackhole) {
-        super(null, errorHandler, handler, null, tracker, false, true, Short.MAX_VALUE);
+        super(null, errorHandler, handler, null, tracker, false, true, Short.MAX_VALUE, new BufferPool(InternalConstants.MAX_HEADER_SIZE_BYTES, 2, tracker.getMetrics()), false, null, null);
         this.inputStream = new ByteArrayInputStream(toRead);
         this.outputStream = new BlackholeOutputStream(blackhole);
     }
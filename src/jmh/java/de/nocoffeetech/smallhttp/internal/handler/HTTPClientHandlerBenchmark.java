@@ -2,6 +2,7 @@ package de.nocoffeetech.smallhttp.internal.handler;
 
 import de.nocoffeetech.smallhttp.data.Status;
 import de.nocoffeetech.smallhttp.internal.watchdog.ClientHandlerTracker;
+import de.nocoffeetech.smallhttp.util.StringUtil;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
@@ -9,11 +10,18 @@ import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.infra.Blackhole;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @State(Scope.Thread)
 public class HTTPClientHandlerBenchmark {
     private byte[] toRead;
+    private int headerStart;
+    private HeaderIndex headerIndex;
 
     @Setup
     public void setup() {
@@ -39,6 +47,8 @@ Custom: 555\040
 
 """.replace("\n", "\r\n");
         toRead = example.getBytes(StandardCharsets.US_ASCII);
+        headerStart = example.indexOf("\r\n") + 2;
+        headerIndex = new HeaderIndex(toRead);
     }
 
     @Benchmark
@@ -46,6 +56,8 @@ Custom: 555\040
         AtomicBoolean hit = new AtomicBoolean(false);
         HTTPClientHandler handler = new BenchmarkClientHandler(DefaultErrorHandler.INSTANCE, (request, responseWriter) -> {
             blackhole.consume(request);
+            blackhole.consume(request.getSingleHeader("host"));
+            blackhole.consume(request.getSingleHeader("accept-encoding"));
             blackhole.consume(responseWriter);
             hit.setPlain(true);
             return responseWriter.respondWithoutContentType(Status.NO_CONTENT).sendWithoutBody();
@@ -55,4 +67,62 @@ Custom: 555\040
             throw new RuntimeException();
         }
     }
+
+    /**
+     * Indexes the header lines and looks up the headers a typical handler reads
+     */
+    @Benchmark
+    public void headerIndexLookup(Blackhole blackhole) {
+        HeaderIndex index = this.headerIndex;
+        byte[] buffer = this.toRead;
+        int lineStart = this.headerStart;
+        while (buffer[lineStart] != '\r') {
+            int colon = indexOf(buffer, (byte) ':', lineStart);
+            int lineEnd = indexOf(buffer, (byte) '\r', colon);
+            index.add(lineStart, colon - lineStart, colon + 1, lineEnd - colon - 1);
+            lineStart = lineEnd + 2;
+        }
+        blackhole.consume(index.getSingle("host"));
+        blackhole.consume(index.getSingle("connection"));
+        blackhole.consume(index.getSingle("accept-encoding"));
+        index.reset();
+    }
+
+    /**
+     * The previous approach of creating strings for every header and storing them in a map, for comparison with {@link #headerIndexLookup(Blackhole)}
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void headerHashMapLookup(Blackhole blackhole) {
+        Map<String, Object> headers = new HashMap<>();
+        byte[] buffer = this.toRead;
+        int lineStart = this.headerStart;
+        while (buffer[lineStart] != '\r') {
+            int colon = indexOf(buffer, (byte) ':', lineStart);
+            int lineEnd = indexOf(buffer, (byte) '\r', colon);
+            String name = new String(buffer, lineStart, colon - lineStart, StandardCharsets.US_ASCII);
+            String value = StringUtil.trimRaw(buffer, colon + 1, lineEnd - colon - 1);
+            String key = name.toLowerCase(Locale.ROOT);
+            Object presentVal = headers.putIfAbsent(key, value);
+            if (presentVal instanceof List<?>) {
+                ((List<String>) presentVal).add(value);
+            } else if (presentVal != null) {
+                List<String> list = new ArrayList<>();
+                list.add((String) presentVal);
+                list.add(value);
+                headers.put(key, list);
+            }
+            lineStart = lineEnd + 2;
+        }
+        blackhole.consume(headers.get("host"));
+        blackhole.consume(headers.get("connection"));
+        blackhole.consume(headers.get("accept-encoding"));
+    }
+
+    private static int indexOf(byte[] buffer, byte toFind, int start) {
+        for (int i = start; i < buffer.length; i++) {
+            if (buffer[i] == toFind) return i;
+        }
+        throw new IllegalStateException();
+    }
 }
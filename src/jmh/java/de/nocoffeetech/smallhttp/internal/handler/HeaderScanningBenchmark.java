@@ -0,0 +1,121 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scans the header section of typical browser requests for the name and value ends, as done by {@link HeaderParsingHelper}
+ */
+@State(Scope.Thread)
+public class HeaderScanningBenchmark {
+    private static final String FIREFOX = """
+            Host: localhost:8080
+            User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:106.0) Gecko/20100101 Firefox/106.0
+            Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8
+            Accept-Language: en-US,en;q=0.5
+            Accept-Encoding: gzip, deflate, br
+            DNT: 1
+            Connection: keep-alive
+            Upgrade-Insecure-Requests: 1
+            Sec-Fetch-Dest: document
+            Sec-Fetch-Mode: navigate
+            Sec-Fetch-Site: none
+            Sec-Fetch-User: ?1
+
+            """;
+    private static final String CHROME = """
+            Host: localhost:8080
+            Connection: keep-alive
+            sec-ch-ua: "Chromium";v="118", "Google Chrome";v="118", "Not=A?Brand";v="99"
+            sec-ch-ua-mobile: ?0
+            sec-ch-ua-platform: "Windows"
+            Upgrade-Insecure-Requests: 1
+            User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/118.0.0.0 Safari/537.36
+            Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.7
+            Sec-Fetch-Site: none
+            Sec-Fetch-Mode: navigate
+            Sec-Fetch-User: ?1
+            Sec-Fetch-Dest: document
+            Accept-Encoding: gzip, deflate, br
+            Accept-Language: de-DE,de;q=0.9,en-US;q=0.8,en;q=0.7
+            Cookie: session=4f8a9c2e1b7d4e6f8a9c2e1b7d4e6f8a; theme=dark; consent=necessary%2Cstatistics
+
+            """;
+    private static final String CURL = """
+            Host: localhost:8080
+            User-Agent: curl/8.4.0
+            Accept: */*
+
+            """;
+
+    @Param({"firefox", "chrome", "curl"})
+    public String headerSet;
+    private byte[] headers;
+
+    @Setup
+    public void setup() {
+        String value = switch (headerSet) {
+            case "firefox" -> FIREFOX;
+            case "chrome" -> CHROME;
+            case "curl" -> CURL;
+            default -> throw new IllegalArgumentException(headerSet);
+        };
+        headers = value.replace("\n", "\r\n").getBytes(StandardCharsets.US_ASCII);
+        if (scanSimpleLoop() != scanSwar()) {
+            throw new IllegalStateException("Scanners disagree");
+        }
+    }
+
+    /**
+     * The previous approach that compares each byte against each forbidden char
+     */
+    @Benchmark
+    public int scanSimpleLoop() {
+        byte[] buffer = this.headers;
+        int read = 0;
+        int checksum = 0;
+        while (buffer[read] != '\r') {
+            nameLoop:
+            for (; ; read++) {
+                byte byteAtPos = buffer[read];
+                if (byteAtPos == ':') break;
+                for (char forbiddenChar : InternalConstants.FORBIDDEN_HEADER_NAME_CHARS) {
+                    if (byteAtPos == forbiddenChar) break nameLoop;
+                }
+            }
+            checksum += read;
+            read++;
+            valueLoop:
+            for (; ; read++) {
+                byte byteAtPos = buffer[read];
+                if (byteAtPos == '\r') break;
+                for (char forbiddenChar : InternalConstants.FORBIDDEN_HEADER_VALUE_CHARS) {
+                    if (forbiddenChar == byteAtPos) break valueLoop;
+                }
+            }
+            checksum += read;
+            read += 2;
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public int scanSwar() {
+        byte[] buffer = this.headers;
+        int read = 0;
+        int checksum = 0;
+        while (buffer[read] != '\r') {
+            read = HeaderByteScanner.findNameEnd(buffer, read, buffer.length);
+            checksum += read;
+            read = HeaderByteScanner.findValueEnd(buffer, read + 1, buffer.length);
+            checksum += read;
+            read += 2;
+        }
+        return checksum;
+    }
+}
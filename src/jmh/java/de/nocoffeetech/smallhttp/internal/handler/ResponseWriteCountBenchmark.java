@@ -0,0 +1,121 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import de.nocoffeetech.smallhttp.data.HTTPVersion;
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.CommonContentTypes;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeaderKey;
+import de.nocoffeetech.smallhttp.response.ChunkedResponseWriter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+
+/**
+ * Counts the write calls that reach the (unbuffered) socket stream per response.
+ * Every write on a real socket is a syscall and most likely a TCP segment, so the "writes" counter divided by the "responses" counter should stay at 1.
+ */
+@State(Scope.Thread)
+public class ResponseWriteCountBenchmark {
+    private static final PrecomputedHeader STATIC_HEADER = PrecomputedHeader.create("Testabc", "Valueabc");
+    private static final PrecomputedHeaderKey DYNAMIC_HEADER = PrecomputedHeaderKey.create("Dynamicabc");
+    private ReusableClientContext context;
+    private byte[] smallBody;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WriteCounter {
+        public long writes;
+        public long responses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            writes = 0;
+            responses = 0;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final WriteCounter counter;
+        private final Blackhole blackhole;
+
+        private CountingOutputStream(WriteCounter counter, Blackhole blackhole) {
+            this.counter = counter;
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            this.counter.writes++;
+            this.blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.counter.writes++;
+            this.blackhole.consume(b);
+            this.blackhole.consume(off);
+            this.blackhole.consume(len);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        context = new ReusableClientContext();
+        smallBody = "{\"status\":\"ok\",\"uptime\":1337}".getBytes();
+    }
+
+    @Benchmark
+    public void headerOnlyResponse(WriteCounter counter, Blackhole blackhole) throws Exception {
+        ResponseWriter writer = new ResponseWriter(new CountingOutputStream(counter, blackhole), null, context, HTTPVersion.HTTP_1_1);
+        writer.respondWithoutContentType(Status.NO_CONTENT)
+                .addHeader(STATIC_HEADER)
+                .addHeader(DYNAMIC_HEADER, "StringToTestDynamicHeaderValues")
+                .sendWithoutBody();
+        counter.responses++;
+    }
+
+    @Benchmark
+    public void smallBodyResponse(WriteCounter counter, Blackhole blackhole) throws Exception {
+        ResponseWriter writer = new ResponseWriter(new CountingOutputStream(counter, blackhole), null, context, HTTPVersion.HTTP_1_1);
+        writer.respond(Status.OK, CommonContentTypes.JSON)
+                .addHeader(STATIC_HEADER)
+                .writeBodyAndFlush(smallBody);
+        counter.responses++;
+    }
+
+    @Benchmark
+    public void multiStringBodyResponse(WriteCounter counter, Blackhole blackhole) throws Exception {
+        ResponseWriter writer = new ResponseWriter(new CountingOutputStream(counter, blackhole), null, context, HTTPVersion.HTTP_1_1);
+        writer.respond(Status.NOT_FOUND, CommonContentTypes.PLAIN)
+                .writeBodyAndFlush("Endpoint ", "/api/test", " not found!");
+        counter.responses++;
+    }
+
+    @Benchmark
+    public void smallChunksResponse(WriteCounter counter, Blackhole blackhole) throws Exception {
+        ResponseWriter writer = new ResponseWriter(new CountingOutputStream(counter, blackhole), null, context, HTTPVersion.HTTP_1_1);
+        ChunkedResponseWriter chunkedWriter = writer.respond(Status.OK, CommonContentTypes.JSON).beginBodyWithUnknownSize();
+        for (int i = 0; i < 16; i++) {
+            chunkedWriter.writeChunk(smallBody);
+        }
+        chunkedWriter.finalizeResponse();
+        counter.responses++;
+    }
+
+    @Benchmark
+    public void bufferedSmallChunksResponse(WriteCounter counter, Blackhole blackhole) throws Exception {
+        ResponseWriter writer = new ResponseWriter(new CountingOutputStream(counter, blackhole), null, context, HTTPVersion.HTTP_1_1);
+        ChunkedResponseWriter chunkedWriter = writer.respond(Status.OK, CommonContentTypes.JSON).beginBodyWithUnknownSize(4096);
+        for (int i = 0; i < 16; i++) {
+            chunkedWriter.writeChunk(smallBody);
+        }
+        chunkedWriter.finalizeResponse();
+        counter.responses++;
+    }
+}
@@ -5,6 +5,7 @@ import de.nocoffeetech.smallhttp.data.HTTPVersion;
 import de.nocoffeetech.smallhttp.data.Status;
 import de.nocoffeetech.smallhttp.header.CommonContentTypes;
 import de.nocoffeetech.smallhttp.header.PrecomputedHeaderKey;
+import de.nocoffeetech.smallhttp.response.PrecomputedResponse;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
@@ -21,6 +22,7 @@ public class ResponseWriterBenchmark {
     private String string2;
     private String string3;
     private String string4;
+    private PrecomputedResponse precomputedResponse;
 
     @Setup
     public void setup() {
@@ -30,6 +32,7 @@ public class ResponseWriterBenchmark {
         string2 = "aliquyam erat, sed diam voluptua. At vero eos et accusam et justo duo dolores et ea rebum. Stet clita kasd gubergren, no sea takimata ";
         string3 = "sanctus est Lorem ipsum dolor sit amet. Lorem ipsum dolor sit amet, consetetur sadipscing elitr, sed diam nonumy eirmod tempor invidunt ut labore et dolore magna aliquyam erat, sed diam voluptua. At vero eos et accusam et justo duo dolores et ea rebum. Stet ";
         string4 = "clita kasd gubergren, no sea takimata sanctus est Lorem ipsum dolor sit amet.";
+        precomputedResponse = PrecomputedResponse.create(Status.OK, CommonContentTypes.PLAIN, string1 + string2 + string3 + string4);
     }
 
     @Benchmark
@@ -51,4 +54,12 @@ public class ResponseWriterBenchmark {
                     .writeBodyAndFlush(string1, string2, string3, string4);
         }
     }
+
+    @Benchmark
+    public void testPrecomputedSendingPerformance(Blackhole blackhole) throws Exception {
+        try (BlackholeOutputStream outputStream = new BlackholeOutputStream(blackhole)) {
+            ResponseWriter writer = new ResponseWriter(outputStream, null, context, HTTPVersion.HTTP_1_1);
+            writer.sendPrecomputed(precomputedResponse);
+        }
+    }
 }
@@ -0,0 +1,78 @@
+package de.nocoffeetech.smallhttp.internal.watchdog;
+
+import de.nocoffeetech.smallhttp.internal.handler.HTTPClientHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Opens and closes connections from many threads at once, comparing the striped {@link ClientHandlerTracker} with the previous global lock around a weak set.
+ * Every thread keeps a fixed amount of connections open, and replaces its oldest connection with each operation.
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+public class ClientHandlerTrackerBenchmark {
+    private static final int OPEN_CONNECTIONS_PER_THREAD = 256;
+    private ClientHandlerTracker tracker;
+    private final Object legacyLock = new Object();
+    private Set<HTTPClientHandler> legacyHandlers;
+
+    @State(Scope.Thread)
+    public static class Connections {
+        private HTTPClientHandler[] handlers;
+        private int[] slots;
+        private int next;
+
+        @Setup
+        public void setup(ClientHandlerTrackerBenchmark benchmark) {
+            // The handlers are only used as keys, so register them with a throwaway tracker
+            ClientHandlerTracker unused = new ClientHandlerTracker();
+            this.handlers = new HTTPClientHandler[OPEN_CONNECTIONS_PER_THREAD];
+            this.slots = new int[OPEN_CONNECTIONS_PER_THREAD];
+            for (int i = 0; i < OPEN_CONNECTIONS_PER_THREAD; i++) {
+                this.handlers[i] = new HTTPClientHandler(null, null, null, null, unused, false, true, 0, null, false, null, null);
+                this.slots[i] = benchmark.tracker.registerHandler(this.handlers[i]);
+                synchronized (benchmark.legacyLock) {
+                    benchmark.legacyHandlers.add(this.handlers[i]);
+                }
+            }
+        }
+
+        private int nextIndex() {
+            int index = this.next;
+            this.next = index + 1 == OPEN_CONNECTIONS_PER_THREAD ? 0 : index + 1;
+            return index;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        this.tracker = new ClientHandlerTracker();
+        this.legacyHandlers = Collections.newSetFromMap(new WeakHashMap<>());
+    }
+
+    @Benchmark
+    public void stripedReplaceConnection(Connections connections) {
+        int index = connections.nextIndex();
+        HTTPClientHandler handler = connections.handlers[index];
+        this.tracker.deregisterHandler(handler, connections.slots[index]);
+        connections.slots[index] = this.tracker.registerHandler(handler);
+    }
+
+    @Benchmark
+    public void legacyReplaceConnection(Connections connections) {
+        HTTPClientHandler handler = connections.handlers[connections.nextIndex()];
+        synchronized (this.legacyLock) {
+            this.legacyHandlers.remove(handler);
+        }
+        synchronized (this.legacyLock) {
+            this.legacyHandlers.add(handler);
+        }
+    }
+}
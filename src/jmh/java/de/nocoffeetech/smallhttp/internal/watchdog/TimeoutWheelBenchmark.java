@@ -0,0 +1,125 @@
+package de.nocoffeetech.smallhttp.internal.watchdog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the cost of tracking the timeouts of many connections with the {@link TimeoutWheel} against the previous approach,
+ * which checked every tracked connection under a global lock every few seconds.
+ */
+@State(Scope.Thread)
+public class TimeoutWheelBenchmark {
+    /** Connections are spread over this time range, similar to connections that are all currently reading a request */
+    private static final int TIMEOUT_RANGE_MILLIS = 30_000;
+
+    @Param({"50000"})
+    public int connections;
+    private TimeoutWheel wheel;
+    private ReschedulingTimeout[] timeouts;
+    private long now;
+    private int nextConnection;
+    private final Object legacyLock = new Object();
+    private Set<LegacyState> legacyStates;
+
+    @Setup
+    public void setup() {
+        this.now = 0;
+        this.wheel = new TimeoutWheel(TimeoutWheel.DEFAULT_TICK_MILLIS, TimeoutWheel.DEFAULT_WHEEL_SIZE, 0);
+        this.timeouts = new ReschedulingTimeout[this.connections];
+        this.legacyStates = Collections.newSetFromMap(new WeakHashMap<>());
+        long currentTime = System.currentTimeMillis();
+        for (int i = 0; i < this.connections; i++) {
+            long deadline = (long) i * TIMEOUT_RANGE_MILLIS / this.connections;
+            this.timeouts[i] = new ReschedulingTimeout(this);
+            this.wheel.schedule(this.timeouts[i], deadline);
+            this.legacyStates.add(new LegacyState(currentTime + deadline));
+        }
+    }
+
+    /**
+     * A state transition of one connection, which reschedules its timeout
+     */
+    @Benchmark
+    public void wheelTransition() {
+        int connection = this.nextConnection;
+        this.nextConnection = connection + 1 == this.connections ? 0 : connection + 1;
+        this.wheel.schedule(this.timeouts[connection], this.now + TIMEOUT_RANGE_MILLIS);
+    }
+
+    /**
+     * One tick of the wheel thread. The fired connections start a new request right away, so the amount of tracked connections stays the same
+     */
+    @Benchmark
+    public int wheelTick() {
+        this.now += TimeoutWheel.DEFAULT_TICK_MILLIS;
+        return this.wheel.expireTimeouts(this.now);
+    }
+
+    /**
+     * A state transition of one connection with the previous approach, which only updated a timestamp
+     */
+    @Benchmark
+    public void legacyTransition() {
+        int connection = this.nextConnection;
+        this.nextConnection = connection + 1 == this.connections ? 0 : connection + 1;
+        this.timeouts[connection].legacyTimestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * One check of the previous watchdog, which had to look at every connection while holding the lock that is needed to accept new connections
+     */
+    @Benchmark
+    public int legacyCheck() {
+        int timedOut = 0;
+        synchronized (this.legacyLock) {
+            for (LegacyState state : this.legacyStates) {
+                if (state.isTimedOut(TIMEOUT_RANGE_MILLIS, -1)) {
+                    timedOut++;
+                }
+            }
+        }
+        return timedOut;
+    }
+
+    private static class ReschedulingTimeout extends TimeoutWheel.Timeout {
+        private final TimeoutWheelBenchmark benchmark;
+        private volatile long legacyTimestamp;
+
+        private ReschedulingTimeout(TimeoutWheelBenchmark benchmark) {
+            this.benchmark = benchmark;
+        }
+
+        @Override
+        protected void onTimeout() {
+            this.benchmark.wheel.schedule(this, this.benchmark.now + TIMEOUT_RANGE_MILLIS);
+        }
+    }
+
+    /**
+     * The timeout check of the previous ClientHandlerState
+     */
+    private static class LegacyState {
+        private final AtomicInteger currentState = new AtomicInteger(1);
+        private volatile long lastTransitionTimestamp;
+
+        private LegacyState(long lastTransitionTimestamp) {
+            this.lastTransitionTimestamp = lastTransitionTimestamp;
+        }
+
+        private boolean isTimedOut(int readTimeout, int handleTimeout) {
+            int currentState = this.currentState.get();
+            long lastTransitionTimestamp = this.lastTransitionTimestamp;
+            long currentTime = System.currentTimeMillis();
+            if (currentState == 1) return currentTime > lastTransitionTimestamp + readTimeout;
+            else return handleTimeout != -1 && currentTime > lastTransitionTimestamp + handleTimeout;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package de.nocoffeetech.smallhttp.util;
+
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Parses request targets whose paths follow a Zipfian distribution, as most traffic goes to a few paths.
+ * A cache size of zero parses without the cache.
+ */
+@State(Scope.Benchmark)
+public class PathCacheBenchmark {
+    private static final int DISTINCT_PATHS = 2000;
+    private static final int TARGETS = 16 * 1024;
+
+    @Param({"0", "256", "1024"})
+    public int cacheSize;
+    /** The exponent of the distribution, the higher the more requests go to the most popular paths */
+    @Param({"0.8", "1.1"})
+    public double skew;
+
+    private byte[][] targets;
+    private PathCache cache;
+    private ServerMetrics metrics;
+    private int next;
+
+    @Setup
+    public void setup() {
+        String[] paths = new String[DISTINCT_PATHS];
+        for (int i = 0; i < paths.length; i++) {
+            // Every fourth path needs decoding
+            paths[i] = i % 4 == 0 ? "/api/v1/k%C3%B6nig/items/" + i : "/api/v1/users/" + i + "/profile";
+        }
+        double[] cumulative = new double[DISTINCT_PATHS];
+        double sum = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        SplittableRandom random = new SplittableRandom(1337);
+        this.targets = new byte[TARGETS][];
+        for (int i = 0; i < this.targets.length; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble(sum));
+            String path = paths[index < 0 ? -index - 1 : index];
+            this.targets[i] = (path + "?session=" + random.nextInt(1000)).getBytes(StandardCharsets.US_ASCII);
+        }
+        this.metrics = new ServerMetrics();
+        this.cache = this.cacheSize == 0 ? null : new PathCache(this.cacheSize, this.metrics);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.cache != null) {
+            System.out.println("\nPath cache hit rate: " + this.metrics.snapshot(0, 0, 0, 0, 0).getPathCacheHitRate());
+        }
+    }
+
+    @Benchmark
+    public String parsePath() {
+        // Racy when run with multiple threads, which only shuffles the order of the targets
+        int index = this.next++ & (TARGETS - 1);
+        byte[] target = this.targets[index];
+        return new URLParser(target, 0, target.length, this.cache).parseRequestTarget();
+    }
+}
@@ -0,0 +1,110 @@
+package de.nocoffeetech.smallhttp.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Parses request targets like the ones of URLParserTest, comparing the byte based parser with the previous approach that went through {@link URLDecoder} and {@link URL}
+ */
+@State(Scope.Thread)
+public class URLParserBenchmark {
+    @Param({"plain", "query", "encoded", "absolute"})
+    public String target;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        String value = switch (target) {
+            case "plain" -> "/api/simpleparam/withnoval";
+            case "query" -> "/api/simpleparam?login=true&user=dieter&useFastAccessor&lastParam=1337#someFragment";
+            case "encoded" -> "/api/k%C3%B6nig/withurlencoding?user=k%C3%B6nig&password=123%3Dsas%26dat%3D%3F&lastParam=1337";
+            case "absolute" -> "http://www.example.org/pub/WWW/TheProject.html?login=true&user=dieter&lastParam=1337";
+            default -> throw new IllegalArgumentException(target);
+        };
+        bytes = value.getBytes(StandardCharsets.US_ASCII);
+        URLParser parser = new URLParser(bytes, 0, bytes.length);
+        String path = parser.parseRequestTarget();
+        if (!path.equals(parseWithJdk(null, false)) || !parser.parseOrGetQuery().equals(parseQueryWithJdk())) {
+            throw new IllegalStateException("Parsers disagree");
+        }
+    }
+
+    /**
+     * Only the path, which is parsed for every request
+     */
+    @Benchmark
+    public String parsePath() {
+        return new URLParser(bytes, 0, bytes.length).parseRequestTarget();
+    }
+
+    /**
+     * The path and a single parameter, as most handlers only look at the parameters they know
+     */
+    @Benchmark
+    public void parsePathAndParameter(Blackhole blackhole) {
+        URLParser parser = new URLParser(bytes, 0, bytes.length);
+        blackhole.consume(parser.parseRequestTarget());
+        blackhole.consume(parser.parseOrGetQuery().get("lastParam"));
+    }
+
+    @Benchmark
+    public void parsePathAndAllParameters(Blackhole blackhole) {
+        URLParser parser = new URLParser(bytes, 0, bytes.length);
+        blackhole.consume(parser.parseRequestTarget());
+        for (Map.Entry<String, String> entry : parser.parseOrGetQuery().entrySet()) {
+            blackhole.consume(entry.getKey());
+            blackhole.consume(entry.getValue());
+        }
+    }
+
+    @Benchmark
+    public String parsePathJdk(Blackhole blackhole) {
+        return parseWithJdk(blackhole, false);
+    }
+
+    @Benchmark
+    public void parsePathAndParameterJdk(Blackhole blackhole) {
+        blackhole.consume(parseWithJdk(blackhole, true));
+    }
+
+    /**
+     * The previous implementation, which decoded the path and all parameters with the JDK classes
+     */
+    private String parseWithJdk(Blackhole blackhole, boolean withQuery) {
+        String target = new String(bytes, 0, bytes.length);
+        if (target.startsWith("http")) {
+            try {
+                URL url = new URL(target);
+                if (withQuery) {
+                    blackhole.consume(URLParser.parseQuery(url.getQuery() == null ? "" : url.getQuery()).get("lastParam"));
+                }
+                return url.getPath();
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+        int queryIndex = target.indexOf('?');
+        int fragmentIndex = target.indexOf('#');
+        int pathEnd = queryIndex == -1 ? (fragmentIndex == -1 ? target.length() : fragmentIndex) : queryIndex;
+        if (withQuery) {
+            blackhole.consume(URLParser.parseQuery(queryIndex == -1 ? "" : target.substring(queryIndex + 1)).get("lastParam"));
+        }
+        return URLDecoder.decode(target.substring(0, pathEnd), StandardCharsets.UTF_8);
+    }
+
+    private Map<String, String> parseQueryWithJdk() {
+        String target = new String(bytes, StandardCharsets.US_ASCII);
+        int queryIndex = target.indexOf('?');
+        return URLParser.parseQuery(queryIndex == -1 ? "" : target.substring(queryIndex + 1));
+    }
+}
@@ -0,0 +1,33 @@
+package de.nocoffeetech.smallhttp.base;
+
+/**
+ * The strategy a {@link HTTPServer} uses to distribute the accepted connections onto threads
+ */
+public enum ConnectionEngine {
+    /**
+     * Every connection is handled by a dedicated thread of the client handler pool for its entire lifetime, including idle keep-alive phases.
+     * The amount of concurrent connections is limited by {@link HTTPServerBuilder#setThreadCount(int)}.
+     */
+    THREAD_PER_CONNECTION,
+    /**
+     * Connections are multiplexed by selector based event loops (one per core by default).
+     * The event loops read request heads without blocking, and a worker thread is only used once a complete request head has been received.
+     * Idle keep-alive connections are handed back to the event loops and do not occupy any worker thread.
+     * The amount of workers is set by {@link HTTPServerBuilder#setThreadCount(int)}, requests that can't be handled immediately are queued.
+     */
+    EVENT_LOOP,
+    /**
+     * Every connection is handled by its own virtual thread for its entire lifetime. Requires a Java 21+ runtime.
+     * Buffers are borrowed from a shared pool only while a request is being read and answered, so idle connections are cheap.
+     * The amount of concurrent connections is limited by {@link HTTPServerBuilder#setMaxConcurrentConnections(int)}.
+     */
+    VIRTUAL_THREAD_PER_CONNECTION,
+    /**
+     * Requests are read and answered by a worker thread just like {@link #THREAD_PER_CONNECTION}, but idle keep-alive connections are parked on
+     * selector based event loops instead of blocking a worker. A worker is only used again once the connection becomes readable.
+     * Compared to {@link #EVENT_LOOP}, request heads are not copied through the event loop, but slow clients occupy a worker while sending their request.
+     * The amount of workers is set by {@link HTTPServerBuilder#setThreadCount(int)}, the number of event loops by {@link HTTPServerBuilder#setEventLoopCount(int)}.
+     * Connections that become readable while all workers are busy are queued.
+     */
+    HYBRID
+}
@@ -1,6 +1,6 @@
 package de.nocoffeetech.smallhttp.base;
 
-import de.nocoffeetech.smallhttp.internal.watchdog.SocketWatchdog;
+import de.nocoffeetech.smallhttp.internal.watchdog.TimeoutWheel;
 import de.nocoffeetech.smallhttp.response.ResponseStartWriter;
 import de.nocoffeetech.smallhttp.response.ResponseToken;
 
@@ -28,6 +28,7 @@ public interface ErrorHandler {
 
     /**
      * Called when the main listener accepts a new connection, but no thread is available to distribute the work to
+     * Not called if overload shedding is enabled, see {@link HTTPServerBuilder#setOverloadMaxWait(int)}
      * @param server The server that could not handle the socket
      * @param socket The socket that was just accepted and cannot be assigned to a thread
      * @param exception The exception thrown
@@ -54,10 +55,19 @@ public interface ErrorHandler {
     ResponseToken onResponseHandlerException(HTTPServer server, HTTPRequest request, ResponseStartWriter writer, Socket socket, Exception e);
 
     /**
-     * Called when the {@link SocketWatchdog} wants to terminate a connection because the timeout was exceeded but the operation fails
+     * Called when the {@link TimeoutWheel} wants to terminate a connection because the timeout was exceeded but the operation fails
      * @param server The server which owns the handler that crashed
      * @param socket The socket that should get shutdown
      * @param e The exception thrown
      */
     void onExternalTimeoutCloseFailed(HTTPServer server, Socket socket, Exception e);
+
+    /**
+     * Called when the key store of the {@link TLSConfig} has been modified but could not be loaded. The previous certificates remain in use.
+     * @param server The server that uses the config
+     * @param e The exception thrown
+     */
+    default void onCertificateReloadFailed(HTTPServer server, Exception e) {
+        e.printStackTrace();
+    }
 }
@@ -22,7 +22,24 @@ public interface HTTPRequest {
 
     InputStream getInputStream();
 
+    /**
+     * @return The body of the request, or null if the request has no body. Reads from the same position as {@link #getInputStream()}
+     */
+    default RequestBody getBody() {
+        return null;
+    }
+
+    /**
+     * @return The length of the body, -1 if the length is unknown or {@link Integer#MAX_VALUE} if the body is larger, see {@link #getContentLengthLong()}
+     */
     int getContentLength();
 
+    /**
+     * @return The length of the body, or -1 if the body is sent using the chunked transfer coding and the length is thus unknown
+     */
+    default long getContentLengthLong() {
+        return getContentLength();
+    }
+
     HTTPRequest copyWithNewPath(String newPath);
 }
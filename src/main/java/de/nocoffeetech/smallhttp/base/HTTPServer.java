@@ -1,14 +1,29 @@
 package de.nocoffeetech.smallhttp.base;
 
+import de.nocoffeetech.smallhttp.internal.eventloop.EventLoop;
+import de.nocoffeetech.smallhttp.internal.eventloop.EventLoopClientHandler;
+import de.nocoffeetech.smallhttp.internal.handler.BufferPool;
 import de.nocoffeetech.smallhttp.internal.handler.HTTPClientHandler;
+import de.nocoffeetech.smallhttp.internal.handler.OverloadShedder;
+import de.nocoffeetech.smallhttp.internal.handler.VirtualThreadFactory;
+import de.nocoffeetech.smallhttp.internal.http2.HTTP2Support;
+import de.nocoffeetech.smallhttp.internal.tls.TLSBufferPool;
+import de.nocoffeetech.smallhttp.internal.tls.TLSClientHandler;
 import de.nocoffeetech.smallhttp.internal.watchdog.ClientHandlerTracker;
-import de.nocoffeetech.smallhttp.internal.watchdog.SocketWatchdog;
+import de.nocoffeetech.smallhttp.internal.watchdog.TimeoutWheel;
+import de.nocoffeetech.smallhttp.metrics.MetricsSnapshot;
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
+import de.nocoffeetech.smallhttp.util.PathCache;
 
+import javax.net.ssl.SSLSession;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
 import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -21,18 +36,30 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class HTTPServer {
     private final int port;
-    private final ServerSocketChannel mainSocket;
-    private final ExecutorService executor;
-    private final Thread mainSocketListener;
-    private final Thread socketWatchdogThread;
+    private final ServerSocketChannel[] listenChannels;
+    private final ExecutorService[] executors;
+    private final Acceptor[] acceptors;
+    private final Thread[] acceptorThreads;
+    private final TimeoutWheel timeoutWheel;
+    private final Thread timeoutWheelThread;
+    private final EventLoop[] eventLoops;
+    private final Thread[] eventLoopThreads;
+    private final BufferPool bufferPool;
+    private final boolean releaseBuffersWhileIdle;
+    private final PathCache pathCache;
+    private final TLSConfig tlsConfig;
+    private final TLSBufferPool tlsBufferPool;
+    /** Handles the streams of HTTP/2 connections, null if HTTP/2 is disabled */
+    private final ThreadPoolExecutor http2Executor;
+    private final HTTP2Support http2Support;
     private final ErrorHandler errorHandler;
     private final RequestHandler handler;
     private final int socketTimeout;
     private final boolean allowTraceConnect;
     private final boolean builtinServerWideOptions;
-    private final int maxBodyLengthBytes;
+    private final long maxBodyLengthBytes;
     private final AtomicBoolean isShutdown = new AtomicBoolean(false);
-    private final ClientHandlerTracker tracker = new ClientHandlerTracker();
+    private final ClientHandlerTracker tracker;
     private final AtomicInteger threadNumber = new AtomicInteger(1);
 
     /**
@@ -43,40 +70,125 @@ public class HTTPServer {
     HTTPServer(HTTPServerBuilder builder) throws IOException {
         this.port = builder.getPort();
         this.errorHandler = builder.getErrorHandler();
-        ServerSocketChannel serverSocketChannel = null;
+        int acceptorCount = builder.getAcceptorCount();
+        this.listenChannels = new ServerSocketChannel[acceptorCount];
         try {
-            serverSocketChannel = ServerSocketChannel.open();
-            serverSocketChannel.configureBlocking(true);
-            serverSocketChannel.bind(new InetSocketAddress(port));
-            this.mainSocket = serverSocketChannel;
-            this.executor = new ThreadPoolExecutor(0, builder.getThreadCount(), 5, TimeUnit.MINUTES, new SynchronousQueue<>(), r -> new Thread(r, "HTTPServer port " + port + " client handler " + threadNumber.getAndIncrement()));
+            openListenChannels(builder);
+            ConnectionEngine engine = builder.getConnectionEngine();
+            int maxPooledBuffers;
+            boolean sharded = builder.isShardExecutorPerAcceptor() && (engine == ConnectionEngine.THREAD_PER_CONNECTION || engine == ConnectionEngine.VIRTUAL_THREAD_PER_CONNECTION);
+            this.executors = new ExecutorService[sharded ? acceptorCount : 1];
+            if (engine == ConnectionEngine.EVENT_LOOP || engine == ConnectionEngine.HYBRID) {
+                // Workers are only used while there is a request to handle, so queue requests instead of rejecting them once all workers are busy
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(builder.getThreadCount(), builder.getThreadCount(), 5, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), r -> new Thread(r, "HTTPServer port " + port + " worker " + threadNumber.getAndIncrement()));
+                executor.allowCoreThreadTimeOut(true);
+                this.executors[0] = executor;
+                this.eventLoops = new EventLoop[builder.getEventLoopCount()];
+                this.eventLoopThreads = new Thread[builder.getEventLoopCount()];
+                for (int i = 0; i < this.eventLoops.length; i++) {
+                    this.eventLoops[i] = new EventLoop(executor, this, this.errorHandler, builder.getSocketTimeoutMillis(), builder.getRequestHeaderReadTimeoutMillis(), engine == ConnectionEngine.EVENT_LOOP);
+                }
+                // Buffers are only held by a worker, idle connections are owned by the event loops
+                maxPooledBuffers = builder.getThreadCount() * 2;
+                this.releaseBuffersWhileIdle = false;
+            } else if (engine == ConnectionEngine.VIRTUAL_THREAD_PER_CONNECTION) {
+                // Virtual threads are cheap and must not be pooled, so let each thread die right after its connection is closed
+                int maxConnections = shardSize(builder.getMaxConcurrentConnections(), this.executors.length);
+                for (int i = 0; i < this.executors.length; i++) {
+                    this.executors[i] = new ThreadPoolExecutor(0, maxConnections, 0, TimeUnit.SECONDS, new SynchronousQueue<>(), VirtualThreadFactory.create("HTTPServer port " + port + " client handler "));
+                }
+                this.eventLoops = null;
+                this.eventLoopThreads = null;
+                // Virtual threads can't keep buffers for their connection cheaply, so they borrow them only for a request
+                maxPooledBuffers = Runtime.getRuntime().availableProcessors() * 8;
+                this.releaseBuffersWhileIdle = true;
+            } else {
+                int threadCount = shardSize(builder.getThreadCount(), this.executors.length);
+                for (int i = 0; i < this.executors.length; i++) {
+                    this.executors[i] = new ThreadPoolExecutor(0, threadCount, 5, TimeUnit.MINUTES, new SynchronousQueue<>(), r -> new Thread(r, "HTTPServer port " + port + " client handler " + threadNumber.getAndIncrement()));
+                }
+                this.eventLoops = null;
+                this.eventLoopThreads = null;
+                // Each thread holds a header and a response buffer for its connection
+                maxPooledBuffers = builder.getThreadCount() * 2;
+                this.releaseBuffersWhileIdle = false;
+            }
             this.handler = builder.getHandler();
             this.socketTimeout = builder.getSocketTimeoutMillis();
             this.allowTraceConnect = builder.isAllowTraceConnect();
             this.builtinServerWideOptions = builder.isBuiltinServerWideOptions();
-            this.maxBodyLengthBytes = ((int) builder.getMaxClientBodyLengthKB()) * 1024;
-
-            this.mainSocketListener = new Thread(this::listen);
-            this.mainSocketListener.setName("HTTPServer port " + port + " listener");
-            this.mainSocketListener.setUncaughtExceptionHandler((t, e) -> this.errorHandler.onListenerInternalException(this, e));
-            this.mainSocketListener.start();
+            this.maxBodyLengthBytes = builder.getMaxClientBodyLengthBytes();
 
             int readTimeout = builder.getRequestHeaderReadTimeoutMillis();
             int handlingTimeout = builder.getRequestHandlingTimeoutMillis();
-            if (readTimeout != -1 || handlingTimeout != -1) {
-                this.socketWatchdogThread = new Thread(new SocketWatchdog(readTimeout, handlingTimeout, this.tracker, this));
-                this.socketWatchdogThread.setPriority(Thread.MIN_PRIORITY);
-                this.socketWatchdogThread.setDaemon(true);
-                this.socketWatchdogThread.setName("HTTPServer port " + port + " watchdog");
-                this.socketWatchdogThread.setUncaughtExceptionHandler((t, e) -> this.errorHandler.onWatchdogInternalException(this, e));
-                this.socketWatchdogThread.start();
+            this.timeoutWheel = readTimeout != -1 || handlingTimeout != -1 ? new TimeoutWheel() : null;
+            this.tracker = new ClientHandlerTracker(this.timeoutWheel, readTimeout, handlingTimeout);
+            this.bufferPool = new BufferPool(builder.getMaxRequestHeaderSizeBytes(), maxPooledBuffers, this.tracker.getMetrics());
+            this.pathCache = builder.getPathCacheSize() == 0 ? null : new PathCache(builder.getPathCacheSize(), this.tracker.getMetrics());
+            this.tlsConfig = builder.getTLSConfig();
+            if (this.tlsConfig != null) {
+                // The buffers must fit the largest record, and the data of one
+                SSLSession session = this.tlsConfig.createEngine().getSession();
+                int tlsBufferSize = Math.max(session.getPacketBufferSize(), session.getApplicationBufferSize());
+                // A TLS connection holds three buffers for as long as it is open
+                this.tlsBufferPool = new TLSBufferPool(tlsBufferSize, maxPooledBuffers * 3 / 2, this.tracker.getMetrics());
             } else {
-                this.socketWatchdogThread = null;
+                this.tlsBufferPool = null;
+            }
+            if (builder.isAllowHTTP2Cleartext()) {
+                if (engine == ConnectionEngine.VIRTUAL_THREAD_PER_CONNECTION) {
+                    // Like the connections, each stream gets its own virtual thread
+                    this.http2Executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.SECONDS, new SynchronousQueue<>(), VirtualThreadFactory.create("HTTPServer port " + port + " http2 worker "));
+                } else {
+                    // The connection threads only read frames, so the streams are queued until a worker is free instead of being refused
+                    this.http2Executor = new ThreadPoolExecutor(builder.getThreadCount(), builder.getThreadCount(), 5, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), r -> new Thread(r, "HTTPServer port " + port + " http2 worker " + threadNumber.getAndIncrement()));
+                    this.http2Executor.allowCoreThreadTimeOut(true);
+                }
+                this.http2Support = new HTTP2Support(this.http2Executor, this.handler, this.errorHandler, this, this.tracker.getMetrics(), this.allowTraceConnect, this.builtinServerWideOptions,
+                        this.maxBodyLengthBytes, builder.getMaxRequestHeaderSizeBytes(), this.socketTimeout, this.pathCache);
+            } else {
+                this.http2Executor = null;
+                this.http2Support = null;
+            }
+
+            if (this.eventLoops != null) {
+                for (int i = 0; i < this.eventLoops.length; i++) {
+                    Thread eventLoopThread = new Thread(this.eventLoops[i]);
+                    eventLoopThread.setName("HTTPServer port " + port + " event loop " + (i + 1));
+                    eventLoopThread.setUncaughtExceptionHandler((t, e) -> this.errorHandler.onListenerInternalException(this, e));
+                    eventLoopThread.start();
+                    this.eventLoopThreads[i] = eventLoopThread;
+                }
+            }
+
+            this.acceptors = new Acceptor[acceptorCount];
+            this.acceptorThreads = new Thread[acceptorCount];
+            for (int i = 0; i < acceptorCount; i++) {
+                OverloadShedder overloadShedder = builder.getOverloadMaxWaitMillis() != -1 && this.eventLoops == null ? new OverloadShedder(builder.getOverloadMaxWaitMillis(), builder.getOverloadRetryAfterSeconds()) : null;
+                // Start at different event loops, so the acceptors don't all fill the same one first
+                this.acceptors[i] = new Acceptor(this.listenChannels[i], this.executors[i % this.executors.length], overloadShedder, this.eventLoops == null ? 0 : i % this.eventLoops.length);
+                Thread acceptorThread = new Thread(this.acceptors[i]);
+                acceptorThread.setName("HTTPServer port " + port + " listener" + (acceptorCount == 1 ? "" : " " + (i + 1)));
+                acceptorThread.setUncaughtExceptionHandler((t, e) -> this.errorHandler.onListenerInternalException(this, e));
+                acceptorThread.start();
+                this.acceptorThreads[i] = acceptorThread;
+            }
+
+            if (this.timeoutWheel != null) {
+                this.timeoutWheelThread = new Thread(this.timeoutWheel);
+                this.timeoutWheelThread.setPriority(Thread.MIN_PRIORITY);
+                this.timeoutWheelThread.setDaemon(true);
+                this.timeoutWheelThread.setName("HTTPServer port " + port + " watchdog");
+                this.timeoutWheelThread.setUncaughtExceptionHandler((t, e) -> this.errorHandler.onWatchdogInternalException(this, e));
+                this.timeoutWheelThread.start();
+            } else {
+                this.timeoutWheelThread = null;
             }
         } catch (Exception e) {
-            if (serverSocketChannel != null) {
+            for (ServerSocketChannel listenChannel : this.listenChannels) {
+                if (listenChannel == null) continue;
                 try {
-                    serverSocketChannel.close();
+                    listenChannel.close();
                 } catch (Exception e1) {
                     e.addSuppressed(e1);
                 }
@@ -85,22 +197,104 @@ public class HTTPServer {
         }
     }
 
-    private void listen() {
-        try {
-            while (mainSocket.isOpen()) {
-                Socket acceptedSocket = mainSocket.accept().socket();
-                if (socketTimeout != -1) {
-                    acceptedSocket.setSoTimeout(socketTimeout);
+    /**
+     * Binds one channel per acceptor to the port with SO_REUSEPORT, so the operating system distributes the connections between them.
+     * If SO_REUSEPORT is not supported, all acceptors share a single channel.
+     */
+    private void openListenChannels(HTTPServerBuilder builder) throws IOException {
+        ServerSocketChannel first = ServerSocketChannel.open();
+        this.listenChannels[0] = first;
+        boolean reusePort = this.listenChannels.length > 1 && first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        if (reusePort) {
+            first.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        first.configureBlocking(true);
+        first.bind(new InetSocketAddress(this.port), builder.getAcceptBacklog());
+        // If the port was chosen by the operating system, the others must use the same
+        int boundPort = ((InetSocketAddress) first.getLocalAddress()).getPort();
+        for (int i = 1; i < this.listenChannels.length; i++) {
+            if (reusePort) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                this.listenChannels[i] = channel;
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                channel.configureBlocking(true);
+                channel.bind(new InetSocketAddress(boundPort), builder.getAcceptBacklog());
+            } else {
+                this.listenChannels[i] = first;
+            }
+        }
+    }
+
+    private static int shardSize(int total, int shards) {
+        // Round up, so no shard ends up without threads
+        return (total + shards - 1) / shards;
+    }
+
+    /**
+     * Accepts connections from one listening channel and distributes them. Each acceptor has its own state, so they never wait for each other.
+     */
+    private final class Acceptor implements Runnable {
+        private final ServerSocketChannel listenChannel;
+        private final ExecutorService executor;
+        private final OverloadShedder overloadShedder;
+        private int nextEventLoop;
+
+        private Acceptor(ServerSocketChannel listenChannel, ExecutorService executor, OverloadShedder overloadShedder, int firstEventLoop) {
+            this.listenChannel = listenChannel;
+            this.executor = executor;
+            this.overloadShedder = overloadShedder;
+            this.nextEventLoop = firstEventLoop;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (this.listenChannel.isOpen()) {
+                    SocketChannel acceptedChannel = this.listenChannel.accept();
+                    Socket acceptedSocket = acceptedChannel.socket();
+                    tracker.getMetrics().connectionAccepted();
+                    if (socketTimeout != -1) {
+                        acceptedSocket.setSoTimeout(socketTimeout);
+                    }
+                    if (eventLoops != null) {
+                        assignToEventLoop(acceptedChannel);
+                        continue;
+                    }
+                    HTTPClientHandler httpClientHandler = tlsConfig != null
+                            ? new TLSClientHandler(acceptedSocket, errorHandler, handler, HTTPServer.this, tracker, allowTraceConnect, builtinServerWideOptions, maxBodyLengthBytes, bufferPool, releaseBuffersWhileIdle, pathCache, tlsConfig, tlsBufferPool)
+                            : new HTTPClientHandler(acceptedSocket, errorHandler, handler, HTTPServer.this, tracker, allowTraceConnect, builtinServerWideOptions, maxBodyLengthBytes, bufferPool, releaseBuffersWhileIdle, pathCache, http2Support);
+                    try {
+                        this.executor.execute(httpClientHandler);
+                        if (this.overloadShedder != null) {
+                            this.overloadShedder.onHandedOff();
+                        }
+                    } catch (RejectedExecutionException e) {
+                        if (this.overloadShedder != null && this.overloadShedder.awaitFreeThread((ThreadPoolExecutor) this.executor, httpClientHandler)) continue;
+                        tracker.getMetrics().connectionRejected();
+                        httpClientHandler.deregister();
+                        if (this.overloadShedder != null && tlsConfig != null) {
+                            // The client expects a handshake, so the plain response of the shedder would be useless
+                            acceptedChannel.close();
+                        } else if (this.overloadShedder != null) {
+                            this.overloadShedder.shed(acceptedChannel);
+                        } else {
+                            errorHandler.onNoAvailableThreadForConnection(HTTPServer.this, acceptedSocket, e);
+                        }
+                    }
                 }
-                HTTPClientHandler httpClientHandler = new HTTPClientHandler(acceptedSocket, this.errorHandler, this.handler, this, this.tracker, this.allowTraceConnect, this.builtinServerWideOptions, this.maxBodyLengthBytes);
-                try {
-                    this.executor.submit(httpClientHandler);
-                } catch (RejectedExecutionException e) {
-                    this.errorHandler.onNoAvailableThreadForConnection(this, acceptedSocket, e);
+            } catch (IOException e) {
+                // Closing the channel during shutdown makes accept throw, that's not worth reporting
+                if (!isShutdown()) {
+                    errorHandler.onListenerInternalException(HTTPServer.this, e);
                 }
             }
-        } catch (IOException e) {
-            this.errorHandler.onListenerInternalException(this, e);
+        }
+
+        private void assignToEventLoop(SocketChannel acceptedChannel) throws IOException {
+            EventLoop eventLoop = eventLoops[this.nextEventLoop];
+            this.nextEventLoop = (this.nextEventLoop + 1) % eventLoops.length;
+            acceptedChannel.configureBlocking(false);
+            eventLoop.register(new EventLoopClientHandler(acceptedChannel, eventLoop, errorHandler, handler, HTTPServer.this, tracker, allowTraceConnect, builtinServerWideOptions, maxBodyLengthBytes, bufferPool, pathCache));
         }
     }
 
@@ -108,30 +302,152 @@ public class HTTPServer {
         // Check if a shutdown sequence is already in progress
         if (this.isShutdown.getAndSet(true)) return;
         this.tracker.notifyShutdown();
-        if (this.socketWatchdogThread != null) this.socketWatchdogThread.interrupt();
+        stopThreads(awaitDeath);
+    }
 
-        this.mainSocket.close();
-        this.executor.shutdown();
+    /**
+     * Shuts the server down gracefully, e.g. for rolling restarts. The server stops accepting new connections and closes all idle ones.
+     * Requests that are in-flight may finish until the deadline, their responses get a Connection: close header if it's not too late.
+     * Connections that are still busy after the deadline are closed forcefully.
+     * <br>
+     * The progress can be observed with {@link #getMetrics()}, where the active connections are the requests that are still in-flight.
+     *
+     * @param drainTimeoutMillis The time in millis in-flight requests have to finish
+     * @return True if all requests finished in time, false if connections had to be closed forcefully or the server was already shut down
+     * @throws IOException If the server failed to shut down, see {@link #shutdown(boolean)}
+     */
+    public boolean drain(int drainTimeoutMillis) throws IOException {
+        if (drainTimeoutMillis < 0) throw new IllegalArgumentException("Invalid time provided!");
+        if (this.isShutdown.getAndSet(true)) return false;
+        this.tracker.getMetrics().startDrain();
+        // Stop accepting first, otherwise new connections could show up while we wait for the old ones
+        closeListenChannels();
+        this.tracker.notifyDrain();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        try {
+            while (this.tracker.getHandlerCount() > 0 && System.nanoTime() - deadline < 0) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            // huh, ok then lets not wait
+        }
+        int forceClosed = this.tracker.forceCloseAll();
+        this.tracker.getMetrics().connectionsForceClosed(forceClosed);
+        stopThreads(true);
+        return forceClosed == 0;
+    }
+
+    private void stopThreads(boolean awaitDeath) throws IOException {
+        if (this.timeoutWheel != null) {
+            this.timeoutWheel.stop();
+            this.timeoutWheelThread.interrupt();
+        }
+
+        closeListenChannels();
+        if (this.eventLoops != null) {
+            for (EventLoop eventLoop : this.eventLoops) {
+                eventLoop.shutdown();
+            }
+        }
+        for (ExecutorService executor : this.executors) {
+            executor.shutdown();
+        }
+        if (this.http2Executor != null) {
+            // Streams that are already queued still run, new ones are refused
+            this.http2Executor.shutdown();
+        }
         if (awaitDeath) {
-            try {
-                // The main thread should be finished pretty quickly, as it just accepts new requests
-                this.mainSocketListener.join(1000);
-            } catch (InterruptedException e) {
-                // huh, ok then lets not wait
+            for (Thread acceptorThread : this.acceptorThreads) {
+                try {
+                    // The acceptors should be finished pretty quickly, as they just accept new requests
+                    acceptorThread.join(1000);
+                } catch (InterruptedException e) {
+                    // huh, ok then lets not wait
+                }
+                if (acceptorThread.isAlive()) {
+                    throw new IOException("Failed to shutdown main socket listener!");
+                }
             }
-            if (this.mainSocketListener.isAlive()) {
-                throw new IOException("Failed to shutdown main socket listener!");
+            if (this.eventLoopThreads != null) {
+                for (Thread eventLoopThread : this.eventLoopThreads) {
+                    try {
+                        eventLoopThread.join(1000);
+                    } catch (InterruptedException e) {
+                        // huh, ok then lets not wait
+                    }
+                    if (eventLoopThread.isAlive()) {
+                        throw new IOException("Failed to shutdown event loop!");
+                    }
+                }
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            for (ExecutorService executor : this.executors) {
+                boolean terminated = false;
+                try {
+                    terminated = executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    // huh, ok then lets not wait
+                }
+                if (!terminated) {
+                    throw new IOException("Failed to shutdown socket handlers!");
+                }
             }
-            boolean terminated = false;
+            if (this.http2Executor != null) {
+                boolean terminated = false;
+                try {
+                    terminated = this.http2Executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    // huh, ok then lets not wait
+                }
+                if (!terminated) {
+                    throw new IOException("Failed to shutdown HTTP/2 stream handlers!");
+                }
+            }
+        }
+    }
+
+    private void closeListenChannels() throws IOException {
+        IOException exception = null;
+        for (ServerSocketChannel listenChannel : this.listenChannels) {
             try {
-                terminated = this.executor.awaitTermination(5, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                // huh, ok then lets not wait
+                listenChannel.close();
+            } catch (IOException e) {
+                if (exception == null) exception = e;
+                else exception.addSuppressed(e);
             }
-            if (!terminated) {
-                throw new IOException("Failed to shutdown socket handlers!");
+        }
+        if (exception != null) throw exception;
+    }
+
+    /**
+     * Creates a snapshot of the metrics of this server. Recording the metrics never waits for readers, so this can be called at any time and from any thread.
+     * Gauges are computed while creating the snapshot, so they might not be consistent with the counters if connections change at the same time.
+     */
+    public MetricsSnapshot getMetrics() {
+        int[] idleConnections = new int[1];
+        int[] totalConnections = new int[1];
+        this.tracker.forEachHandler(handler -> {
+            totalConnections[0]++;
+            if (handler.isIdle()) idleConnections[0]++;
+        });
+        int queuedRequests = 0;
+        for (ExecutorService executor : this.executors) {
+            if (executor instanceof ThreadPoolExecutor threadPoolExecutor) {
+                queuedRequests += threadPoolExecutor.getQueue().size();
             }
         }
+        if (this.http2Executor != null) {
+            queuedRequests += this.http2Executor.getQueue().size();
+        }
+        ServerMetrics metrics = this.tracker.getMetrics();
+        int pooledBuffers = this.bufferPool.getPooledBuffers();
+        long pooledBytes = this.bufferPool.getPooledBytes();
+        if (this.tlsBufferPool != null) {
+            pooledBuffers += this.tlsBufferPool.getPooledBuffers();
+            pooledBytes += this.tlsBufferPool.getPooledBytes();
+        }
+        return metrics.snapshot(totalConnections[0] - idleConnections[0], idleConnections[0], queuedRequests, pooledBuffers, pooledBytes);
     }
 
     public boolean isShutdown() {
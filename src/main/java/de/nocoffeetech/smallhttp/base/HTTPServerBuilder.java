@@ -3,6 +3,7 @@ package de.nocoffeetech.smallhttp.base;
 import de.nocoffeetech.smallhttp.data.Method;
 import de.nocoffeetech.smallhttp.data.Status;
 import de.nocoffeetech.smallhttp.internal.handler.DefaultErrorHandler;
+import de.nocoffeetech.smallhttp.internal.handler.VirtualThreadFactory;
 
 import java.io.IOException;
 
@@ -19,7 +20,19 @@ public class HTTPServerBuilder {
     private int requestHandlingTimeoutMillis;
     private boolean allowTraceConnect;
     private boolean builtinServerWideOptions;
-    private short maxClientBodyLengthKB;
+    private long maxClientBodyLengthBytes;
+    private int maxRequestHeaderSizeBytes;
+    private ConnectionEngine connectionEngine;
+    private int eventLoopCount;
+    private int maxConcurrentConnections;
+    private int acceptBacklog;
+    private int overloadMaxWaitMillis;
+    private int overloadRetryAfterSeconds;
+    private int acceptorCount;
+    private boolean shardExecutorPerAcceptor;
+    private int pathCacheSize;
+    private TLSConfig tlsConfig;
+    private boolean allowHTTP2Cleartext;
 
     private HTTPServerBuilder(int port, RequestHandler handler) {
         this.port = port;
@@ -31,7 +44,19 @@ public class HTTPServerBuilder {
         this.requestHandlingTimeoutMillis = -1;
         this.allowTraceConnect = false;
         this.builtinServerWideOptions = true;
-        this.maxClientBodyLengthKB = 8 * 1024; // Default max: 8MB
+        this.maxClientBodyLengthBytes = 8 * 1024 * 1024; // Default max: 8MB
+        this.maxRequestHeaderSizeBytes = 8 * 1024;
+        this.connectionEngine = ConnectionEngine.THREAD_PER_CONNECTION;
+        this.eventLoopCount = Runtime.getRuntime().availableProcessors();
+        this.maxConcurrentConnections = 10000;
+        this.acceptBacklog = 0;
+        this.overloadMaxWaitMillis = -1;
+        this.overloadRetryAfterSeconds = 1;
+        this.acceptorCount = 1;
+        this.shardExecutorPerAcceptor = false;
+        this.pathCacheSize = 0;
+        this.tlsConfig = null;
+        this.allowHTTP2Cleartext = false;
     }
 
     /**
@@ -143,9 +168,195 @@ public class HTTPServerBuilder {
      * If the size is exceeded, the client will get a response with a {@link Status#CONTENT_TOO_LARGE}
      *
      * @param maxClientBodyLengthKB The maximum length in KB
+     * @deprecated Limited to 32 MB, use {@link #setMaxClientBodyLengthBytes(long)} instead
      */
+    @Deprecated
     public void setMaxClientBodyLengthKB(short maxClientBodyLengthKB) {
-        this.maxClientBodyLengthKB = maxClientBodyLengthKB;
+        if (maxClientBodyLengthKB < 0) throw new IllegalArgumentException("Invalid length provided!");
+        this.maxClientBodyLengthBytes = maxClientBodyLengthKB * 1024L;
+    }
+
+    /**
+     * Sets the maximum size of the body a client is allowed to submit to the server.
+     * If the size is exceeded, the client will get a response with a {@link Status#CONTENT_TOO_LARGE}.
+     * Handlers can override this for specific requests, see {@link RequestHandler#getMaxBodySizeBytes(HTTPRequest)}
+     *
+     * @param maxClientBodyLengthBytes The maximum length in bytes
+     * @return The current builder
+     */
+    public HTTPServerBuilder setMaxClientBodyLengthBytes(long maxClientBodyLengthBytes) {
+        if (maxClientBodyLengthBytes < 0) throw new IllegalArgumentException("Invalid length provided!");
+        this.maxClientBodyLengthBytes = maxClientBodyLengthBytes;
+        return this;
+    }
+
+    /**
+     * Sets the maximum size of the request line and headers of a request.
+     * If the size is exceeded, the client will get a response with a {@link Status#REQUEST_HEADER_FIELDS_TOO_LARGE} or a {@link Status#URI_TOO_LONG}.
+     * Every request starts with an 8 KB header buffer, which is only grown for requests with larger heads.
+     *
+     * @param maxRequestHeaderSizeBytes The maximum size in bytes, at most 1 MB
+     * @return The current builder
+     */
+    public HTTPServerBuilder setMaxRequestHeaderSizeBytes(int maxRequestHeaderSizeBytes) {
+        if (maxRequestHeaderSizeBytes < 1024 || maxRequestHeaderSizeBytes > 1024 * 1024) throw new IllegalArgumentException("Invalid length provided!");
+        this.maxRequestHeaderSizeBytes = maxRequestHeaderSizeBytes;
+        return this;
+    }
+
+    /**
+     * Sets the engine that is used to distribute connections onto threads, see {@link ConnectionEngine}
+     *
+     * @param connectionEngine The engine to use
+     * @return The current builder
+     */
+    public HTTPServerBuilder setConnectionEngine(ConnectionEngine connectionEngine) {
+        if (connectionEngine == null) throw new IllegalArgumentException("No engine provided!");
+        if (connectionEngine == ConnectionEngine.VIRTUAL_THREAD_PER_CONNECTION && !VirtualThreadFactory.isSupported())
+            throw new IllegalStateException("Virtual threads are not supported by this JVM, Java 21 or newer is required!");
+        this.connectionEngine = connectionEngine;
+        return this;
+    }
+
+    /**
+     * Sets the number of selector threads used by the {@link ConnectionEngine#EVENT_LOOP} and {@link ConnectionEngine#HYBRID} engines. Defaults to the number of available processors.
+     * This setting has no effect for other engines.
+     *
+     * @param eventLoopCount The number of event loops
+     * @return The current builder
+     */
+    public HTTPServerBuilder setEventLoopCount(int eventLoopCount) {
+        if (eventLoopCount < 1 || eventLoopCount > Short.MAX_VALUE) throw new IllegalArgumentException("Invalid event loop count!");
+        this.eventLoopCount = eventLoopCount;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of connections that are handled at the same time by the {@link ConnectionEngine#VIRTUAL_THREAD_PER_CONNECTION} engine.
+     * This replaces the thread count limit for that engine. This setting has no effect for other engines.
+     *
+     * @param maxConcurrentConnections The maximum number of concurrent connections
+     * @return The current builder
+     */
+    public HTTPServerBuilder setMaxConcurrentConnections(int maxConcurrentConnections) {
+        if (maxConcurrentConnections < 1) throw new IllegalArgumentException("Invalid connection count!");
+        this.maxConcurrentConnections = maxConcurrentConnections;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of connections the operating system queues until they are accepted by the server.
+     * Further connections are refused by the operating system. 0 uses the default of the operating system.
+     *
+     * @param acceptBacklog The maximum number of pending connections
+     * @return The current builder
+     */
+    public HTTPServerBuilder setAcceptBacklog(int acceptBacklog) {
+        if (acceptBacklog < 0) throw new IllegalArgumentException("Invalid backlog!");
+        this.acceptBacklog = acceptBacklog;
+        return this;
+    }
+
+    /**
+     * Enables shedding load once all threads are busy. A new connection then waits up to the max wait for a thread to become free.
+     * If none does, the connection is answered with a {@link Status#SERVICE_TIMEOUT} that includes a Retry-After header and closed right away.
+     * While waiting, further connections queue up in the accept backlog, see {@link #setAcceptBacklog(int)}.
+     * <br>
+     * If disabled, connections without a free thread are passed to {@link ErrorHandler#onNoAvailableThreadForConnection(HTTPServer, java.net.Socket, java.util.concurrent.RejectedExecutionException)}.
+     * This setting has no effect for the {@link ConnectionEngine#EVENT_LOOP} and {@link ConnectionEngine#HYBRID} engines, which queue requests instead of rejecting them.
+     *
+     * @param overloadMaxWaitMillis The max wait in millis, 0 to shed right away or -1 to disable shedding
+     * @return The current builder
+     */
+    public HTTPServerBuilder setOverloadMaxWait(int overloadMaxWaitMillis) {
+        if (overloadMaxWaitMillis < 0 && overloadMaxWaitMillis != -1)
+            throw new IllegalArgumentException("Invalid time provided!");
+        this.overloadMaxWaitMillis = overloadMaxWaitMillis;
+        return this;
+    }
+
+    /**
+     * Sets the delay that shed connections are asked to wait before retrying, see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-retry-after">RFC 9110</a>.
+     * Only used if shedding is enabled, see {@link #setOverloadMaxWait(int)}.
+     *
+     * @param overloadRetryAfterSeconds The delay in seconds
+     * @return The current builder
+     */
+    public HTTPServerBuilder setOverloadRetryAfter(int overloadRetryAfterSeconds) {
+        if (overloadRetryAfterSeconds < 0) throw new IllegalArgumentException("Invalid time provided!");
+        this.overloadRetryAfterSeconds = overloadRetryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * Sets the size of the cache for the decoded paths of request targets. Requests for a cached path get the same string instead of decoding the path again,
+     * which helps if most requests go to a few hundred distinct paths. The cache evicts paths that are not requested anymore, see {@link de.nocoffeetech.smallhttp.util.PathCache}.
+     * The hit rate is reported in the {@link de.nocoffeetech.smallhttp.metrics.MetricsSnapshot}.
+     *
+     * @param pathCacheSize The maximum number of cached paths, which is rounded up to a power of two, or 0 to disable the cache
+     * @return The current builder
+     */
+    public HTTPServerBuilder setPathCacheSize(int pathCacheSize) {
+        if (pathCacheSize < 0 || pathCacheSize > 64 * 1024) throw new IllegalArgumentException("Invalid size provided!");
+        this.pathCacheSize = pathCacheSize;
+        return this;
+    }
+
+    /**
+     * Secures all connections with TLS. The handshake is done by the thread handling the connection, so it counts towards the socket timeout.
+     * Only supported by the {@link ConnectionEngine#THREAD_PER_CONNECTION} and {@link ConnectionEngine#VIRTUAL_THREAD_PER_CONNECTION} engines.
+     * <br>
+     * Responses can't be written to the socket channel directly, see {@link de.nocoffeetech.smallhttp.response.FixedResponseBodyWriter#getRawSocketChannel()}.
+     * Overload shedding closes connections without a response, as the response would need a handshake.
+     *
+     * @param tlsConfig The TLS settings, or null to use plain HTTP
+     * @return The current builder
+     */
+    public HTTPServerBuilder setTLSConfig(TLSConfig tlsConfig) {
+        this.tlsConfig = tlsConfig;
+        return this;
+    }
+
+    /**
+     * Allows clients to use HTTP/2 without TLS (h2c), either with prior knowledge or by upgrading an HTTP/1.1 request, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-starting-http-2">RFC 9113</a>.
+     * Only supported by the {@link ConnectionEngine#THREAD_PER_CONNECTION} and {@link ConnectionEngine#VIRTUAL_THREAD_PER_CONNECTION} engines, and not together with TLS.
+     * <br>
+     * The thread of a connection only reads its frames, the requests of the streams are handled by a separate pool of the same thread count, so they are handled concurrently.
+     * Server push is not supported, and the socket channel is never available to the responses of a stream.
+     *
+     * @param allowHTTP2Cleartext True to allow HTTP/2 cleartext connections
+     * @return The current builder
+     */
+    public HTTPServerBuilder setAllowHTTP2Cleartext(boolean allowHTTP2Cleartext) {
+        this.allowHTTP2Cleartext = allowHTTP2Cleartext;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads that accept new connections. Multiple acceptors help with connection storms, where a single thread can't keep up.
+     * Each acceptor binds its own channel to the port with SO_REUSEPORT, so the operating system distributes new connections between them.
+     * If SO_REUSEPORT is not supported, the acceptors share a single channel.
+     *
+     * @param acceptorCount The number of acceptors
+     * @return The current builder
+     */
+    public HTTPServerBuilder setAcceptorCount(int acceptorCount) {
+        if (acceptorCount < 1 || acceptorCount > Short.MAX_VALUE) throw new IllegalArgumentException("Invalid acceptor count!");
+        this.acceptorCount = acceptorCount;
+        return this;
+    }
+
+    /**
+     * If true, each acceptor gets its own executor, so the acceptors don't contend for the same pool.
+     * The thread count (or the max concurrent connections) is split evenly between them.
+     * This setting only has an effect for the {@link ConnectionEngine#THREAD_PER_CONNECTION} and {@link ConnectionEngine#VIRTUAL_THREAD_PER_CONNECTION} engines.
+     *
+     * @param shardExecutorPerAcceptor True to give each acceptor its own executor
+     * @return The current builder
+     */
+    public HTTPServerBuilder setShardExecutorPerAcceptor(boolean shardExecutorPerAcceptor) {
+        this.shardExecutorPerAcceptor = shardExecutorPerAcceptor;
+        return this;
     }
 
     /**
@@ -154,6 +365,12 @@ public class HTTPServerBuilder {
      * @throws IOException If the server startup fails
      */
     public HTTPServer build() throws IOException {
+        if (this.tlsConfig != null && this.connectionEngine != ConnectionEngine.THREAD_PER_CONNECTION && this.connectionEngine != ConnectionEngine.VIRTUAL_THREAD_PER_CONNECTION)
+            throw new IllegalStateException("TLS is not supported by the " + this.connectionEngine + " engine!");
+        if (this.allowHTTP2Cleartext && this.connectionEngine != ConnectionEngine.THREAD_PER_CONNECTION && this.connectionEngine != ConnectionEngine.VIRTUAL_THREAD_PER_CONNECTION)
+            throw new IllegalStateException("HTTP/2 is not supported by the " + this.connectionEngine + " engine!");
+        if (this.allowHTTP2Cleartext && this.tlsConfig != null)
+            throw new IllegalStateException("HTTP/2 cleartext can't be combined with TLS!");
         return new HTTPServer(this);
     }
 
@@ -193,7 +410,63 @@ public class HTTPServerBuilder {
         return builtinServerWideOptions;
     }
 
+    /**
+     * @deprecated Can't represent limits above 32 MB, use {@link #getMaxClientBodyLengthBytes()} instead
+     */
+    @Deprecated
     public short getMaxClientBodyLengthKB() {
-        return maxClientBodyLengthKB;
+        return (short) Math.min(maxClientBodyLengthBytes / 1024, Short.MAX_VALUE);
+    }
+
+    public long getMaxClientBodyLengthBytes() {
+        return maxClientBodyLengthBytes;
+    }
+
+    public int getMaxRequestHeaderSizeBytes() {
+        return maxRequestHeaderSizeBytes;
+    }
+
+    public ConnectionEngine getConnectionEngine() {
+        return connectionEngine;
+    }
+
+    public int getEventLoopCount() {
+        return eventLoopCount;
+    }
+
+    public int getMaxConcurrentConnections() {
+        return maxConcurrentConnections;
+    }
+
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    public int getOverloadMaxWaitMillis() {
+        return overloadMaxWaitMillis;
+    }
+
+    public int getOverloadRetryAfterSeconds() {
+        return overloadRetryAfterSeconds;
+    }
+
+    public int getAcceptorCount() {
+        return acceptorCount;
+    }
+
+    public boolean isShardExecutorPerAcceptor() {
+        return shardExecutorPerAcceptor;
+    }
+
+    public int getPathCacheSize() {
+        return pathCacheSize;
+    }
+
+    public TLSConfig getTLSConfig() {
+        return tlsConfig;
+    }
+
+    public boolean isAllowHTTP2Cleartext() {
+        return allowHTTP2Cleartext;
     }
 }
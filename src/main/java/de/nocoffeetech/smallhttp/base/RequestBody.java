@@ -0,0 +1,44 @@
+package de.nocoffeetech.smallhttp.base;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The body of a request, as an alternative to {@link HTTPRequest#getInputStream()} for large bodies.
+ * Both read from the same position, so they can be mixed, e.g. to inspect the start of a body and then store the rest in a file.
+ * <br>
+ * Reads that go to the connection directly (see {@link #transferTo(FileChannel, long)}) are not affected by the socket timeout,
+ * use the request handling timeout of the server to limit them.
+ */
+public interface RequestBody {
+
+    /**
+     * @return The amount of bytes of the body that have not been read yet, or -1 if the length is unknown because the chunked transfer coding is used
+     */
+    long getRemainingLength();
+
+    /**
+     * Reads bytes of the body into the target, blocking until at least one byte is available.
+     * @param target The buffer to read into, starting at its position
+     * @return The amount of bytes read, or -1 if the end of the body has been reached
+     */
+    int read(ByteBuffer target) throws IOException;
+
+    /**
+     * Reads bytes of the body into the targets in order, like {@link java.nio.channels.ScatteringByteChannel#read(ByteBuffer[])}.
+     * Stops at the first target that could not be filled completely, so this only blocks until the first bytes are available.
+     * @param targets The buffers to read into
+     * @return The amount of bytes read, or -1 if the end of the body has been reached
+     */
+    long read(ByteBuffer[] targets) throws IOException;
+
+    /**
+     * Writes the rest of the body into a file. For bodies with a known length, the connection is transferred to the file directly
+     * once the bytes buffered with the request head have been written, so uploads of any size don't pass through the heap.
+     * @param target The file to write to
+     * @param position The position in the file to start writing at
+     * @return The amount of bytes written to the file
+     */
+    long transferTo(FileChannel target, long position) throws IOException;
+}
@@ -17,4 +17,29 @@ public interface RequestHandler {
      * @throws HTTPWriteException If a write operation of data to the client fails
      */
     ResponseToken answerRequest(HTTPRequest request, ResponseStartWriter responseWriter) throws HTTPWriteException;
+
+    /**
+     * Checks a request before its body is received, if the client waits for a 100 (Continue) response before sending the body (see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-expect">RFC 9110</a>).
+     * This allows rejecting e.g. unauthorized or unsupported uploads without the client sending the entire body first.
+     * <br>
+     * If this returns null, the server sends the 100 (Continue) response and then calls {@link #answerRequest(HTTPRequest, ResponseStartWriter)} as usual.
+     * Otherwise, the response written here is the final response to the request, and the connection is closed afterwards, as the body is never read.
+     * @param request The request, whose body must not be read yet
+     * @param responseWriter The writer to send a final response with
+     * @return Null to accept the body, or the token of the final response that rejects the request
+     * @throws HTTPWriteException If a write operation of data to the client fails
+     */
+    default ResponseToken precheckRequest(HTTPRequest request, ResponseStartWriter responseWriter) throws HTTPWriteException {
+        return null;
+    }
+
+    /**
+     * Gets the maximum length of the body for a request, so endpoints can accept larger (e.g. uploads) or smaller bodies than the rest of the server.
+     * This is called once the request head has been parsed, before the body is read. Requests with a longer body are rejected with {@link de.nocoffeetech.smallhttp.data.Status#CONTENT_TOO_LARGE}
+     * @param request The request, whose body must not be read yet
+     * @return The maximum length in bytes, or -1 to use the limit of the server, see {@link HTTPServerBuilder#setMaxClientBodyLengthBytes(long)}
+     */
+    default long getMaxBodySizeBytes(HTTPRequest request) {
+        return -1;
+    }
 }
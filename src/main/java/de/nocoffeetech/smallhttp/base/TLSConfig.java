@@ -0,0 +1,215 @@
+package de.nocoffeetech.smallhttp.base;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * The TLS settings of a server, see {@link HTTPServerBuilder#setTLSConfig(TLSConfig)}.
+ * <br>
+ * The certificates can be replaced while the server is running: Either call {@link #reload()} or {@link #setContext(SSLContext)}, or let the server check
+ * the modification time of the key store file, see {@link #setReloadCheckInterval(int)}. Only new connections use the new certificates.
+ * <br>
+ * Sessions are cached by the server, and clients can resume them with session tickets or session ids, which skips the expensive part of the handshake.
+ * Each SSLContext has its own cache, so clients have to do a full handshake again once the certificates have been reloaded.
+ */
+public class TLSConfig {
+    private final Path keyStorePath;
+    private final char[] keyStorePassword;
+    private volatile SSLContext context;
+    private FileTime loadedModifiedTime;
+    private volatile long nextReloadCheckMillis;
+    private int reloadCheckIntervalMillis;
+    private String[] protocols;
+    private String[] applicationProtocols;
+    private int sessionCacheSize;
+    private int sessionTimeoutSeconds;
+
+    private TLSConfig(Path keyStorePath, char[] keyStorePassword, SSLContext context) {
+        this.keyStorePath = keyStorePath;
+        this.keyStorePassword = keyStorePassword;
+        this.context = context;
+        this.reloadCheckIntervalMillis = keyStorePath == null ? -1 : 60 * 1000;
+        this.protocols = new String[] {"TLSv1.3", "TLSv1.2"};
+        // HTTP/2 is only supported in cleartext (h2c), so it must not be negotiated, see https://www.rfc-editor.org/rfc/rfc7301#section-3.2
+        this.applicationProtocols = new String[] {"http/1.1"};
+        this.sessionCacheSize = 10000;
+        this.sessionTimeoutSeconds = 60 * 60;
+    }
+
+    /**
+     * Creates a config using the certificate and private key of a key store file
+     *
+     * @param keyStorePath The PKCS12 or JKS key store
+     * @param password     The password of the key store and its key
+     * @return A new config
+     * @throws IOException              If the key store can't be read
+     * @throws GeneralSecurityException If the key store can't be loaded
+     */
+    public static TLSConfig fromKeyStore(Path keyStorePath, char[] password) throws IOException, GeneralSecurityException {
+        if (keyStorePath == null) throw new IllegalArgumentException("No key store provided!");
+        TLSConfig config = new TLSConfig(keyStorePath, password.clone(), null);
+        config.reload();
+        return config;
+    }
+
+    /**
+     * Creates a config using an already initialized context. The certificates can only be replaced using {@link #setContext(SSLContext)}.
+     *
+     * @param context The context to create the TLS connections with
+     * @return A new config
+     */
+    public static TLSConfig fromContext(SSLContext context) {
+        if (context == null) throw new IllegalArgumentException("No context provided!");
+        TLSConfig config = new TLSConfig(null, null, context);
+        config.configureSessions(context);
+        return config;
+    }
+
+    /**
+     * Sets the TLS versions that may be negotiated
+     *
+     * @param protocols The protocol names, e.g. TLSv1.3
+     * @return The current config
+     */
+    public TLSConfig setProtocols(String... protocols) {
+        if (protocols.length == 0) throw new IllegalArgumentException("No protocols provided!");
+        this.protocols = protocols.clone();
+        return this;
+    }
+
+    /**
+     * Sets the protocols offered with ALPN, see <a href="https://www.rfc-editor.org/rfc/rfc7301">RFC 7301</a>.
+     * Clients that only offer other protocols are rejected during the handshake. Clients that don't use ALPN are always accepted.
+     *
+     * @param applicationProtocols The protocol ids, by order of preference
+     * @return The current config
+     */
+    public TLSConfig setApplicationProtocols(String... applicationProtocols) {
+        this.applicationProtocols = applicationProtocols.clone();
+        return this;
+    }
+
+    /**
+     * Sets how many sessions are cached for resumption
+     *
+     * @param sessionCacheSize The maximum amount of sessions, 0 for no limit
+     * @return The current config
+     */
+    public TLSConfig setSessionCacheSize(int sessionCacheSize) {
+        if (sessionCacheSize < 0) throw new IllegalArgumentException("Invalid size provided!");
+        this.sessionCacheSize = sessionCacheSize;
+        configureSessions(this.context);
+        return this;
+    }
+
+    /**
+     * Sets how long a session can be resumed after it was established
+     *
+     * @param sessionTimeoutSeconds The timeout in seconds, 0 for no limit
+     * @return The current config
+     */
+    public TLSConfig setSessionTimeout(int sessionTimeoutSeconds) {
+        if (sessionTimeoutSeconds < 0) throw new IllegalArgumentException("Invalid time provided!");
+        this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+        configureSessions(this.context);
+        return this;
+    }
+
+    /**
+     * Sets how often the modification time of the key store is checked. If the file has been modified, it is loaded again.
+     * The check is done when a new connection starts, so the certificates are not reloaded while the server is idle.
+     * If loading fails, the previous certificates remain in use, see {@link ErrorHandler#onCertificateReloadFailed(HTTPServer, Exception)}.
+     * Has no effect if the config was created from a context.
+     *
+     * @param reloadCheckIntervalMillis The minimum time between two checks in millis, or -1 to disable the checks
+     * @return The current config
+     */
+    public TLSConfig setReloadCheckInterval(int reloadCheckIntervalMillis) {
+        if (reloadCheckIntervalMillis < 0 && reloadCheckIntervalMillis != -1)
+            throw new IllegalArgumentException("Invalid time provided!");
+        this.reloadCheckIntervalMillis = reloadCheckIntervalMillis;
+        return this;
+    }
+
+    /**
+     * Loads the key store again. New connections use the new certificates, established connections are not affected.
+     *
+     * @throws IOException              If the key store can't be read
+     * @throws GeneralSecurityException If the key store can't be loaded
+     */
+    public synchronized void reload() throws IOException, GeneralSecurityException {
+        if (this.keyStorePath == null) throw new IllegalStateException("Config was not created from a key store!");
+        // Read the time first, so a change while loading is picked up by the next check
+        FileTime modifiedTime = Files.getLastModifiedTime(this.keyStorePath);
+        KeyStore keyStore = KeyStore.getInstance(this.keyStorePath.toFile(), this.keyStorePassword);
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, this.keyStorePassword);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagerFactory.getKeyManagers(), null, null);
+        configureSessions(context);
+        this.context = context;
+        this.loadedModifiedTime = modifiedTime;
+    }
+
+    /**
+     * Replaces the context new connections are created with. Established connections are not affected.
+     *
+     * @param context The new context
+     */
+    public void setContext(SSLContext context) {
+        if (context == null) throw new IllegalArgumentException("No context provided!");
+        configureSessions(context);
+        this.context = context;
+    }
+
+    /**
+     * Reloads the key store if the check interval has passed and the file has been modified since it was loaded
+     *
+     * @return True if the key store has been reloaded
+     * @throws IOException              If the key store can't be read
+     * @throws GeneralSecurityException If the key store can't be loaded
+     */
+    public boolean reloadIfModified() throws IOException, GeneralSecurityException {
+        if (this.keyStorePath == null || this.reloadCheckIntervalMillis == -1) return false;
+        long now = System.currentTimeMillis();
+        if (now < this.nextReloadCheckMillis) return false;
+        synchronized (this) {
+            if (now < this.nextReloadCheckMillis) return false;
+            // Also set if loading fails, so a broken file is not loaded for every connection
+            this.nextReloadCheckMillis = now + this.reloadCheckIntervalMillis;
+            if (Files.getLastModifiedTime(this.keyStorePath).equals(this.loadedModifiedTime)) return false;
+            reload();
+            return true;
+        }
+    }
+
+    /**
+     * Creates the engine for a new connection, using the current context
+     */
+    public SSLEngine createEngine() {
+        SSLEngine engine = this.context.createSSLEngine();
+        engine.setUseClientMode(false);
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setProtocols(this.protocols);
+        parameters.setApplicationProtocols(this.applicationProtocols);
+        parameters.setUseCipherSuitesOrder(true);
+        engine.setSSLParameters(parameters);
+        return engine;
+    }
+
+    private void configureSessions(SSLContext context) {
+        if (context == null) return;
+        SSLSessionContext sessionContext = context.getServerSessionContext();
+        sessionContext.setSessionCacheSize(this.sessionCacheSize);
+        sessionContext.setSessionTimeout(this.sessionTimeoutSeconds);
+    }
+}
@@ -6,7 +6,12 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 public enum HTTPVersion {
-    HTTP_1_1("HTTP/1.1"), HTTP_1_0("HTTP/1.0");
+    HTTP_1_1("HTTP/1.1"), HTTP_1_0("HTTP/1.0"),
+    /**
+     * Requests received over an HTTP/2 connection, see <a href="https://www.rfc-editor.org/rfc/rfc9113">RFC 9113</a>.
+     * This version never appears in a request line, the connection is detected by its preface instead.
+     */
+    HTTP_2("HTTP/2");
 
     public final String name;
     private final byte[] responseBytes;
@@ -21,7 +26,8 @@ public enum HTTPVersion {
     }
 
     static final byte[] COMMON_BYTES = "HTTP/1.".getBytes(StandardCharsets.US_ASCII);
-    private static final HTTPVersion[] VALUES = values();
+    /** The versions that can be sent in a request line, see {@link #findMatchingVersion(byte[], int)} */
+    static final HTTPVersion[] HTTP_1_VALUES = {HTTP_1_1, HTTP_1_0};
 
     /**
      * Finds the matching http version for a given buffer at a given offset.
@@ -44,7 +50,7 @@ public enum HTTPVersion {
             return null;
         }
         // choose right version
-        for (HTTPVersion value : VALUES) {
+        for (HTTPVersion value : HTTP_1_VALUES) {
             if (buffer[offset + COMMON_BYTES.length] == value.lastByte) {
                 return value;
             }
@@ -55,4 +61,22 @@ public enum HTTPVersion {
     public void writeToHeader(OutputStream stream) throws IOException {
         stream.write(this.responseBytes);
     }
+
+    /**
+     * Copies the status line part of this version into a buffer
+     * @param buffer The buffer to write to
+     * @param offset The offset to start writing at
+     * @return The index after the last written byte
+     */
+    public int writeToHeader(byte[] buffer, int offset) {
+        System.arraycopy(this.responseBytes, 0, buffer, offset, this.responseBytes.length);
+        return offset + this.responseBytes.length;
+    }
+
+    /**
+     * @return The number of bytes written by {@link #writeToHeader(byte[], int)}
+     */
+    public int getHeaderLength() {
+        return this.responseBytes.length;
+    }
 }
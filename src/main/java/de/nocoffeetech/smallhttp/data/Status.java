@@ -49,4 +49,22 @@ public enum Status {
     public void writeToHeader(OutputStream stream) throws IOException {
         stream.write(this.responseBytes);
     }
+
+    /**
+     * Copies the status line part of this status into a buffer
+     * @param buffer The buffer to write to
+     * @param offset The offset to start writing at
+     * @return The index after the last written byte
+     */
+    public int writeToHeader(byte[] buffer, int offset) {
+        System.arraycopy(this.responseBytes, 0, buffer, offset, this.responseBytes.length);
+        return offset + this.responseBytes.length;
+    }
+
+    /**
+     * @return The number of bytes written by {@link #writeToHeader(byte[], int)}
+     */
+    public int getHeaderLength() {
+        return this.responseBytes.length;
+    }
 }
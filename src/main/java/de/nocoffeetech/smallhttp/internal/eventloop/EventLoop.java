@@ -0,0 +1,208 @@
+package de.nocoffeetech.smallhttp.internal.eventloop;
+
+import de.nocoffeetech.smallhttp.base.ErrorHandler;
+import de.nocoffeetech.smallhttp.base.HTTPServer;
+import de.nocoffeetech.smallhttp.internal.handler.InternalConstants;
+import de.nocoffeetech.smallhttp.internal.watchdog.CoarseClock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A selector based loop that owns connections while they are idle or while their request head is still being received.
+ * <br>
+ * Once the head of a request is complete, the connection is removed from the selector, switched back to blocking mode and dispatched to a worker thread.
+ * This allows the regular (blocking) request parsing and handling code to be used while only occupying a worker when there is actual work to be done.
+ * Once the request has been handled, the worker hands the connection back using {@link #register(EventLoopClientHandler)}.
+ * <br>
+ * If the loop doesn't read request heads, a connection is dispatched as soon as it becomes readable and the worker reads the entire request itself.
+ */
+public class EventLoop implements Runnable {
+    /** The interval in which idle and slow connections are checked for their timeouts */
+    private static final int SWEEP_INTERVAL_MILLIS = 1000;
+
+    private final Selector selector;
+    private final Queue<EventLoopClientHandler> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final List<EventLoopClientHandler> toDispatch = new ArrayList<>();
+    // Shared read buffer of this loop, idle connections don't hold a buffer of their own
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(InternalConstants.MAX_HEADER_SIZE_BYTES);
+    private final ExecutorService executor;
+    private final HTTPServer server;
+    private final ErrorHandler errorHandler;
+    private final int idleTimeout;
+    private final int readTimeout;
+    private final boolean readRequestHeads;
+    private volatile boolean running = true;
+
+    /**
+     * @param readRequestHeads True to collect request heads on this loop, false to dispatch connections once they become readable
+     */
+    public EventLoop(ExecutorService executor, HTTPServer server, ErrorHandler errorHandler, int idleTimeout, int readTimeout, boolean readRequestHeads) throws IOException {
+        this.selector = Selector.open();
+        this.executor = executor;
+        this.server = server;
+        this.errorHandler = errorHandler;
+        this.idleTimeout = idleTimeout;
+        this.readTimeout = readTimeout;
+        this.readRequestHeads = readRequestHeads;
+    }
+
+    /**
+     * Hands a connection in non-blocking mode to this loop. May be called from any thread.
+     * @param handler The handler of the connection
+     */
+    public void register(EventLoopClientHandler handler) {
+        this.pendingRegistrations.add(handler);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Stops the loop. All connections still owned by the loop get closed.
+     */
+    public void shutdown() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            long nextSweep = CoarseClock.monotonicMillis() + SWEEP_INTERVAL_MILLIS;
+            while (this.running) {
+                this.selector.select(SWEEP_INTERVAL_MILLIS);
+                processRegistrations();
+
+                long now = CoarseClock.monotonicMillis();
+                Set<SelectionKey> selectedKeys = this.selector.selectedKeys();
+                for (SelectionKey key : selectedKeys) {
+                    if (key.isValid() && key.isReadable()) {
+                        readFromConnection(key, (EventLoopClientHandler) key.attachment(), now);
+                    }
+                }
+                selectedKeys.clear();
+
+                if (!this.toDispatch.isEmpty()) {
+                    dispatchPending();
+                }
+                if (now >= nextSweep) {
+                    sweepExpired(now);
+                    nextSweep = now + SWEEP_INTERVAL_MILLIS;
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Loop got shut down
+        } catch (IOException e) {
+            this.errorHandler.onListenerInternalException(this.server, e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void processRegistrations() {
+        EventLoopClientHandler handler;
+        long now = CoarseClock.monotonicMillis();
+        while ((handler = this.pendingRegistrations.poll()) != null) {
+            try {
+                handler.markParked(now);
+                handler.getChannel().register(this.selector, SelectionKey.OP_READ, handler);
+            } catch (IOException e) {
+                // Includes ClosedChannelException - the connection was closed while being handed over
+                handler.abort();
+            }
+        }
+    }
+
+    private void readFromConnection(SelectionKey key, EventLoopClientHandler handler, long now) {
+        if (!this.readRequestHeads) {
+            // The worker reads the request (or notices the closed connection) itself
+            key.cancel();
+            this.toDispatch.add(handler);
+            return;
+        }
+        ByteBuffer buffer = this.readBuffer;
+        buffer.clear();
+        buffer.limit(Math.min(buffer.capacity(), handler.getRemainingPendingSpace()));
+        int read;
+        try {
+            read = handler.getChannel().read(buffer);
+        } catch (IOException e) {
+            key.cancel();
+            handler.abort();
+            return;
+        }
+        if (read < 0) {
+            key.cancel();
+            if (handler.hasPendingBytes()) {
+                // Let the parser answer the incomplete request
+                this.toDispatch.add(handler);
+            } else {
+                handler.abort();
+            }
+        } else if (read > 0 && handler.appendPending(buffer.array(), read, now)) {
+            key.cancel();
+            this.toDispatch.add(handler);
+        }
+    }
+
+    private void dispatchPending() throws IOException {
+        // Flush the cancelled keys, a channel can only be switched to blocking mode once it is deregistered from all selectors
+        this.selector.selectNow();
+        for (EventLoopClientHandler handler : this.toDispatch) {
+            SocketChannel channel = handler.getChannel();
+            try {
+                channel.configureBlocking(true);
+            } catch (IOException e) {
+                handler.abort();
+                continue;
+            }
+            try {
+                this.executor.execute(handler);
+            } catch (RejectedExecutionException e) {
+                // During shutdown, the executor rejects anything - that's not worth reporting
+                if (!this.server.isShutdown()) {
+                    this.errorHandler.onNoAvailableThreadForConnection(this.server, channel.socket(), e);
+                }
+                handler.abort();
+            }
+        }
+        this.toDispatch.clear();
+    }
+
+    private void sweepExpired(long now) {
+        for (SelectionKey key : this.selector.keys()) {
+            EventLoopClientHandler handler = (EventLoopClientHandler) key.attachment();
+            if (!key.isValid() || handler.isExpired(now, this.idleTimeout, this.readTimeout)) {
+                key.cancel();
+                handler.abort();
+            }
+        }
+    }
+
+    private void closeAll() {
+        try {
+            for (SelectionKey key : this.selector.keys()) {
+                ((EventLoopClientHandler) key.attachment()).abort();
+            }
+            this.selector.close();
+        } catch (ClosedSelectorException | IOException e) {
+            // Already closed
+        }
+        Iterator<EventLoopClientHandler> iterator = this.pendingRegistrations.iterator();
+        while (iterator.hasNext()) {
+            iterator.next().abort();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package de.nocoffeetech.smallhttp.internal.eventloop;
+
+import de.nocoffeetech.smallhttp.base.ErrorHandler;
+import de.nocoffeetech.smallhttp.base.HTTPServer;
+import de.nocoffeetech.smallhttp.base.RequestHandler;
+import de.nocoffeetech.smallhttp.internal.handler.BufferPool;
+import de.nocoffeetech.smallhttp.internal.handler.HTTPClientHandler;
+import de.nocoffeetech.smallhttp.internal.watchdog.ClientHandlerTracker;
+import de.nocoffeetech.smallhttp.internal.watchdog.CoarseClock;
+import de.nocoffeetech.smallhttp.util.PathCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * A client handler whose connection is owned by an {@link EventLoop} while no request is being handled.
+ * The event loop collects the request head without blocking, and dispatches this handler to a worker once the head is complete.
+ * If the event loop doesn't read request heads, nothing is collected and the handler is dispatched once the connection becomes readable.
+ */
+public class EventLoopClientHandler extends HTTPClientHandler {
+    private static final byte[] EMPTY = new byte[0];
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private final int maxHeaderSize;
+    private byte[] pending = EMPTY;
+    private int pendingLength = 0;
+    private long lastActivity;
+    private long pendingSince = -1;
+    private InputStream currentStream;
+    private int handedOverLength = 0;
+
+    public EventLoopClientHandler(SocketChannel channel,
+                                  EventLoop eventLoop,
+                                  ErrorHandler errorHandler,
+                                  RequestHandler handler,
+                                  HTTPServer server,
+                                  ClientHandlerTracker tracker,
+                                  boolean allowTraceConnect,
+                                  boolean builtinServerWideOptions,
+                                  long maxBodyLength,
+                                  BufferPool bufferPool,
+                                  PathCache pathCache) {
+        super(channel.socket(), errorHandler, handler, server, tracker, allowTraceConnect, builtinServerWideOptions, maxBodyLength, bufferPool, false, pathCache, null);
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.maxHeaderSize = bufferPool.getMaxHeaderSize();
+        this.lastActivity = CoarseClock.monotonicMillis();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Appends bytes read by the event loop to the pending request head.
+     * Only called from the event loop thread.
+     * @return True if the request head is complete (or can't get any larger) and the handler should be dispatched to a worker
+     */
+    boolean appendPending(byte[] src, int length, long now) {
+        this.lastActivity = now;
+        if (this.pendingSince == -1) this.pendingSince = now;
+        int oldLength = this.pendingLength;
+        int newLength = oldLength + length;
+        if (newLength > this.pending.length) {
+            this.pending = Arrays.copyOf(this.pending, Math.min(this.maxHeaderSize, Math.max(newLength, oldLength * 2)));
+        }
+        // The event loop never reads more than the remaining space, see getRemainingPendingSpace
+        System.arraycopy(src, 0, this.pending, oldLength, length);
+        this.pendingLength = newLength;
+        if (newLength >= this.maxHeaderSize) {
+            // Let the regular parser produce the appropriate error response
+            return true;
+        }
+        // Search for the empty line that terminates the head, see https://www.rfc-editor.org/rfc/rfc9112#section-2.1
+        byte[] pending = this.pending;
+        for (int i = Math.max(0, oldLength - 3); i <= newLength - 4; i++) {
+            if (pending[i] == '\r' && pending[i + 1] == '\n' && pending[i + 2] == '\r' && pending[i + 3] == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getRemainingPendingSpace() {
+        return this.maxHeaderSize - this.pendingLength;
+    }
+
+    boolean hasPendingBytes() {
+        return this.pendingLength > 0;
+    }
+
+    /**
+     * Checks if the connection has been idle or has been sending its request head for too long.
+     * Only called from the event loop thread.
+     */
+    boolean isExpired(long now, int idleTimeout, int readTimeout) {
+        if (this.pendingSince != -1) {
+            return readTimeout != -1 && now - this.pendingSince > readTimeout;
+        }
+        return idleTimeout != -1 && now - this.lastActivity > idleTimeout;
+    }
+
+    /**
+     * Closes the connection and removes it from the tracker. Used when the connection is terminated without being dispatched.
+     */
+    void abort() {
+        try {
+            close();
+        } catch (IOException e) {
+            // ignore. Client might have already closed the connection
+        }
+        deregister();
+    }
+
+    void markParked(long now) {
+        this.lastActivity = now;
+    }
+
+    @Override
+    protected InputStream getInputStream() throws IOException {
+        // Hand the collected head over to the parser, the event loop starts with a fresh buffer once the connection comes back
+        InputStream stream = new PrefixedInputStream(this.pending, this.pendingLength, super.getInputStream());
+        this.handedOverLength = this.pendingLength;
+        this.pending = EMPTY;
+        this.pendingLength = 0;
+        this.pendingSince = -1;
+        this.currentStream = stream;
+        return stream;
+    }
+
+    @Override
+    protected int getBufferedHeadLength() {
+        return this.handedOverLength;
+    }
+
+    @Override
+    protected boolean parkConnection() throws IOException {
+        // If the client already sent the next request, there is no point in going through the event loop
+        if (this.currentStream.available() > 0) return false;
+        this.channel.configureBlocking(false);
+        this.eventLoop.register(this);
+        return true;
+    }
+}
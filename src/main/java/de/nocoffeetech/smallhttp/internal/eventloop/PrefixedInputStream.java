@@ -0,0 +1,70 @@
+package de.nocoffeetech.smallhttp.internal.eventloop;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that first returns bytes that have already been read from a connection before continuing to read from the connection itself
+ */
+public class PrefixedInputStream extends InputStream {
+    private final byte[] prefix;
+    private final int prefixEnd;
+    private final InputStream restStream;
+    private int prefixIndex;
+
+    public PrefixedInputStream(byte[] prefix, int prefixEnd, InputStream restStream) {
+        this.prefix = prefix;
+        this.prefixEnd = prefixEnd;
+        this.restStream = restStream;
+        this.prefixIndex = 0;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (prefixEnd > prefixIndex) {
+            return prefixEnd - prefixIndex;
+        }
+        return restStream.available();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (prefixEnd > prefixIndex) {
+            byte b = prefix[prefixIndex];
+            prefixIndex++;
+            return Byte.toUnsignedInt(b);
+        }
+        return restStream.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        if (prefixEnd > prefixIndex) {
+            int lengthToCopy = Math.min(prefixEnd - prefixIndex, len);
+            System.arraycopy(prefix, prefixIndex, b, off, lengthToCopy);
+            prefixIndex += lengthToCopy;
+            return lengthToCopy;
+        }
+        return restStream.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (prefixEnd > prefixIndex) {
+            int lengthToSkip = (int) Math.min(prefixEnd - prefixIndex, n);
+            prefixIndex += lengthToSkip;
+            return lengthToSkip;
+        }
+        return restStream.skip(n);
+    }
+}
@@ -0,0 +1,142 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of the buffers used to parse requests and write responses, owned by the server.
+ * Buffers are sorted into size classes, starting at {@link InternalConstants#MAX_HEADER_SIZE_BYTES} and doubling up to the maximum header size,
+ * so a header buffer can be grown on demand without keeping large buffers around for every connection.
+ * Response buffers have their own size class, as they need room for the status line and fixed headers in front of the headers, see {@link ResponseWriter}.
+ * <br>
+ * Every acquired buffer must be released again. The difference between both is tracked in the {@link ServerMetrics}, so a leak shows up as outstanding buffers
+ * that remain while no connection is active.
+ */
+public class BufferPool {
+    static final int RESPONSE_BUFFER_SIZE = ResponseWriter.RESERVED_PREFIX_LENGTH + InternalConstants.MAX_HEADER_SIZE_BYTES;
+    private final SizeClass[] sizeClasses;
+    private final SizeClass responseSizeClass;
+    private final int maxHeaderSize;
+    private final ServerMetrics metrics;
+
+    /**
+     * Creates a new pool
+     * @param maxHeaderSize The maximum size of a request head, which determines the largest size class
+     * @param maxPooled The maximum number of idle buffers that are retained in the smallest size class and in the response buffer class.
+     *                  Each larger class retains half as many, but at least one.
+     *                  Additional buffers are created on demand and dropped once released.
+     * @param metrics The metrics to record acquired and released buffers in
+     */
+    public BufferPool(int maxHeaderSize, int maxPooled, ServerMetrics metrics) {
+        this.maxHeaderSize = maxHeaderSize;
+        this.metrics = metrics;
+        int classCount = 1;
+        while ((InternalConstants.MAX_HEADER_SIZE_BYTES << (classCount - 1)) < maxHeaderSize) {
+            classCount++;
+        }
+        this.sizeClasses = new SizeClass[classCount];
+        for (int i = 0; i < classCount; i++) {
+            this.sizeClasses[i] = new SizeClass(InternalConstants.MAX_HEADER_SIZE_BYTES << i, Math.max(1, maxPooled >> i));
+        }
+        this.responseSizeClass = new SizeClass(RESPONSE_BUFFER_SIZE, Math.max(1, maxPooled));
+    }
+
+    /**
+     * @return The maximum size of a request head. Header buffers may grow up to the smallest size class that can hold this.
+     */
+    public int getMaxHeaderSize() {
+        return this.maxHeaderSize;
+    }
+
+    /**
+     * @return The size of the largest buffer this pool hands out
+     */
+    int getMaxBufferSize() {
+        return this.sizeClasses[this.sizeClasses.length - 1].size;
+    }
+
+    /**
+     * Takes a buffer out of the pool, or creates a new one if there is none of the matching size class.
+     * @param minSize The minimum size of the buffer, which is rounded up to the next size class
+     * @return A buffer with at least the requested size, containing data of previous uses
+     */
+    byte[] acquire(int minSize) {
+        SizeClass sizeClass = findClass(minSize);
+        if (sizeClass == null) throw new IllegalArgumentException("Buffer size " + minSize + " exceeds the largest size class");
+        return acquire(sizeClass);
+    }
+
+    /**
+     * Takes a response buffer out of the pool, or creates a new one if there is none.
+     * @return A buffer of {@link #RESPONSE_BUFFER_SIZE}, containing data of previous uses
+     */
+    byte[] acquireResponseBuffer() {
+        return acquire(this.responseSizeClass);
+    }
+
+    private byte[] acquire(SizeClass sizeClass) {
+        byte[] buffer = sizeClass.pooled.poll();
+        this.metrics.bufferAcquired(buffer != null);
+        if (buffer == null) {
+            return new byte[sizeClass.size];
+        }
+        sizeClass.pooledCount.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used anymore afterward.
+     */
+    void release(byte[] buffer) {
+        this.metrics.bufferReleased();
+        SizeClass sizeClass = buffer.length == RESPONSE_BUFFER_SIZE ? this.responseSizeClass : findClass(buffer.length);
+        // Slightly racy, which means we may retain a few buffers more than allowed. That's fine.
+        if (sizeClass != null && sizeClass.size == buffer.length && sizeClass.pooledCount.get() < sizeClass.maxPooled) {
+            sizeClass.pooledCount.incrementAndGet();
+            sizeClass.pooled.offer(buffer);
+        }
+    }
+
+    /**
+     * @return The amount of idle buffers that are currently retained
+     */
+    public int getPooledBuffers() {
+        int count = this.responseSizeClass.pooledCount.get();
+        for (SizeClass sizeClass : this.sizeClasses) {
+            count += sizeClass.pooledCount.get();
+        }
+        return count;
+    }
+
+    /**
+     * @return The amount of memory retained by idle buffers
+     */
+    public long getPooledBytes() {
+        long bytes = (long) this.responseSizeClass.pooledCount.get() * this.responseSizeClass.size;
+        for (SizeClass sizeClass : this.sizeClasses) {
+            bytes += (long) sizeClass.pooledCount.get() * sizeClass.size;
+        }
+        return bytes;
+    }
+
+    private SizeClass findClass(int minSize) {
+        for (SizeClass sizeClass : this.sizeClasses) {
+            if (sizeClass.size >= minSize) return sizeClass;
+        }
+        return null;
+    }
+
+    private static class SizeClass {
+        private final ConcurrentLinkedQueue<byte[]> pooled = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooledCount = new AtomicInteger(0);
+        private final int size;
+        private final int maxPooled;
+
+        private SizeClass(int size, int maxPooled) {
+            this.size = size;
+            this.maxPooled = maxPooled;
+        }
+    }
+}
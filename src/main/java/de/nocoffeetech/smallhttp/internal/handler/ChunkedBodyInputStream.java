@@ -0,0 +1,204 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a body with the chunked transfer coding, see <a href="https://www.rfc-editor.org/rfc/rfc9112#section-7.1">RFC 9112</a>.
+ * The chunk framing is decoded incrementally, first from the bytes that are already in the header buffer and then from the socket.
+ * The part of the header buffer after the header is used as the window for the framing, so that bytes of a following pipelined request can be handed back once the body has been read completely.
+ * Chunk extensions and trailer fields are validated, but otherwise ignored.
+ */
+public class ChunkedBodyInputStream extends RequestBodyInputStream {
+    /** Used as the window if the header leaves less than this space in the header buffer */
+    private static final int MIN_WINDOW_SIZE = 512;
+    private static final int STATE_CHUNK_SIZE = 0;
+    private static final int STATE_CHUNK_DATA = 1;
+    private static final int STATE_CHUNK_DATA_END = 2;
+    private static final int STATE_TRAILER = 3;
+    private static final int STATE_DONE = 4;
+
+    private final byte[] buf;
+    private final int windowStart;
+    private final InputStream restStream;
+    private final long maxBodyLength;
+    private int bufIndex;
+    private int bufEnd;
+    private int state = STATE_CHUNK_SIZE;
+    private long chunkRemaining;
+    private long totalRead;
+
+    public ChunkedBodyInputStream(byte[] buf, int readStart, int readEnd, InputStream restStream, long maxBodyLength) {
+        if (buf.length - readStart < MIN_WINDOW_SIZE) {
+            // Not enough space left after the header, so copy the already read bytes into a separate window
+            byte[] window = new byte[MIN_WINDOW_SIZE];
+            System.arraycopy(buf, readStart, window, 0, readEnd - readStart);
+            this.buf = window;
+            this.windowStart = 0;
+            this.bufIndex = 0;
+            this.bufEnd = readEnd - readStart;
+        } else {
+            this.buf = buf;
+            this.windowStart = readStart;
+            this.bufIndex = readStart;
+            this.bufEnd = readEnd;
+        }
+        this.restStream = restStream;
+        this.maxBodyLength = maxBodyLength;
+    }
+
+    @Override
+    protected boolean isDrained() {
+        return this.state == STATE_DONE;
+    }
+
+    /**
+     * Moves the bytes that have been read after the end of the body to the start of the target
+     * @return The amount of moved bytes
+     */
+    int moveRemainingBytes(byte[] target) {
+        assert isDrained();
+        int remaining = this.bufEnd - this.bufIndex;
+        System.arraycopy(this.buf, this.bufIndex, target, 0, remaining);
+        this.bufIndex = this.bufEnd;
+        return remaining;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (this.state == STATE_CHUNK_DATA) {
+            return (int) Math.min(this.chunkRemaining, this.bufEnd - this.bufIndex);
+        }
+        return 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : Byte.toUnsignedInt(single[0]);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        while (this.state != STATE_CHUNK_DATA) {
+            if (this.state == STATE_DONE) return -1;
+            readFraming();
+        }
+        int toRead = (int) Math.min(len, this.chunkRemaining);
+        int read;
+        if (this.bufEnd > this.bufIndex) {
+            read = Math.min(toRead, this.bufEnd - this.bufIndex);
+            System.arraycopy(this.buf, this.bufIndex, b, off, read);
+            this.bufIndex += read;
+        } else {
+            // Read directly into the target, but never more than the current chunk, so we never read beyond the body
+            read = this.restStream.read(b, off, toRead);
+            if (read == -1) throw new EOFException("Premature end of chunked body");
+        }
+        this.chunkRemaining -= read;
+        if (this.chunkRemaining == 0) {
+            this.state = STATE_CHUNK_DATA_END;
+        }
+        return read;
+    }
+
+    private void readFraming() throws IOException {
+        switch (this.state) {
+            case STATE_CHUNK_SIZE -> {
+                int lineEnd = findLineEnd();
+                this.chunkRemaining = parseChunkSize(lineEnd);
+                this.bufIndex = lineEnd + 2;
+                this.totalRead += this.chunkRemaining;
+                if (this.totalRead > this.maxBodyLength) {
+                    throw new IOException("Chunked body exceeds the maximum length of " + this.maxBodyLength + " bytes");
+                }
+                this.state = this.chunkRemaining == 0 ? STATE_TRAILER : STATE_CHUNK_DATA;
+            }
+            case STATE_CHUNK_DATA_END -> {
+                int lineEnd = findLineEnd();
+                if (lineEnd != this.bufIndex) throw new IOException("Chunk data is longer than the chunk size");
+                this.bufIndex = lineEnd + 2;
+                this.state = STATE_CHUNK_SIZE;
+            }
+            case STATE_TRAILER -> {
+                // Trailer fields end with an empty line. We don't use them, so only check that they are valid field lines
+                int lineEnd = findLineEnd();
+                if (lineEnd == this.bufIndex) {
+                    this.state = STATE_DONE;
+                } else if (!isValidTrailerField(lineEnd)) {
+                    throw new IOException("Invalid trailer field in chunked body");
+                }
+                this.bufIndex = lineEnd + 2;
+            }
+            default -> throw new IllegalStateException("Unexpected state " + this.state);
+        }
+    }
+
+    /**
+     * Finds the CR of the next CR LF, reading more bytes into the window if required
+     */
+    private int findLineEnd() throws IOException {
+        // Relative to bufIndex, as filling the window moves the bytes
+        int searchOffset = 0;
+        while (true) {
+            int found = HeaderByteScanner.findValueEnd(this.buf, this.bufIndex + searchOffset, this.bufEnd);
+            if (found < this.bufEnd) {
+                if (this.buf[found] != '\r') throw new IOException("Invalid character in chunk framing");
+                if (found + 1 < this.bufEnd) {
+                    if (this.buf[found + 1] == '\n') return found;
+                    throw new IOException("Invalid character in chunk framing");
+                }
+            }
+            // Continue at the CR that might be the start of the line end, or after the already checked bytes
+            searchOffset = found - this.bufIndex;
+            fillWindow();
+        }
+    }
+
+    private void fillWindow() throws IOException {
+        int remaining = this.bufEnd - this.bufIndex;
+        if (this.bufIndex > this.windowStart) {
+            System.arraycopy(this.buf, this.bufIndex, this.buf, this.windowStart, remaining);
+            this.bufIndex = this.windowStart;
+            this.bufEnd = this.windowStart + remaining;
+        }
+        if (this.bufEnd == this.buf.length) {
+            throw new IOException("Chunk framing line is too long");
+        }
+        int read = this.restStream.read(this.buf, this.bufEnd, this.buf.length - this.bufEnd);
+        if (read == -1) throw new EOFException("Premature end of chunked body");
+        this.bufEnd += read;
+    }
+
+    private long parseChunkSize(int lineEnd) throws IOException {
+        long size = 0;
+        int i = this.bufIndex;
+        for (; i < lineEnd; i++) {
+            int digit = Character.digit(this.buf[i], 16);
+            if (digit == -1) break;
+            if (size > (Long.MAX_VALUE >> 4)) throw new IOException("Chunk size too large");
+            size = (size << 4) | digit;
+        }
+        if (i == this.bufIndex) throw new IOException("Missing chunk size");
+        // Anything after the size must be a chunk extension, which we don't support and thus ignore
+        if (i < lineEnd) {
+            while (i < lineEnd && (this.buf[i] == ' ' || this.buf[i] == '\t')) i++;
+            if (i == lineEnd || this.buf[i] != ';') throw new IOException("Invalid chunk size");
+        }
+        return size;
+    }
+
+    private boolean isValidTrailerField(int lineEnd) {
+        int colon = HeaderByteScanner.findNameEnd(this.buf, this.bufIndex, lineEnd);
+        return colon != this.bufIndex && colon < lineEnd && this.buf[colon] == ':';
+    }
+}
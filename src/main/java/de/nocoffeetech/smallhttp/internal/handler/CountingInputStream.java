@@ -0,0 +1,86 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Counts the bytes read from a connection. The count is only accessed by the thread handling the connection, so it's a plain field
+ * that is moved into the shared metrics once per request instead of updating them on every read.
+ * <br>
+ * If the connection has a channel, large bodies can also be read from the channel directly. The stream must not buffer anything itself for this,
+ * as the channel would skip these bytes.
+ */
+class CountingInputStream extends FilterInputStream {
+    private final SocketChannel channel;
+    private long count;
+
+    CountingInputStream(InputStream in, SocketChannel channel) {
+        super(in);
+        this.channel = channel;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = this.in.read();
+        if (read >= 0) this.count++;
+        return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = this.in.read(b, off, len);
+        if (read > 0) this.count += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = this.in.skip(n);
+        this.count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return True if {@link #readDirect(ByteBuffer)} and {@link #transferDirect(FileChannel, long, long)} can be used
+     */
+    boolean canReadDirect() {
+        return this.channel != null && this.channel.isBlocking();
+    }
+
+    /**
+     * Reads from the channel of the connection into the buffer
+     */
+    int readDirect(ByteBuffer target) throws IOException {
+        int read = this.channel.read(target);
+        if (read > 0) this.count += read;
+        return read;
+    }
+
+    /**
+     * Transfers up to count bytes from the channel of the connection into the file
+     * @return The amount of transferred bytes, 0 if the connection has been closed
+     */
+    long transferDirect(FileChannel target, long position, long count) throws IOException {
+        long transferred = target.transferFrom(this.channel, position, count);
+        this.count += transferred;
+        return transferred;
+    }
+
+    /**
+     * @return The amount of bytes read since the last call
+     */
+    long takeCount() {
+        long count = this.count;
+        this.count = 0;
+        return count;
+    }
+}
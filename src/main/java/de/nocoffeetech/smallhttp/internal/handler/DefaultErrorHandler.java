@@ -7,6 +7,7 @@ import de.nocoffeetech.smallhttp.response.HTTPWriteException;
 import de.nocoffeetech.smallhttp.response.ResponseStartWriter;
 import de.nocoffeetech.smallhttp.response.ResponseToken;
 
+import javax.net.ssl.SSLException;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
@@ -47,7 +48,8 @@ public class DefaultErrorHandler implements ErrorHandler {
 
     @Override
     public void onClientHandlerInternalException(HTTPServer server, Socket socket, Exception e) {
-        if (e instanceof SocketException) return; // ignore
+        // Failed handshakes are caused by the client, just like resets
+        if (e instanceof SocketException || e instanceof SSLException) return; // ignore
         e.printStackTrace();
     }
 
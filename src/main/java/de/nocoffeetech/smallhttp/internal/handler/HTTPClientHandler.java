@@ -9,12 +9,16 @@ import de.nocoffeetech.smallhttp.data.Status;
 import de.nocoffeetech.smallhttp.header.CommonContentTypes;
 import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
 import de.nocoffeetech.smallhttp.header.PrecomputedHeaderKey;
+import de.nocoffeetech.smallhttp.internal.http2.HTTP2Connection;
+import de.nocoffeetech.smallhttp.internal.http2.HTTP2Support;
 import de.nocoffeetech.smallhttp.internal.watchdog.ClientHandlerState;
 import de.nocoffeetech.smallhttp.internal.watchdog.ClientHandlerTracker;
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
 import de.nocoffeetech.smallhttp.response.HTTPWriteException;
+import de.nocoffeetech.smallhttp.response.PrecomputedResponse;
 import de.nocoffeetech.smallhttp.response.ResponseStartWriter;
 import de.nocoffeetech.smallhttp.response.ResponseToken;
-import de.nocoffeetech.smallhttp.util.StringUtil;
+import de.nocoffeetech.smallhttp.util.PathCache;
 import de.nocoffeetech.smallhttp.util.URLParser;
 
 import java.io.IOException;
@@ -23,6 +27,7 @@ import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -31,10 +36,26 @@ import java.util.stream.Collectors;
 
 public class HTTPClientHandler implements Runnable {
     public static final PrecomputedHeader CONNECTION_CLOSE_HEADER = PrecomputedHeader.create(PrecomputedHeaderKey.create("Connection"), "close");
-    private static final ThreadLocal<ReusableClientContext> CONTEXT_THREAD_LOCAL = ThreadLocal.withInitial(ReusableClientContext::new);
+    private static final PrecomputedResponse SERVER_CLOSED_RESPONSE = PrecomputedResponse.create(Status.INTERNAL_SERVER_ERROR, CommonContentTypes.PLAIN, "Server closed", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse INVALID_REQUEST_TARGET_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Invalid Request Target (URI) for the specified method!", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse PREMATURE_END_OF_REQUEST_LINE_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Premature end of request line", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse UNKNOWN_METHOD_RESPONSE = PrecomputedResponse.create(Status.NOT_IMPLEMENTED, CommonContentTypes.PLAIN, "Unknown method", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse INVALID_URI_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Invalid URI!", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse INVALID_VERSION_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Invalid HTTP version", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse INVALID_HEADER_KEY_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Request contains invalid header key", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse PREMATURE_END_OF_HEADER_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Premature end of header", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse TRANSFER_ENCODING_AND_CONTENT_LENGTH_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Can't handle both transfer-encoding and content-length!", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse HTTP_1_0_TRANSFER_ENCODING_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "HTTP/1.0 clients are not allowed to send transfer-encoded messages!", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse UNSUPPORTED_TRANSFER_CODING_RESPONSE = PrecomputedResponse.create(Status.NOT_IMPLEMENTED, CommonContentTypes.PLAIN, "Only the chunked transfer coding is supported!", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse MULTIPLE_CONTENT_LENGTH_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Received multiple content-length headers!", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse INVALID_CONTENT_LENGTH_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Received invalid content-length header!", CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse EXPECTATION_FAILED_RESPONSE = PrecomputedResponse.create(Status.EXPECTATION_FAILED, CommonContentTypes.PLAIN, "Only the 100-continue expectation is supported!", CONNECTION_CLOSE_HEADER);
+    private static final byte[] CONTINUE_RESPONSE = ("HTTP/1.1 " + Status.CONTINUE.code + " " + Status.CONTINUE.httpName + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SWITCHING_PROTOCOLS_RESPONSE = ("HTTP/1.1 " + Status.SWITCHING_PROTOCOLS.code + " " + Status.SWITCHING_PROTOCOLS.httpName + "\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    private static final PrecomputedResponse INVALID_HOST_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Received invalid/no host header!", CONNECTION_CLOSE_HEADER);
     private static final PrecomputedHeader ALLOW_NO_TRACE_CONNECT_HEADER = PrecomputedHeader.create("Allow", Arrays.stream(Method.values()).filter(method -> method != Method.TRACE && method != Method.CONNECT).map(Enum::name).collect(Collectors.joining(", ")));
     private static final PrecomputedHeader ALLOW_ALL_HEADER = PrecomputedHeader.create("Allow", Arrays.stream(Method.values()).map(Enum::name).collect(Collectors.joining(", ")));
-    private final ClientHandlerState state = new ClientHandlerState();
+    private final ClientHandlerState state;
     private final Socket socket;
     private final ErrorHandler errorHandler;
     private final RequestHandler handler;
@@ -42,11 +63,30 @@ public class HTTPClientHandler implements Runnable {
     private final ClientHandlerTracker tracker;
     private final boolean allowTraceConnect;
     private final boolean builtinServerWideOptions;
-    private final int maxBodyLength;
-    private InputStream inputStream;
+    private final long maxBodyLength;
+    private final BufferPool bufferPool;
+    private final boolean releaseBuffersWhileIdle;
+    /** Shared by all handlers of the server, null if disabled */
+    private final PathCache pathCache;
+    private final int trackerSlot;
+    private final ServerMetrics metrics;
+    /** Null if HTTP/2 is disabled */
+    private final HTTP2Support http2;
+    private CountingInputStream inputStream;
+    private PipelineOutputStream outputStream;
     private int read;
     private int availableBytes;
-    private volatile boolean externalTimeout = false;
+    private int preReadBytes;
+    private int nextRequestStart;
+    private long requestStartNanos;
+    /** The writer of the response to the current request, so it can be recorded once the request is done */
+    private ResponseWriter currentWriter;
+    /** The context of the current dispatch, as the header buffer might be replaced while reading */
+    private ReusableClientContext context;
+    /** Set if the connection is closed by another thread, e.g. because of a timeout or a shutdown */
+    private volatile boolean closedExternally = false;
+    /** Set once the client switched to HTTP/2, which is served after the HTTP/1 loop is done */
+    private HTTP2Connection http2Connection;
 
     public HTTPClientHandler(Socket socket,
                              ErrorHandler errorHandler,
@@ -55,7 +95,11 @@ public class HTTPClientHandler implements Runnable {
                              ClientHandlerTracker tracker,
                              boolean allowTraceConnect,
                              boolean builtinServerWideOptions,
-                             int maxBodyLength) {
+                             long maxBodyLength,
+                             BufferPool bufferPool,
+                             boolean releaseBuffersWhileIdle,
+                             PathCache pathCache,
+                             HTTP2Support http2) {
         this.socket = socket;
         this.errorHandler = errorHandler;
         this.handler = handler;
@@ -64,53 +108,153 @@ public class HTTPClientHandler implements Runnable {
         this.allowTraceConnect = allowTraceConnect;
         this.builtinServerWideOptions = builtinServerWideOptions;
         this.maxBodyLength = maxBodyLength;
-        tracker.registerHandler(this);
+        this.bufferPool = bufferPool;
+        this.releaseBuffersWhileIdle = releaseBuffersWhileIdle;
+        this.pathCache = pathCache;
+        this.http2 = http2;
+        this.metrics = tracker.getMetrics();
+        this.state = tracker.createState(this::closeAfterTimeout);
+        this.trackerSlot = tracker.registerHandler(this);
     }
 
     @Override
     public void run() {
+        boolean parked = false;
+        // A parked connection might be dispatched again before this returns, so each dispatch has its own context
+        ReusableClientContext context = new ReusableClientContext(this.bufferPool);
+        this.context = context;
         try {
-            this.inputStream = getInputStream();
-            ReusableClientContext context = CONTEXT_THREAD_LOCAL.get();
+            // The socket stream doesn't buffer, and the event loop hands over the entire collected head with the first read, so the body can be read from the channel directly
+            this.inputStream = new CountingInputStream(getInputStream(), getSocketChannel());
+            this.outputStream = new PipelineOutputStream(getOutputStream());
+            if (!this.releaseBuffersWhileIdle) {
+                // The header buffer must be large enough to take everything the event loop collected
+                context.acquireBuffers(getBufferedHeadLength());
+            }
             boolean keepAlive;
             do {
+                if (this.releaseBuffersWhileIdle && this.preReadBytes == 0) {
+                    // Don't hold on to any buffers while the connection is idle, only borrow them once the client starts sending
+                    int firstByte = this.inputStream.read();
+                    if (firstByte < 0) break;
+                    context.acquireBuffers(0);
+                    context.headerBuffer[0] = (byte) firstByte;
+                    this.preReadBytes = 1;
+                }
                 try {
                     keepAlive = handleRequest(context);
+                    if (keepAlive) {
+                        carryOverPipelinedBytes(context.headerBuffer);
+                    }
                 } finally {
+                    recordRequestMetrics();
                     context.reset();
                     ResponseTokenImpl.clearTracking(false);
+                    // Keep the buffers if they already hold the start of the next request
+                    if (this.releaseBuffersWhileIdle && this.preReadBytes == 0) {
+                        context.releaseBuffers();
+                    }
+                }
+                // If the next request has already been received, handle it right away
+            } while (keepAlive && (this.preReadBytes > 0 || !(parked = parkConnection())));
+            if (this.http2Connection != null) {
+                // HTTP/2 frames are read into their own buffers
+                if (context.hasBuffers()) {
+                    context.releaseBuffers();
                 }
-            } while (keepAlive);
+                this.http2Connection.run();
+            }
         } catch (SocketTimeoutException e) {
             // Socket timeout just means we cancel all processing of the request - so ignore
-        } catch (SocketException e) {
-            // If this is caused by an external timeout, we don't need to handle this, as the exception is expected
-            if (!externalTimeout) {
+        } catch (SocketException | ClosedChannelException e) {
+            // If this is caused by an external close, we don't need to handle this, as the exception is expected. Sockets of a channel throw a ClosedChannelException instead
+            if (!closedExternally) {
                 this.errorHandler.onClientHandlerInternalException(this.server, socket, e);
             }
         } catch (Exception e) {
             this.errorHandler.onClientHandlerInternalException(this.server, socket, e);
         } finally {
             ResponseTokenImpl.clearTracking(false);
-            try {
-                close();
-            } catch (IOException e) {
-                // ignore. Client might have already closed the connection
+            // Nothing is using the buffers anymore, even if the connection has been parked
+            if (context.hasBuffers()) {
+                context.releaseBuffers();
+            }
+            // A parked connection is owned by someone else now, so it must stay open
+            if (!parked) {
+                try {
+                    if (this.outputStream != null) {
+                        this.outputStream.flushDeferred();
+                    }
+                } catch (IOException e) {
+                    // ignore. Client might have already closed the connection
+                }
+                try {
+                    closeGracefully();
+                } catch (IOException e) {
+                    // ignore. Client might have already closed the connection
+                }
+                state.cancelTimeout();
+                deregister();
             }
-            tracker.deregisterHandler(this);
         }
     }
 
-    private boolean handleRequest(ReusableClientContext context) throws IOException, HTTPWriteException {
-        byte[] headerBuffer = context.headerBuffer;
+    private void recordRequestMetrics() {
+        this.metrics.bytesReceived(this.inputStream.takeCount());
+        ResponseWriter writer = this.currentWriter;
+        if (writer != null) {
+            this.currentWriter = null;
+            if (writer.isCompleted()) {
+                this.metrics.responseSent(writer.getStatus(), writer.getBytesWritten(), writer.getWriteNanos());
+            }
+        }
+    }
+
+    /**
+     * Called once a request has been answered and the connection should be kept alive.
+     * Implementations may hand the idle connection off to another component instead of waiting for the next request on the current thread.
+     * If the connection is handed off, this handler must not be touched by the current thread anymore, as {@link #run()} might already be called again by another thread.
+     * @return True if the connection has been handed off and the current thread should stop handling it, false to read the next request on the current thread
+     * @throws IOException If an I/O error occurs while handing off the connection
+     */
+    protected boolean parkConnection() throws IOException {
+        return false;
+    }
 
-        availableBytes = 0;
-        // Read the first bytes
-        readMoreBytes(headerBuffer);
+    /**
+     * Moves the bytes of the next pipelined request(s) that have already been read to the start of the header buffer, so they are parsed next.
+     * See https://www.rfc-editor.org/rfc/rfc9112#name-pipelining
+     */
+    private void carryOverPipelinedBytes(byte[] headerBuffer) {
+        int leftover = this.availableBytes - this.nextRequestStart;
+        if (leftover > 0) {
+            System.arraycopy(headerBuffer, this.nextRequestStart, headerBuffer, 0, leftover);
+            this.preReadBytes = leftover;
+        }
+    }
+
+    private boolean handleRequest(ReusableClientContext context) throws IOException, HTTPWriteException {
+        availableBytes = preReadBytes;
+        preReadBytes = 0;
+        if (availableBytes == 0) {
+            // Read the first bytes
+            readMoreBytes();
+            if (availableBytes < 0) {
+                // Stream is EOF.
+                return false;
+            }
+        }
+        if (this.http2 != null && context.headerBuffer[0] == 'P' && startsWithHTTP2Preface()) {
+            // The client uses HTTP/2 with prior knowledge, see https://www.rfc-editor.org/rfc/rfc9113#name-starting-http-2-with-prior-
+            byte[] leftover = Arrays.copyOfRange(context.headerBuffer, HTTP2Support.getPrefaceLength(), this.availableBytes);
+            this.http2Connection = this.http2.createConnection(this.socket, this.state, this.inputStream, this.outputStream, this::closeFromHTTP2, leftover);
+            return false;
+        }
         if (availableBytes < 0) {
-            // Stream is EOF.
             return false;
         }
+        // The coarse clock is too inaccurate for latencies, which are often below its resolution
+        this.requestStartNanos = System.nanoTime();
         if (!state.startReadingRequest()) {
             // We are in shutdown - Don't send any response and signal not to keep alive
             return false;
@@ -137,15 +281,15 @@ public class HTTPClientHandler implements Runnable {
             ResponseTokenImpl.clearTracking(true);
             return false; // Should have already sent a response
         }
+        this.nextRequestStart = read;
 
         if (!state.startHandlingRequest()) {
-            ResponseToken token = newWriter(context, httpRequest.getVersion())
-                    .respond(Status.INTERNAL_SERVER_ERROR, CommonContentTypes.PLAIN)
-                    .addHeader(CONNECTION_CLOSE_HEADER)
-                    .writeBodyAndFlush("Server closed");
+            ResponseToken token = newWriter(context, httpRequest.getVersion()).sendPrecomputed(SERVER_CLOSED_RESPONSE);
             ResponseTokenImpl.validate(token);
             return false;
         }
+        long handleStartNanos = System.nanoTime();
+        this.metrics.requestParsed(handleStartNanos - this.requestStartNanos);
 
         if (!validateStandardHeader(context, httpRequest)) {
             ResponseTokenImpl.clearTracking(true);
@@ -161,13 +305,10 @@ public class HTTPClientHandler implements Runnable {
                             .respondWithoutContentType(Status.NO_CONTENT)
                             .addHeader(this.allowTraceConnect ? ALLOW_ALL_HEADER : ALLOW_NO_TRACE_CONNECT_HEADER)
                             .sendWithoutBody();
-                    return keepConnectionAlive(httpRequest);
+                    return state.startAwaitingNextRequest() && keepConnectionAlive(httpRequest);
                 }
             } else if (httpRequest.getMethod() != Method.CONNECT) {
-                newWriter(context, httpRequest.getVersion())
-                        .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                        .addHeader(CONNECTION_CLOSE_HEADER)
-                        .writeBodyAndFlush("Invalid Request Target (URI) for the specified method!");
+                newWriter(context, httpRequest.getVersion()).sendPrecomputed(INVALID_REQUEST_TARGET_RESPONSE);
                 return false;
             }
             // We only get here if either
@@ -176,9 +317,36 @@ public class HTTPClientHandler implements Runnable {
             // In that case we forward a null path to handler and trust that it knows what to do with it
         }
 
-        ResponseStartWriter writer = newWriter(context, httpRequest.getVersion());
+        RequestBodyInputStream body = httpRequest.getInputStream();
+        if (this.http2 != null && (body == null || body.getRemainingLength() == 0)) {
+            byte[] settings = getHTTP2UpgradeSettings(httpRequest);
+            if (settings != null) {
+                upgradeToHTTP2(context, httpRequest, settings);
+                return false;
+            }
+        }
+        if (body != null && !body.isDrained()) {
+            // The handler is going to wait for the rest of the body, so the client must not wait for any held back responses
+            this.outputStream.flushDeferred();
+        }
+        // If the next request has already been received, hold back the response so that it can be sent together with the next one(s)
+        this.outputStream.setDeferFlush(this.availableBytes > this.nextRequestStart);
+        ResponseWriter writer = newWriter(context, httpRequest.getVersion());
         try {
-            ResponseToken token = this.handler.answerRequest(httpRequest, writer);
+            ResponseToken token = null;
+            if (isWaitingForContinue(httpRequest)) {
+                // If the precheck answers the request, the body is never sent, so the connection can't be reused
+                writer.setCloseAfterResponse(true);
+                token = this.handler.precheckRequest(httpRequest, writer);
+                writer.setCloseAfterResponse(false);
+                if (token == null) {
+                    this.outputStream.write(CONTINUE_RESPONSE);
+                    this.outputStream.flush();
+                }
+            }
+            if (token == null) {
+                token = this.handler.answerRequest(httpRequest, writer);
+            }
             if (!ResponseTokenImpl.validate(token))
                 throw new RuntimeException("Invalid token returned from handler!");
         } catch (Exception e) {
@@ -189,12 +357,21 @@ public class HTTPClientHandler implements Runnable {
                 if (!ResponseTokenImpl.validate(token))
                     throw new RuntimeException("Invalid token returned from error handler!");
             }
+        } finally {
+            this.outputStream.setDeferFlush(false);
+            this.metrics.requestHandled(System.nanoTime() - handleStartNanos);
         }
 
         if (!state.startAwaitingNextRequest()) {
             return false;
         }
 
+        if (body instanceof ChunkedBodyInputStream chunkedBody && chunkedBody.isDrained()) {
+            // The chunked body might have read the start of the next request
+            this.availableBytes = chunkedBody.moveRemainingBytes(context.headerBuffer);
+            this.nextRequestStart = 0;
+        }
+
         // We finished the request. Now we need to check if we should persist the current connection
         // See https://www.rfc-editor.org/rfc/rfc9112#section-9.3 for this
         return keepConnectionAlive(httpRequest);
@@ -205,7 +382,7 @@ public class HTTPClientHandler implements Runnable {
         if ("close".equals(connection)) {
             return false;
         } else if (httpRequest.getVersion() == HTTPVersion.HTTP_1_1 || "keep-alive".equals(connection)) {
-            RestBufInputStream stream = httpRequest.getInputStream();
+            RequestBodyInputStream stream = httpRequest.getInputStream();
             return stream == null || stream.isDrained();
         } else {
             return false;
@@ -213,117 +390,91 @@ public class HTTPClientHandler implements Runnable {
     }
 
     private HTTPRequestImpl parseRequestLine(ReusableClientContext context) throws HTTPWriteException, IOException {
-        byte[] headerBuffer = context.headerBuffer;
         // Parse the request line according to https://www.rfc-editor.org/rfc/rfc9112#name-request-line
 
         // We do this check so that Method.findMatchingMethod never reads stale data
         while (availableBytes < InternalConstants.MINIMUM_HEADER_LENGTH_BYTES) {
-            if (readMoreBytes(headerBuffer) < 0) {
-                newTempWriter(context)
-                        .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                        .addHeader(CONNECTION_CLOSE_HEADER)
-                        .writeBodyAndFlush("Premature end of request line");
+            if (readMoreBytes() < 0) {
+                newTempWriter(context).sendPrecomputed(PREMATURE_END_OF_REQUEST_LINE_RESPONSE);
                 return null;
             }
         }
         // Range checked by above case
-        Method method = Method.findMatchingMethod(headerBuffer);
+        Method method = Method.findMatchingMethod(context.headerBuffer);
         if (method == null) {
-            newTempWriter(context)
-                    .respond(Status.NOT_IMPLEMENTED, CommonContentTypes.PLAIN)
-                    .addHeader(CONNECTION_CLOSE_HEADER)
-                    .writeBodyAndFlush("Unknown method");
+            newTempWriter(context).sendPrecomputed(UNKNOWN_METHOD_RESPONSE);
             return null;
         }
 
         read = method.readLength;
-        int pathEnd = HeaderParsingHelper.findRequestLineSplit(headerBuffer, this);
+        int pathEnd = HeaderParsingHelper.findRequestLineSplit(this);
         if (pathEnd < 0) {
-            HeaderParsingHelper.handleError(newTempWriter(context), true, pathEnd);
+            HeaderParsingHelper.handleError(newTempWriter(context), true, pathEnd, context.getMaxHeaderSize());
             return null;
         }
 
 
         if (pathEnd == read) {
-            newTempWriter(context).respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                    .addHeader(CONNECTION_CLOSE_HEADER)
-                    .writeBodyAndFlush("Invalid URI!");
+            newTempWriter(context).sendPrecomputed(INVALID_URI_RESPONSE);
             return null;
         }
 
-        URLParser parser = new URLParser(headerBuffer, read, pathEnd);
+        // If the header buffer grows later on, the parser keeps the old one, which is only released once the request is done
+        URLParser parser = new URLParser(context.headerBuffer, read, pathEnd, this.pathCache);
 
         read = pathEnd + 1; // plus one for the space
 
         // Now comes the http version information
         // According to rfc9012, this part consists of exactly 8 bytes plus two bytes that must follow to end the status line
         while ((read + 10) > availableBytes) {
-            if (readMoreBytes(headerBuffer) < 0) {
-                newTempWriter(context)
-                        .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                        .addHeader(CONNECTION_CLOSE_HEADER)
-                        .writeBodyAndFlush("Premature end of request line");
+            if (readMoreBytes() < 0) {
+                newTempWriter(context).sendPrecomputed(PREMATURE_END_OF_REQUEST_LINE_RESPONSE);
                 return null;
             }
         }
         // The next ten bytes can be read, examine the HTTP version now
-        HTTPVersion matchingVersion = HTTPVersion.findMatchingVersion(headerBuffer, read);
+        HTTPVersion matchingVersion = HTTPVersion.findMatchingVersion(context.headerBuffer, read);
         if (matchingVersion == null) {
             // In theory, we should respond with 505 (see https://www.rfc-editor.org/rfc/rfc9110#name-505-http-version-not-suppor)
             // but as http/1.0 and http/1.1 are the only http/1 versions, and http/2 works completely different and would thous not even reach here, we can ignore this
-            newTempWriter(context)
-                    .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                    .addHeader(CONNECTION_CLOSE_HEADER)
-                    .writeBodyAndFlush("Invalid HTTP version");
+            newTempWriter(context).sendPrecomputed(INVALID_VERSION_RESPONSE);
             return null;
         }
         read += 10;
-        return new HTTPRequestImpl(method, parser, matchingVersion);
+        return new HTTPRequestImpl(method, parser, matchingVersion, context.headerIndex);
     }
 
     private boolean parseHeaders(ReusableClientContext context, HTTPRequestImpl requestToBuild) throws HTTPWriteException, IOException {
-        byte[] headerBuffer = context.headerBuffer;
+        HeaderIndex headerIndex = context.headerIndex;
         while (true) {
-            int nameEnd = HeaderParsingHelper.findHeaderSplit(headerBuffer, this);
+            int nameEnd = HeaderParsingHelper.findHeaderSplit(this);
             if (nameEnd < 0) {
-                HeaderParsingHelper.handleError(newWriter(context, requestToBuild.getVersion()), false, nameEnd);
+                HeaderParsingHelper.handleError(newWriter(context, requestToBuild.getVersion()), false, nameEnd, context.getMaxHeaderSize());
                 return false;
             }
             int nameLength = nameEnd - read;
             if (nameLength == 0) {
-                newWriter(context, requestToBuild.getVersion())
-                        .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                        .addHeader(CONNECTION_CLOSE_HEADER)
-                        .writeBodyAndFlush("Request contains invalid header key");
+                newWriter(context, requestToBuild.getVersion()).sendPrecomputed(INVALID_HEADER_KEY_RESPONSE);
                 return false;
             }
-            String name = new String(headerBuffer, read, nameLength, StandardCharsets.US_ASCII);
+            int nameStart = read;
             read = nameEnd + 1;
 
-            int valueEnd = HeaderParsingHelper.findHeaderEnd(headerBuffer, this);
+            int valueEnd = HeaderParsingHelper.findHeaderEnd(this);
             if (valueEnd < 0) {
-                HeaderParsingHelper.handleError(newWriter(context, requestToBuild.getVersion()), false, valueEnd);
+                HeaderParsingHelper.handleError(newWriter(context, requestToBuild.getVersion()), false, valueEnd, context.getMaxHeaderSize());
                 return false;
             }
-            int valueLength = valueEnd - read - 1;
-            String value;
-            if (valueLength > 0) {
-                // Not ASCII as standard, but Latin-1. See https://www.rfc-editor.org/rfc/rfc9110#name-field-values
-                // Also, trim as optional whitespace before and after are allowed
-                value = StringUtil.trimRaw(headerBuffer, read, valueLength);
-            } else {
-                value = "";
-            }
-            requestToBuild.addHeader(name, value);
+            // Only remember where the header is, strings are created once the header is requested
+            headerIndex.add(nameStart, nameLength, read, valueEnd - read - 1);
             read = valueEnd + 1;
             while (read + 2 > availableBytes && availableBytes > 0) {
-                if (readMoreBytes(headerBuffer) < 0) {
-                    newWriter(context, requestToBuild.getVersion())
-                            .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                            .addHeader(CONNECTION_CLOSE_HEADER)
-                            .writeBodyAndFlush("Premature end of header");
+                if (readMoreBytes() < 0) {
+                    newWriter(context, requestToBuild.getVersion()).sendPrecomputed(PREMATURE_END_OF_HEADER_RESPONSE);
+                    return false;
                 }
             }
+            byte[] headerBuffer = context.headerBuffer;
             if (headerBuffer[read] == '\r' && headerBuffer[read + 1] == '\n') {
                 // Two CRLF in succession mean that we finished the header data
                 read += 2;
@@ -332,71 +483,76 @@ public class HTTPClientHandler implements Runnable {
         }
     }
 
+    /**
+     * @return The maximum body length of the endpoint the request is for, or the server wide one if the endpoint doesn't specify one
+     */
+    private long getMaxBodyLength(HTTPRequestImpl httpRequest) {
+        long endpointMax = this.handler.getMaxBodySizeBytes(httpRequest);
+        return endpointMax < 0 ? this.maxBodyLength : endpointMax;
+    }
+
     private boolean validateStandardHeader(ReusableClientContext context, HTTPRequestImpl httpRequest) throws HTTPWriteException, IOException {
         List<String> contentLengthHeaders = httpRequest.getHeaders("content-length");
-        // Validate that no transfer encoding header is present.
+        List<String> transferEncodingHeaders = httpRequest.getHeaders("transfer-encoding");
+        // Validate the transfer encoding, we only support chunked
         // See https://www.rfc-editor.org/rfc/rfc9112#section-6.1 for logic requirements
-        if (httpRequest.getHeaders("transfer-encoding") != null) {
+        if (transferEncodingHeaders != null) {
             if (contentLengthHeaders != null) {
-                newWriter(context, httpRequest.getVersion())
-                        .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                        .addHeader(CONNECTION_CLOSE_HEADER)
-                        .writeBodyAndFlush("Can't handle both transfer-encoding and content-length!");
+                newWriter(context, httpRequest.getVersion()).sendPrecomputed(TRANSFER_ENCODING_AND_CONTENT_LENGTH_RESPONSE);
+                return false;
             } else if (httpRequest.getVersion() == HTTPVersion.HTTP_1_0) {
-                newWriter(context, httpRequest.getVersion())
-                        .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                        .addHeader(CONNECTION_CLOSE_HEADER)
-                        .writeBodyAndFlush("HTTP/1.0 clients are not allowed to send transfer-encoded messages!");
-            } else {
-                // No content-length and http/1.1. Still invalid, we require a  length
-                newWriter(context, httpRequest.getVersion())
-                        .respond(Status.LENGTH_REQUIRED, CommonContentTypes.PLAIN)
-                        .addHeader(CONNECTION_CLOSE_HEADER)
-                        .writeBodyAndFlush("This server requires messages with a body to contain a content-length header!");
+                newWriter(context, httpRequest.getVersion()).sendPrecomputed(HTTP_1_0_TRANSFER_ENCODING_RESPONSE);
+                return false;
+            } else if (transferEncodingHeaders.size() != 1 || !transferEncodingHeaders.get(0).equalsIgnoreCase("chunked")) {
+                // Other codings (e.g. gzip) are not implemented, and we don't know where the body ends for them.
+                // See https://www.rfc-editor.org/rfc/rfc9112#section-6.1-9
+                newWriter(context, httpRequest.getVersion()).sendPrecomputed(UNSUPPORTED_TRANSFER_CODING_RESPONSE);
+                return false;
             }
-
-            // ALWAYS close the connection on transfer-encoding messages.
-            // We don't parse them server-side, so we don't know where the next request starts.
-            return false;
+            httpRequest.setChunkedBody(new ChunkedBodyInputStream(context.headerBuffer, read, availableBytes, inputStream, getMaxBodyLength(httpRequest)));
+            // The chunked body owns all buffered bytes, and hands back the ones after the body once it's read
+            this.nextRequestStart = availableBytes;
         }
 
         // Validate that either a) one valid content length or b) no content length header is present
         // See https://www.rfc-editor.org/rfc/rfc9112#name-content-length
         if (contentLengthHeaders != null && contentLengthHeaders.size() > 1) {
-            newWriter(context, httpRequest.getVersion())
-                    .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                    .addHeader(CONNECTION_CLOSE_HEADER)
-                    .writeBodyAndFlush("Received multiple content-length headers!");
+            newWriter(context, httpRequest.getVersion()).sendPrecomputed(MULTIPLE_CONTENT_LENGTH_RESPONSE);
             return false;
         } else if (contentLengthHeaders != null && !contentLengthHeaders.isEmpty()) {
             long length;
             try {
                 length = Long.parseLong(contentLengthHeaders.get(0));
+                if (length < 0) throw new NumberFormatException();
             } catch (NumberFormatException e) {
-                newWriter(context, httpRequest.getVersion())
-                        .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                        .addHeader(CONNECTION_CLOSE_HEADER)
-                        .writeBodyAndFlush("Received invalid content-length header!");
+                newWriter(context, httpRequest.getVersion()).sendPrecomputed(INVALID_CONTENT_LENGTH_RESPONSE);
                 return false;
             }
-            if (length > (long) maxBodyLength) {
+            long maxBodyLength = getMaxBodyLength(httpRequest);
+            if (length > maxBodyLength) {
                 newWriter(context, httpRequest.getVersion())
                         .respond(Status.CONTENT_TOO_LARGE, CommonContentTypes.PLAIN)
                         .addHeader(CONNECTION_CLOSE_HEADER)
                         .writeBodyAndFlush("Received too long content, max is ", String.valueOf(maxBodyLength), " bytes!");
                 return false;
             }
-            httpRequest.setRestBuffer(context.headerBuffer, read, availableBytes, inputStream, (int) length);
+            // The buffer might already contain the start of the next pipelined request, which must not be part of the body
+            int bodyInBuffer = (int) Math.min(length, availableBytes - read);
+            httpRequest.setRestBuffer(context.headerBuffer, read, read + bodyInBuffer, inputStream, length);
+            this.nextRequestStart = read + bodyInBuffer;
         }
         // Validate that the client send the host if the request is http/1.1
         // See https://www.rfc-editor.org/rfc/rfc9112#section-2.2
         if (httpRequest.getVersion() == HTTPVersion.HTTP_1_1) {
             String host = httpRequest.getSingleHeader("host");
             if (host == null) {
-                newWriter(context, httpRequest.getVersion())
-                        .respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN)
-                        .addHeader(CONNECTION_CLOSE_HEADER)
-                        .writeBodyAndFlush("Received invalid/no host header!");
+                newWriter(context, httpRequest.getVersion()).sendPrecomputed(INVALID_HOST_RESPONSE);
+                return false;
+            }
+            // 100-continue is the only expectation there is, see https://www.rfc-editor.org/rfc/rfc9110#name-expect
+            List<String> expectHeaders = httpRequest.getHeaders("expect");
+            if (expectHeaders != null && (expectHeaders.size() != 1 || !expectHeaders.get(0).equalsIgnoreCase("100-continue"))) {
+                newWriter(context, httpRequest.getVersion()).sendPrecomputed(EXPECTATION_FAILED_RESPONSE);
                 return false;
             }
         }
@@ -404,6 +560,61 @@ public class HTTPClientHandler implements Runnable {
         return true;
     }
 
+    /**
+     * Checks if the client waits for a 100 (Continue) response before sending the body, see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-expect">RFC 9110</a>.
+     * The expectation must be ignored for HTTP/1.0 requests, and there is no need to answer it if the body has already been received completely.
+     */
+    private static boolean isWaitingForContinue(HTTPRequestImpl httpRequest) {
+        if (httpRequest.getVersion() != HTTPVersion.HTTP_1_1) return false;
+        RequestBodyInputStream body = httpRequest.getInputStream();
+        return body != null && !body.isDrained() && httpRequest.getHeaders("expect") != null;
+    }
+
+    /**
+     * Reads until the received bytes either differ from the HTTP/2 connection preface or contain all of it
+     * @return True if the connection starts with the preface
+     */
+    private boolean startsWithHTTP2Preface() throws IOException {
+        int prefaceLength = HTTP2Support.getPrefaceLength();
+        while (availableBytes >= 0 && HTTP2Support.matchesPreface(this.context.headerBuffer, availableBytes)) {
+            if (availableBytes >= prefaceLength) return true;
+            readMoreBytes();
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the client asks to upgrade the connection to HTTP/2, see <a href="https://www.rfc-editor.org/rfc/rfc7540#section-3.2">RFC 7540</a>.
+     * Requests with a body are not upgraded, as the body would have to be read before the switch.
+     * @return The decoded HTTP2-Settings header, or null if the connection should not be upgraded
+     */
+    private static byte[] getHTTP2UpgradeSettings(HTTPRequestImpl httpRequest) {
+        if (httpRequest.getVersion() != HTTPVersion.HTTP_1_1) return null;
+        if (!containsToken(httpRequest.getHeaders("upgrade"), "h2c") || !containsToken(httpRequest.getHeaders("connection"), "upgrade")) return null;
+        String settings = httpRequest.getSingleHeader("http2-settings");
+        return settings == null ? null : HTTP2Support.decodeSettings(settings);
+    }
+
+    private static boolean containsToken(List<String> headers, String token) {
+        if (headers == null) return false;
+        for (String header : headers) {
+            for (String element : header.split(",")) {
+                if (element.trim().equalsIgnoreCase(token)) return true;
+            }
+        }
+        return false;
+    }
+
+    private void upgradeToHTTP2(ReusableClientContext context, HTTPRequestImpl httpRequest, byte[] settings) throws IOException {
+        this.outputStream.write(SWITCHING_PROTOCOLS_RESPONSE);
+        this.outputStream.flush();
+        // The client might have sent the connection preface right after the request
+        byte[] leftover = Arrays.copyOfRange(context.headerBuffer, this.nextRequestStart, Math.max(this.availableBytes, this.nextRequestStart));
+        // The request outlives the header buffer, which is released before the HTTP/2 connection is served
+        this.http2Connection = this.http2.createUpgradedConnection(this.socket, this.state, this.inputStream, this.outputStream, this::closeFromHTTP2, leftover,
+                httpRequest.getMethod(), httpRequest.getURLParser().copy(), httpRequest.copyHeaders(), settings);
+    }
+
     /**
      * Creates a new response writer that should only be used when the request HTTP version is not yet known but a response needs to be written
      * @param context The context to use
@@ -411,7 +622,7 @@ public class HTTPClientHandler implements Runnable {
      * @throws IOException If an I/O error occurs
      */
     private ResponseStartWriter newTempWriter(ReusableClientContext context) throws IOException {
-        return new ResponseWriter(getOutputStream(), getSocketChannel(), context, HTTPVersion.HTTP_1_0);
+        return trackWriter(new ResponseWriter(this.outputStream, getSocketChannel(), context, HTTPVersion.HTTP_1_0));
     }
 
     /**
@@ -420,14 +631,32 @@ public class HTTPClientHandler implements Runnable {
      * @return A new response writer for immediate use
      * @throws IOException If an I/O error occurs
      */
-    private ResponseStartWriter newWriter(ReusableClientContext context, HTTPVersion version) throws IOException {
-        return new ResponseWriter(getOutputStream(), getSocketChannel(), context, version);
+    private ResponseWriter newWriter(ReusableClientContext context, HTTPVersion version) throws IOException {
+        return trackWriter(new ResponseWriter(this.outputStream, getSocketChannel(), context, version));
+    }
+
+    private ResponseWriter trackWriter(ResponseWriter writer) {
+        // If the server starts draining, the connection is closed after this request, see startAwaitingNextRequest
+        writer.setHandlerState(this.state);
+        this.currentWriter = writer;
+        return writer;
     }
 
-    public int readMoreBytes(byte[] target) throws IOException {
-        if (target.length == availableBytes) return -1;
+    /**
+     * Reads more bytes of the request head into the header buffer. If the buffer is full, it is replaced with a larger one until the maximum header size is reached.
+     * @return The amount of bytes available in the header buffer, or -1 if the connection has been closed or the head is too large
+     */
+    public int readMoreBytes() throws IOException {
         if (availableBytes == -1) return -1;
-        int read = inputStream.read(target, availableBytes, target.length - availableBytes);
+        ReusableClientContext context = this.context;
+        int maxHeaderSize = context.getMaxHeaderSize();
+        if (availableBytes >= Math.min(context.headerBuffer.length, maxHeaderSize)) {
+            if (availableBytes >= maxHeaderSize || !context.growHeaderBuffer(availableBytes)) return -1;
+        }
+        byte[] target = context.headerBuffer;
+        // We are about to wait for the client, which might be waiting for the held back responses
+        outputStream.flushDeferred();
+        int read = inputStream.read(target, availableBytes, Math.min(target.length, maxHeaderSize) - availableBytes);
         if (read == -1)
             availableBytes = -1; // Cant read more bytes, but more were required. This is an invalid state, so set available bytes to -1
         else
@@ -435,23 +664,76 @@ public class HTTPClientHandler implements Runnable {
         return availableBytes;
     }
 
+    /**
+     * Removes this handler from the tracker. Only needs to be called if the connection is closed without {@link #run()} being called.
+     */
+    public void deregister() {
+        this.tracker.deregisterHandler(this, this.trackerSlot);
+    }
+
+    /**
+     * @return True if the handler is waiting for the next request on an open connection
+     */
+    public boolean isIdle() {
+        return this.state.isWaitingForRequest();
+    }
+
     public void shutdown() throws IOException {
         boolean closeSocket = this.state.startShutdown();
         if (closeSocket) {
+            this.closedExternally = true;
             close();
         }
     }
 
-    public void checkTimeout(int readTimeout, int handleTimeout) {
-        // This is run from the watchdog thread!
-        if (this.state.isTimedOut(readTimeout, handleTimeout)) {
-            this.externalTimeout = true;
-            try {
-                close();
-            } catch (IOException e) {
-                this.errorHandler.onExternalTimeoutCloseFailed(this.server, this.socket, e);
-            }
+    /**
+     * Lets the current request finish and closes the connection afterward. An idle connection is closed right away.
+     * @return True if the connection was idle and has been closed
+     */
+    public boolean drain() throws IOException {
+        if (!this.state.startDrain()) return false;
+        this.closedExternally = true;
+        try {
+            close();
+        } finally {
+            // A parked connection has no thread that would deregister it
+            deregister();
         }
+        return true;
+    }
+
+    /**
+     * Closes the connection, even if a request is still being handled
+     */
+    public void forceClose() throws IOException {
+        this.state.startShutdown();
+        this.closedExternally = true;
+        close();
+    }
+
+    /**
+     * Closes the connection once an HTTP/2 connection is done, which is called by the thread that handled the last stream
+     */
+    private void closeFromHTTP2() throws IOException {
+        this.closedExternally = true;
+        close();
+    }
+
+    private void closeAfterTimeout() {
+        // This is run from the timeout wheel thread!
+        this.closedExternally = true;
+        try {
+            close();
+        } catch (IOException e) {
+            this.errorHandler.onExternalTimeoutCloseFailed(this.server, this.socket, e);
+        }
+    }
+
+    /**
+     * @return The current header buffer, which may be replaced by {@link #readMoreBytes()}
+     */
+    public byte[] getHeaderBuffer() {
+        return this.context.headerBuffer;
     }
 
     public int getAvailableBytes() {
@@ -462,7 +744,7 @@ public class HTTPClientHandler implements Runnable {
         return read;
     }
 
-    // Overridable method for unit tests / benchmarks
+    // Overridable methods for unit tests / benchmarks and TLS
     protected OutputStream getOutputStream() throws IOException {
         return socket.getOutputStream();
     }
@@ -471,6 +753,13 @@ public class HTTPClientHandler implements Runnable {
         return socket.getChannel();
     }
 
+    /**
+     * @return The amount of bytes of the request head that have already been read into the input stream by someone else, see {@link #getInputStream()}
+     */
+    protected int getBufferedHeadLength() {
+        return 0;
+    }
+
     protected InputStream getInputStream() throws IOException {
         return socket.getInputStream();
     }
@@ -478,4 +767,11 @@ public class HTTPClientHandler implements Runnable {
     protected void close() throws IOException {
         socket.close();
     }
+
+    /**
+     * Closes the connection once the handling thread is done with it. Unlike {@link #close()}, this is never called by another thread.
+     */
+    protected void closeGracefully() throws IOException {
+        close();
+    }
 }
@@ -6,9 +6,6 @@ import de.nocoffeetech.smallhttp.data.Method;
 import de.nocoffeetech.smallhttp.util.URLParser;
 
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -18,20 +15,15 @@ public class HTTPRequestImpl implements HTTPRequest {
     private final URLParser urlParser;
     private final String path;
     private final HTTPVersion version;
-    private final Map<String, Object> headers; // Value: Either String or List<String>
-    private int contentLength;
-    private RestBufInputStream restBufInputStream;
+    private final HeaderIndex headers;
+    private long contentLength;
+    private RequestBodyInputStream bodyInputStream;
 
-    public HTTPRequestImpl(Method method, URLParser parser, HTTPVersion version) {
-        this.method = method;
-        this.urlParser = parser;
-        this.path = parser.parseRequestTarget();
-        this.version = version;
-        this.headers = new HashMap<>();
-        this.contentLength = 0;
+    public HTTPRequestImpl(Method method, URLParser parser, HTTPVersion version, HeaderIndex headers) {
+        this(method, parser, parser.parseRequestTarget(), version, headers);
     }
 
-    private HTTPRequestImpl(Method method, URLParser parser, String path, HTTPVersion version, Map<String, Object> headers) {
+    private HTTPRequestImpl(Method method, URLParser parser, String path, HTTPVersion version, HeaderIndex headers) {
         this.method = method;
         this.urlParser = parser;
         this.path = path;
@@ -40,30 +32,25 @@ public class HTTPRequestImpl implements HTTPRequest {
         this.contentLength = 0;
     }
 
-    void setRestBuffer(byte[] restBuffer, int bufOffset, int bufLength, InputStream originalInputStream, int contentLength) {
+    void setRestBuffer(byte[] restBuffer, int bufOffset, int bufEnd, InputStream originalInputStream, long contentLength) {
         this.contentLength = contentLength;
-        this.restBufInputStream = new RestBufInputStream(restBuffer, bufOffset, bufLength, originalInputStream, contentLength);
-    }
-
-    @SuppressWarnings("unchecked")
-    void addHeader(String name, String value) {
-        assert name != null && !name.isBlank();
-        assert value != null;
-        // Headers are case-insensitive, so lowercase them
-        String key = name.toLowerCase(Locale.ROOT);
-        Object presentVal = headers.putIfAbsent(key, value);
-        // yes, check by reference, and not using equals on a string is correct here
-        if (presentVal != null) {
-            if (presentVal instanceof List<?>) {
-                List<String> list = (List<String>) presentVal;
-                list.add(value);
-            } else {
-                List<String> list = new ArrayList<>();
-                list.add((String) presentVal);
-                list.add(value);
-                headers.put(key, list);
-            }
-        }
+        this.bodyInputStream = new RestBufInputStream(restBuffer, bufOffset, bufEnd, originalInputStream, contentLength);
+    }
+
+    void setChunkedBody(ChunkedBodyInputStream chunkedBody) {
+        this.contentLength = -1;
+        this.bodyInputStream = chunkedBody;
+    }
+
+    URLParser getURLParser() {
+        return urlParser;
+    }
+
+    /**
+     * @return A copy of all headers by lowercase name, which stays valid after the header buffer has been reused
+     */
+    Map<String, List<String>> copyHeaders() {
+        return headers.toMap();
     }
 
     @Override
@@ -83,7 +70,8 @@ public class HTTPRequestImpl implements HTTPRequest {
 
     /**
      * Gets the URL query parameters, parsing them on the first call to this method
-     * @return A map with the key-value pairs of the parameters. The order of items is preserved
+     * @return A read-only map with the key-value pairs of the parameters. The order of items is preserved.
+     * The map points into the buffer of the request and is only valid while the request is being handled, copy it to keep it longer
      */
     @Override
     public Map<String, String> getQueryParameters() {
@@ -98,9 +86,7 @@ public class HTTPRequestImpl implements HTTPRequest {
     @Override
     public String getSingleHeader(String key) {
         assert key.toLowerCase(Locale.ROOT).equals(key);
-        Object entry = headers.get(key);
-        if (entry instanceof String) return (String) entry;
-        return null;
+        return headers.getSingle(key);
     }
 
     /**
@@ -109,28 +95,41 @@ public class HTTPRequestImpl implements HTTPRequest {
      * @return The values of that header, or null if no such header is present
      */
     @Override
-    @SuppressWarnings("unchecked")
     public List<String> getHeaders(String key) {
         assert key.toLowerCase(Locale.ROOT).equals(key);
-        Object o = headers.get(key);
-        if (o == null) return null;
-        else if (o instanceof List<?>) return (List<String>) o;
-        else return Collections.singletonList((String) o);
+        return headers.getAll(key);
+    }
+
+    @Override
+    public RequestBodyInputStream getInputStream() {
+        return bodyInputStream;
     }
 
     @Override
-    public RestBufInputStream getInputStream() {
-        return restBufInputStream;
+    public RequestBodyInputStream getBody() {
+        return bodyInputStream;
     }
 
     @Override
     public int getContentLength() {
+        return (int) Math.min(this.contentLength, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return The length of the body, or -1 if the body is sent using the chunked transfer coding and the length is thus unknown
+     */
+    @Override
+    public long getContentLengthLong() {
         return this.contentLength;
     }
 
     @Override
     public HTTPRequest copyWithNewPath(String newPath) {
-        return new HTTPRequestImpl(this.method, this.urlParser, newPath, this.version, this.headers);
+        HTTPRequestImpl copy = new HTTPRequestImpl(this.method, this.urlParser, newPath, this.version, this.headers);
+        // Both share the body, so it can be read from either of them
+        copy.contentLength = this.contentLength;
+        copy.bodyInputStream = this.bodyInputStream;
+        return copy;
     }
 
     boolean isAsteriskRequest() {
@@ -0,0 +1,85 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the bytes that end a header name or value.
+ * Scans eight bytes at a time using SWAR (SIMD within a register) checks, remaining bytes are classified using a lookup table.
+ */
+class HeaderByteScanner {
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long COLONS = ONES * ':';
+    private static final long SPACES = ONES * ' ';
+    private static final long TABS = ONES * '\t';
+    private static final long CRS = ONES * '\r';
+    private static final long LFS = ONES * '\n';
+
+    static final byte NAME_END = 1;
+    static final byte VALUE_END = 2;
+    /** Classification of every byte, see {@link #NAME_END} and {@link #VALUE_END} */
+    static final byte[] CLASSES = new byte[256];
+
+    static {
+        CLASSES[':'] |= NAME_END;
+        for (char c : InternalConstants.FORBIDDEN_HEADER_NAME_CHARS) {
+            CLASSES[c] |= NAME_END;
+        }
+        for (char c : InternalConstants.FORBIDDEN_HEADER_VALUE_CHARS) {
+            CLASSES[c] |= VALUE_END;
+        }
+        // The SWAR checks below must stay in sync with the constants
+        assert InternalConstants.FORBIDDEN_HEADER_NAME_CHARS.length == 5;
+        assert InternalConstants.FORBIDDEN_HEADER_VALUE_CHARS.length == 3;
+    }
+
+    /**
+     * Finds the first byte that is either the colon that ends the header name, or a byte that is not allowed in a header name
+     * @return The index of the found byte, or end if no such byte is present
+     */
+    static int findNameEnd(byte[] buffer, int start, int end) {
+        int i = start;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            long word = (long) LONG_VIEW.get(buffer, i);
+            long found = zeroBytes(word ^ COLONS) | zeroBytes(word ^ SPACES) | zeroBytes(word ^ TABS) | zeroBytes(word ^ CRS) | zeroBytes(word ^ LFS) | zeroBytes(word);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        return findInTail(buffer, i, end, NAME_END);
+    }
+
+    /**
+     * Finds the first CR, or a byte that is not allowed in a header value
+     * @return The index of the found byte, or end if no such byte is present
+     */
+    static int findValueEnd(byte[] buffer, int start, int end) {
+        int i = start;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            long word = (long) LONG_VIEW.get(buffer, i);
+            long found = zeroBytes(word ^ CRS) | zeroBytes(word ^ LFS) | zeroBytes(word);
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        return findInTail(buffer, i, end, VALUE_END);
+    }
+
+    /**
+     * Sets the high bit of every zero byte in the word.
+     * Bytes above the first zero byte may be reported wrongly due to the borrow, but as we only look for the lowest set bit (little endian), this is fine.
+     */
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    private static int findInTail(byte[] buffer, int start, int end, byte type) {
+        for (int i = start; i < end; i++) {
+            if ((CLASSES[buffer[i] & 0xff] & type) != 0) return i;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,149 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An index of the headers of a request that points into the header buffer instead of copying every name and value into a string.
+ * Names are compared case-insensitive on the raw bytes, and strings are only created for the values that are actually requested.
+ * As the buffer is reused for the next request, the index is only valid while the request is being handled.
+ */
+class HeaderIndex {
+    // Each entry consists of nameOffset, nameLength, valueOffset, valueLength
+    private static final int ENTRY_SIZE = 4;
+    private byte[] buffer;
+    private int[] entries = new int[16 * ENTRY_SIZE];
+    private String[] values = new String[16];
+    private int count = 0;
+
+    HeaderIndex(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Points the index to another buffer, e.g. after the header buffer has been grown. The offsets of the entries stay the same.
+     */
+    void setBuffer(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Adds a header to the index. The value will be trimmed, as optional whitespace before and after is allowed.
+     */
+    void add(int nameOffset, int nameLength, int valueOffset, int valueLength) {
+        assert nameLength > 0;
+        byte[] buffer = this.buffer;
+        while (valueLength > 0 && ((buffer[valueOffset] & 0xff) <= ' ')) {
+            valueOffset++;
+            valueLength--;
+        }
+        while (valueLength > 0 && ((buffer[valueOffset + valueLength - 1] & 0xff) <= ' ')) {
+            valueLength--;
+        }
+        int index = this.count * ENTRY_SIZE;
+        if (index == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, this.entries.length * 2);
+            this.values = Arrays.copyOf(this.values, this.values.length * 2);
+        }
+        int[] entries = this.entries;
+        entries[index] = nameOffset;
+        entries[index + 1] = nameLength;
+        entries[index + 2] = valueOffset;
+        entries[index + 3] = valueLength;
+        this.count++;
+    }
+
+    /**
+     * @param key The lowercase name of the header
+     * @return The value of the header, or null if the header is absent or present multiple times
+     */
+    String getSingle(String key) {
+        int found = -1;
+        for (int i = 0; i < this.count; i++) {
+            if (nameMatches(i, key)) {
+                if (found != -1) return null;
+                found = i;
+            }
+        }
+        return found == -1 ? null : getValue(found);
+    }
+
+    /**
+     * @param key The lowercase name of the header
+     * @return All values of the header in the order they were received, or null if the header is absent
+     */
+    List<String> getAll(String key) {
+        List<String> result = null;
+        String first = null;
+        for (int i = 0; i < this.count; i++) {
+            if (!nameMatches(i, key)) continue;
+            String value = getValue(i);
+            if (first == null) {
+                first = value;
+            } else {
+                if (result == null) {
+                    result = new ArrayList<>();
+                    result.add(first);
+                }
+                result.add(value);
+            }
+        }
+        if (result != null) return result;
+        return first == null ? null : Collections.singletonList(first);
+    }
+
+    /**
+     * Copies all headers into a map, e.g. so they outlive the header buffer
+     * @return The values of all headers by lowercase name
+     */
+    Map<String, List<String>> toMap() {
+        Map<String, List<String>> map = new HashMap<>();
+        for (int i = 0; i < this.count; i++) {
+            int index = i * ENTRY_SIZE;
+            String name = new String(this.buffer, this.entries[index], this.entries[index + 1], StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+            map.computeIfAbsent(name, key -> new ArrayList<>(1)).add(getValue(i));
+        }
+        return map;
+    }
+
+    int size() {
+        return this.count;
+    }
+
+    void reset() {
+        Arrays.fill(this.values, 0, this.count, null);
+        this.count = 0;
+    }
+
+    private boolean nameMatches(int entry, String key) {
+        int index = entry * ENTRY_SIZE;
+        int length = this.entries[index + 1];
+        if (length != key.length()) return false;
+        int offset = this.entries[index];
+        byte[] buffer = this.buffer;
+        for (int i = 0; i < length; i++) {
+            int b = buffer[offset + i];
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (b != key.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private String getValue(int entry) {
+        String value = this.values[entry];
+        if (value == null) {
+            int index = entry * ENTRY_SIZE;
+            int length = this.entries[index + 3];
+            // Not ASCII as standard, but Latin-1. See https://www.rfc-editor.org/rfc/rfc9110#name-field-values
+            value = length == 0 ? "" : new String(this.buffer, this.entries[index + 2], length, StandardCharsets.ISO_8859_1);
+            this.values[entry] = value;
+        }
+        return value;
+    }
+}
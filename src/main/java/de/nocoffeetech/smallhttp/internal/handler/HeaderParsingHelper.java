@@ -3,10 +3,10 @@ package de.nocoffeetech.smallhttp.internal.handler;
 import de.nocoffeetech.smallhttp.data.Status;
 import de.nocoffeetech.smallhttp.header.CommonContentTypes;
 import de.nocoffeetech.smallhttp.response.HTTPWriteException;
+import de.nocoffeetech.smallhttp.response.PrecomputedResponse;
 import de.nocoffeetech.smallhttp.response.ResponseStartWriter;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 
 public class HeaderParsingHelper {
     /** Returned when an invalid char in the sequence was found before the searched char */
@@ -14,18 +14,23 @@ public class HeaderParsingHelper {
     /** Returned when the char could not be found and the end was reached */
     private static final int TOO_LARGE = -2;
 
-    private static final byte[] INVALID_CHAR_FOUND_TEXT = "Found invalid character during parsing of header!".getBytes(StandardCharsets.UTF_8);
-    private static final byte[] URI_END_REACHED_TEXT = ("Request URI was too large, entire uri must fit into " + InternalConstants.MAX_REQUEST_TARGET_LENGTH + " bytes!").getBytes(StandardCharsets.UTF_8);
-    private static final byte[] END_REACHED_TEXT = ("Header was too large, entire header must fit into " + InternalConstants.MAX_HEADER_SIZE_BYTES + " bytes!").getBytes(StandardCharsets.UTF_8);
+    private static final PrecomputedResponse INVALID_CHAR_FOUND_RESPONSE = PrecomputedResponse.create(Status.BAD_REQUEST, CommonContentTypes.PLAIN, "Found invalid character during parsing of header!", HTTPClientHandler.CONNECTION_CLOSE_HEADER);
+    private static final PrecomputedResponse URI_END_REACHED_RESPONSE = PrecomputedResponse.create(Status.URI_TOO_LONG, CommonContentTypes.PLAIN, "Request URI was too large, entire uri must fit into " + InternalConstants.MAX_REQUEST_TARGET_LENGTH + " bytes!", HTTPClientHandler.CONNECTION_CLOSE_HEADER);
 
-    public static void handleError(ResponseStartWriter writer, boolean inUri, int errorCode) throws HTTPWriteException {
+    /**
+     * Sends the error response for an error code returned by one of the find methods
+     * @param maxHeaderSize The maximum size of the request head, which is reported to the client if the head was too large
+     */
+    public static void handleError(ResponseStartWriter writer, boolean inUri, int errorCode, int maxHeaderSize) throws HTTPWriteException {
         if (errorCode == INVALID_CHAR_FOUND) {
-            writer.respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN).addHeader(HTTPClientHandler.CONNECTION_CLOSE_HEADER).writeBodyAndFlush(INVALID_CHAR_FOUND_TEXT);
+            writer.sendPrecomputed(INVALID_CHAR_FOUND_RESPONSE);
         } else if (errorCode == TOO_LARGE) {
             if (inUri) {
-                writer.respond(Status.URI_TOO_LONG, CommonContentTypes.PLAIN).addHeader(HTTPClientHandler.CONNECTION_CLOSE_HEADER).writeBodyAndFlush(URI_END_REACHED_TEXT);
+                writer.sendPrecomputed(URI_END_REACHED_RESPONSE);
             } else {
-                writer.respond(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, CommonContentTypes.PLAIN).addHeader(HTTPClientHandler.CONNECTION_CLOSE_HEADER).writeBodyAndFlush(END_REACHED_TEXT);
+                writer.respond(Status.REQUEST_HEADER_FIELDS_TOO_LARGE, CommonContentTypes.PLAIN)
+                        .addHeader(HTTPClientHandler.CONNECTION_CLOSE_HEADER)
+                        .writeBodyAndFlush("Header was too large, entire header must fit into ", String.valueOf(maxHeaderSize), " bytes!");
             }
         } else {
             throw new RuntimeException("Unknown error code " + errorCode);
@@ -34,12 +39,12 @@ public class HeaderParsingHelper {
 
 
     /**
-     * Finds the next space character in a given byte array
-     * @param toSearch The array to search
+     * Finds the next space character in the header buffer
      * @param handler The current handler parsing the request
      * @return The index of the space, or one of the error codes defined at the start of the file
      */
-    public static int findRequestLineSplit(byte[] toSearch, HTTPClientHandler handler) throws IOException {
+    public static int findRequestLineSplit(HTTPClientHandler handler) throws IOException {
+        byte[] toSearch = handler.getHeaderBuffer();
         int readInitial = handler.getRead();
         int read = handler.getRead();
         int availableBytes = handler.getAvailableBytes();
@@ -54,64 +59,59 @@ public class HeaderParsingHelper {
                     return INVALID_CHAR_FOUND;
                 }
             }
-            availableBytes = handler.readMoreBytes(toSearch);
+            availableBytes = handler.readMoreBytes();
+            // Reading might have grown the buffer
+            toSearch = handler.getHeaderBuffer();
         } while (availableBytes > 0);
 
         return TOO_LARGE;
     }
 
     /**
-     * Finds the next colon character in a given byte array
-     * @param toSearch The array to search
+     * Finds the next colon character in the header buffer
      * @param handler The current handler parsing the request
      * @return The index of the colon, or one of the error codes defined at the start of the file
      */
-    public static int findHeaderSplit(byte[] toSearch, HTTPClientHandler handler) throws IOException {
+    public static int findHeaderSplit(HTTPClientHandler handler) throws IOException {
+        byte[] toSearch = handler.getHeaderBuffer();
         int read = handler.getRead();
         int availableBytes = handler.getAvailableBytes();
         do {
-            for (; read < availableBytes; read++) {
-                byte byteAtPos = toSearch[read];
-                if (byteAtPos == ':') {
-                    return read;
-                }
-                for (char forbiddenChar : InternalConstants.FORBIDDEN_HEADER_NAME_CHARS) {
-                    if (byteAtPos == forbiddenChar)
-                        return INVALID_CHAR_FOUND;
-                }
+            int found = HeaderByteScanner.findNameEnd(toSearch, read, availableBytes);
+            if (found < availableBytes) {
+                return toSearch[found] == ':' ? found : INVALID_CHAR_FOUND;
             }
-            availableBytes = handler.readMoreBytes(toSearch);
+            read = availableBytes;
+            availableBytes = handler.readMoreBytes();
+            // Reading might have grown the buffer
+            toSearch = handler.getHeaderBuffer();
         } while (availableBytes > 0);
         return TOO_LARGE;
     }
 
     /**
-     * Finds the next CR LF sequence in a given byte array
-     * @param toSearch The array to search
+     * Finds the next CR LF sequence in the header buffer
      * @param handler The current handler parsing the request
      * @return The index of the LF, or one of the error codes defined at the start of the file
      */
-    public static int findHeaderEnd(byte[] toSearch, HTTPClientHandler handler) throws IOException {
+    public static int findHeaderEnd(HTTPClientHandler handler) throws IOException {
+        byte[] toSearch = handler.getHeaderBuffer();
         int read = handler.getRead();
         int availableBytes = handler.getAvailableBytes();
         // Max - 1 as we need to find two char, CR and LF
         do {
-            for (; read < (availableBytes - 1); read++) {
-                byte byteAtPos = toSearch[read];
-                if (byteAtPos == '\r') {
-                    if (toSearch[read + 1] == '\n') {
-                        return read + 1; // plus on as we want to return the \n pos
-                    } else {
-                        // "rouge" CR is disallowed, see https://www.rfc-editor.org/rfc/rfc9112#section-2.2
-                        return INVALID_CHAR_FOUND;
-                    }
-                }
-                for (char forbiddenChar : InternalConstants.FORBIDDEN_HEADER_VALUE_CHARS) {
-                    if (forbiddenChar == byteAtPos)
-                        return INVALID_CHAR_FOUND;
+            int found = HeaderByteScanner.findValueEnd(toSearch, read, availableBytes - 1);
+            if (found < availableBytes - 1) {
+                if (toSearch[found] == '\r' && toSearch[found + 1] == '\n') {
+                    return found + 1; // plus on as we want to return the \n pos
                 }
+                // Either a forbidden char or a "rouge" CR, which is disallowed, see https://www.rfc-editor.org/rfc/rfc9112#section-2.2
+                return INVALID_CHAR_FOUND;
             }
-            availableBytes = handler.readMoreBytes(toSearch);
+            read = Math.max(read, availableBytes - 1);
+            availableBytes = handler.readMoreBytes();
+            // Reading might have grown the buffer
+            toSearch = handler.getHeaderBuffer();
         } while (availableBytes > 0);
         return TOO_LARGE;
     }
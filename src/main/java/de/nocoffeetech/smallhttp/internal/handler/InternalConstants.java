@@ -12,7 +12,8 @@ public class InternalConstants {
     public static final int MINIMUM_HEADER_LENGTH_BYTES = 16;
 
     /**
-     * Maximum header size, larger will result in an error being returned to the client
+     * Default maximum header size, larger will result in an error being returned to the client.
+     * This is also the size of the smallest buffers of the {@link BufferPool}, which header buffers start with.
      */
     public static final int MAX_HEADER_SIZE_BYTES = 8 * 1024;
 
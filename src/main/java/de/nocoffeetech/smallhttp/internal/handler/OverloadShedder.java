@@ -0,0 +1,97 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.BuiltinHeaders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles connections that were rejected by the executor because all threads are busy.
+ * The connection first waits up to the max wait for a thread to become free. If none does, it is answered with a pre-rendered
+ * {@link Status#SERVICE_TIMEOUT} response and closed by the acceptor itself, so shedding load never needs a thread of the executor.
+ * <br>
+ * Once a wait timed out, the server is considered overloaded and further connections are shed right away until a connection is handed off again.
+ * Otherwise, each connection in the accept backlog would block the acceptor for the max wait.
+ * <br>
+ * Must only be used by the acceptor thread.
+ */
+public class OverloadShedder {
+    private final int maxWaitMillis;
+    private final ByteBuffer responseBuffer;
+    private final ByteBuffer drainBuffer = ByteBuffer.allocate(4096);
+    private boolean overloaded = false;
+
+    /**
+     * @param maxWaitMillis How long a connection may wait for a thread before it is shed
+     * @param retryAfterSeconds The value of the Retry-After header, see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-retry-after">RFC 9110</a>
+     */
+    public OverloadShedder(int maxWaitMillis, int retryAfterSeconds) {
+        this.maxWaitMillis = maxWaitMillis;
+        this.responseBuffer = ByteBuffer.wrap(renderResponse(retryAfterSeconds)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Waits for a thread of the executor to become free and hands the task to it.
+     * This relies on the executor using a {@link java.util.concurrent.SynchronousQueue}, so a task is only taken from the queue by a thread that is free.
+     * @return True if the task has been handed off, false if the connection should be shed
+     */
+    public boolean awaitFreeThread(ThreadPoolExecutor executor, Runnable task) {
+        if (this.overloaded || this.maxWaitMillis == 0) return false;
+        boolean handedOff;
+        try {
+            handedOff = executor.getQueue().offer(task, this.maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        this.overloaded = !handedOff;
+        return handedOff;
+    }
+
+    /**
+     * Called once a connection was accepted by the executor without waiting
+     */
+    public void onHandedOff() {
+        this.overloaded = false;
+    }
+
+    /**
+     * Sends the pre-rendered response in one non-blocking write and closes the connection.
+     * The send buffer of a new connection is empty, so the response should always be written completely.
+     */
+    public void shed(SocketChannel channel) {
+        try {
+            channel.configureBlocking(false);
+            this.responseBuffer.clear();
+            channel.write(this.responseBuffer);
+            channel.shutdownOutput();
+            // Closing a connection with unread data makes it reset, which might discard our response before the client reads it
+            this.drainBuffer.clear();
+            channel.read(this.drainBuffer);
+        } catch (IOException e) {
+            // ignore. We are dropping the connection anyway
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static byte[] renderResponse(int retryAfterSeconds) {
+        // There is no Date header, as it's optional for 5xx responses, see https://www.rfc-editor.org/rfc/rfc9110#name-date
+        String response = "HTTP/1.1 " + Status.SERVICE_TIMEOUT.code + " " + Status.SERVICE_TIMEOUT.httpName + "\r\n" +
+                BuiltinHeaders.SERVER.httpName + ": JSmallHTTP\r\n" +
+                "Retry-After: " + retryAfterSeconds + "\r\n" +
+                BuiltinHeaders.CONTENT_LENGTH.httpName + ": 0\r\n" +
+                "Connection: close\r\n" +
+                "\r\n";
+        return response.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,83 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The output stream of a connection, which can hold back complete responses while the next pipelined request has already been received.
+ * The held back responses are written together with the first response that is not held back, or once the connection has to wait for the client.
+ */
+class PipelineOutputStream extends OutputStream {
+    private static final int MAX_DEFERRED_BYTES = 16 * 1024;
+    private final OutputStream out;
+    private byte[] deferred;
+    private int deferredLength = 0;
+    private boolean deferFlush = false;
+
+    PipelineOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @param deferFlush True if flushes should be ignored, so the written data can be sent together with the following responses
+     */
+    void setDeferFlush(boolean deferFlush) {
+        this.deferFlush = deferFlush;
+    }
+
+    /**
+     * @return True if written data is held back or there is held back data that has not been sent yet
+     */
+    boolean isHoldingBack() {
+        return this.deferFlush || this.deferredLength > 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.deferredLength + len <= MAX_DEFERRED_BYTES && (this.deferFlush || this.deferredLength > 0)) {
+            // Either we are holding back this response, or there are already held back responses that this can be sent together with
+            if (this.deferred == null) {
+                this.deferred = new byte[MAX_DEFERRED_BYTES];
+            }
+            System.arraycopy(b, off, this.deferred, this.deferredLength, len);
+            this.deferredLength += len;
+        } else {
+            writeDeferred();
+            this.out.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!this.deferFlush) {
+            writeDeferred();
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Writes all held back data, regardless of whether flushes are currently deferred
+     */
+    void flushDeferred() throws IOException {
+        if (this.deferredLength > 0) {
+            writeDeferred();
+            this.out.flush();
+        }
+    }
+
+    private void writeDeferred() throws IOException {
+        if (this.deferredLength > 0) {
+            int length = this.deferredLength;
+            byte[] deferred = this.deferred;
+            this.deferredLength = 0;
+            // Pipelining clients are rare, so don't keep the buffer around for all connections
+            this.deferred = null;
+            this.out.write(deferred, 0, length);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import de.nocoffeetech.smallhttp.base.RequestBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The body of a request, which starts in the header buffer and continues in the socket stream
+ */
+public abstract class RequestBodyInputStream extends InputStream implements RequestBody {
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @return True if the entire body has been read from the socket, so the next request can be read from the connection
+     */
+    protected abstract boolean isDrained();
+
+    @Override
+    public long getRemainingLength() {
+        return -1;
+    }
+
+    @Override
+    public int read(ByteBuffer target) throws IOException {
+        if (!target.hasRemaining()) return 0;
+        if (target.hasArray()) {
+            int read = read(target.array(), target.arrayOffset() + target.position(), target.remaining());
+            if (read > 0) target.position(target.position() + read);
+            return read;
+        }
+        byte[] bytes = new byte[Math.min(target.remaining(), TRANSFER_BUFFER_SIZE)];
+        int read = read(bytes, 0, bytes.length);
+        if (read > 0) target.put(bytes, 0, read);
+        return read;
+    }
+
+    @Override
+    public long read(ByteBuffer[] targets) throws IOException {
+        long total = 0;
+        for (ByteBuffer target : targets) {
+            if (!target.hasRemaining()) continue;
+            int read = read(target);
+            if (read == -1) return total == 0 ? -1 : total;
+            total += read;
+            // Don't block for more bytes once something has been read
+            if (target.hasRemaining()) break;
+        }
+        return total;
+    }
+
+    @Override
+    public long transferTo(FileChannel target, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        long total = 0;
+        while (read(buffer) != -1) {
+            buffer.flip();
+            total += writeFully(target, buffer, position + total);
+            buffer.clear();
+        }
+        return total;
+    }
+
+    static int writeFully(FileChannel target, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        int written = 0;
+        while (written < length) {
+            written += target.write(buffer, position + written);
+        }
+        return length;
+    }
+}
@@ -13,7 +13,7 @@ public final class ResponseTokenImpl implements ResponseToken {
 
     private ResponseTokenImpl() {}
 
-    static ResponseToken get() {
+    public static ResponseToken get() {
         if (TRACK_RESPONSES) {
             ResponseToken responseToken = TOKEN_TRACKER.get();
             if (responseToken != null) throw new IllegalStateException("A response has already been tracked!");
@@ -22,12 +22,12 @@ public final class ResponseTokenImpl implements ResponseToken {
         return INSTANCE;
     }
 
-    static boolean validate(ResponseToken token) {
+    public static boolean validate(ResponseToken token) {
         clearTracking(true);
         return token == INSTANCE;
     }
 
-    static void clearTracking(boolean check) {
+    public static void clearTracking(boolean check) {
         if (TRACK_RESPONSES) {
             if (check) {
                 ResponseToken responseToken = TOKEN_TRACKER.get();
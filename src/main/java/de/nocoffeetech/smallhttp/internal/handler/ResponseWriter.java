@@ -6,38 +6,65 @@ import de.nocoffeetech.smallhttp.header.BuiltinHeaders;
 import de.nocoffeetech.smallhttp.header.CommonContentTypes;
 import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
 import de.nocoffeetech.smallhttp.header.PrecomputedHeaderKey;
+import de.nocoffeetech.smallhttp.internal.watchdog.ClientHandlerState;
 import de.nocoffeetech.smallhttp.response.*;
-import de.nocoffeetech.smallhttp.util.ResponseDateFormatter;
+import de.nocoffeetech.smallhttp.util.HTTPDateCache;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
-import java.time.Clock;
-import java.time.LocalDateTime;
 
 public class ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter, FixedResponseBodyWriter, ChunkedResponseWriter {
     private static final PrecomputedHeader SERVER_HEADER = PrecomputedHeader.create(BuiltinHeaders.SERVER.headerKey, "JSmallHTTP");
     private static final PrecomputedHeader CHUNKED_ENCODING = PrecomputedHeader.create(BuiltinHeaders.TRANSFER_ENCODING.headerKey, "chunked");
     private static final byte[] CRLF_BYTES = "\r\n".getBytes(StandardCharsets.US_ASCII);
     private static final byte[] TRANSFER_ENCODING_END = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNK_END_WITH_LAST_CHUNK = "\r\n0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * Once the header is sent, the response buffer holds the data of the current chunk.
+     * This much space is kept free in front of the data for the chunk size line, which has at most 8 hex digits followed by CR LF.
+     */
+    private static final int CHUNK_DATA_START = 8 + 2;
+    /**
+     * Space reserved at the start of the response buffer for the status line and the builtin headers.
+     * These are only known once the header gets sent, and are then placed directly in front of the other headers, so the entire header can be sent in one write.
+     */
+    static final int RESERVED_PREFIX_LENGTH = maxVersionLength() + maxStatusLength() + BuiltinHeaders.DATE.headerKey.asciiBytes.length + HTTPDateCache.DATE_LENGTH + 2 + SERVER_HEADER.asciiBytes.length;
+    /** Bodies up to this size are sent together with the header in one gathering write if they don't fit into the response buffer */
+    private static final int MAX_GATHERED_BODY_LENGTH = 64 * 1024;
 
     private final OutputStream stream;
     private final SocketChannel channel;
     private final byte[] responseBuffer;
-    private final Clock clock;
+    private final HTTPDateCache dateCache;
     private final HTTPVersion requestVersion;
-    private int responseBufferNextIndex = 0;
+    private int responseBufferNextIndex = RESERVED_PREFIX_LENGTH;
     private Status status = null;
     private boolean startedSendingData = false;
     private boolean completed = false;
     private boolean chunked = false;
+    /** The amount of bytes to collect before sending a chunk, or 0 if every chunk is sent directly */
+    private int chunkBufferThreshold = 0;
+    private int bufferedChunkLength = 0;
+    /** Counts the framing and the declared body size instead of the actual writes, so bodies written to the raw stream or channel are included */
+    private long bytesWritten = 0;
+    private long headerSentNanos;
+    private long completedNanos;
+    /** If the handler starts draining before the header is sent, the client must be told that the connection gets closed, even if the request handler didn't add the header */
+    private ClientHandlerState handlerState = null;
+    private boolean closeAfterResponse = false;
+    private boolean closeHeaderAdded = false;
 
     public ResponseWriter(OutputStream stream, SocketChannel channel, ReusableClientContext context, HTTPVersion requestVersion) {
         this.stream = stream;
         this.channel = channel;
         this.responseBuffer = context.responseBuffer;
-        this.clock = context.clock;
+        this.dateCache = context.dateCache;
         this.requestVersion = requestVersion;
     }
 
@@ -70,13 +97,63 @@ public class ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter
         return this;
     }
 
+    @Override
+    public ResponseToken sendPrecomputed(PrecomputedResponse response) throws HTTPWriteException {
+        if (response == null) throw new IllegalArgumentException();
+        if (this.startedSendingData || this.status != null) throw new IllegalStateException();
+
+        this.status = response.status;
+        byte[] bytes = isClosingConnection() ? response.closingBytes : response.bytes;
+        byte[] dateHeader = this.dateCache.getDateHeaderBytes();
+        byte[] responseBuffer = this.responseBuffer;
+        int versionLength = this.requestVersion.getHeaderLength();
+        int headerLength = bytes.length - response.bodyLength;
+
+        // Point of no return
+        this.startedSendingData = true;
+        this.headerSentNanos = System.nanoTime();
+        this.bytesWritten += versionLength + bytes.length;
+        try {
+            if (responseBuffer.length - versionLength >= bytes.length) {
+                // The response is shared between threads, so copy it and fill in the version and date in the copy
+                this.requestVersion.writeToHeader(responseBuffer, 0);
+                System.arraycopy(bytes, 0, responseBuffer, versionLength, bytes.length);
+                System.arraycopy(dateHeader, 0, responseBuffer, versionLength + response.dateHeaderOffset, dateHeader.length);
+                this.stream.write(responseBuffer, 0, versionLength + bytes.length);
+            } else if (canWriteToChannel() && responseBuffer.length - versionLength >= headerLength) {
+                // Only copy the header, the body can be sent from the shared response directly
+                this.requestVersion.writeToHeader(responseBuffer, 0);
+                System.arraycopy(bytes, 0, responseBuffer, versionLength, headerLength);
+                System.arraycopy(dateHeader, 0, responseBuffer, versionLength + response.dateHeaderOffset, dateHeader.length);
+                ByteBuffer[] buffers = {
+                        ByteBuffer.wrap(responseBuffer, 0, versionLength + headerLength),
+                        ByteBuffer.wrap(bytes, headerLength, response.bodyLength)
+                };
+                long remaining = versionLength + (long) bytes.length;
+                while (remaining > 0) {
+                    remaining -= this.channel.write(buffers);
+                }
+            } else {
+                int dateEnd = response.dateHeaderOffset + dateHeader.length;
+                this.requestVersion.writeToHeader(this.stream);
+                this.stream.write(bytes, 0, response.dateHeaderOffset);
+                this.stream.write(dateHeader);
+                this.stream.write(bytes, dateEnd, bytes.length - dateEnd);
+            }
+        } catch (IOException e) {
+            throw new HTTPWriteException(e);
+        }
+        return finalizeResponse();
+    }
+
     @Override
     public ResponseHeaderWriter addHeader(PrecomputedHeader header) {
-        byte[] completeAsciiBytes = header.asciiBytes;
-        int requiredLength = responseBufferNextIndex + completeAsciiBytes.length;
-        if (requiredLength > responseBuffer.length) {
-            throw new RuntimeException("Headers get too large, requested size is " + requiredLength + ", but buffer can only fit " + responseBuffer.length + " !");
+        if (header == HTTPClientHandler.CONNECTION_CLOSE_HEADER) {
+            if (this.closeHeaderAdded) return this;
+            this.closeHeaderAdded = true;
         }
+        byte[] completeAsciiBytes = header.asciiBytes;
+        ensureHeaderCapacity(responseBufferNextIndex + completeAsciiBytes.length);
         System.arraycopy(completeAsciiBytes, 0, responseBuffer, responseBufferNextIndex, completeAsciiBytes.length);
         responseBufferNextIndex += completeAsciiBytes.length;
 
@@ -91,10 +168,7 @@ public class ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter
         byte[] responseBuffer = this.responseBuffer;
         byte[] nameBytes = headerKey.asciiBytes;
         byte[] valueBytes = value.getBytes(StandardCharsets.US_ASCII);
-        int requiredLength = responseBufferNextIndex + valueBytes.length + nameBytes.length + 3;
-        if (requiredLength > responseBuffer.length) {
-            throw new RuntimeException("Headers get too large, requested size is " + requiredLength + ", but buffer can only fit " + responseBuffer.length + " !");
-        }
+        ensureHeaderCapacity(responseBufferNextIndex + valueBytes.length + nameBytes.length + 2);
 
         System.arraycopy(nameBytes, 0, responseBuffer, responseBufferNextIndex, nameBytes.length);
         responseBufferNextIndex += nameBytes.length;
@@ -116,6 +190,7 @@ public class ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter
         this.addHeader(BuiltinHeaders.CONTENT_LENGTH.headerKey, String.valueOf(size));
 
         sendHeader();
+        this.bytesWritten += size;
         return this;
     }
 
@@ -130,6 +205,14 @@ public class ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter
         return this;
     }
 
+    @Override
+    public ChunkedResponseWriter beginBodyWithUnknownSize(int bufferSize) throws HTTPWriteException {
+        if (bufferSize <= 0) throw new IllegalArgumentException();
+        beginBodyWithUnknownSize();
+        this.chunkBufferThreshold = Math.min(bufferSize, maxChunkDataLength());
+        return this;
+    }
+
     @Override
     public ResponseToken sendWithoutBody() throws HTTPWriteException {
         if (this.startedSendingData || this.status == null) throw new IllegalStateException();
@@ -138,11 +221,73 @@ public class ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter
         return finalizeResponse();
     }
 
+    @Override
+    public ResponseToken writeBodyAndFlush(String s) throws HTTPWriteException {
+        return writeBodyAndFlush(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public ResponseToken writeBodyAndFlush(String... strings) throws HTTPWriteException {
+        byte[][] arrays = new byte[strings.length][];
+        int length = 0;
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+            length += bytes.length;
+            arrays[i] = bytes;
+        }
+        return writeBodyAndFlush(arrays, length);
+    }
+
+    @Override
+    public ResponseToken writeBodyAndFlush(byte[] bytes) throws HTTPWriteException {
+        return writeBodyAndFlush(new byte[][] {bytes}, bytes.length);
+    }
+
+    private ResponseToken writeBodyAndFlush(byte[][] bodyParts, int bodyLength) throws HTTPWriteException {
+        if (this.startedSendingData || this.status == null) throw new IllegalStateException();
+        this.addHeader(BuiltinHeaders.CONTENT_LENGTH.headerKey, String.valueOf(bodyLength));
+
+        int headerStart = prepareHeader();
+        byte[] responseBuffer = this.responseBuffer;
+        int headerEnd = this.responseBufferNextIndex;
+        this.bytesWritten += bodyLength;
+        try {
+            if (responseBuffer.length - headerEnd >= bodyLength) {
+                // Small enough to fit in behind the header, so everything can be sent in a single write
+                int index = headerEnd;
+                for (byte[] bodyPart : bodyParts) {
+                    System.arraycopy(bodyPart, 0, responseBuffer, index, bodyPart.length);
+                    index += bodyPart.length;
+                }
+                this.stream.write(responseBuffer, headerStart, index - headerStart);
+            } else if (canWriteToChannel() && bodyLength <= MAX_GATHERED_BODY_LENGTH) {
+                ByteBuffer[] buffers = new ByteBuffer[bodyParts.length + 1];
+                buffers[0] = ByteBuffer.wrap(responseBuffer, headerStart, headerEnd - headerStart);
+                for (int i = 0; i < bodyParts.length; i++) {
+                    buffers[i + 1] = ByteBuffer.wrap(bodyParts[i]);
+                }
+                long remaining = (headerEnd - headerStart) + (long) bodyLength;
+                while (remaining > 0) {
+                    remaining -= this.channel.write(buffers);
+                }
+            } else {
+                this.stream.write(responseBuffer, headerStart, headerEnd - headerStart);
+                for (byte[] bodyPart : bodyParts) {
+                    this.stream.write(bodyPart);
+                }
+            }
+        } catch (IOException e) {
+            throw new HTTPWriteException(e);
+        }
+        return finalizeResponse();
+    }
+
     public ResponseStartWriter resetResponseBuilder() {
         if (this.startedSendingData) throw new IllegalStateException();
 
-        this.responseBufferNextIndex = 0;
+        this.responseBufferNextIndex = RESERVED_PREFIX_LENGTH;
         this.status = null;
+        this.closeHeaderAdded = false;
         return this;
     }
 
@@ -163,6 +308,14 @@ public class ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter
     public SocketChannel getRawSocketChannel() {
         if (!this.startedSendingData || completed || chunked) throw new IllegalStateException();
 
+        if (this.channel != null && this.stream instanceof PipelineOutputStream pipeline) {
+            // The held back responses and the header of this response have to be sent before the body is written to the channel
+            try {
+                pipeline.flushDeferred();
+            } catch (IOException e) {
+                // ignore, the connection is broken, so the writes to the channel fail as well
+            }
+        }
         return this.channel;
     }
 
@@ -175,14 +328,41 @@ public class ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter
     public void writeChunk(byte[] data, int offset, int length) throws HTTPWriteException {
         if (!this.startedSendingData || completed || !chunked) throw new IllegalStateException();
         assert data.length - offset >= length;
+        // An empty chunk would mark the end of the body
+        if (length == 0) return;
+
+        if (this.bufferedChunkLength + length < this.chunkBufferThreshold) {
+            System.arraycopy(data, offset, this.responseBuffer, CHUNK_DATA_START + this.bufferedChunkLength, length);
+            this.bufferedChunkLength += length;
+        } else {
+            sendChunk(data, offset, length, false);
+        }
+    }
+
+    @Override
+    public void writeFromInputStream(InputStream stream) throws HTTPWriteException, IOException {
+        if (!this.startedSendingData || completed || !chunked) throw new IllegalStateException();
+
+        // Read directly into the response buffer, so the data doesn't have to be copied before framing it
+        int maxLength = this.chunkBufferThreshold == 0 ? maxChunkDataLength() : this.chunkBufferThreshold;
+        int read;
+        while ((read = stream.read(this.responseBuffer, CHUNK_DATA_START + this.bufferedChunkLength, maxLength - this.bufferedChunkLength)) >= 0) {
+            this.bufferedChunkLength += read;
+            if (this.bufferedChunkLength > 0 && this.bufferedChunkLength >= this.chunkBufferThreshold) {
+                sendChunk(EMPTY, 0, 0, false);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws HTTPWriteException {
+        if (!this.startedSendingData || completed || !chunked) throw new IllegalStateException();
 
-        // See https://www.rfc-editor.org/rfc/rfc9112#name-chunked-transfer-coding
-        byte[] lengthIndicator = Integer.toHexString(length).getBytes(StandardCharsets.US_ASCII);
         try {
-            this.stream.write(lengthIndicator);
-            this.stream.write(CRLF_BYTES);
-            this.stream.write(data, offset, length);
-            this.stream.write(CRLF_BYTES);
+            if (this.bufferedChunkLength > 0) {
+                sendChunk(EMPTY, 0, 0, false);
+            }
+            this.stream.flush();
         } catch (IOException e) {
             throw new HTTPWriteException(e);
         }
@@ -194,51 +374,205 @@ public class ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter
 
         try {
             if (chunked) {
-                this.stream.write(TRANSFER_ENCODING_END); //write the last chunk, see https://www.rfc-editor.org/rfc/rfc9112#name-chunked-transfer-coding
+                //write the last chunk, see https://www.rfc-editor.org/rfc/rfc9112#name-chunked-transfer-coding
+                if (this.bufferedChunkLength > 0) {
+                    sendChunk(EMPTY, 0, 0, true);
+                } else {
+                    this.stream.write(TRANSFER_ENCODING_END);
+                    this.bytesWritten += TRANSFER_ENCODING_END.length;
+                }
             }
             this.stream.flush();
         } catch (IOException e) {
             throw new HTTPWriteException(e);
         }
         this.completed = true;
+        this.completedNanos = System.nanoTime();
         return ResponseTokenImpl.get();
     }
 
+    /**
+     * Sends the buffered chunk data followed by the given data as a single chunk, see <a href="https://www.rfc-editor.org/rfc/rfc9112#name-chunked-transfer-coding">RFC 9112</a>.
+     * The chunk size line is placed directly in front of the buffered data, so the entire chunk is sent in one write.
+     * @param lastChunk True to append the last chunk, which ends the body
+     */
+    private void sendChunk(byte[] data, int offset, int length, boolean lastChunk) throws HTTPWriteException {
+        byte[] responseBuffer = this.responseBuffer;
+        int bufferedEnd = CHUNK_DATA_START + this.bufferedChunkLength;
+        responseBuffer[CHUNK_DATA_START - 2] = '\r';
+        responseBuffer[CHUNK_DATA_START - 1] = '\n';
+        int chunkStart = writeHex(this.bufferedChunkLength + length, responseBuffer, CHUNK_DATA_START - 2);
+        byte[] chunkEnd = lastChunk ? CHUNK_END_WITH_LAST_CHUNK : CRLF_BYTES;
+        this.bufferedChunkLength = 0;
+        this.bytesWritten += (bufferedEnd - chunkStart) + (long) length + chunkEnd.length;
+        try {
+            if (responseBuffer.length - bufferedEnd - chunkEnd.length >= length) {
+                System.arraycopy(data, offset, responseBuffer, bufferedEnd, length);
+                System.arraycopy(chunkEnd, 0, responseBuffer, bufferedEnd + length, chunkEnd.length);
+                this.stream.write(responseBuffer, chunkStart, bufferedEnd + length + chunkEnd.length - chunkStart);
+            } else if (canWriteToChannel()) {
+                ByteBuffer[] buffers = {
+                        ByteBuffer.wrap(responseBuffer, chunkStart, bufferedEnd - chunkStart),
+                        ByteBuffer.wrap(data, offset, length),
+                        ByteBuffer.wrap(chunkEnd)
+                };
+                long remaining = (bufferedEnd - chunkStart) + (long) length + chunkEnd.length;
+                while (remaining > 0) {
+                    remaining -= this.channel.write(buffers);
+                }
+            } else {
+                this.stream.write(responseBuffer, chunkStart, bufferedEnd - chunkStart);
+                this.stream.write(data, offset, length);
+                this.stream.write(chunkEnd);
+            }
+        } catch (IOException e) {
+            throw new HTTPWriteException(e);
+        }
+    }
+
+    /**
+     * Adds a Connection: close header to the response if the handler is draining once the header is sent, unless it has already been added.
+     * See <a href="https://www.rfc-editor.org/rfc/rfc9112#name-tear-down">RFC 9112</a>
+     */
+    void setHandlerState(ClientHandlerState handlerState) {
+        this.handlerState = handlerState;
+    }
+
+    /**
+     * Adds a Connection: close header to the response if the header is sent while this is set, as the connection is closed afterwards.
+     */
+    void setCloseAfterResponse(boolean closeAfterResponse) {
+        this.closeAfterResponse = closeAfterResponse;
+    }
+
+    private boolean isClosingConnection() {
+        return this.closeAfterResponse || (this.handlerState != null && this.handlerState.isDraining());
+    }
+
+    /**
+     * @return True once the response has been sent completely
+     */
+    boolean isCompleted() {
+        return this.completed;
+    }
+
+    Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * @return The amount of bytes of the response so far, including the header and the chunk framing
+     */
+    long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    /**
+     * @return The time from sending the header until the response was completed, only valid once {@link #isCompleted()} is true
+     */
+    long getWriteNanos() {
+        return this.completedNanos - this.headerSentNanos;
+    }
+
+    /**
+     * Writes the value as lowercase hex digits so that the last digit is directly in front of the end index
+     * @return The index of the first digit
+     */
+    static int writeHex(int value, byte[] target, int end) {
+        assert value >= 0;
+        int index = end;
+        do {
+            target[--index] = HEX_DIGITS[value & 0xF];
+            value >>>= 4;
+        } while (value != 0);
+        return index;
+    }
+
+    /**
+     * @return The largest amount of data that fits in a chunk in the response buffer, leaving space for the framing and the last chunk
+     */
+    private int maxChunkDataLength() {
+        return this.responseBuffer.length - CHUNK_DATA_START - CHUNK_END_WITH_LAST_CHUNK.length;
+    }
 
     private void sendHeader() throws HTTPWriteException {
+        int headerStart = prepareHeader();
+        try {
+            this.stream.write(this.responseBuffer, headerStart, this.responseBufferNextIndex - headerStart);
+            this.stream.flush();
+        } catch (IOException e) {
+            throw new HTTPWriteException(e);
+        }
+    }
+
+    /**
+     * Completes the header block in the response buffer by placing the status line and builtin headers in the reserved space in front of the other headers
+     * and appending the final CR LF. After this call, the header block ranges from the returned index to {@link #responseBufferNextIndex}.
+     * @return The start index of the header block
+     */
+    private int prepareHeader() {
+        if (isClosingConnection()) {
+            addHeader(HTTPClientHandler.CONNECTION_CLOSE_HEADER);
+        }
         // Prepare remaining builtin headers
-        byte[] dateKey = BuiltinHeaders.DATE.headerKey.asciiBytes;
-        byte[] dateValue = ResponseDateFormatter.format(LocalDateTime.now(clock)).getBytes(StandardCharsets.US_ASCII);
+        byte[] dateHeader = this.dateCache.getDateHeaderBytes();
         byte[] serverHeader = SERVER_HEADER.asciiBytes;
+        byte[] responseBuffer = this.responseBuffer;
 
         // Point of no return
         this.startedSendingData = true;
+        this.headerSentNanos = System.nanoTime();
+
+        int headerStart = RESERVED_PREFIX_LENGTH - this.requestVersion.getHeaderLength() - this.status.getHeaderLength() - dateHeader.length - serverHeader.length;
         // Start with status line (https://www.rfc-editor.org/rfc/rfc9112#name-status-line)
-        OutputStream stream = this.stream;
+        int index = this.requestVersion.writeToHeader(responseBuffer, headerStart);
+        index = this.status.writeToHeader(responseBuffer, index);
+        // Continue with builtin headers
+
+        // Date header
+        System.arraycopy(dateHeader, 0, responseBuffer, index, dateHeader.length);
+        index += dateHeader.length;
+
+        // Server header
+        System.arraycopy(serverHeader, 0, responseBuffer, index, serverHeader.length);
+        index += serverHeader.length;
+        assert index == RESERVED_PREFIX_LENGTH;
+
+        // The other headers are already in place, end with a last CR LF to signal start of body
+        responseBuffer[this.responseBufferNextIndex] = '\r';
+        responseBuffer[this.responseBufferNextIndex + 1] = '\n';
+        this.responseBufferNextIndex += 2;
+        this.bytesWritten += this.responseBufferNextIndex - headerStart;
+        return headerStart;
+    }
 
-        try {
-            this.requestVersion.writeToHeader(stream);
-            this.status.writeToHeader(stream);
-            // Continue with builtin headers and write them directly
-
-            // Date header
-            stream.write(dateKey);
-            stream.write(dateValue);
-            stream.write('\r');
-            stream.write('\n');
-
-            // Server header
-            stream.write(serverHeader);
-
-            // Write the other header bytes
-            stream.write(this.responseBuffer, 0, this.responseBufferNextIndex);
-            // End with a last CR LF to signal start of body
-            stream.write('\r');
-            stream.write('\n');
-
-            stream.flush();
-        } catch (IOException e) {
-            throw new HTTPWriteException(e);
+    /**
+     * @return True if data can be written to the channel directly without overtaking responses held back by the pipeline stream
+     */
+    private boolean canWriteToChannel() {
+        return this.channel != null && !(this.stream instanceof PipelineOutputStream pipeline && pipeline.isHoldingBack());
+    }
+
+    private void ensureHeaderCapacity(int requiredLength) {
+        // Always keep space for the final CR LF
+        if (requiredLength + 2 > responseBuffer.length) {
+            throw new RuntimeException("Headers get too large, requested size is " + (requiredLength - RESERVED_PREFIX_LENGTH) + ", but buffer can only fit " + (responseBuffer.length - RESERVED_PREFIX_LENGTH - 2) + " !");
+        }
+    }
+
+    private static int maxVersionLength() {
+        int max = 0;
+        for (HTTPVersion version : HTTPVersion.values()) {
+            max = Math.max(max, version.getHeaderLength());
+        }
+        return max;
+    }
+
+    private static int maxStatusLength() {
+        int max = 0;
+        for (Status status : Status.values()) {
+            max = Math.max(max, status.getHeaderLength());
         }
+        return max;
     }
 }
@@ -1,17 +1,20 @@
 package de.nocoffeetech.smallhttp.internal.handler;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-public class RestBufInputStream extends InputStream {
+public class RestBufInputStream extends RequestBodyInputStream {
     private final byte[] buf;
     private final int readEnd;
     private final InputStream restStream;
-    private final int restStreamRead;
+    private final long restStreamRead;
     private int bufIndex;
-    private int readStream;
+    private long readStream;
 
-    public RestBufInputStream(byte[] buf, int readStart, int readEnd, InputStream restStream, int totalContentLength) {
+    public RestBufInputStream(byte[] buf, int readStart, int readEnd, InputStream restStream, long totalContentLength) {
         this.buf = buf;
         this.bufIndex = readStart;
         this.readEnd = readEnd;
@@ -20,16 +23,22 @@ public class RestBufInputStream extends InputStream {
         this.readStream = 0;
     }
 
-    boolean isDrained() {
+    @Override
+    protected boolean isDrained() {
         return readStream >= restStreamRead;
     }
 
+    @Override
+    public long getRemainingLength() {
+        return (readEnd - bufIndex) + (restStreamRead - readStream);
+    }
+
     @Override
     public int available() throws IOException {
         if (readEnd > bufIndex) {
             return readEnd - bufIndex;
         } else if (restStreamRead > readStream) {
-            return Math.min(restStream.available(), restStreamRead - readStream);
+            return (int) Math.min(restStream.available(), restStreamRead - readStream);
         } else {
             return 0;
         }
@@ -65,7 +74,7 @@ public class RestBufInputStream extends InputStream {
             bufIndex += lengthToCopy;
             return lengthToCopy;
         } else if (restStreamRead > readStream) {
-            int lengthToRead = Math.min(restStreamRead - readStream, len);
+            int lengthToRead = (int) Math.min(restStreamRead - readStream, len);
             int actualRead = restStream.read(b, off, lengthToRead);
             if (actualRead != -1)
                 readStream += actualRead;
@@ -76,6 +85,55 @@ public class RestBufInputStream extends InputStream {
         return -1;
     }
 
+    @Override
+    public int read(ByteBuffer target) throws IOException {
+        if (!target.hasRemaining()) return 0;
+        if (readEnd > bufIndex) {
+            int lengthToCopy = Math.min(readEnd - bufIndex, target.remaining());
+            target.put(buf, bufIndex, lengthToCopy);
+            bufIndex += lengthToCopy;
+            return lengthToCopy;
+        } else if (restStreamRead > readStream && restStream instanceof CountingInputStream connection && connection.canReadDirect()) {
+            // Never read beyond the body, the connection might already contain the next request
+            int limit = target.limit();
+            target.limit(target.position() + (int) Math.min(restStreamRead - readStream, target.remaining()));
+            int actualRead;
+            try {
+                actualRead = connection.readDirect(target);
+            } finally {
+                target.limit(limit);
+            }
+            if (actualRead != -1)
+                readStream += actualRead;
+            else
+                readStream = restStreamRead;
+            return actualRead;
+        }
+        return super.read(target);
+    }
+
+    @Override
+    public long transferTo(FileChannel target, long position) throws IOException {
+        if (!(restStream instanceof CountingInputStream connection) || !connection.canReadDirect()) {
+            return super.transferTo(target, position);
+        }
+        long total = 0;
+        if (readEnd > bufIndex) {
+            total += writeFully(target, ByteBuffer.wrap(buf, bufIndex, readEnd - bufIndex), position);
+            bufIndex = readEnd;
+        }
+        while (restStreamRead > readStream) {
+            long transferred = connection.transferDirect(target, position + total, restStreamRead - readStream);
+            if (transferred == 0) {
+                readStream = restStreamRead;
+                throw new EOFException("Premature end of body");
+            }
+            readStream += transferred;
+            total += transferred;
+        }
+        return total;
+    }
+
     @Override
     public long skip(long n) throws IOException {
         if (n <= 0) {
@@ -87,7 +145,7 @@ public class RestBufInputStream extends InputStream {
             bufIndex += lengthToSkip;
             return lengthToSkip;
         } else if (restStreamRead > readStream) {
-            int lengthToSkip = Math.min(restStreamRead - readStream, len);
+            long lengthToSkip = Math.min(restStreamRead - readStream, len);
             long actualSkip = restStream.skip(lengthToSkip);
             readStream += actualSkip;
             return actualSkip;
@@ -1,22 +1,114 @@
 package de.nocoffeetech.smallhttp.internal.handler;
 
+import de.nocoffeetech.smallhttp.internal.watchdog.CoarseClock;
+import de.nocoffeetech.smallhttp.util.HTTPDateCache;
+
 import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * The state a connection needs while a request is parsed and answered.
+ * The buffers are borrowed from the {@link BufferPool} of the server and only held while they are needed, see {@link #acquireBuffers(int)}.
+ */
 class ReusableClientContext {
-    public final byte[] headerBuffer;
-    public final byte[] responseBuffer;
-    public final Clock clock;
+    /** Shared by all contexts, reading the time from the coarse clock instead of the system clock for every response */
+    private static final HTTPDateCache COARSE_DATE_CACHE = new HTTPDateCache(CoarseClock.wallClock());
+    private final BufferPool pool;
+    /** Header buffers that have been replaced by a larger one. Parts of the current request might still point into them, so they are released with the request. */
+    private final List<byte[]> retiredHeaderBuffers = new ArrayList<>(2);
+    public byte[] headerBuffer;
+    public byte[] responseBuffer;
+    public final HeaderIndex headerIndex;
+    public final HTTPDateCache dateCache;
+
+    ReusableClientContext(BufferPool pool) {
+        this.pool = pool;
+        this.headerIndex = new HeaderIndex(null);
+        this.dateCache = COARSE_DATE_CACHE;
+    }
 
+    /**
+     * Creates a context with its own buffers that are not part of a pool, for tests and benchmarks
+     */
     ReusableClientContext() {
-        this(Clock.systemUTC());
+        this(COARSE_DATE_CACHE);
     }
 
     ReusableClientContext(Clock clock) {
+        this(new HTTPDateCache(clock));
+    }
+
+    private ReusableClientContext(HTTPDateCache dateCache) {
+        this.pool = null;
         this.headerBuffer = new byte[InternalConstants.MAX_HEADER_SIZE_BYTES];
-        this.responseBuffer = new byte[InternalConstants.MAX_HEADER_SIZE_BYTES];
-        this.clock = clock;
+        this.responseBuffer = new byte[BufferPool.RESPONSE_BUFFER_SIZE];
+        this.headerIndex = new HeaderIndex(this.headerBuffer);
+        this.dateCache = dateCache;
+    }
+
+    boolean hasBuffers() {
+        return this.headerBuffer != null;
+    }
+
+    /**
+     * Borrows the buffers from the pool
+     * @param minHeaderSize The minimum size of the header buffer, in case more bytes of the request have been read already
+     */
+    void acquireBuffers(int minHeaderSize) {
+        this.headerBuffer = this.pool.acquire(Math.max(minHeaderSize, InternalConstants.MAX_HEADER_SIZE_BYTES));
+        this.responseBuffer = this.pool.acquireResponseBuffer();
+        this.headerIndex.setBuffer(this.headerBuffer);
+    }
+
+    /**
+     * Returns the buffers to the pool. They must not be used anymore afterward.
+     */
+    void releaseBuffers() {
+        releaseRetiredHeaderBuffers();
+        this.pool.release(this.headerBuffer);
+        this.pool.release(this.responseBuffer);
+        this.headerBuffer = null;
+        this.responseBuffer = null;
+        this.headerIndex.setBuffer(null);
+    }
+
+    /**
+     * @return The maximum size of a request head
+     */
+    int getMaxHeaderSize() {
+        return this.pool == null ? InternalConstants.MAX_HEADER_SIZE_BYTES : this.pool.getMaxHeaderSize();
+    }
+
+    /**
+     * Replaces the header buffer with one of the next size class, keeping the bytes that have been read so far
+     * @param length The amount of bytes to keep
+     * @return False if the header buffer already has the maximum size
+     */
+    boolean growHeaderBuffer(int length) {
+        if (this.pool == null || this.headerBuffer.length >= this.pool.getMaxHeaderSize() || this.headerBuffer.length >= this.pool.getMaxBufferSize()) {
+            return false;
+        }
+        byte[] oldBuffer = this.headerBuffer;
+        byte[] newBuffer = this.pool.acquire(oldBuffer.length + 1);
+        System.arraycopy(oldBuffer, 0, newBuffer, 0, length);
+        this.retiredHeaderBuffers.add(oldBuffer);
+        this.headerBuffer = newBuffer;
+        this.headerIndex.setBuffer(newBuffer);
+        return true;
     }
 
     void reset() {
+        this.headerIndex.reset();
+        if (this.pool != null) {
+            releaseRetiredHeaderBuffers();
+        }
+    }
+
+    private void releaseRetiredHeaderBuffers() {
+        for (byte[] buffer : this.retiredHeaderBuffers) {
+            this.pool.release(buffer);
+        }
+        this.retiredHeaderBuffers.clear();
     }
 }
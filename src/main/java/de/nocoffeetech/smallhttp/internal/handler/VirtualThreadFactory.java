@@ -0,0 +1,57 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads if the running JVM supports them (Java 21+).
+ * As this library is compiled against Java 17, the builder API is accessed reflectively once.
+ */
+public class VirtualThreadFactory {
+    private static final ThreadFactory UNNAMED_FACTORY;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method OF_VIRTUAL;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        ThreadFactory unnamedFactory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            unnamedFactory = (ThreadFactory) builderFactory.invoke(ofVirtual.invoke(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not supported by this JVM
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        UNNAMED_FACTORY = unnamedFactory;
+    }
+
+    public static boolean isSupported() {
+        return UNNAMED_FACTORY != null;
+    }
+
+    /**
+     * Creates a new factory for virtual threads
+     * @param namePrefix The prefix of the thread names, followed by a counter
+     * @return The factory
+     * @throws UnsupportedOperationException If the JVM does not support virtual threads
+     */
+    public static ThreadFactory create(String namePrefix) {
+        if (!isSupported()) throw new UnsupportedOperationException("Virtual threads require Java 21 or newer!");
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            // Should not happen as we could create a factory in the static initializer
+            return UNNAMED_FACTORY;
+        }
+    }
+}
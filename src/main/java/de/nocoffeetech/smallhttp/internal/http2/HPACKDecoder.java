@@ -0,0 +1,209 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes header blocks, see <a href="https://www.rfc-editor.org/rfc/rfc7541">RFC 7541</a>.
+ * The dynamic table is shared by all header blocks of a connection, so the blocks must be decoded in the order they were received, even if the stream is discarded.
+ * Any error while decoding is a connection error, as the state of the table is unknown afterward.
+ */
+class HPACKDecoder {
+    /** The static table, index 0 is unused. See https://www.rfc-editor.org/rfc/rfc7541#appendix-A */
+    static final String[] STATIC_NAMES = {
+            null, ":authority", ":method", ":method", ":path", ":path", ":scheme", ":scheme",
+            ":status", ":status", ":status", ":status", ":status", ":status", ":status",
+            "accept-charset", "accept-encoding", "accept-language", "accept-ranges", "accept", "access-control-allow-origin",
+            "age", "allow", "authorization", "cache-control", "content-disposition", "content-encoding", "content-language",
+            "content-length", "content-location", "content-range", "content-type", "cookie", "date", "etag", "expect",
+            "expires", "from", "host", "if-match", "if-modified-since", "if-none-match", "if-range", "if-unmodified-since",
+            "last-modified", "link", "location", "max-forwards", "proxy-authenticate", "proxy-authorization", "range",
+            "referer", "refresh", "retry-after", "server", "set-cookie", "strict-transport-security", "transfer-encoding",
+            "user-agent", "vary", "via", "www-authenticate"
+    };
+    static final String[] STATIC_VALUES = {
+            null, "", "GET", "POST", "/", "/index.html", "http", "https",
+            "200", "204", "206", "304", "400", "404", "500",
+            "", "gzip, deflate", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "",
+            "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", "", ""
+    };
+    private static final int STATIC_TABLE_LENGTH = STATIC_NAMES.length - 1;
+    /** See https://www.rfc-editor.org/rfc/rfc7541#section-4.1 */
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private final int maxTableSize;
+    // The dynamic table as ring buffer, the newest entry is right before head
+    private final String[] names;
+    private final String[] values;
+    private int head = 0;
+    private int count = 0;
+    private int tableSize = 0;
+    private int currentMaxTableSize;
+    private byte[] huffmanBuffer = new byte[256];
+    // The block that is currently being decoded
+    private byte[] block;
+    private int position;
+    private int end;
+
+    /**
+     * @param maxTableSize The largest size of the dynamic table the client may use, as announced with SETTINGS_HEADER_TABLE_SIZE
+     */
+    HPACKDecoder(int maxTableSize) {
+        this.maxTableSize = maxTableSize;
+        this.currentMaxTableSize = maxTableSize;
+        int capacity = maxTableSize / ENTRY_OVERHEAD + 1;
+        this.names = new String[capacity];
+        this.values = new String[capacity];
+    }
+
+    /**
+     * Receives the decoded fields of a header block
+     */
+    interface FieldConsumer {
+        void accept(String name, String value) throws HTTP2Exception;
+    }
+
+    /**
+     * Decodes a complete header block
+     * @param consumer Called for each field in the order they appear in the block
+     */
+    void decode(byte[] block, int offset, int length, FieldConsumer consumer) throws HTTP2Exception {
+        this.block = block;
+        this.position = offset;
+        this.end = offset + length;
+        boolean fieldsStarted = false;
+        try {
+            while (this.position < this.end) {
+                int b = block[this.position] & 0xFF;
+                if ((b & 0x80) != 0) {
+                    // Indexed field, see https://www.rfc-editor.org/rfc/rfc7541#section-6.1
+                    int index = readInteger(7);
+                    consumer.accept(getName(index), getValue(index));
+                    fieldsStarted = true;
+                } else if ((b & 0x40) != 0) {
+                    // Literal with incremental indexing, see https://www.rfc-editor.org/rfc/rfc7541#section-6.2.1
+                    int index = readInteger(6);
+                    String name = index == 0 ? readString() : getName(index);
+                    String value = readString();
+                    addEntry(name, value);
+                    consumer.accept(name, value);
+                    fieldsStarted = true;
+                } else if ((b & 0x20) != 0) {
+                    // Dynamic table size update, only allowed at the start of a block. See https://www.rfc-editor.org/rfc/rfc7541#section-4.2
+                    if (fieldsStarted) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Table size update after a header field");
+                    int size = readInteger(5);
+                    if (size > this.maxTableSize) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Table size update exceeds the maximum");
+                    this.currentMaxTableSize = size;
+                    evict(0);
+                } else {
+                    // Literal without indexing or never indexed, which are the same for us. See https://www.rfc-editor.org/rfc/rfc7541#section-6.2.2
+                    int index = readInteger(4);
+                    String name = index == 0 ? readString() : getName(index);
+                    consumer.accept(name, readString());
+                    fieldsStarted = true;
+                }
+            }
+        } finally {
+            this.block = null;
+        }
+    }
+
+    /**
+     * Reads an integer with the given prefix, see <a href="https://www.rfc-editor.org/rfc/rfc7541#section-5.1">RFC 7541</a>
+     */
+    private int readInteger(int prefixBits) throws HTTP2Exception {
+        int mask = (1 << prefixBits) - 1;
+        int value = this.block[this.position++] & mask;
+        if (value < mask) return value;
+        long result = value;
+        int shift = 0;
+        while (true) {
+            if (this.position >= this.end) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Premature end of integer");
+            int b = this.block[this.position++] & 0xFF;
+            result += (long) (b & 0x7F) << shift;
+            if (result > Integer.MAX_VALUE) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Integer overflow");
+            if ((b & 0x80) == 0) return (int) result;
+            shift += 7;
+        }
+    }
+
+    /**
+     * Reads a string literal, see <a href="https://www.rfc-editor.org/rfc/rfc7541#section-5.2">RFC 7541</a>
+     */
+    private String readString() throws HTTP2Exception {
+        if (this.position >= this.end) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Premature end of header block");
+        boolean huffman = (this.block[this.position] & 0x80) != 0;
+        int length = readInteger(7);
+        if (length > this.end - this.position) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "String exceeds the header block");
+        int start = this.position;
+        this.position += length;
+        if (!huffman) {
+            return new String(this.block, start, length, StandardCharsets.ISO_8859_1);
+        }
+        int maxDecodedLength = length * 8 / 5;
+        if (this.huffmanBuffer.length < maxDecodedLength) {
+            this.huffmanBuffer = new byte[maxDecodedLength];
+        }
+        int decoded = Huffman.decode(this.block, start, length, this.huffmanBuffer);
+        return new String(this.huffmanBuffer, 0, decoded, StandardCharsets.ISO_8859_1);
+    }
+
+    private String getName(int index) throws HTTP2Exception {
+        if (index <= STATIC_TABLE_LENGTH) {
+            if (index == 0) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Invalid index 0");
+            return STATIC_NAMES[index];
+        }
+        return this.names[dynamicSlot(index)];
+    }
+
+    private String getValue(int index) throws HTTP2Exception {
+        if (index <= STATIC_TABLE_LENGTH) {
+            if (index == 0) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Invalid index 0");
+            return STATIC_VALUES[index];
+        }
+        return this.values[dynamicSlot(index)];
+    }
+
+    private int dynamicSlot(int index) throws HTTP2Exception {
+        int dynamicIndex = index - STATIC_TABLE_LENGTH - 1;
+        if (dynamicIndex >= this.count) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Invalid index " + index);
+        return Math.floorMod(this.head - 1 - dynamicIndex, this.names.length);
+    }
+
+    /**
+     * Adds an entry to the dynamic table, evicting the oldest entries until it fits. See <a href="https://www.rfc-editor.org/rfc/rfc7541#section-4.4">RFC 7541</a>
+     */
+    private void addEntry(String name, String value) {
+        int size = name.length() + value.length() + ENTRY_OVERHEAD;
+        if (size > this.currentMaxTableSize) {
+            // Not an error, the table is just empty afterward
+            evict(this.currentMaxTableSize);
+            return;
+        }
+        evict(size);
+        this.names[this.head] = name;
+        this.values[this.head] = value;
+        this.head = (this.head + 1) % this.names.length;
+        this.count++;
+        this.tableSize += size;
+    }
+
+    /**
+     * Removes the oldest entries until the given amount of space is free
+     */
+    private void evict(int requiredSpace) {
+        while (this.count > 0 && this.tableSize + requiredSpace > this.currentMaxTableSize) {
+            int oldest = Math.floorMod(this.head - this.count, this.names.length);
+            this.tableSize -= this.names[oldest].length() + this.values[oldest].length() + ENTRY_OVERHEAD;
+            this.names[oldest] = null;
+            this.values[oldest] = null;
+            this.count--;
+        }
+    }
+
+    /**
+     * @return The size of the dynamic table as defined in <a href="https://www.rfc-editor.org/rfc/rfc7541#section-4.1">RFC 7541</a>
+     */
+    int getTableSize() {
+        return this.tableSize;
+    }
+}
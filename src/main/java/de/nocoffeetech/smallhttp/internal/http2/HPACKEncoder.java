@@ -0,0 +1,194 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeaderKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes the header block of a response, see <a href="https://www.rfc-editor.org/rfc/rfc7541">RFC 7541</a>.
+ * The dynamic table is never used, so every block can be encoded independently of the others and the encoded form of precomputed headers can be cached.
+ * Names known to the static table are referenced by their index, all other names and values are sent as literals, using the Huffman code if that's shorter.
+ * <br>
+ * Header names are lowercased, and headers that are specific to HTTP/1 connections are dropped, as they must not be sent in HTTP/2, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-connection-specific-header-">RFC 9113</a>.
+ */
+class HPACKEncoder {
+    private static final Set<String> CONNECTION_SPECIFIC_HEADERS = Set.of("connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+    private static final Map<String, Integer> STATIC_NAME_INDEX = new HashMap<>();
+    private static final byte[] DROPPED = new byte[0];
+    // Encoded once per key or header, like the precomputed headers themselves
+    private static final Map<PrecomputedHeaderKey, byte[]> NAME_CACHE = new ConcurrentHashMap<>();
+    private static final Map<PrecomputedHeader, byte[]> HEADER_CACHE = new ConcurrentHashMap<>();
+    private static final int STATUS_NAME_INDEX = 8;
+    /** The encoded :status field of each status, by ordinal */
+    private static final byte[][] STATUS_FIELDS;
+
+    static {
+        // Prefer the first index of each name, the pseudo headers are never looked up by name
+        for (int i = HPACKDecoder.STATIC_NAMES.length - 1; i > 0; i--) {
+            STATIC_NAME_INDEX.put(HPACKDecoder.STATIC_NAMES[i], i);
+        }
+        Status[] statuses = Status.values();
+        STATUS_FIELDS = new byte[statuses.length][];
+        for (Status status : statuses) {
+            STATUS_FIELDS[status.ordinal()] = encodeStatusField(status);
+        }
+    }
+
+    private byte[] buffer;
+    private int length = 0;
+
+    HPACKEncoder(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Removes all encoded fields
+     */
+    void reset() {
+        this.length = 0;
+    }
+
+    byte[] getBuffer() {
+        return this.buffer;
+    }
+
+    int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Encodes the :status pseudo header, which must come before all other fields
+     */
+    void encodeStatus(Status status) {
+        byte[] field = STATUS_FIELDS[status.ordinal()];
+        append(field, 0, field.length);
+    }
+
+    void encodeHeader(PrecomputedHeader header) {
+        byte[] encoded = HEADER_CACHE.computeIfAbsent(header, HPACKEncoder::encodePrecomputed);
+        append(encoded, 0, encoded.length);
+    }
+
+    void encodeHeader(PrecomputedHeaderKey key, String value) {
+        byte[] name = NAME_CACHE.computeIfAbsent(key, HPACKEncoder::encodeName);
+        if (name == DROPPED) return;
+        append(name, 0, name.length);
+        byte[] valueBytes = value.getBytes(StandardCharsets.US_ASCII);
+        encodeString(valueBytes, 0, valueBytes.length);
+    }
+
+    /**
+     * Encodes a header with a name from the static table, without checking if the header is connection specific
+     */
+    void encodeHeader(int staticNameIndex, byte[] value, int offset, int length) {
+        ensureCapacity(5);
+        this.length = writeInteger(this.buffer, this.length, 0x00, 4, staticNameIndex);
+        encodeString(value, offset, length);
+    }
+
+    /**
+     * Appends fields that have already been encoded
+     */
+    void append(byte[] encoded, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(encoded, offset, this.buffer, this.length, length);
+        this.length += length;
+    }
+
+    private void encodeString(byte[] value, int offset, int length) {
+        int huffmanLength = Huffman.encodedLength(value, offset, length);
+        ensureCapacity(5 + Math.min(huffmanLength, length));
+        if (huffmanLength < length) {
+            this.length = writeInteger(this.buffer, this.length, 0x80, 7, huffmanLength);
+            this.length = Huffman.encode(value, offset, length, this.buffer, this.length);
+        } else {
+            this.length = writeInteger(this.buffer, this.length, 0x00, 7, length);
+            System.arraycopy(value, offset, this.buffer, this.length, length);
+            this.length += length;
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (this.length + additional > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.length + additional));
+        }
+    }
+
+    /**
+     * Writes an integer with the given prefix, see <a href="https://www.rfc-editor.org/rfc/rfc7541#section-5.1">RFC 7541</a>
+     * @param flags The bits of the first byte in front of the prefix
+     * @return The index after the last written byte
+     */
+    static int writeInteger(byte[] target, int offset, int flags, int prefixBits, int value) {
+        int mask = (1 << prefixBits) - 1;
+        if (value < mask) {
+            target[offset++] = (byte) (flags | value);
+            return offset;
+        }
+        target[offset++] = (byte) (flags | mask);
+        value -= mask;
+        while (value >= 0x80) {
+            target[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static byte[] encodeStatusField(Status status) {
+        String code = String.valueOf(status.code);
+        for (int i = STATUS_NAME_INDEX; i < STATUS_NAME_INDEX + 7; i++) {
+            if (HPACKDecoder.STATIC_VALUES[i].equals(code)) {
+                // The entire field is in the static table
+                return new byte[] {(byte) (0x80 | i)};
+            }
+        }
+        byte[] value = code.getBytes(StandardCharsets.US_ASCII);
+        // Literal without indexing with an indexed name, the index and the length both fit into the prefix
+        byte[] field = new byte[2 + value.length];
+        field[0] = STATUS_NAME_INDEX;
+        field[1] = (byte) value.length;
+        System.arraycopy(value, 0, field, 2, value.length);
+        return field;
+    }
+
+    /**
+     * @return The name as the start of a literal field without indexing, or {@link #DROPPED} if the header must not be sent
+     */
+    private static byte[] encodeName(PrecomputedHeaderKey key) {
+        // The key ends with the colon
+        String name = new String(key.asciiBytes, 0, key.asciiBytes.length - 1, StandardCharsets.US_ASCII).toLowerCase(Locale.ROOT);
+        if (CONNECTION_SPECIFIC_HEADERS.contains(name)) return DROPPED;
+        HPACKEncoder encoder = new HPACKEncoder(name.length() + 8);
+        Integer index = STATIC_NAME_INDEX.get(name);
+        if (index != null) {
+            encoder.length = writeInteger(encoder.buffer, 0, 0x00, 4, index);
+        } else {
+            encoder.buffer[encoder.length++] = 0x00;
+            byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+            encoder.encodeString(nameBytes, 0, nameBytes.length);
+        }
+        return Arrays.copyOf(encoder.buffer, encoder.length);
+    }
+
+    private static byte[] encodePrecomputed(PrecomputedHeader header) {
+        byte[] bytes = header.asciiBytes;
+        int colon = 0;
+        while (bytes[colon] != ':') colon++;
+        byte[] name = NAME_CACHE.computeIfAbsent(PrecomputedHeaderKey.create(new String(bytes, 0, colon, StandardCharsets.US_ASCII)), HPACKEncoder::encodeName);
+        if (name == DROPPED) return DROPPED;
+        HPACKEncoder encoder = new HPACKEncoder(bytes.length + 8);
+        encoder.append(name, 0, name.length);
+        // The value ends with CR LF
+        encoder.encodeString(bytes, colon + 1, bytes.length - colon - 3);
+        return Arrays.copyOf(encoder.buffer, encoder.length);
+    }
+}
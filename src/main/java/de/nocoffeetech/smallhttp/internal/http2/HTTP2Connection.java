@@ -0,0 +1,1048 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import de.nocoffeetech.smallhttp.data.Method;
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
+import de.nocoffeetech.smallhttp.internal.handler.ResponseTokenImpl;
+import de.nocoffeetech.smallhttp.internal.watchdog.ClientHandlerState;
+import de.nocoffeetech.smallhttp.internal.watchdog.CoarseClock;
+import de.nocoffeetech.smallhttp.response.HTTPWriteException;
+import de.nocoffeetech.smallhttp.response.ResponseHeaderWriter;
+import de.nocoffeetech.smallhttp.response.ResponseToken;
+import de.nocoffeetech.smallhttp.util.HTTPDateCache;
+import de.nocoffeetech.smallhttp.util.URLParser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * An HTTP/2 connection, see <a href="https://www.rfc-editor.org/rfc/rfc9113">RFC 9113</a>.
+ * The thread of the connection reads all frames and hands each request off to the stream executor, so the requests of a connection are handled concurrently.
+ * The responses are written by the threads handling the requests, the writes of all threads are serialized by the write lock.
+ * <br>
+ * While at least one stream is active, the connection is in the handling state of its {@link ClientHandlerState}, otherwise it's waiting for the next request.
+ * A draining or shutdown connection stops taking new streams, finishes the active ones and sends a GOAWAY frame.
+ */
+public class HTTP2Connection {
+    private static final HTTPDateCache DATE_CACHE = new HTTPDateCache(CoarseClock.wallClock());
+    private static final byte[] EMPTY = new byte[0];
+    /** These must not be sent in HTTP/2, see https://www.rfc-editor.org/rfc/rfc9113#name-connection-specific-header- */
+    static final Set<String> CONNECTION_SPECIFIC_HEADERS = Set.of("connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+    private static final PrecomputedHeader ALLOW_NO_TRACE_CONNECT_HEADER = PrecomputedHeader.create("Allow", Arrays.stream(Method.values()).filter(method -> method != Method.TRACE && method != Method.CONNECT).map(Enum::name).collect(Collectors.joining(", ")));
+    private static final PrecomputedHeader ALLOW_ALL_HEADER = PrecomputedHeader.create("Allow", Arrays.stream(Method.values()).map(Enum::name).collect(Collectors.joining(", ")));
+    private static final byte[] CONTINUE_HEADER_BLOCK;
+
+    static {
+        HPACKEncoder encoder = new HPACKEncoder(8);
+        encoder.encodeStatus(Status.CONTINUE);
+        CONTINUE_HEADER_BLOCK = Arrays.copyOf(encoder.getBuffer(), encoder.getLength());
+    }
+
+    private final HTTP2Support support;
+    private final Socket socket;
+    private final ClientHandlerState state;
+    private final InputStream in;
+    private final Closeable closeAction;
+    private final HPACKDecoder decoder = new HPACKDecoder(HTTP2Constants.HEADER_TABLE_SIZE);
+    private final Map<Integer, HTTP2Stream> streams = new ConcurrentHashMap<>();
+    // Bytes of the connection that have already been read by the HTTP/1 handler
+    private final byte[] prefix;
+    private int prefixPosition = 0;
+
+    // Only used by the connection thread
+    private final byte[] frameHeader = new byte[HTTP2Constants.FRAME_HEADER_LENGTH];
+    private final byte[] payload = new byte[HTTP2Constants.DEFAULT_MAX_FRAME_SIZE];
+    private boolean prefaceReceived;
+    private int connectionReceiveWindow = HTTP2Constants.DEFAULT_WINDOW_SIZE;
+    private int connectionUnacknowledged = 0;
+    private byte[] headerBlock = new byte[HTTP2Constants.DEFAULT_MAX_FRAME_SIZE];
+    private int headerBlockLength = 0;
+    /** The stream of the header block that is continued by CONTINUATION frames, or 0 if there is none */
+    private int headerStreamId = 0;
+    private int headerFlags;
+    private boolean headerSelfDependent;
+    private long headerStartNanos;
+    private boolean stopReading = false;
+    private HTTP2Request upgradeRequest;
+    private byte[] upgradeSettings;
+    /** The highest stream id the client has opened, also read by the handling threads for GOAWAY */
+    private volatile int lastStreamId = 0;
+
+    // Guarded by the write lock
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition windowUpdated = this.writeLock.newCondition();
+    private final OutputStream out;
+    private final byte[] writeFrameHeader = new byte[HTTP2Constants.FRAME_HEADER_LENGTH];
+    private long connectionSendWindow = HTTP2Constants.DEFAULT_WINDOW_SIZE;
+    private int peerInitialWindowSize = HTTP2Constants.DEFAULT_WINDOW_SIZE;
+    private int peerMaxFrameSize = HTTP2Constants.DEFAULT_MAX_FRAME_SIZE;
+    private boolean goAwaySent = false;
+    private volatile boolean closed = false;
+
+    // Guarded by the stream lock
+    private final ReentrantLock streamLock = new ReentrantLock();
+    private final Condition streamsDone = this.streamLock.newCondition();
+    private int activeStreams = 0;
+
+    /**
+     * @param prefix The bytes that have already been read from the connection after the preface, if it has already been received
+     * @param closeAction Closes the connection, e.g. after a GOAWAY frame has been sent from a handling thread
+     */
+    HTTP2Connection(HTTP2Support support, Socket socket, ClientHandlerState state, InputStream in, OutputStream out, Closeable closeAction, byte[] prefix, boolean prefaceReceived) {
+        this.support = support;
+        this.socket = socket;
+        this.state = state;
+        this.in = in;
+        this.out = new BufferedOutputStream(out, HTTP2Constants.DEFAULT_MAX_FRAME_SIZE + HTTP2Constants.FRAME_HEADER_LENGTH);
+        this.closeAction = closeAction;
+        this.prefix = prefix;
+        this.prefaceReceived = prefaceReceived;
+    }
+
+    /**
+     * Sets the request of a connection that has been upgraded from HTTP/1.1, see <a href="https://www.rfc-editor.org/rfc/rfc7540#section-3.2">RFC 7540</a>.
+     * The request is answered on stream 1, it's already counted as being handled by the state.
+     */
+    void setUpgradeRequest(HTTP2Request request, byte[] settings) {
+        this.upgradeRequest = request;
+        this.upgradeSettings = settings;
+    }
+
+    /**
+     * Serves the connection until it's closed. Must be called by the thread of the connection.
+     */
+    public void run() throws IOException {
+        boolean clean = false;
+        try {
+            writeSettings();
+            if (this.upgradeRequest != null) {
+                startUpgradeStream();
+            }
+            if (!this.prefaceReceived) {
+                byte[] preface = new byte[HTTP2Constants.CONNECTION_PREFACE.length];
+                if (!readFully(preface, preface.length, true)) return;
+                if (!Arrays.equals(preface, HTTP2Constants.CONNECTION_PREFACE)) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Invalid connection preface");
+                this.prefaceReceived = true;
+            }
+            boolean first = true;
+            while (!this.stopReading && readFrame(first)) {
+                first = false;
+            }
+            clean = true;
+        } catch (HTTP2Exception e) {
+            // Stream errors are handled while reading the frame, so this is always a connection error
+            goAway(e.errorCode);
+        } finally {
+            if (!clean) {
+                markClosed();
+            }
+            awaitStreams();
+        }
+    }
+
+    private void startUpgradeStream() throws HTTP2Exception {
+        HTTP2Request request = this.upgradeRequest;
+        this.upgradeRequest = null;
+        applySettings(this.upgradeSettings, 0, this.upgradeSettings.length);
+        this.lastStreamId = 1;
+        HTTP2Stream stream = new HTTP2Stream(1, request, null, HTTP2Constants.DEFAULT_WINDOW_SIZE, this.peerInitialWindowSize, this.support.getMaxBodyLength(request));
+        this.streams.put(1, stream);
+        this.streamLock.lock();
+        try {
+            this.activeStreams = 1;
+        } finally {
+            this.streamLock.unlock();
+        }
+        dispatch(stream);
+    }
+
+    /**
+     * Reads and processes the next frame
+     * @return False if the connection has been closed by the client
+     */
+    private boolean readFrame(boolean first) throws IOException {
+        byte[] header = this.frameHeader;
+        if (!readFully(header, header.length, true)) return false;
+        int length = ((header[0] & 0xFF) << 16) | ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+        int type = header[3] & 0xFF;
+        int flags = header[4] & 0xFF;
+        int streamId = readInt(header, 5) & 0x7FFFFFFF;
+        if (length > HTTP2Constants.DEFAULT_MAX_FRAME_SIZE) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "Frame exceeds the maximum frame size");
+        if (!readFully(this.payload, length, false)) return false;
+        this.support.metrics.bytesReceived(HTTP2Constants.FRAME_HEADER_LENGTH + length);
+        // See https://www.rfc-editor.org/rfc/rfc9113#name-http-2-connection-preface
+        if (first && (type != HTTP2Constants.TYPE_SETTINGS || (flags & HTTP2Constants.FLAG_ACK) != 0)) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "First frame must be SETTINGS");
+        // A header block must not be interrupted by other frames, see https://www.rfc-editor.org/rfc/rfc9113#name-field-section-compression-a
+        if (this.headerStreamId != 0 && (type != HTTP2Constants.TYPE_CONTINUATION || streamId != this.headerStreamId)) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Expected CONTINUATION frame");
+        try {
+            switch (type) {
+                case HTTP2Constants.TYPE_DATA -> onData(streamId, flags, length);
+                case HTTP2Constants.TYPE_HEADERS -> onHeaders(streamId, flags, length);
+                case HTTP2Constants.TYPE_PRIORITY -> {
+                    // Priorities are only a hint, and deprecated anyway. See https://www.rfc-editor.org/rfc/rfc9113#name-priority
+                    if (streamId == 0) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "PRIORITY frame without stream");
+                    if (length != 5) throw HTTP2Exception.streamError(streamId, HTTP2Constants.FRAME_SIZE_ERROR, "Invalid PRIORITY frame");
+                }
+                case HTTP2Constants.TYPE_RST_STREAM -> onResetStream(streamId, length);
+                case HTTP2Constants.TYPE_SETTINGS -> onSettings(streamId, flags, length);
+                case HTTP2Constants.TYPE_PUSH_PROMISE -> throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Clients must not push");
+                case HTTP2Constants.TYPE_PING -> onPing(streamId, flags, length);
+                case HTTP2Constants.TYPE_GOAWAY -> {
+                    if (streamId != 0) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "GOAWAY frame with stream");
+                    if (length < 8) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "Invalid GOAWAY frame");
+                    // The client doesn't open new streams, but still waits for the responses of the active ones. It closes the connection afterward
+                }
+                case HTTP2Constants.TYPE_WINDOW_UPDATE -> onWindowUpdate(streamId, length);
+                case HTTP2Constants.TYPE_CONTINUATION -> onContinuation(streamId, flags, length);
+                default -> {
+                    // Unknown frames must be ignored, see https://www.rfc-editor.org/rfc/rfc9113#name-frame-definitions
+                }
+            }
+        } catch (HTTP2Exception e) {
+            if (e.isConnectionError()) throw e;
+            resetStream(e.streamId, e.errorCode);
+        }
+        return true;
+    }
+
+    private void onData(int streamId, int flags, int length) throws IOException {
+        if (streamId == 0) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "DATA frame without stream");
+        int dataOffset = 0;
+        int dataLength = length;
+        if ((flags & HTTP2Constants.FLAG_PADDED) != 0) {
+            if (length == 0) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "Missing pad length");
+            int padLength = this.payload[0] & 0xFF;
+            if (padLength >= length) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Padding exceeds the frame");
+            dataOffset = 1;
+            dataLength = length - 1 - padLength;
+        }
+        // The entire frame counts towards flow control, and the connection window is opened again right away
+        consumeConnectionWindow(length);
+        HTTP2Stream stream = this.streams.get(streamId);
+        if (stream == null) {
+            if (streamId > this.lastStreamId) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "DATA frame on idle stream");
+            // The stream has already been closed by us, the client might not know that yet
+            return;
+        }
+        if (stream.remoteClosed) throw HTTP2Exception.streamError(streamId, HTTP2Constants.STREAM_CLOSED, "DATA frame after end of stream");
+        if (stream.reset) return;
+        if (stream.receiveWindow.addAndGet(-length) < 0) throw HTTP2Exception.streamError(streamId, HTTP2Constants.FLOW_CONTROL_ERROR, "Stream flow control window exceeded");
+        stream.receivedBodyLength += dataLength;
+        long contentLength = stream.request.getContentLengthLong();
+        if (contentLength >= 0 && stream.receivedBodyLength > contentLength) {
+            // See https://www.rfc-editor.org/rfc/rfc9113#name-malformed-messages
+            throw HTTP2Exception.streamError(streamId, HTTP2Constants.PROTOCOL_ERROR, "Body exceeds the content-length");
+        }
+        if (stream.receivedBodyLength > stream.maxBodyLength) {
+            stream.body.fail(new IOException("Request body exceeds the maximum length of " + stream.maxBodyLength + " bytes"));
+            throw HTTP2Exception.streamError(streamId, HTTP2Constants.CANCEL, "Body too large");
+        }
+        if (dataLength > 0) {
+            stream.body.add(Arrays.copyOfRange(this.payload, dataOffset, dataOffset + dataLength));
+        }
+        boolean endStream = (flags & HTTP2Constants.FLAG_END_STREAM) != 0;
+        if (endStream) {
+            endOfStream(stream);
+        } else if (length > dataLength) {
+            // Nobody reads the padding, so give it back right away
+            releaseStreamWindow(streamId, length - dataLength);
+        }
+    }
+
+    private void endOfStream(HTTP2Stream stream) throws HTTP2Exception {
+        stream.remoteClosed = true;
+        long contentLength = stream.request.getContentLengthLong();
+        if (contentLength >= 0 && stream.receivedBodyLength != contentLength) {
+            throw HTTP2Exception.streamError(stream.id, HTTP2Constants.PROTOCOL_ERROR, "Body does not match the content-length");
+        }
+        stream.body.end();
+    }
+
+    private void onHeaders(int streamId, int flags, int length) throws IOException {
+        if (streamId == 0) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "HEADERS frame without stream");
+        int offset = 0;
+        int end = length;
+        if ((flags & HTTP2Constants.FLAG_PADDED) != 0) {
+            if (length == 0) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "Missing pad length");
+            end -= this.payload[0] & 0xFF;
+            offset = 1;
+        }
+        this.headerSelfDependent = false;
+        if ((flags & HTTP2Constants.FLAG_PRIORITY) != 0) {
+            if (end - offset < 5) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "Missing priority");
+            // The stream is still created, so the block must be decoded first. See https://www.rfc-editor.org/rfc/rfc9113#name-stream-dependencies
+            this.headerSelfDependent = (readInt(this.payload, offset) & 0x7FFFFFFF) == streamId;
+            offset += 5;
+        }
+        if (end < offset) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Padding exceeds the frame");
+        this.headerStartNanos = System.nanoTime();
+        this.headerBlockLength = 0;
+        this.headerStreamId = streamId;
+        this.headerFlags = flags;
+        appendHeaderBlock(offset, end - offset);
+        if ((flags & HTTP2Constants.FLAG_END_HEADERS) != 0) {
+            onHeaderBlock();
+        }
+    }
+
+    private void onContinuation(int streamId, int flags, int length) throws IOException {
+        if (this.headerStreamId == 0 || streamId != this.headerStreamId) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Unexpected CONTINUATION frame");
+        appendHeaderBlock(0, length);
+        if ((flags & HTTP2Constants.FLAG_END_HEADERS) != 0) {
+            onHeaderBlock();
+        }
+    }
+
+    private void appendHeaderBlock(int offset, int length) throws HTTP2Exception {
+        int newLength = this.headerBlockLength + length;
+        // The compressed block is never larger than the decoded one, so don't let a client make us buffer endless CONTINUATION frames
+        if (newLength > Math.max(HTTP2Constants.DEFAULT_MAX_FRAME_SIZE, this.support.maxHeaderListSize * 2)) {
+            throw HTTP2Exception.connectionError(HTTP2Constants.ENHANCE_YOUR_CALM, "Header block too large");
+        }
+        if (newLength > this.headerBlock.length) {
+            this.headerBlock = Arrays.copyOf(this.headerBlock, Math.max(newLength, this.headerBlock.length * 2));
+        }
+        System.arraycopy(this.payload, offset, this.headerBlock, this.headerBlockLength, length);
+        this.headerBlockLength = newLength;
+    }
+
+    /**
+     * Processes a complete header block, which either opens a new stream or contains the trailers of an open one
+     */
+    private void onHeaderBlock() throws IOException {
+        int streamId = this.headerStreamId;
+        this.headerStreamId = 0;
+        boolean endStream = (this.headerFlags & HTTP2Constants.FLAG_END_STREAM) != 0;
+        FieldCollector fields = new FieldCollector();
+        // Always decode the block, the dynamic table must stay in sync with the client
+        this.decoder.decode(this.headerBlock, 0, this.headerBlockLength, fields);
+
+        if (streamId <= this.lastStreamId) {
+            HTTP2Stream stream = this.streams.get(streamId);
+            // The stream has already been closed by us, the client might not know that yet
+            if (stream == null) return;
+            if (stream.remoteClosed) throw HTTP2Exception.streamError(streamId, HTTP2Constants.STREAM_CLOSED, "HEADERS frame after end of stream");
+            // Trailers, which are ignored like the ones of a chunked body. See https://www.rfc-editor.org/rfc/rfc9113#name-http-message-framing
+            if (!endStream) throw HTTP2Exception.streamError(streamId, HTTP2Constants.PROTOCOL_ERROR, "Trailers without end of stream");
+            endOfStream(stream);
+            return;
+        }
+        if ((streamId & 1) == 0) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Clients must use odd stream ids");
+        this.lastStreamId = streamId;
+        if (this.headerSelfDependent) throw HTTP2Exception.streamError(streamId, HTTP2Constants.PROTOCOL_ERROR, "Stream depends on itself");
+        if (this.streams.size() >= HTTP2Constants.MAX_CONCURRENT_STREAMS) throw HTTP2Exception.streamError(streamId, HTTP2Constants.REFUSED_STREAM, "Too many concurrent streams");
+        if (!fields.isValidRequest()) throw HTTP2Exception.streamError(streamId, HTTP2Constants.PROTOCOL_ERROR, "Malformed request");
+
+        Method method = findMethod(fields.method);
+        // CONNECT requests don't have a path, the parser for the authority makes it return null like for HTTP/1
+        String target = method == Method.CONNECT ? fields.authority : fields.path;
+        byte[] targetBytes = target.getBytes(StandardCharsets.ISO_8859_1);
+        URLParser parser = new URLParser(targetBytes, 0, targetBytes.length, this.support.pathCache);
+        Map<String, List<String>> headers = fields.headers;
+        if (fields.authority != null && !headers.containsKey("host")) {
+            headers.put("host", List.of(fields.authority));
+        }
+        List<String> cookies = headers.get("cookie");
+        if (cookies != null && cookies.size() > 1) {
+            // Cookies may be split into multiple fields for better compression, see https://www.rfc-editor.org/rfc/rfc9113#name-compressing-the-cookie-head
+            headers.put("cookie", List.of(String.join("; ", cookies)));
+        }
+        long contentLength = endStream ? 0 : -1;
+        boolean invalidContentLength = false;
+        List<String> contentLengthHeaders = headers.get("content-length");
+        if (contentLengthHeaders != null) {
+            try {
+                if (contentLengthHeaders.size() != 1) throw new NumberFormatException();
+                contentLength = Long.parseLong(contentLengthHeaders.get(0));
+                if (contentLength < 0) throw new NumberFormatException();
+                if (endStream && contentLength != 0) throw HTTP2Exception.streamError(streamId, HTTP2Constants.PROTOCOL_ERROR, "Content-length without body");
+            } catch (NumberFormatException e) {
+                invalidContentLength = true;
+                contentLength = -1;
+            }
+        }
+        HTTP2Request request = new HTTP2Request(method, parser, headers, contentLength);
+        HTTP2RequestBody body = null;
+        if (!endStream) {
+            body = new HTTP2RequestBody(this, streamId, contentLength, this.support.socketTimeout);
+            request.setBody(body);
+        }
+        long maxBodyLength = method == null ? 0 : this.support.getMaxBodyLength(request);
+        HTTP2Stream stream = new HTTP2Stream(streamId, request, body, HTTP2Constants.DEFAULT_WINDOW_SIZE, this.peerInitialWindowSize, maxBodyLength);
+        this.streams.put(streamId, stream);
+
+        // These are answered right away, like the same errors of HTTP/1 requests
+        if (method == null) {
+            respondInline(stream, Status.NOT_IMPLEMENTED, null);
+        } else if (!this.support.allowTraceConnect && (method == Method.CONNECT || method == Method.TRACE)) {
+            respondInline(stream, Status.NOT_IMPLEMENTED, null);
+        } else if (fields.size > this.support.maxHeaderListSize) {
+            respondInline(stream, Status.REQUEST_HEADER_FIELDS_TOO_LARGE, null);
+        } else if (invalidContentLength) {
+            respondInline(stream, Status.BAD_REQUEST, null);
+        } else if (contentLength > maxBodyLength) {
+            respondInline(stream, Status.CONTENT_TOO_LARGE, null);
+        } else if (!isValidExpectation(request)) {
+            respondInline(stream, Status.EXPECTATION_FAILED, null);
+        } else if (request.getPath() == null && method == Method.OPTIONS && request.isAsteriskRequest() && this.support.builtinServerWideOptions) {
+            respondInline(stream, Status.NO_CONTENT, this.support.allowTraceConnect ? ALLOW_ALL_HEADER : ALLOW_NO_TRACE_CONNECT_HEADER);
+        } else if (request.getPath() == null && method != Method.CONNECT && !(method == Method.OPTIONS && request.isAsteriskRequest())) {
+            respondInline(stream, Status.BAD_REQUEST, null);
+        } else if (startStream()) {
+            this.support.metrics.requestParsed(System.nanoTime() - this.headerStartNanos);
+            dispatch(stream);
+        } else {
+            // Draining or shut down, the client may retry the request on a new connection
+            this.streams.remove(streamId);
+            resetStream(streamId, HTTP2Constants.REFUSED_STREAM);
+            goAway(HTTP2Constants.NO_ERROR);
+            // The active streams still need their bodies and WINDOW_UPDATE frames, the last one of them closes the connection.
+            // Only the connection thread starts streams, so if there are none, nobody else closes it.
+            if (!hasActiveStreams()) {
+                this.stopReading = true;
+            }
+        }
+    }
+
+    private static Method findMethod(String name) {
+        for (Method method : Method.values()) {
+            if (method.name().equals(name)) return method;
+        }
+        return null;
+    }
+
+    /**
+     * 100-continue is the only expectation there is, see <a href="https://www.rfc-editor.org/rfc/rfc9110#name-expect">RFC 9110</a>
+     */
+    private static boolean isValidExpectation(HTTP2Request request) {
+        List<String> expectHeaders = request.getHeaders("expect");
+        return expectHeaders == null || (expectHeaders.size() == 1 && expectHeaders.get(0).equalsIgnoreCase("100-continue"));
+    }
+
+    /**
+     * Answers a request from the connection thread without a body, so the response never has to wait for the flow control window
+     */
+    private void respondInline(HTTP2Stream stream, Status status, PrecomputedHeader header) throws IOException {
+        HTTP2ResponseWriter writer = new HTTP2ResponseWriter(this, stream, DATE_CACHE, false);
+        try {
+            ResponseHeaderWriter headerWriter = writer.respondWithoutContentType(status);
+            if (header != null) headerWriter.addHeader(header);
+            ResponseTokenImpl.validate(headerWriter.sendWithoutBody());
+        } catch (HTTPWriteException e) {
+            throw (IOException) e.getCause();
+        } finally {
+            this.streams.remove(stream.id);
+        }
+        this.support.metrics.responseSent(writer.getStatus(), writer.getBytesWritten(), writer.getWriteNanos());
+        if (!stream.remoteClosed) {
+            // The body is not needed anymore, see https://www.rfc-editor.org/rfc/rfc9113#section-8.1-15
+            resetStream(stream.id, HTTP2Constants.NO_ERROR);
+        }
+    }
+
+    /**
+     * Counts a new stream as active, which puts the connection into the handling state if it's the first one
+     * @return False if the connection is closing and must not take new streams
+     */
+    private boolean startStream() {
+        this.streamLock.lock();
+        try {
+            if (this.state.isClosing()) return false;
+            if (this.activeStreams == 0 && !(this.state.startReadingRequest() && this.state.startHandlingRequest())) return false;
+            this.activeStreams++;
+            return true;
+        } finally {
+            this.streamLock.unlock();
+        }
+    }
+
+    private void dispatch(HTTP2Stream stream) {
+        try {
+            this.support.executor.execute(() -> handleStream(stream));
+        } catch (RejectedExecutionException e) {
+            resetStream(stream.id, HTTP2Constants.REFUSED_STREAM);
+            finishStream(stream);
+        }
+    }
+
+    /**
+     * Handles the request of a stream, run by the stream executor
+     */
+    private void handleStream(HTTP2Stream stream) {
+        HTTP2Request request = stream.request;
+        HTTP2ResponseWriter writer = new HTTP2ResponseWriter(this, stream, DATE_CACHE, request.getMethod() == Method.HEAD);
+        long handleStartNanos = System.nanoTime();
+        try {
+            ResponseToken token = null;
+            HTTP2RequestBody body = request.getInputStream();
+            if (body != null && !body.isDrained() && request.getHeaders("expect") != null) {
+                token = this.support.handler.precheckRequest(request, writer);
+                if (token == null) {
+                    // An interim response, see https://www.rfc-editor.org/rfc/rfc9113#name-examples-of-http-request-an
+                    writeHeaders(stream, CONTINUE_HEADER_BLOCK, CONTINUE_HEADER_BLOCK.length, false);
+                    flush();
+                }
+            }
+            if (token == null) {
+                token = this.support.handler.answerRequest(request, writer);
+            }
+            if (!ResponseTokenImpl.validate(token))
+                throw new RuntimeException("Invalid token returned from handler!");
+        } catch (Exception e) {
+            try {
+                ResponseToken token = this.support.errorHandler.onResponseHandlerException(this.support.server, request, writer, this.socket, e);
+                if (token != null && !ResponseTokenImpl.validate(token))
+                    throw new RuntimeException("Invalid token returned from error handler!");
+            } catch (Exception e2) {
+                this.support.errorHandler.onClientHandlerInternalException(this.support.server, this.socket, e2);
+            }
+        } finally {
+            ResponseTokenImpl.clearTracking(false);
+            this.support.metrics.requestHandled(System.nanoTime() - handleStartNanos);
+            if (writer.isCompleted()) {
+                this.support.metrics.responseSent(writer.getStatus(), writer.getBytesWritten(), writer.getWriteNanos());
+                if (!stream.isRemoteClosed()) {
+                    // The body is not needed anymore, see https://www.rfc-editor.org/rfc/rfc9113#section-8.1-15
+                    resetStream(stream.id, HTTP2Constants.NO_ERROR);
+                }
+            } else {
+                // The client would wait forever for the rest of the response
+                resetStream(stream.id, HTTP2Constants.INTERNAL_ERROR);
+            }
+            finishStream(stream);
+        }
+    }
+
+    /**
+     * Removes a stream once it's done. If it was the last active one, the connection waits for the next request or is closed if it's draining.
+     */
+    private void finishStream(HTTP2Stream stream) {
+        this.streams.remove(stream.id);
+        boolean close = false;
+        this.streamLock.lock();
+        try {
+            this.activeStreams--;
+            if (this.activeStreams == 0) {
+                close = !this.state.startAwaitingNextRequest();
+                this.streamsDone.signalAll();
+            }
+        } finally {
+            this.streamLock.unlock();
+        }
+        if (close) {
+            goAway(HTTP2Constants.NO_ERROR);
+            try {
+                // The connection thread is blocked reading the next frame
+                this.closeAction.close();
+            } catch (IOException e) {
+                // ignore. Client might have already closed the connection
+            }
+        }
+    }
+
+    /**
+     * Waits until all streams are done, so the connection isn't closed below their feet.
+     * Reading only stops early if the connection is broken or closed by the client, so bodies that have not ended yet never will.
+     */
+    private void awaitStreams() {
+        for (HTTP2Stream stream : this.streams.values()) {
+            if (stream.body != null && !stream.body.isEnded()) {
+                stream.body.fail(new SocketException("Connection has been closed"));
+            }
+        }
+        this.streamLock.lock();
+        try {
+            while (this.activeStreams > 0) {
+                this.streamsDone.awaitUninterruptibly();
+            }
+        } finally {
+            this.streamLock.unlock();
+        }
+    }
+
+    private boolean hasActiveStreams() {
+        this.streamLock.lock();
+        try {
+            return this.activeStreams > 0;
+        } finally {
+            this.streamLock.unlock();
+        }
+    }
+
+    private void onResetStream(int streamId, int length) throws HTTP2Exception {
+        if (streamId == 0) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "RST_STREAM frame without stream");
+        if (length != 4) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "Invalid RST_STREAM frame");
+        if (streamId > this.lastStreamId) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "RST_STREAM frame on idle stream");
+        HTTP2Stream stream = this.streams.get(streamId);
+        if (stream == null) return;
+        stream.remoteClosed = true;
+        markReset(stream, "Stream has been reset by the client");
+    }
+
+    private void onSettings(int streamId, int flags, int length) throws IOException {
+        if (streamId != 0) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "SETTINGS frame with stream");
+        if ((flags & HTTP2Constants.FLAG_ACK) != 0) {
+            if (length != 0) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "SETTINGS acknowledgement with payload");
+            return;
+        }
+        applySettings(this.payload, 0, length);
+        writeControlFrame(HTTP2Constants.TYPE_SETTINGS, HTTP2Constants.FLAG_ACK, 0, EMPTY, 0);
+    }
+
+    /**
+     * Applies the settings of the client, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-defined-settings">RFC 9113</a>
+     */
+    private void applySettings(byte[] settings, int offset, int length) throws HTTP2Exception {
+        if (length % 6 != 0) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "Invalid SETTINGS frame");
+        this.writeLock.lock();
+        try {
+            for (int i = offset; i < offset + length; i += 6) {
+                int id = ((settings[i] & 0xFF) << 8) | (settings[i + 1] & 0xFF);
+                long value = readInt(settings, i + 2) & 0xFFFFFFFFL;
+                switch (id) {
+                    case HTTP2Constants.SETTINGS_ENABLE_PUSH -> {
+                        // We never push anyway
+                        if (value > 1) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH");
+                    }
+                    case HTTP2Constants.SETTINGS_INITIAL_WINDOW_SIZE -> {
+                        if (value > HTTP2Constants.MAX_WINDOW_SIZE) throw HTTP2Exception.connectionError(HTTP2Constants.FLOW_CONTROL_ERROR, "Invalid SETTINGS_INITIAL_WINDOW_SIZE");
+                        // Changes the windows of all open streams, see https://www.rfc-editor.org/rfc/rfc9113#name-initial-flow-control-window
+                        long delta = value - this.peerInitialWindowSize;
+                        for (HTTP2Stream stream : this.streams.values()) {
+                            stream.sendWindow += delta;
+                            if (stream.sendWindow > HTTP2Constants.MAX_WINDOW_SIZE) throw HTTP2Exception.connectionError(HTTP2Constants.FLOW_CONTROL_ERROR, "Stream window too large");
+                        }
+                        this.peerInitialWindowSize = (int) value;
+                        this.windowUpdated.signalAll();
+                    }
+                    case HTTP2Constants.SETTINGS_MAX_FRAME_SIZE -> {
+                        if (value < HTTP2Constants.DEFAULT_MAX_FRAME_SIZE || value > HTTP2Constants.MAX_MAX_FRAME_SIZE) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE");
+                        this.peerMaxFrameSize = (int) value;
+                    }
+                    default -> {
+                        // The encoder doesn't use the dynamic table, the other settings limit what we could send but never do, and unknown settings must be ignored
+                    }
+                }
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private void onPing(int streamId, int flags, int length) throws IOException {
+        if (streamId != 0) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "PING frame with stream");
+        if (length != 8) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "Invalid PING frame");
+        if ((flags & HTTP2Constants.FLAG_ACK) == 0) {
+            writeControlFrame(HTTP2Constants.TYPE_PING, HTTP2Constants.FLAG_ACK, 0, this.payload, 8);
+        }
+    }
+
+    private void onWindowUpdate(int streamId, int length) throws HTTP2Exception {
+        if (length != 4) throw HTTP2Exception.connectionError(HTTP2Constants.FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame");
+        int increment = readInt(this.payload, 0) & 0x7FFFFFFF;
+        if (streamId == 0) {
+            if (increment == 0) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "Window increment of 0");
+            this.writeLock.lock();
+            try {
+                this.connectionSendWindow += increment;
+                if (this.connectionSendWindow > HTTP2Constants.MAX_WINDOW_SIZE) throw HTTP2Exception.connectionError(HTTP2Constants.FLOW_CONTROL_ERROR, "Connection window too large");
+                this.windowUpdated.signalAll();
+            } finally {
+                this.writeLock.unlock();
+            }
+            return;
+        }
+        if (streamId > this.lastStreamId) throw HTTP2Exception.connectionError(HTTP2Constants.PROTOCOL_ERROR, "WINDOW_UPDATE frame on idle stream");
+        if (increment == 0) throw HTTP2Exception.streamError(streamId, HTTP2Constants.PROTOCOL_ERROR, "Window increment of 0");
+        HTTP2Stream stream = this.streams.get(streamId);
+        if (stream == null) return;
+        this.writeLock.lock();
+        try {
+            stream.sendWindow += increment;
+            if (stream.sendWindow > HTTP2Constants.MAX_WINDOW_SIZE) throw HTTP2Exception.streamError(streamId, HTTP2Constants.FLOW_CONTROL_ERROR, "Stream window too large");
+            this.windowUpdated.signalAll();
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private void consumeConnectionWindow(int length) throws IOException {
+        this.connectionReceiveWindow -= length;
+        if (this.connectionReceiveWindow < 0) throw HTTP2Exception.connectionError(HTTP2Constants.FLOW_CONTROL_ERROR, "Connection flow control window exceeded");
+        this.connectionUnacknowledged += length;
+        if (this.connectionUnacknowledged >= HTTP2Constants.DEFAULT_WINDOW_SIZE / 2) {
+            writeWindowUpdate(0, this.connectionUnacknowledged);
+            this.connectionReceiveWindow += this.connectionUnacknowledged;
+            this.connectionUnacknowledged = 0;
+        }
+    }
+
+    /**
+     * Opens the receive window of a stream again once its data has been read
+     */
+    void releaseStreamWindow(int streamId, int increment) {
+        HTTP2Stream stream = this.streams.get(streamId);
+        if (stream == null || stream.reset) return;
+        stream.receiveWindow.addAndGet(increment);
+        try {
+            writeWindowUpdate(streamId, increment);
+        } catch (IOException e) {
+            // ignore. The connection is broken, the next read of the connection thread fails as well
+        }
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        byte[] payload = new byte[4];
+        writeInt(payload, 0, increment);
+        writeControlFrame(HTTP2Constants.TYPE_WINDOW_UPDATE, 0, streamId, payload, 4);
+    }
+
+    private void writeSettings() throws IOException {
+        int[][] settings = {
+                {HTTP2Constants.SETTINGS_MAX_CONCURRENT_STREAMS, HTTP2Constants.MAX_CONCURRENT_STREAMS},
+                {HTTP2Constants.SETTINGS_MAX_HEADER_LIST_SIZE, this.support.maxHeaderListSize}
+        };
+        byte[] payload = new byte[settings.length * 6];
+        for (int i = 0; i < settings.length; i++) {
+            payload[i * 6] = (byte) (settings[i][0] >>> 8);
+            payload[i * 6 + 1] = (byte) settings[i][0];
+            writeInt(payload, i * 6 + 2, settings[i][1]);
+        }
+        writeControlFrame(HTTP2Constants.TYPE_SETTINGS, 0, 0, payload, payload.length);
+    }
+
+    /**
+     * Resets a stream, so no more frames are sent on it. See <a href="https://www.rfc-editor.org/rfc/rfc9113#name-rst_stream">RFC 9113</a>
+     */
+    private void resetStream(int streamId, int errorCode) {
+        HTTP2Stream stream = this.streams.get(streamId);
+        this.writeLock.lock();
+        try {
+            if (stream != null) {
+                if (stream.reset || (stream.localClosed && errorCode != HTTP2Constants.NO_ERROR)) return;
+                markReset(stream, "Stream has been reset");
+            }
+            byte[] payload = new byte[4];
+            writeInt(payload, 0, errorCode);
+            writeControlFrame(HTTP2Constants.TYPE_RST_STREAM, 0, streamId, payload, 4);
+        } catch (IOException e) {
+            // ignore. The connection is broken, the next read of the connection thread fails as well
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private void markReset(HTTP2Stream stream, String reason) {
+        this.writeLock.lock();
+        try {
+            stream.reset = true;
+            // A write of the stream might be waiting for its window
+            this.windowUpdated.signalAll();
+        } finally {
+            this.writeLock.unlock();
+        }
+        if (stream.body != null) {
+            stream.body.fail(new SocketException(reason));
+        }
+    }
+
+    /**
+     * Tells the client that no more streams are taken, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-goaway">RFC 9113</a>
+     */
+    private void goAway(int errorCode) {
+        this.writeLock.lock();
+        try {
+            if (this.goAwaySent || this.closed) return;
+            this.goAwaySent = true;
+            byte[] payload = new byte[8];
+            writeInt(payload, 0, this.lastStreamId);
+            writeInt(payload, 4, errorCode);
+            writeControlFrame(HTTP2Constants.TYPE_GOAWAY, 0, 0, payload, 8);
+        } catch (IOException e) {
+            // ignore. Client might have already closed the connection
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private void markClosed() {
+        this.writeLock.lock();
+        try {
+            this.closed = true;
+            this.windowUpdated.signalAll();
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private void writeControlFrame(int type, int flags, int streamId, byte[] payload, int length) throws IOException {
+        this.writeLock.lock();
+        try {
+            if (this.closed) throw new SocketException("Connection has been closed");
+            writeFrameHeader(length, type, flags, streamId);
+            this.out.write(payload, 0, length);
+            this.out.flush();
+        } catch (IOException e) {
+            this.closed = true;
+            throw e;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sends a header block, split into a HEADERS frame and as many CONTINUATION frames as needed
+     */
+    void writeHeaders(HTTP2Stream stream, byte[] block, int length, boolean endStream) throws IOException {
+        this.writeLock.lock();
+        try {
+            checkWritable(stream);
+            int offset = 0;
+            boolean first = true;
+            do {
+                int frameLength = Math.min(length - offset, this.peerMaxFrameSize);
+                boolean last = offset + frameLength == length;
+                int flags = (last ? HTTP2Constants.FLAG_END_HEADERS : 0) | (first && endStream ? HTTP2Constants.FLAG_END_STREAM : 0);
+                writeFrameHeader(frameLength, first ? HTTP2Constants.TYPE_HEADERS : HTTP2Constants.TYPE_CONTINUATION, flags, stream.id);
+                this.out.write(block, offset, frameLength);
+                offset += frameLength;
+                first = false;
+            } while (offset < length);
+            if (endStream) stream.localClosed = true;
+        } catch (IOException e) {
+            if (!(e instanceof StreamException)) this.closed = true;
+            throw e;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sends data in as many DATA frames as needed, waiting for the client to open the flow control windows if necessary.
+     * See <a href="https://www.rfc-editor.org/rfc/rfc9113#name-flow-control">RFC 9113</a>
+     */
+    void writeData(HTTP2Stream stream, byte[] data, int offset, int length, boolean endStream) throws IOException {
+        this.writeLock.lock();
+        try {
+            do {
+                checkWritable(stream);
+                int window = (int) Math.min(stream.sendWindow, this.connectionSendWindow);
+                if (length > 0 && window <= 0) {
+                    // The client might need the data we have so far before it opens the window again
+                    this.out.flush();
+                    awaitWindow();
+                    continue;
+                }
+                int frameLength = Math.min(Math.min(length, window), this.peerMaxFrameSize);
+                boolean last = frameLength == length;
+                writeFrameHeader(frameLength, HTTP2Constants.TYPE_DATA, last && endStream ? HTTP2Constants.FLAG_END_STREAM : 0, stream.id);
+                this.out.write(data, offset, frameLength);
+                stream.sendWindow -= frameLength;
+                this.connectionSendWindow -= frameLength;
+                offset += frameLength;
+                length -= frameLength;
+            } while (length > 0);
+            if (endStream) stream.localClosed = true;
+        } catch (IOException e) {
+            if (!(e instanceof StreamException)) this.closed = true;
+            throw e;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    void flush() throws IOException {
+        this.writeLock.lock();
+        try {
+            if (this.closed) throw new SocketException("Connection has been closed");
+            this.out.flush();
+        } catch (IOException e) {
+            this.closed = true;
+            throw e;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private void awaitWindow() throws IOException {
+        try {
+            int timeout = this.support.socketTimeout;
+            if (timeout <= 0) {
+                this.windowUpdated.await();
+            } else if (!this.windowUpdated.await(timeout, TimeUnit.MILLISECONDS)) {
+                throw new StreamException("Timed out while waiting for the client to open the flow control window");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StreamException("Interrupted while waiting for the flow control window");
+        }
+    }
+
+    private void checkWritable(HTTP2Stream stream) throws IOException {
+        if (this.closed) throw new SocketException("Connection has been closed");
+        if (stream.reset) throw new StreamException("Stream " + stream.id + " has been reset");
+        if (stream.localClosed) throw new StreamException("Stream " + stream.id + " has already been completed");
+    }
+
+    private void writeFrameHeader(int length, int type, int flags, int streamId) throws IOException {
+        byte[] header = this.writeFrameHeader;
+        header[0] = (byte) (length >>> 16);
+        header[1] = (byte) (length >>> 8);
+        header[2] = (byte) length;
+        header[3] = (byte) type;
+        header[4] = (byte) flags;
+        writeInt(header, 5, streamId);
+        this.out.write(header, 0, header.length);
+    }
+
+    /**
+     * Reads exactly the given amount of bytes, starting with the bytes the HTTP/1 handler has already read.
+     * While streams are active, the socket timeout only means that the client is waiting for the responses, so the read is continued.
+     * @param frameStart True if no byte of the frame has been read yet, so an idle connection can be closed gracefully
+     * @return False if the connection has been closed by the client
+     */
+    private boolean readFully(byte[] target, int length, boolean frameStart) throws IOException {
+        int read = 0;
+        while (read < length) {
+            if (this.prefix != null && this.prefixPosition < this.prefix.length) {
+                int toCopy = Math.min(length - read, this.prefix.length - this.prefixPosition);
+                System.arraycopy(this.prefix, this.prefixPosition, target, read, toCopy);
+                this.prefixPosition += toCopy;
+                read += toCopy;
+                continue;
+            }
+            int n;
+            try {
+                n = this.in.read(target, read, length - read);
+            } catch (SocketTimeoutException e) {
+                if (hasActiveStreams()) continue;
+                if (frameStart && read == 0) {
+                    // The connection is idle, see https://www.rfc-editor.org/rfc/rfc9113#section-9.1-5
+                    goAway(HTTP2Constants.NO_ERROR);
+                }
+                throw e;
+            }
+            if (n < 0) return false;
+            read += n;
+        }
+        return true;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16) | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /**
+     * A write failed because of the state of its stream, the connection itself is still fine.
+     * This is a socket exception, so the error handlers treat it like a client that has gone away.
+     */
+    private static class StreamException extends SocketException {
+        private static final long serialVersionUID = 1L;
+
+        StreamException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Collects the fields of a request header block and checks the rules of <a href="https://www.rfc-editor.org/rfc/rfc9113#name-http-fields">RFC 9113</a>
+     */
+    private final class FieldCollector implements HPACKDecoder.FieldConsumer {
+        private final Map<String, List<String>> headers = new HashMap<>();
+        private String method;
+        private String scheme;
+        private String authority;
+        private String path;
+        private boolean regularFieldSeen = false;
+        private boolean malformed = false;
+        /** The size of the header list as defined in https://www.rfc-editor.org/rfc/rfc9113#name-defined-settings */
+        private long size = 0;
+
+        @Override
+        public void accept(String name, String value) {
+            this.size += name.length() + value.length() + 32;
+            if (this.malformed || this.size > support.maxHeaderListSize) return;
+            if (!isValidValue(value)) {
+                this.malformed = true;
+            } else if (!name.isEmpty() && name.charAt(0) == ':') {
+                if (this.regularFieldSeen) {
+                    this.malformed = true;
+                    return;
+                }
+                switch (name) {
+                    case ":method" -> this.method = setOnce(this.method, value);
+                    case ":scheme" -> this.scheme = setOnce(this.scheme, value);
+                    case ":authority" -> this.authority = setOnce(this.authority, value);
+                    case ":path" -> this.path = setOnce(this.path, value);
+                    default -> this.malformed = true;
+                }
+            } else {
+                this.regularFieldSeen = true;
+                if (!isValidName(name) || CONNECTION_SPECIFIC_HEADERS.contains(name) || (name.equals("te") && !value.equals("trailers"))) {
+                    this.malformed = true;
+                    return;
+                }
+                this.headers.computeIfAbsent(name, key -> new ArrayList<>(1)).add(value);
+            }
+        }
+
+        private String setOnce(String current, String value) {
+            if (current != null) this.malformed = true;
+            return value;
+        }
+
+        /**
+         * @return True if the header block is a valid request, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-request-pseudo-header-fields">RFC 9113</a>
+         */
+        boolean isValidRequest() {
+            if (this.malformed || this.method == null) return false;
+            if (this.method.equals("CONNECT")) {
+                return this.authority != null && this.scheme == null && this.path == null;
+            }
+            return this.scheme != null && this.path != null && !this.path.isEmpty();
+        }
+
+        private static boolean isValidName(String name) {
+            if (name.isEmpty()) return false;
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c <= ' ' || c >= 0x7F || (c >= 'A' && c <= 'Z') || c == ':') return false;
+            }
+            return true;
+        }
+
+        private static boolean isValidValue(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == 0 || c == '\r' || c == '\n') return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants of the HTTP/2 framing layer, see <a href="https://www.rfc-editor.org/rfc/rfc9113">RFC 9113</a>
+ */
+final class HTTP2Constants {
+    /** See https://www.rfc-editor.org/rfc/rfc9113#name-http-2-connection-preface */
+    static final byte[] CONNECTION_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    static final int FRAME_HEADER_LENGTH = 9;
+
+    // Frame types, see https://www.rfc-editor.org/rfc/rfc9113#name-frame-definitions
+    static final int TYPE_DATA = 0x0;
+    static final int TYPE_HEADERS = 0x1;
+    static final int TYPE_PRIORITY = 0x2;
+    static final int TYPE_RST_STREAM = 0x3;
+    static final int TYPE_SETTINGS = 0x4;
+    static final int TYPE_PUSH_PROMISE = 0x5;
+    static final int TYPE_PING = 0x6;
+    static final int TYPE_GOAWAY = 0x7;
+    static final int TYPE_WINDOW_UPDATE = 0x8;
+    static final int TYPE_CONTINUATION = 0x9;
+
+    static final int FLAG_END_STREAM = 0x1;
+    static final int FLAG_ACK = 0x1;
+    static final int FLAG_END_HEADERS = 0x4;
+    static final int FLAG_PADDED = 0x8;
+    static final int FLAG_PRIORITY = 0x20;
+
+    // Settings, see https://www.rfc-editor.org/rfc/rfc9113#name-defined-settings
+    static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    static final int SETTINGS_ENABLE_PUSH = 0x2;
+    static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    // Error codes, see https://www.rfc-editor.org/rfc/rfc9113#name-error-codes
+    static final int NO_ERROR = 0x0;
+    static final int PROTOCOL_ERROR = 0x1;
+    static final int INTERNAL_ERROR = 0x2;
+    static final int FLOW_CONTROL_ERROR = 0x3;
+    static final int STREAM_CLOSED = 0x5;
+    static final int FRAME_SIZE_ERROR = 0x6;
+    static final int REFUSED_STREAM = 0x7;
+    static final int CANCEL = 0x8;
+    static final int COMPRESSION_ERROR = 0x9;
+    static final int ENHANCE_YOUR_CALM = 0xb;
+
+    static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    static final int MAX_MAX_FRAME_SIZE = 16777215;
+    static final int DEFAULT_WINDOW_SIZE = 65535;
+    static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+    /** The size of the dynamic table of the HPACK decoder, which is the default, so it's never announced */
+    static final int HEADER_TABLE_SIZE = 4096;
+    /** The amount of streams a client may open at the same time */
+    static final int MAX_CONCURRENT_STREAMS = 100;
+
+    private HTTP2Constants() {}
+}
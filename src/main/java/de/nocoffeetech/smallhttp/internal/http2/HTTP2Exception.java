@@ -0,0 +1,32 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import java.io.IOException;
+
+/**
+ * An error of the HTTP/2 protocol, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-error-handling">RFC 9113</a>.
+ * A connection error ends the entire connection with a GOAWAY frame, a stream error only resets the stream it occurred on.
+ */
+class HTTP2Exception extends IOException {
+    private static final long serialVersionUID = 1L;
+    final int errorCode;
+    /** The stream the error occurred on, or 0 if this is a connection error */
+    final int streamId;
+
+    private HTTP2Exception(int errorCode, int streamId, String message) {
+        super(message);
+        this.errorCode = errorCode;
+        this.streamId = streamId;
+    }
+
+    static HTTP2Exception connectionError(int errorCode, String message) {
+        return new HTTP2Exception(errorCode, 0, message);
+    }
+
+    static HTTP2Exception streamError(int streamId, int errorCode, String message) {
+        return new HTTP2Exception(errorCode, streamId, message);
+    }
+
+    boolean isConnectionError() {
+        return this.streamId == 0;
+    }
+}
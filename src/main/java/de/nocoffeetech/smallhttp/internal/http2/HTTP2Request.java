@@ -0,0 +1,120 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import de.nocoffeetech.smallhttp.base.HTTPRequest;
+import de.nocoffeetech.smallhttp.data.HTTPVersion;
+import de.nocoffeetech.smallhttp.data.Method;
+import de.nocoffeetech.smallhttp.util.URLParser;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A request received on an HTTP/2 stream. The pseudo headers are mapped to the parts of the HTTP/1 request line,
+ * and the :authority pseudo header is available as host header, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-request-pseudo-header-fields">RFC 9113</a>.
+ */
+public class HTTP2Request implements HTTPRequest {
+    private final Method method;
+    private final URLParser urlParser;
+    private final String path;
+    /** The headers by lowercase name, all names are lowercase in HTTP/2 anyway */
+    private final Map<String, List<String>> headers;
+    private final long contentLength;
+    private HTTP2RequestBody body;
+
+    /**
+     * @param urlParser The parser for the :path pseudo header, or for the :authority pseudo header of a CONNECT request
+     * @param contentLength The length of the body, or -1 if the length is unknown
+     */
+    HTTP2Request(Method method, URLParser urlParser, Map<String, List<String>> headers, long contentLength) {
+        this(method, urlParser, urlParser.parseRequestTarget(), headers, contentLength);
+    }
+
+    private HTTP2Request(Method method, URLParser urlParser, String path, Map<String, List<String>> headers, long contentLength) {
+        this.method = method;
+        this.urlParser = urlParser;
+        this.path = path;
+        this.headers = headers;
+        this.contentLength = contentLength;
+    }
+
+    void setBody(HTTP2RequestBody body) {
+        this.body = body;
+    }
+
+    @Override
+    public HTTPVersion getVersion() {
+        return HTTPVersion.HTTP_2;
+    }
+
+    @Override
+    public Method getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public Map<String, String> getQueryParameters() {
+        return urlParser.parseOrGetQuery();
+    }
+
+    /**
+     * Gets the first header for a given key.
+     * @param key The lowercase key of the header
+     * @return The value of the header, or null if this header is absent or multiple value are present
+     */
+    @Override
+    public String getSingleHeader(String key) {
+        assert key.toLowerCase(Locale.ROOT).equals(key);
+        List<String> values = headers.get(key);
+        return values == null || values.size() != 1 ? null : values.get(0);
+    }
+
+    /**
+     * Gets the headers for a given key.
+     * @param key The lowercase key of the header
+     * @return The values of that header, or null if no such header is present
+     */
+    @Override
+    public List<String> getHeaders(String key) {
+        assert key.toLowerCase(Locale.ROOT).equals(key);
+        List<String> values = headers.get(key);
+        return values == null ? null : Collections.unmodifiableList(values);
+    }
+
+    @Override
+    public HTTP2RequestBody getInputStream() {
+        return body;
+    }
+
+    @Override
+    public HTTP2RequestBody getBody() {
+        return body;
+    }
+
+    @Override
+    public int getContentLength() {
+        return (int) Math.min(this.contentLength, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return this.contentLength;
+    }
+
+    @Override
+    public HTTPRequest copyWithNewPath(String newPath) {
+        HTTP2Request copy = new HTTP2Request(this.method, this.urlParser, newPath, this.headers, this.contentLength);
+        copy.body = this.body;
+        return copy;
+    }
+
+    boolean isAsteriskRequest() {
+        return urlParser.isAsteriskRequest();
+    }
+}
@@ -0,0 +1,190 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import de.nocoffeetech.smallhttp.internal.handler.RequestBodyInputStream;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The body of a request on an HTTP/2 stream. The connection thread adds the payload of the DATA frames, and the thread handling the request reads them.
+ * The flow control window of the stream is only opened again once the handler has read the data, so a slow handler slows down the client instead of the data piling up,
+ * see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-flow-control">RFC 9113</a>.
+ */
+class HTTP2RequestBody extends RequestBodyInputStream {
+    private final HTTP2Connection connection;
+    private final int streamId;
+    /** The length announced by the content-length header, or -1 if there was none */
+    private final long contentLength;
+    private final long timeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = this.lock.newCondition();
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private int chunkOffset = 0;
+    private long read = 0;
+    private boolean ended = false;
+    private IOException failure = null;
+    /** The amount of bytes that have been read, but not yet been given back to the client with a WINDOW_UPDATE */
+    private int unacknowledged = 0;
+
+    /**
+     * @param timeoutMillis How long a read may wait for the client, or -1 to wait forever
+     */
+    HTTP2RequestBody(HTTP2Connection connection, int streamId, long contentLength, int timeoutMillis) {
+        this.connection = connection;
+        this.streamId = streamId;
+        this.contentLength = contentLength;
+        this.timeoutNanos = timeoutMillis <= 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Adds the payload of a DATA frame. Only called by the connection thread.
+     */
+    void add(byte[] data) {
+        this.lock.lock();
+        try {
+            if (this.failure != null) return;
+            this.chunks.add(data);
+            this.dataAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the end of the body, after the client has sent the END_STREAM flag
+     */
+    void end() {
+        this.lock.lock();
+        try {
+            this.ended = true;
+            this.dataAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Lets all current and future reads fail, e.g. because the stream has been reset
+     */
+    void fail(IOException failure) {
+        this.lock.lock();
+        try {
+            if (this.ended && this.chunks.isEmpty()) return;
+            if (this.failure == null) this.failure = failure;
+            this.chunks.clear();
+            this.dataAvailable.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    boolean isEnded() {
+        this.lock.lock();
+        try {
+            return this.ended;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    protected boolean isDrained() {
+        this.lock.lock();
+        try {
+            return this.ended && this.chunks.isEmpty();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public long getRemainingLength() {
+        this.lock.lock();
+        try {
+            return this.contentLength < 0 ? -1 : this.contentLength - this.read;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int available() {
+        this.lock.lock();
+        try {
+            byte[] first = this.chunks.peek();
+            return first == null ? 0 : first.length - this.chunkOffset;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int read = read(b, 0, 1);
+        return read == -1 ? -1 : Byte.toUnsignedInt(b[0]);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        int read = 0;
+        int windowUpdate = 0;
+        this.lock.lock();
+        try {
+            long nanos = this.timeoutNanos;
+            while (this.chunks.isEmpty() && !this.ended && this.failure == null) {
+                if (nanos < 0) {
+                    this.dataAvailable.await();
+                } else {
+                    if (nanos == 0) throw new SocketTimeoutException("Timed out while waiting for the request body");
+                    nanos = this.dataAvailable.awaitNanos(nanos);
+                    if (nanos < 0) nanos = 0;
+                }
+            }
+            if (this.failure != null) throw new IOException("Failed to read the request body", this.failure);
+            // Copy from as many chunks as possible, the client can't send more data than the window allows anyway
+            while (read < len && !this.chunks.isEmpty()) {
+                byte[] chunk = this.chunks.peek();
+                int toCopy = Math.min(len - read, chunk.length - this.chunkOffset);
+                System.arraycopy(chunk, this.chunkOffset, b, off + read, toCopy);
+                read += toCopy;
+                this.chunkOffset += toCopy;
+                if (this.chunkOffset == chunk.length) {
+                    this.chunks.poll();
+                    this.chunkOffset = 0;
+                }
+            }
+            if (read == 0) return -1;
+            this.read += read;
+            if (!this.ended) {
+                this.unacknowledged += read;
+                // Batch the updates, a frame for every read would waste more than it helps
+                if (this.unacknowledged >= HTTP2Constants.DEFAULT_WINDOW_SIZE / 2) {
+                    windowUpdate = this.unacknowledged;
+                    this.unacknowledged = 0;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the request body", e);
+        } finally {
+            this.lock.unlock();
+        }
+        if (windowUpdate > 0) {
+            // Written outside the lock, so the connection thread is never blocked by a slow write of a handler
+            this.connection.releaseStreamWindow(this.streamId, windowUpdate);
+        }
+        return read;
+    }
+}
@@ -0,0 +1,423 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.BuiltinHeaders;
+import de.nocoffeetech.smallhttp.header.CommonContentTypes;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeaderKey;
+import de.nocoffeetech.smallhttp.internal.handler.ResponseTokenImpl;
+import de.nocoffeetech.smallhttp.response.*;
+import de.nocoffeetech.smallhttp.util.HTTPDateCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes the response to a request on an HTTP/2 stream. The headers are encoded with HPACK as they are added and sent as a HEADERS frame,
+ * the body is sent in DATA frames, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-http-message-framing">RFC 9113</a>.
+ * There is no chunked transfer coding in HTTP/2, a body with an unknown size simply ends with the last DATA frame.
+ */
+class HTTP2ResponseWriter implements ResponseStartWriter, ResponseHeaderWriter, FixedResponseBodyWriter, ChunkedResponseWriter {
+    private static final PrecomputedHeader SERVER_HEADER = PrecomputedHeader.create(BuiltinHeaders.SERVER.headerKey, "JSmallHTTP");
+    private static final int DATE_NAME_INDEX = 33;
+    private static final int CONTENT_LENGTH_NAME_INDEX = 28;
+    private static final int DATE_VALUE_OFFSET = BuiltinHeaders.DATE.headerKey.asciiBytes.length;
+    /** The encoded status and headers of each precomputed response, without the date and server header */
+    private static final Map<PrecomputedResponse, byte[]> PRECOMPUTED_CACHE = new ConcurrentHashMap<>();
+    private static final byte[] EMPTY = new byte[0];
+
+    private final HTTP2Connection connection;
+    private final HTTP2Stream stream;
+    private final HTTPDateCache dateCache;
+    /** Responses to HEAD requests have no content, so the body is discarded, see https://www.rfc-editor.org/rfc/rfc9110#name-head */
+    private final boolean discardBody;
+    private final HPACKEncoder encoder = new HPACKEncoder(256);
+    private Status status = null;
+    private boolean startedSendingData = false;
+    private boolean completed = false;
+    private boolean chunked = false;
+    private int chunkBufferThreshold = 0;
+    private byte[] chunkBuffer = null;
+    private int bufferedChunkLength = 0;
+    private long bytesWritten = 0;
+    private long headerSentNanos;
+    private long completedNanos;
+
+    HTTP2ResponseWriter(HTTP2Connection connection, HTTP2Stream stream, HTTPDateCache dateCache, boolean discardBody) {
+        this.connection = connection;
+        this.stream = stream;
+        this.dateCache = dateCache;
+        this.discardBody = discardBody;
+    }
+
+    @Override
+    public ResponseHeaderWriter respond(Status status, String contentType) {
+        if (status == null || contentType == null) throw new IllegalArgumentException();
+        respondWithoutContentType(status);
+        this.encoder.encodeHeader(BuiltinHeaders.CONTENT_TYPE.headerKey, contentType);
+        return this;
+    }
+
+    @Override
+    public ResponseHeaderWriter respond(Status status, CommonContentTypes contentType) {
+        if (status == null) throw new IllegalArgumentException();
+        respondWithoutContentType(status);
+        this.encoder.encodeHeader(contentType.header);
+        return this;
+    }
+
+    @Override
+    public ResponseHeaderWriter respondWithoutContentType(Status status) {
+        if (status == null) throw new IllegalArgumentException();
+        if (this.status != null) throw new IllegalStateException();
+
+        this.status = status;
+        this.encoder.reset();
+        this.encoder.encodeStatus(status);
+        return this;
+    }
+
+    @Override
+    public ResponseToken sendPrecomputed(PrecomputedResponse response) throws HTTPWriteException {
+        if (response == null) throw new IllegalArgumentException();
+        if (this.startedSendingData || this.status != null) throw new IllegalStateException();
+
+        this.status = response.status;
+        byte[] block = PRECOMPUTED_CACHE.computeIfAbsent(response, HTTP2ResponseWriter::encodePrecomputed);
+        this.encoder.reset();
+        this.encoder.append(block, 0, block.length);
+        return sendHeaderAndBody(new byte[][] {response.bytes}, response.bytes.length - response.bodyLength, response.bodyLength);
+    }
+
+    @Override
+    public ResponseHeaderWriter addHeader(PrecomputedHeader header) {
+        if (header == null) throw new IllegalArgumentException();
+        if (this.startedSendingData || this.status == null) throw new IllegalStateException();
+
+        this.encoder.encodeHeader(header);
+        return this;
+    }
+
+    @Override
+    public ResponseHeaderWriter addHeader(PrecomputedHeaderKey headerKey, String value) {
+        if (headerKey == null || value == null) throw new IllegalArgumentException();
+        if (this.startedSendingData || this.status == null) throw new IllegalStateException();
+
+        this.encoder.encodeHeader(headerKey, value);
+        return this;
+    }
+
+    @Override
+    public FixedResponseBodyWriter beginBodyWithKnownSize(long size) throws HTTPWriteException {
+        if (size < 0) throw new IllegalArgumentException();
+        if (this.startedSendingData || this.status == null) throw new IllegalStateException();
+        addContentLength(size);
+
+        sendHeader(false);
+        this.bytesWritten += size;
+        return this;
+    }
+
+    @Override
+    public ChunkedResponseWriter beginBodyWithUnknownSize() throws HTTPWriteException {
+        if (this.startedSendingData || this.status == null) throw new IllegalStateException();
+        this.chunked = true;
+
+        sendHeader(false);
+        return this;
+    }
+
+    @Override
+    public ChunkedResponseWriter beginBodyWithUnknownSize(int bufferSize) throws HTTPWriteException {
+        if (bufferSize <= 0) throw new IllegalArgumentException();
+        beginBodyWithUnknownSize();
+        // Larger buffers don't help, as the data is split into frames of this size anyway
+        this.chunkBufferThreshold = Math.min(bufferSize, HTTP2Constants.DEFAULT_MAX_FRAME_SIZE);
+        return this;
+    }
+
+    @Override
+    public ResponseToken sendWithoutBody() throws HTTPWriteException {
+        if (this.startedSendingData || this.status == null) throw new IllegalStateException();
+
+        sendHeader(true);
+        return complete();
+    }
+
+    @Override
+    public ResponseToken writeBodyAndFlush(String s) throws HTTPWriteException {
+        return writeBodyAndFlush(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public ResponseToken writeBodyAndFlush(String... strings) throws HTTPWriteException {
+        if (this.startedSendingData || this.status == null) throw new IllegalStateException();
+        byte[][] arrays = new byte[strings.length][];
+        int length = 0;
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+            length += bytes.length;
+            arrays[i] = bytes;
+        }
+        addContentLength(length);
+        return sendHeaderAndBody(arrays, 0, length);
+    }
+
+    @Override
+    public ResponseToken writeBodyAndFlush(byte[] bytes) throws HTTPWriteException {
+        if (this.startedSendingData || this.status == null) throw new IllegalStateException();
+        addContentLength(bytes.length);
+        return sendHeaderAndBody(new byte[][] {bytes}, 0, bytes.length);
+    }
+
+    @Override
+    public ResponseStartWriter resetResponseBuilder() {
+        if (this.startedSendingData) throw new IllegalStateException();
+
+        this.encoder.reset();
+        this.status = null;
+        return this;
+    }
+
+    @Override
+    public boolean canResetResponseWriter() {
+        return !this.startedSendingData;
+    }
+
+    @Override
+    public OutputStream getRawOutputStream() {
+        if (!this.startedSendingData || completed || chunked) throw new IllegalStateException();
+
+        return new DataOutputStream();
+    }
+
+    @Override
+    public SocketChannel getRawSocketChannel() {
+        if (!this.startedSendingData || completed || chunked) throw new IllegalStateException();
+
+        // The connection is shared by all streams, writing to it directly would corrupt the framing
+        return null;
+    }
+
+    @Override
+    public void writeChunk(byte[] data) throws HTTPWriteException {
+        this.writeChunk(data, 0, data.length);
+    }
+
+    @Override
+    public void writeChunk(byte[] data, int offset, int length) throws HTTPWriteException {
+        if (!this.startedSendingData || completed || !chunked) throw new IllegalStateException();
+        assert data.length - offset >= length;
+        if (length == 0) return;
+
+        if (this.bufferedChunkLength + length < this.chunkBufferThreshold) {
+            if (this.chunkBuffer == null) {
+                this.chunkBuffer = new byte[this.chunkBufferThreshold];
+            }
+            System.arraycopy(data, offset, this.chunkBuffer, this.bufferedChunkLength, length);
+            this.bufferedChunkLength += length;
+        } else {
+            sendBufferedChunk(false);
+            sendData(data, offset, length, false);
+        }
+    }
+
+    @Override
+    public void writeFromInputStream(InputStream stream) throws HTTPWriteException, IOException {
+        if (!this.startedSendingData || completed || !chunked) throw new IllegalStateException();
+
+        byte[] buffer = new byte[HTTP2Constants.DEFAULT_MAX_FRAME_SIZE];
+        int read;
+        while ((read = stream.read(buffer)) >= 0) {
+            writeChunk(buffer, 0, read);
+        }
+    }
+
+    @Override
+    public void flush() throws HTTPWriteException {
+        if (!this.startedSendingData || completed || !chunked) throw new IllegalStateException();
+
+        sendBufferedChunk(false);
+        try {
+            this.connection.flush();
+        } catch (IOException e) {
+            throw new HTTPWriteException(e);
+        }
+    }
+
+    @Override
+    public ResponseToken finalizeResponse() throws HTTPWriteException {
+        if (completed || !startedSendingData) throw new IllegalStateException();
+
+        if (this.bufferedChunkLength > 0) {
+            sendBufferedChunk(true);
+        } else {
+            sendData(EMPTY, 0, 0, true);
+        }
+        return complete();
+    }
+
+    /**
+     * @return True once the response has been sent completely
+     */
+    boolean isCompleted() {
+        return this.completed;
+    }
+
+    Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * @return The amount of bytes of the response so far, counting the encoded header block and the body
+     */
+    long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    /**
+     * @return The time from sending the header until the response was completed, only valid once {@link #isCompleted()} is true
+     */
+    long getWriteNanos() {
+        return this.completedNanos - this.headerSentNanos;
+    }
+
+    private ResponseToken complete() throws HTTPWriteException {
+        try {
+            this.connection.flush();
+        } catch (IOException e) {
+            throw new HTTPWriteException(e);
+        }
+        this.completed = true;
+        this.completedNanos = System.nanoTime();
+        return ResponseTokenImpl.get();
+    }
+
+    private void addContentLength(long length) {
+        byte[] value = String.valueOf(length).getBytes(StandardCharsets.US_ASCII);
+        this.encoder.encodeHeader(CONTENT_LENGTH_NAME_INDEX, value, 0, value.length);
+    }
+
+    /**
+     * Adds the builtin headers, which are only known once the header is sent
+     */
+    private void prepareHeader() {
+        byte[] dateHeader = this.dateCache.getDateHeaderBytes();
+        this.encoder.encodeHeader(DATE_NAME_INDEX, dateHeader, DATE_VALUE_OFFSET, HTTPDateCache.DATE_LENGTH);
+        this.encoder.encodeHeader(SERVER_HEADER);
+        // Point of no return
+        this.startedSendingData = true;
+        this.headerSentNanos = System.nanoTime();
+        this.bytesWritten += this.encoder.getLength();
+    }
+
+    private void sendHeader(boolean endStream) throws HTTPWriteException {
+        prepareHeader();
+        try {
+            this.connection.writeHeaders(this.stream, this.encoder.getBuffer(), this.encoder.getLength(), endStream);
+        } catch (IOException e) {
+            throw new HTTPWriteException(e);
+        }
+    }
+
+    /**
+     * Sends the header and the entire body, which is split into parts to avoid copying them, with a single flush
+     * @param firstOffset The offset of the body in the first part
+     */
+    private ResponseToken sendHeaderAndBody(byte[][] bodyParts, int firstOffset, int bodyLength) throws HTTPWriteException {
+        prepareHeader();
+        this.bytesWritten += bodyLength;
+        try {
+            if (bodyLength == 0 || this.discardBody) {
+                this.connection.writeHeaders(this.stream, this.encoder.getBuffer(), this.encoder.getLength(), true);
+            } else {
+                this.connection.writeHeaders(this.stream, this.encoder.getBuffer(), this.encoder.getLength(), false);
+                int remaining = bodyLength;
+                for (int i = 0; i < bodyParts.length; i++) {
+                    byte[] part = bodyParts[i];
+                    int offset = i == 0 ? firstOffset : 0;
+                    int length = part.length - offset;
+                    remaining -= length;
+                    this.connection.writeData(this.stream, part, offset, length, remaining == 0);
+                }
+            }
+        } catch (IOException e) {
+            throw new HTTPWriteException(e);
+        }
+        return complete();
+    }
+
+    private void sendBufferedChunk(boolean endStream) throws HTTPWriteException {
+        if (this.bufferedChunkLength == 0) return;
+        int length = this.bufferedChunkLength;
+        this.bufferedChunkLength = 0;
+        sendData(this.chunkBuffer, 0, length, endStream);
+    }
+
+    private void sendData(byte[] data, int offset, int length, boolean endStream) throws HTTPWriteException {
+        if (this.discardBody) {
+            if (!endStream) return;
+            length = 0;
+        }
+        if (this.chunked) {
+            this.bytesWritten += length;
+        }
+        try {
+            this.connection.writeData(this.stream, data, offset, length, endStream);
+        } catch (IOException e) {
+            throw new HTTPWriteException(e);
+        }
+    }
+
+    /**
+     * Encodes the status and the headers of a precomputed response. The date and server header are skipped, they are added when sending like for every other response.
+     */
+    private static byte[] encodePrecomputed(PrecomputedResponse response) {
+        HPACKEncoder encoder = new HPACKEncoder(256);
+        encoder.encodeStatus(response.status);
+        byte[] bytes = response.bytes;
+        int index = response.status.getHeaderLength();
+        while (bytes[index] != '\r') {
+            int lineEnd = index;
+            while (bytes[lineEnd] != '\n') lineEnd++;
+            int nameEnd = index;
+            while (bytes[nameEnd] != ':') nameEnd++;
+            String name = new String(bytes, index, nameEnd - index, StandardCharsets.US_ASCII);
+            if (!name.equalsIgnoreCase(BuiltinHeaders.DATE.httpName) && !name.equalsIgnoreCase(BuiltinHeaders.SERVER.httpName)) {
+                encoder.encodeHeader(PrecomputedHeaderKey.create(name), new String(bytes, nameEnd + 1, lineEnd - nameEnd - 2, StandardCharsets.US_ASCII));
+            }
+            index = lineEnd + 1;
+        }
+        return Arrays.copyOf(encoder.getBuffer(), encoder.getLength());
+    }
+
+    /**
+     * Sends everything that is written as DATA frames
+     */
+    private class DataOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            if (completed) throw new IOException("Response has already been completed");
+            if (discardBody) return;
+            connection.writeData(stream, b, off, len, false);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            connection.flush();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stream of an HTTP/2 connection that carries a single request and its response, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-streams-and-multiplexing">RFC 9113</a>.
+ * The stream is created once the header block of the request has been received and removed once the response has been sent or the stream was reset.
+ */
+class HTTP2Stream {
+    final int id;
+    final HTTP2Request request;
+    /** The body of the request, or null if the request has none */
+    final HTTP2RequestBody body;
+    /** The amount of bytes the client may still send, only decreased by the connection thread */
+    final AtomicInteger receiveWindow;
+    /** The maximum length of the body the handler accepts */
+    final long maxBodyLength;
+    /** The amount of bytes we may still send, guarded by the write lock of the connection */
+    long sendWindow;
+    /** Set once the client has sent the end of the request, only used by the connection thread */
+    boolean remoteClosed;
+    /** The amount of body bytes received so far, only used by the connection thread */
+    long receivedBodyLength = 0;
+    /** Set once either side has reset the stream, after that no frames must be sent on it */
+    volatile boolean reset = false;
+    /** Set once the end of the response has been sent, guarded by the write lock of the connection */
+    boolean localClosed = false;
+
+    HTTP2Stream(int id, HTTP2Request request, HTTP2RequestBody body, int receiveWindow, long sendWindow, long maxBodyLength) {
+        this.id = id;
+        this.request = request;
+        this.body = body;
+        this.remoteClosed = body == null;
+        this.receiveWindow = new AtomicInteger(receiveWindow);
+        this.sendWindow = sendWindow;
+        this.maxBodyLength = maxBodyLength;
+    }
+
+    /**
+     * @return True if the client has sent the entire request
+     */
+    boolean isRemoteClosed() {
+        return this.body == null || this.body.isEnded();
+    }
+}
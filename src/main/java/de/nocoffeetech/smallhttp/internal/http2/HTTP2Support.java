@@ -0,0 +1,121 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import de.nocoffeetech.smallhttp.base.ErrorHandler;
+import de.nocoffeetech.smallhttp.base.HTTPRequest;
+import de.nocoffeetech.smallhttp.base.HTTPServer;
+import de.nocoffeetech.smallhttp.base.RequestHandler;
+import de.nocoffeetech.smallhttp.data.Method;
+import de.nocoffeetech.smallhttp.internal.watchdog.ClientHandlerState;
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
+import de.nocoffeetech.smallhttp.util.PathCache;
+import de.nocoffeetech.smallhttp.util.URLParser;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * The server wide configuration of HTTP/2 cleartext connections, which are either started with prior knowledge
+ * or upgraded from HTTP/1.1, see <a href="https://www.rfc-editor.org/rfc/rfc9113#name-starting-http-2">RFC 9113</a>.
+ * Shared by all client handlers of a server.
+ */
+public class HTTP2Support {
+    final Executor executor;
+    final RequestHandler handler;
+    final ErrorHandler errorHandler;
+    final HTTPServer server;
+    final ServerMetrics metrics;
+    final boolean allowTraceConnect;
+    final boolean builtinServerWideOptions;
+    final long maxBodyLength;
+    final int maxHeaderListSize;
+    final int socketTimeout;
+    final PathCache pathCache;
+
+    /**
+     * @param executor The executor to handle the requests of the streams with
+     * @param maxHeaderListSize The maximum size of the headers of a request, as defined by SETTINGS_MAX_HEADER_LIST_SIZE
+     * @param socketTimeout The socket timeout in millis, or -1 if there is none
+     * @param pathCache The cache for decoded paths, or null if disabled
+     */
+    public HTTP2Support(Executor executor, RequestHandler handler, ErrorHandler errorHandler, HTTPServer server, ServerMetrics metrics, boolean allowTraceConnect,
+                        boolean builtinServerWideOptions, long maxBodyLength, int maxHeaderListSize, int socketTimeout, PathCache pathCache) {
+        this.executor = executor;
+        this.handler = handler;
+        this.errorHandler = errorHandler;
+        this.server = server;
+        this.metrics = metrics;
+        this.allowTraceConnect = allowTraceConnect;
+        this.builtinServerWideOptions = builtinServerWideOptions;
+        this.maxBodyLength = maxBodyLength;
+        this.maxHeaderListSize = maxHeaderListSize;
+        this.socketTimeout = socketTimeout;
+        this.pathCache = pathCache;
+    }
+
+    /**
+     * Checks if the given bytes are the start of the connection preface
+     * @return True if all given bytes match the preface, which might not be complete yet
+     */
+    public static boolean matchesPreface(byte[] buf, int length) {
+        byte[] preface = HTTP2Constants.CONNECTION_PREFACE;
+        int toCheck = Math.min(length, preface.length);
+        for (int i = 0; i < toCheck; i++) {
+            if (buf[i] != preface[i]) return false;
+        }
+        return true;
+    }
+
+    public static int getPrefaceLength() {
+        return HTTP2Constants.CONNECTION_PREFACE.length;
+    }
+
+    /**
+     * Decodes the HTTP2-Settings header of an upgrade request, see <a href="https://www.rfc-editor.org/rfc/rfc7540#section-3.2.1">RFC 7540</a>
+     * @return The payload of the SETTINGS frame, or null if the header is invalid
+     */
+    public static byte[] decodeSettings(String header) {
+        byte[] settings;
+        try {
+            settings = Base64.getUrlDecoder().decode(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return settings.length % 6 == 0 ? settings : null;
+    }
+
+    long getMaxBodyLength(HTTPRequest request) {
+        long endpointMax = this.handler.getMaxBodySizeBytes(request);
+        return endpointMax < 0 ? this.maxBodyLength : endpointMax;
+    }
+
+    /**
+     * Creates a connection whose client has sent the connection preface with prior knowledge
+     * @param leftover The bytes after the preface that have already been read
+     * @param closeAction Closes the connection from another thread
+     */
+    public HTTP2Connection createConnection(Socket socket, ClientHandlerState state, InputStream in, OutputStream out, Closeable closeAction, byte[] leftover) {
+        return new HTTP2Connection(this, socket, state, in, out, closeAction, leftover, true);
+    }
+
+    /**
+     * Creates a connection that has been upgraded from HTTP/1.1. The request with the upgrade is answered on stream 1.
+     * @param leftover The bytes after the upgrade request that have already been read, which should be the start of the connection preface
+     * @param headers The headers of the upgrade request by lowercase name
+     * @param settings The decoded HTTP2-Settings header, see {@link #decodeSettings(String)}
+     */
+    public HTTP2Connection createUpgradedConnection(Socket socket, ClientHandlerState state, InputStream in, OutputStream out, Closeable closeAction, byte[] leftover,
+                                                    Method method, URLParser parser, Map<String, List<String>> headers, byte[] settings) {
+        // These only concerned the HTTP/1.1 connection, see https://www.rfc-editor.org/rfc/rfc9113#name-connection-specific-header-
+        headers.keySet().removeAll(HTTP2Connection.CONNECTION_SPECIFIC_HEADERS);
+        headers.remove("http2-settings");
+        HTTP2Connection connection = new HTTP2Connection(this, socket, state, in, out, closeAction, leftover, false);
+        connection.setUpgradeRequest(new HTTP2Request(method, parser, headers, 0), settings);
+        return connection;
+    }
+}
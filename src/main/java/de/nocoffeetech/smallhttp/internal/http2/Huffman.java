@@ -0,0 +1,125 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+/**
+ * The static Huffman code of HPACK, see <a href="https://www.rfc-editor.org/rfc/rfc7541#appendix-B">RFC 7541</a>.
+ * The code is canonical, so it's completely described by the length of the code of each symbol, and the codes are derived from these lengths.
+ */
+final class Huffman {
+    private static final int EOS = 256;
+    private static final int MAX_CODE_LENGTH = 30;
+    /** The length of the code of each symbol, the last one is the end of string symbol */
+    private static final byte[] CODE_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30
+    };
+    private static final int[] CODES = new int[CODE_LENGTHS.length];
+    // For decoding: the first code of each length, the index of its symbol and the amount of codes with that length
+    private static final int[] FIRST_CODE = new int[MAX_CODE_LENGTH + 1];
+    private static final int[] FIRST_INDEX = new int[MAX_CODE_LENGTH + 1];
+    private static final int[] COUNT = new int[MAX_CODE_LENGTH + 1];
+    /** The symbols sorted by the length of their code and then by their value, which is the order of their codes */
+    private static final int[] SYMBOLS = new int[CODE_LENGTHS.length];
+
+    static {
+        int code = 0;
+        int index = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            FIRST_CODE[length] = code;
+            FIRST_INDEX[length] = index;
+            for (int symbol = 0; symbol < CODE_LENGTHS.length; symbol++) {
+                if (CODE_LENGTHS[symbol] != length) continue;
+                CODES[symbol] = code++;
+                SYMBOLS[index++] = symbol;
+                COUNT[length]++;
+            }
+            code <<= 1;
+        }
+    }
+
+    private Huffman() {}
+
+    /**
+     * @return The amount of bytes the string would need once encoded
+     */
+    static int encodedLength(byte[] src, int offset, int length) {
+        long bits = 0;
+        for (int i = offset; i < offset + length; i++) {
+            bits += CODE_LENGTHS[src[i] & 0xFF];
+        }
+        return (int) ((bits + 7) >> 3);
+    }
+
+    /**
+     * Encodes a string, padding the last byte with the most significant bits of the end of string symbol
+     * @return The index after the last written byte
+     */
+    static int encode(byte[] src, int offset, int length, byte[] target, int targetOffset) {
+        long bits = 0;
+        int bitCount = 0;
+        int index = targetOffset;
+        for (int i = offset; i < offset + length; i++) {
+            int symbol = src[i] & 0xFF;
+            int codeLength = CODE_LENGTHS[symbol];
+            bits = (bits << codeLength) | CODES[symbol];
+            bitCount += codeLength;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                target[index++] = (byte) (bits >>> bitCount);
+            }
+            bits &= (1L << bitCount) - 1;
+        }
+        if (bitCount > 0) {
+            target[index++] = (byte) ((bits << (8 - bitCount)) | (0xFF >>> bitCount));
+        }
+        return index;
+    }
+
+    /**
+     * Decodes a string. As the shortest code has 5 bits, the target must be able to hold {@code length * 8 / 5} bytes.
+     * @return The amount of decoded bytes
+     * @throws HTTP2Exception If the string contains the end of string symbol or is not padded correctly
+     */
+    static int decode(byte[] src, int offset, int length, byte[] target) throws HTTP2Exception {
+        int code = 0;
+        int codeLength = 0;
+        int decoded = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int b = src[i] & 0xFF;
+            for (int bit = 7; bit >= 0; bit--) {
+                code = (code << 1) | ((b >>> bit) & 1);
+                codeLength++;
+                // Shorter codes are never the prefix of longer ones, so the code is complete once it falls into the range of its length
+                int offsetInLength = code - FIRST_CODE[codeLength];
+                if (offsetInLength >= 0 && offsetInLength < COUNT[codeLength]) {
+                    int symbol = SYMBOLS[FIRST_INDEX[codeLength] + offsetInLength];
+                    if (symbol == EOS) throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Huffman encoded string contains EOS");
+                    target[decoded++] = (byte) symbol;
+                    code = 0;
+                    codeLength = 0;
+                } else if (codeLength == MAX_CODE_LENGTH) {
+                    throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Invalid Huffman code");
+                }
+            }
+        }
+        // The padding must be shorter than a byte and consist of the most significant bits of EOS, which are all ones
+        if (codeLength > 7 || code != (1 << codeLength) - 1) {
+            throw HTTP2Exception.connectionError(HTTP2Constants.COMPRESSION_ERROR, "Invalid Huffman padding");
+        }
+        return decoded;
+    }
+}
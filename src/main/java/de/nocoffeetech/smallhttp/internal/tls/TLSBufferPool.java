@@ -0,0 +1,78 @@
+package de.nocoffeetech.smallhttp.internal.tls;
+
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of the buffers TLS records are encrypted and decrypted in, owned by the server.
+ * All buffers have the same size, as every buffer must be able to hold the largest TLS record.
+ * Like the {@link de.nocoffeetech.smallhttp.internal.handler.BufferPool}, acquired and released buffers are tracked in the {@link ServerMetrics}.
+ * <br>
+ * The buffers are heap buffers: The connection is read and written with the streams of the socket, which honor the socket timeout,
+ * so the encrypted bytes are read into and written from the backing array directly. Direct buffers would need an additional copy.
+ */
+public class TLSBufferPool {
+    private final ConcurrentLinkedQueue<ByteBuffer> pooled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger(0);
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ServerMetrics metrics;
+
+    /**
+     * Creates a new pool
+     * @param bufferSize The size of all buffers, which must fit a TLS record and the data of one
+     * @param maxPooled The maximum number of idle buffers that are retained. Additional buffers are created on demand and dropped once released.
+     * @param metrics The metrics to record acquired and released buffers in
+     */
+    public TLSBufferPool(int bufferSize, int maxPooled, ServerMetrics metrics) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.metrics = metrics;
+    }
+
+    int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    /**
+     * @return A cleared buffer, containing data of previous uses
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = this.pooled.poll();
+        this.metrics.bufferAcquired(buffer != null);
+        if (buffer == null) {
+            return ByteBuffer.allocate(this.bufferSize);
+        }
+        this.pooledCount.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used anymore afterward.
+     */
+    void release(ByteBuffer buffer) {
+        this.metrics.bufferReleased();
+        // Slightly racy, which means we may retain a few buffers more than allowed. That's fine.
+        if (this.pooledCount.get() < this.maxPooled) {
+            this.pooledCount.incrementAndGet();
+            this.pooled.offer(buffer);
+        }
+    }
+
+    /**
+     * @return The amount of idle buffers that are currently retained
+     */
+    public int getPooledBuffers() {
+        return this.pooledCount.get();
+    }
+
+    /**
+     * @return The amount of memory retained by idle buffers
+     */
+    public long getPooledBytes() {
+        return (long) this.pooledCount.get() * this.bufferSize;
+    }
+}
@@ -0,0 +1,96 @@
+package de.nocoffeetech.smallhttp.internal.tls;
+
+import de.nocoffeetech.smallhttp.base.ErrorHandler;
+import de.nocoffeetech.smallhttp.base.HTTPServer;
+import de.nocoffeetech.smallhttp.base.RequestHandler;
+import de.nocoffeetech.smallhttp.base.TLSConfig;
+import de.nocoffeetech.smallhttp.internal.handler.BufferPool;
+import de.nocoffeetech.smallhttp.internal.handler.HTTPClientHandler;
+import de.nocoffeetech.smallhttp.internal.watchdog.ClientHandlerTracker;
+import de.nocoffeetech.smallhttp.util.PathCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+
+/**
+ * Handles a connection that is secured with TLS. The requests are read from and the responses written to a {@link TLSConnection} instead of the socket.
+ * The connection is set up by the handling thread, so the handshake never blocks the acceptor.
+ */
+public class TLSClientHandler extends HTTPClientHandler {
+    private final Socket socket;
+    private final ErrorHandler errorHandler;
+    private final HTTPServer server;
+    private final TLSConfig config;
+    private final TLSBufferPool tlsBufferPool;
+    private TLSConnection connection;
+
+    public TLSClientHandler(Socket socket,
+                            ErrorHandler errorHandler,
+                            RequestHandler handler,
+                            HTTPServer server,
+                            ClientHandlerTracker tracker,
+                            boolean allowTraceConnect,
+                            boolean builtinServerWideOptions,
+                            long maxBodyLength,
+                            BufferPool bufferPool,
+                            boolean releaseBuffersWhileIdle,
+                            PathCache pathCache,
+                            TLSConfig config,
+                            TLSBufferPool tlsBufferPool) {
+        super(socket, errorHandler, handler, server, tracker, allowTraceConnect, builtinServerWideOptions, maxBodyLength, bufferPool, releaseBuffersWhileIdle, pathCache, null);
+        this.socket = socket;
+        this.errorHandler = errorHandler;
+        this.server = server;
+        this.config = config;
+        this.tlsBufferPool = tlsBufferPool;
+    }
+
+    private TLSConnection getConnection() throws IOException {
+        TLSConnection connection = this.connection;
+        if (connection == null) {
+            try {
+                this.config.reloadIfModified();
+            } catch (IOException | GeneralSecurityException e) {
+                // The previous certificates are still valid, so keep serving with them
+                this.errorHandler.onCertificateReloadFailed(this.server, e);
+            }
+            connection = this.connection = new TLSConnection(this.config.createEngine(), this.socket.getInputStream(), this.socket.getOutputStream(), this.tlsBufferPool);
+        }
+        return connection;
+    }
+
+    @Override
+    protected InputStream getInputStream() throws IOException {
+        return getConnection().getInputStream();
+    }
+
+    @Override
+    protected OutputStream getOutputStream() throws IOException {
+        return getConnection().getOutputStream();
+    }
+
+    @Override
+    protected SocketChannel getSocketChannel() {
+        // Writing to or reading from the channel directly would bypass the encryption
+        return null;
+    }
+
+    @Override
+    protected void closeGracefully() throws IOException {
+        TLSConnection connection = this.connection;
+        if (connection == null) {
+            close();
+            return;
+        }
+        try {
+            connection.closeOutbound();
+        } finally {
+            close();
+            connection.releaseBuffers();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package de.nocoffeetech.smallhttp.internal.tls;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+/**
+ * A TLS connection on top of the blocking streams of a socket, see <a href="https://www.rfc-editor.org/rfc/rfc8446">RFC 8446</a>.
+ * The handshake is done by the first read or write. Encrypted records are collected and only sent once the output is flushed or the buffer is full,
+ * so a response that is written in multiple parts still needs a single write to the socket.
+ * <br>
+ * All network I/O goes through {@link #readFromNetwork()} and {@link #flushNetwork()}, the engine is driven by {@link #wrap(ByteBuffer)} and {@link #unwrap()}.
+ * Only the thread handling the connection may use it, other threads may only close the socket.
+ */
+class TLSConnection {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private final SSLEngine engine;
+    private final InputStream networkIn;
+    private final OutputStream networkOut;
+    private final TLSBufferPool pool;
+    /** Received records that have not been decrypted yet, in read mode */
+    private ByteBuffer netIn;
+    /** Decrypted data that has not been read yet, in read mode */
+    private ByteBuffer appIn;
+    /** Encrypted records that have not been sent yet, in write mode */
+    private ByteBuffer netOut;
+    private boolean handshakeDone = false;
+    private boolean inboundDone = false;
+    private final InputStream inputStream = new TLSInputStream();
+    private final OutputStream outputStream = new TLSOutputStream();
+
+    TLSConnection(SSLEngine engine, InputStream networkIn, OutputStream networkOut, TLSBufferPool pool) {
+        this.engine = engine;
+        this.networkIn = networkIn;
+        this.networkOut = networkOut;
+        this.pool = pool;
+        this.netIn = pool.acquire().flip();
+        this.appIn = pool.acquire().flip();
+        this.netOut = pool.acquire();
+    }
+
+    InputStream getInputStream() {
+        return this.inputStream;
+    }
+
+    OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    /**
+     * Sends the close_notify alert, see <a href="https://www.rfc-editor.org/rfc/rfc8446#section-6.1">RFC 8446</a>. The socket must be closed afterward.
+     */
+    void closeOutbound() throws IOException {
+        if (!this.handshakeDone) return;
+        sendCloseNotify();
+    }
+
+    /**
+     * Returns the buffers to the pool. The connection must not be used anymore afterward.
+     */
+    void releaseBuffers() {
+        this.pool.release(this.netIn);
+        this.pool.release(this.appIn);
+        this.pool.release(this.netOut);
+        this.netIn = null;
+        this.appIn = null;
+        this.netOut = null;
+    }
+
+    /**
+     * @return False if the connection has been closed before the handshake was completed
+     */
+    private boolean handshake() throws IOException {
+        this.engine.beginHandshake();
+        if (!processHandshake()) {
+            this.inboundDone = true;
+            return false;
+        }
+        this.handshakeDone = true;
+        return true;
+    }
+
+    /**
+     * Does what the engine needs until the handshake is completed. This is also used for messages after the handshake, e.g. a key update.
+     * @return False if the connection has been closed before the handshake was completed
+     */
+    private boolean processHandshake() throws IOException {
+        try {
+            while (true) {
+                switch (this.engine.getHandshakeStatus()) {
+                    case NEED_WRAP -> wrap(EMPTY);
+                    case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> {
+                        if (unwrap() == -1) return false;
+                    }
+                    case NEED_TASK -> {
+                        Runnable task;
+                        while ((task = this.engine.getDelegatedTask()) != null) {
+                            task.run();
+                        }
+                    }
+                    default -> {
+                        // Finished, the client waits for our last messages
+                        flushNetwork();
+                        return true;
+                    }
+                }
+            }
+        } catch (SSLException e) {
+            // The engine has prepared an alert that tells the client what went wrong
+            try {
+                sendCloseNotify();
+            } catch (IOException e2) {
+                // ignore
+            }
+            throw e;
+        }
+    }
+
+    private boolean isHandshaking() {
+        SSLEngineResult.HandshakeStatus status = this.engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    /**
+     * Makes sure there is decrypted data to read
+     * @return False if the connection has been closed
+     */
+    private boolean fill() throws IOException {
+        if (this.appIn.hasRemaining()) return true;
+        if (!this.handshakeDone && (this.inboundDone || !handshake())) return false;
+        while (!this.appIn.hasRemaining()) {
+            if (this.inboundDone) return false;
+            if (isHandshaking()) {
+                // Only done once all data has been read, so the next record is always decrypted into an empty buffer
+                if (!processHandshake()) return false;
+            } else if (unwrap() == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decrypts the next record into the empty app buffer, reading from the network until a complete record has been received
+     * @return The amount of decrypted bytes, which is 0 for records of the handshake, or -1 if the connection has been closed
+     */
+    private int unwrap() throws IOException {
+        while (true) {
+            ByteBuffer appIn = this.appIn.compact();
+            SSLEngineResult result;
+            try {
+                result = this.engine.unwrap(this.netIn, appIn);
+            } finally {
+                appIn.flip();
+            }
+            switch (result.getStatus()) {
+                case OK -> {
+                    return result.bytesProduced();
+                }
+                case BUFFER_UNDERFLOW -> {
+                    if (readFromNetwork() == -1) {
+                        this.inboundDone = true;
+                        return -1;
+                    }
+                }
+                case BUFFER_OVERFLOW -> throw new SSLException("Decrypted record does not fit into the buffer");
+                case CLOSED -> {
+                    this.inboundDone = true;
+                    return -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Encrypts data into the network buffer, sending the buffer if it's full
+     */
+    private void wrap(ByteBuffer src) throws IOException {
+        while (true) {
+            SSLEngineResult result = this.engine.wrap(src, this.netOut);
+            switch (result.getStatus()) {
+                case OK -> {
+                    return;
+                }
+                case BUFFER_OVERFLOW -> {
+                    if (this.netOut.position() == 0) throw new SSLException("Encrypted record does not fit into the buffer");
+                    flushNetwork();
+                }
+                case CLOSED -> throw new SocketException("TLS connection has been closed");
+                default -> throw new IllegalStateException("Unexpected result " + result);
+            }
+        }
+    }
+
+    private void sendCloseNotify() throws IOException {
+        this.engine.closeOutbound();
+        // Usually done after a single wrap, but don't loop forever if the engine has nothing to wrap
+        for (int i = 0; i < 4 && !this.engine.isOutboundDone(); i++) {
+            SSLEngineResult result = this.engine.wrap(EMPTY, this.netOut);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                flushNetwork();
+            }
+        }
+        flushNetwork();
+    }
+
+    private int readFromNetwork() throws IOException {
+        // The client might wait for our records before it sends anything
+        flushNetwork();
+        ByteBuffer netIn = this.netIn.compact();
+        try {
+            if (!netIn.hasRemaining()) throw new SSLException("Received record does not fit into the buffer");
+            int read = this.networkIn.read(netIn.array(), netIn.arrayOffset() + netIn.position(), netIn.remaining());
+            if (read > 0) netIn.position(netIn.position() + read);
+            return read;
+        } finally {
+            netIn.flip();
+        }
+    }
+
+    private void flushNetwork() throws IOException {
+        ByteBuffer netOut = this.netOut;
+        if (netOut.position() > 0) {
+            this.networkOut.write(netOut.array(), netOut.arrayOffset(), netOut.position());
+            netOut.clear();
+        }
+    }
+
+    private class TLSInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return appIn.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int read = Math.min(len, appIn.remaining());
+            appIn.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return appIn == null ? 0 : appIn.remaining();
+        }
+    }
+
+    private class TLSOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!handshakeDone && (inboundDone || !handshake())) throw new SocketException("Connection has been closed during the TLS handshake");
+            ByteBuffer src = ByteBuffer.wrap(b, off, len);
+            while (src.hasRemaining()) {
+                wrap(src);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushNetwork();
+            networkOut.flush();
+        }
+    }
+}
@@ -2,23 +2,44 @@ package de.nocoffeetech.smallhttp.internal.watchdog;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class ClientHandlerState {
+/**
+ * The state of a client handler. Transitions into the reading and handling states schedule the matching timeout in the {@link TimeoutWheel}, all other transitions cancel it.
+ */
+public class ClientHandlerState extends TimeoutWheel.Timeout {
     private static final int WAITING_FOR_REQUEST_START = 0;
     private static final int READING_REQUEST = 1;
     private static final int HANDLING_REQUEST = 2;
     private static final int SHUTDOWN_REQUESTED = 3;
 
     private final AtomicInteger currentState = new AtomicInteger(WAITING_FOR_REQUEST_START);
-    private volatile long lastTransitionTimestamp = -1;
+    /** Written before the transition of currentState and only read after reading currentState, so it doesn't need to be volatile */
+    private long lastTransitionTimestamp;
+    private final TimeoutWheel timeoutWheel;
+    private final int readTimeout;
+    private final int handleTimeout;
+    private final Runnable timeoutAction;
+    private volatile boolean draining = false;
+
+    /**
+     * @param timeoutWheel The wheel to schedule the timeouts in, or null if the handler has no timeouts
+     * @param timeoutAction Called from the wheel thread if the handler is timed out
+     */
+    ClientHandlerState(TimeoutWheel timeoutWheel, int readTimeout, int handleTimeout, Runnable timeoutAction) {
+        this.timeoutWheel = timeoutWheel;
+        this.readTimeout = readTimeout;
+        this.handleTimeout = handleTimeout;
+        this.timeoutAction = timeoutAction;
+    }
 
     /**
      * Transitions into the request reading state
      * @return True if the transition was successful, false if the current handler should be shutdown.
      */
     public boolean startReadingRequest() {
-        lastTransitionTimestamp = System.currentTimeMillis();
+        stampTransition();
         int prevValue = currentState.compareAndExchange(WAITING_FOR_REQUEST_START, READING_REQUEST);
         if (prevValue == WAITING_FOR_REQUEST_START) {
+            updateTimeout(this.readTimeout);
             return true;
         } else if (prevValue == SHUTDOWN_REQUESTED) {
             return false;
@@ -32,9 +53,10 @@ public class ClientHandlerState {
      * @return True if the transition was successful, false if the current handler should be shutdown.
      */
     public boolean startHandlingRequest() {
-        lastTransitionTimestamp = System.currentTimeMillis();
+        stampTransition();
         int prevValue = currentState.compareAndExchange(READING_REQUEST, HANDLING_REQUEST);
         if (prevValue == READING_REQUEST) {
+            updateTimeout(this.handleTimeout);
             return true;
         } else if (prevValue == SHUTDOWN_REQUESTED) {
             return false;
@@ -48,10 +70,11 @@ public class ClientHandlerState {
      * @return True if the transition was successful, false if the current handler should be shutdown.
      */
     public boolean startAwaitingNextRequest() {
-        lastTransitionTimestamp = System.currentTimeMillis();
         int prevValue = currentState.compareAndExchange(HANDLING_REQUEST, WAITING_FOR_REQUEST_START);
         if (prevValue == HANDLING_REQUEST) {
-            return true;
+            cancelTimeout();
+            // Checked after the transition, so either we see the drain or startDrain sees the waiting state and closes the connection
+            return !this.draining;
         } else if (prevValue == SHUTDOWN_REQUESTED) {
             return false;
         } else {
@@ -60,23 +83,95 @@ public class ClientHandlerState {
     }
 
     public boolean startShutdown() {
-        lastTransitionTimestamp = System.currentTimeMillis();
         int prevValue = currentState.getAndSet(SHUTDOWN_REQUESTED);
+        cancelTimeout();
         return prevValue == WAITING_FOR_REQUEST_START;
     }
 
-    public boolean isTimedOut(int readTimeout, int handleTimeout) {
+    /**
+     * Requests the handler to finish its current request and to close the connection afterward.
+     * @return True if the handler is waiting for the next request and the connection should be closed right away
+     */
+    public boolean startDrain() {
+        this.draining = true;
+        if (currentState.compareAndSet(WAITING_FOR_REQUEST_START, SHUTDOWN_REQUESTED)) {
+            cancelTimeout();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return True if the connection should be closed after the current request
+     */
+    public boolean isDraining() {
+        return this.draining;
+    }
+
+    /**
+     * @return True if the connection should not take any new requests, as it's closed once the current ones are done
+     */
+    public boolean isClosing() {
+        return this.draining || this.currentState.get() == SHUTDOWN_REQUESTED;
+    }
+
+    /**
+     * @return True if the handler is waiting for the start of the next request
+     */
+    public boolean isWaitingForRequest() {
+        return this.currentState.get() == WAITING_FOR_REQUEST_START;
+    }
+
+    /**
+     * Removes the pending timeout, if there is one. Must be called once the handler is done, so the wheel doesn't hold on to it.
+     */
+    public void cancelTimeout() {
+        if (this.timeoutWheel != null) {
+            this.timeoutWheel.cancel(this);
+        }
+    }
+
+    @Override
+    protected void onTimeout() {
+        // The state might have changed while the timeout fired
+        if (isTimedOut()) {
+            this.timeoutAction.run();
+        }
+    }
+
+    private boolean isTimedOut() {
         int currentState = this.currentState.get();
         if (currentState == SHUTDOWN_REQUESTED || currentState == WAITING_FOR_REQUEST_START) return false;
-        // Local copy of volatile variable
-        long lastTransitionTimestamp = this.lastTransitionTimestamp;
-        if (lastTransitionTimestamp == -1) return false;
-        long currentTime = System.currentTimeMillis();
-        if (currentState == READING_REQUEST) return currentTime > lastTransitionTimestamp + readTimeout;
-        else if (currentState == HANDLING_REQUEST) return currentTime > lastTransitionTimestamp + handleTimeout;
+        long currentTime = TimeoutWheel.currentTimeMillis();
+        if (currentState == READING_REQUEST) return this.readTimeout != -1 && currentTime >= getDeadline(this.readTimeout);
+        else if (currentState == HANDLING_REQUEST) return this.handleTimeout != -1 && currentTime >= getDeadline(this.handleTimeout);
         else throw new RuntimeException("Unknown state " + currentState);
     }
 
+    /**
+     * The transition was stamped with the coarse clock, which may lag behind the precise time by up to one resolution.
+     * Add that as slack, so we never close a connection too early because of a stale stamp.
+     */
+    private long getDeadline(int timeout) {
+        return this.lastTransitionTimestamp + timeout + CoarseClock.RESOLUTION_MILLIS;
+    }
+
+    private void updateTimeout(int timeout) {
+        if (this.timeoutWheel == null) return;
+        if (timeout == -1) {
+            this.timeoutWheel.cancel(this);
+        } else {
+            this.timeoutWheel.schedule(this, getDeadline(timeout));
+        }
+    }
+
+    private void stampTransition() {
+        // Without timeouts, nobody needs the timestamp
+        if (this.timeoutWheel != null) {
+            this.lastTransitionTimestamp = CoarseClock.monotonicMillis();
+        }
+    }
+
     private static IllegalStateException error(String target, int targetCode, int expectedCode, int actualCode) {
         return new IllegalStateException("Unexpected state while trying to transition to " + target + "(" + targetCode + ")." +
                 "Value should have been " + expectedCode + " or " + SHUTDOWN_REQUESTED + ", but was " + actualCode);
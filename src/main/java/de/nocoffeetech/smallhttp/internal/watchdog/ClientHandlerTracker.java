@@ -1,43 +1,192 @@
 package de.nocoffeetech.smallhttp.internal.watchdog;
 
 import de.nocoffeetech.smallhttp.internal.handler.HTTPClientHandler;
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
+/**
+ * Keeps track of all open connections, so they can be notified on shutdown.
+ * <br>
+ * The handlers are spread over multiple stripes, each with their own lock, so connections that are opened and closed at the same time rarely wait for each other.
+ * Each stripe stores its handlers in an array and reuses the free slots, so registering and deregistering is O(1) and doesn't need weak references.
+ * The slot of a handler is returned on registration and must be passed back to deregister it.
+ */
 public class ClientHandlerTracker {
-    private final Object LOCK = new Object();
-    private final Set<HTTPClientHandler> ALL_HANDLERS = Collections.newSetFromMap(new WeakHashMap<>());
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+    private final Stripe[] stripes;
+    private final int stripeBits;
+    private final int stripeMask;
 
-    public ClientHandlerTracker() {}
+    private final TimeoutWheel timeoutWheel;
+    private final int readTimeout;
+    private final int handleTimeout;
+    private final ServerMetrics metrics = new ServerMetrics();
 
-    public void registerHandler(HTTPClientHandler handler) {
-        synchronized (LOCK) {
-            ALL_HANDLERS.add(handler);
+    public ClientHandlerTracker() {
+        this(null, -1, -1);
+    }
+
+    /**
+     * @param timeoutWheel The wheel for the timeouts of the handlers, or null if there are no timeouts
+     * @param readTimeout The maximum time to read a request in milliseconds, or -1
+     * @param handleTimeout The maximum time to handle a request in milliseconds, or -1
+     */
+    public ClientHandlerTracker(TimeoutWheel timeoutWheel, int readTimeout, int handleTimeout) {
+        this.timeoutWheel = timeoutWheel;
+        this.readTimeout = readTimeout;
+        this.handleTimeout = handleTimeout;
+        // At least two stripes per core, rounded up to a power of two
+        int stripeCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe();
         }
+        this.stripeBits = Integer.numberOfTrailingZeros(stripeCount);
+        this.stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Creates the state for a new handler, which uses the timeouts of this tracker
+     * @param timeoutAction Called from the wheel thread once the handler timed out
+     */
+    public ClientHandlerState createState(Runnable timeoutAction) {
+        return new ClientHandlerState(this.timeoutWheel, this.readTimeout, this.handleTimeout, timeoutAction);
+    }
+
+    /**
+     * @return The metrics of the server that all handlers of this tracker record into
+     */
+    public ServerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * @return The slot of the handler, which must be passed to {@link #deregisterHandler(HTTPClientHandler, int)}
+     */
+    public int registerHandler(HTTPClientHandler handler) {
+        // Handlers are registered by the acceptor threads, so pick a random stripe instead of one per thread
+        int stripe = ThreadLocalRandom.current().nextInt() & this.stripeMask;
+        int index = this.stripes[stripe].add(handler);
+        return (index << this.stripeBits) | stripe;
     }
 
-    public void deregisterHandler(HTTPClientHandler handler) {
-        synchronized (LOCK) {
-            ALL_HANDLERS.remove(handler);
+    /**
+     * Removes the handler from the tracker. Deregistering a handler multiple times is fine.
+     * @param slot The slot returned by {@link #registerHandler(HTTPClientHandler)}
+     */
+    public void deregisterHandler(HTTPClientHandler handler, int slot) {
+        this.stripes[slot & this.stripeMask].remove(slot >>> this.stripeBits, handler);
+    }
+
+    /**
+     * Calls the consumer for every handler registered at the time the respective stripe is visited.
+     * The consumer is called without holding any lock, so it may safely deregister handlers or perform IO.
+     */
+    public void forEachHandler(Consumer<HTTPClientHandler> consumer) {
+        snapshot().forEach(consumer);
+    }
+
+    /**
+     * @return The amount of currently registered handlers
+     */
+    public int getHandlerCount() {
+        int count = 0;
+        for (Stripe stripe : this.stripes) {
+            count += stripe.size();
         }
+        return count;
     }
 
     public void notifyShutdown() throws IOException {
-        synchronized (LOCK) {
-            for (HTTPClientHandler handler : ALL_HANDLERS) {
-                handler.shutdown();
+        for (HTTPClientHandler handler : snapshot()) {
+            handler.shutdown();
+        }
+    }
+
+    /**
+     * Closes all idle connections and lets the others finish their current request, see {@link HTTPClientHandler#drain()}
+     */
+    public void notifyDrain() throws IOException {
+        for (HTTPClientHandler handler : snapshot()) {
+            handler.drain();
+        }
+    }
+
+    /**
+     * Closes all connections that are still registered
+     * @return The amount of closed connections
+     */
+    public int forceCloseAll() {
+        List<HTTPClientHandler> handlers = snapshot();
+        for (HTTPClientHandler handler : handlers) {
+            try {
+                handler.forceClose();
+            } catch (IOException e) {
+                // ignore. Client might have already closed the connection
             }
         }
+        return handlers.size();
     }
 
-    void checkTimeout(int readTimeout, int handleTimeout) {
-        synchronized (LOCK) {
-            for (HTTPClientHandler handler : ALL_HANDLERS) {
-                handler.checkTimeout(readTimeout, handleTimeout);
+    private List<HTTPClientHandler> snapshot() {
+        List<HTTPClientHandler> handlers = new ArrayList<>();
+        for (Stripe stripe : this.stripes) {
+            stripe.collect(handlers);
+        }
+        return handlers;
+    }
+
+    private static final class Stripe {
+        private HTTPClientHandler[] handlers = new HTTPClientHandler[INITIAL_STRIPE_CAPACITY];
+        /** Stack of the indices in handlers that have been used before, but are free now */
+        private int[] freeIndices = new int[INITIAL_STRIPE_CAPACITY];
+        private int freeCount = 0;
+        /** All indices starting here have never been used */
+        private int usedIndices = 0;
+        private int size = 0;
+
+        private synchronized int add(HTTPClientHandler handler) {
+            int index;
+            if (this.freeCount > 0) {
+                index = this.freeIndices[--this.freeCount];
+            } else {
+                if (this.usedIndices == this.handlers.length) {
+                    // The free stack can never hold more indices than there are slots, so grow both together
+                    this.handlers = Arrays.copyOf(this.handlers, this.handlers.length * 2);
+                    this.freeIndices = new int[this.handlers.length];
+                }
+                index = this.usedIndices++;
             }
+            this.handlers[index] = handler;
+            this.size++;
+            return index;
+        }
+
+        private synchronized void remove(int index, HTTPClientHandler handler) {
+            // The slot might already be used by another handler if this one has been deregistered before
+            if (this.handlers[index] != handler) return;
+            this.handlers[index] = null;
+            this.freeIndices[this.freeCount++] = index;
+            this.size--;
+        }
+
+        private synchronized void collect(List<HTTPClientHandler> target) {
+            HTTPClientHandler[] handlers = this.handlers;
+            for (int i = 0; i < this.usedIndices; i++) {
+                if (handlers[i] != null) {
+                    target.add(handlers[i]);
+                }
+            }
+        }
+
+        private synchronized int size() {
+            return this.size;
         }
     }
 }
@@ -0,0 +1,88 @@
+package de.nocoffeetech.smallhttp.internal.watchdog;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock that is updated by a single ticker thread every {@link #RESOLUTION_MILLIS}, so hot paths can get a timestamp by reading a field instead of asking the OS.
+ * The ticker thread is shared by all servers and started once the clock is first used.
+ * <br>
+ * The monotonic time has the same base as {@link TimeoutWheel#currentTimeMillis()}, but may lag behind it by about one resolution.
+ * Use it for timestamps where this inaccuracy is fine, and only use the precise time for the final decision, e.g. whether a connection is timed out.
+ */
+public final class CoarseClock {
+    public static final int RESOLUTION_MILLIS = 10;
+    private static final Clock WALL_CLOCK = new WallClock();
+    private static volatile long monotonicMillis;
+    private static volatile long wallClockMillis;
+
+    static {
+        tick();
+        Thread ticker = new Thread(CoarseClock::runTicker, "JSmallHTTP coarse clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private CoarseClock() {}
+
+    /**
+     * @return The coarse monotonic time in milliseconds, which is not affected by changes of the system time
+     */
+    public static long monotonicMillis() {
+        return monotonicMillis;
+    }
+
+    /**
+     * @return The coarse wall clock time in milliseconds since the epoch
+     */
+    public static long wallClockMillis() {
+        return wallClockMillis;
+    }
+
+    /**
+     * @return A UTC clock backed by the coarse wall clock time
+     */
+    public static Clock wallClock() {
+        return WALL_CLOCK;
+    }
+
+    private static void tick() {
+        monotonicMillis = TimeoutWheel.currentTimeMillis();
+        wallClockMillis = System.currentTimeMillis();
+    }
+
+    private static void runTicker() {
+        while (true) {
+            try {
+                Thread.sleep(RESOLUTION_MILLIS);
+            } catch (InterruptedException e) {
+                // ignore - nobody should interrupt us
+            }
+            tick();
+        }
+    }
+
+    private static class WallClock extends Clock {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return zone.equals(ZoneOffset.UTC) ? this : Clock.fixed(instant(), zone);
+        }
+
+        @Override
+        public long millis() {
+            return wallClockMillis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(wallClockMillis);
+        }
+    }
+}
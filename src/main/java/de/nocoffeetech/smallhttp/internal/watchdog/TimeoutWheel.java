@@ -0,0 +1,181 @@
+package de.nocoffeetech.smallhttp.internal.watchdog;
+
+import java.util.ArrayList;
+
+/**
+ * A hashed timing wheel that fires the timeouts of connections.
+ * The wheel is divided into buckets of one tick each. A timeout is placed into the bucket of its deadline tick, with deadlines more than one rotation ahead sharing the bucket with earlier ones.
+ * Scheduling and cancelling a timeout only touches a single bucket, so it is O(1) and only contends with other connections that happen to use the same bucket.
+ * Each tick only looks at a single bucket, instead of checking every connection.
+ * <br>
+ * The wheel thread fires timeouts at most one tick after their deadline.
+ */
+public class TimeoutWheel implements Runnable {
+    public static final int DEFAULT_TICK_MILLIS = 10;
+    /** With the default tick, one rotation takes about 5 seconds */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final Bucket[] buckets;
+    private final int mask;
+    private final long tickMillis;
+    private final long startMillis;
+    /** Only used by the thread expiring the timeouts, so that the timeout actions can be run without holding a bucket lock */
+    private final ArrayList<Timeout> expired = new ArrayList<>();
+    private volatile long nextTick = 0;
+    private volatile boolean stopped = false;
+
+    public TimeoutWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, currentTimeMillis());
+    }
+
+    TimeoutWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("Tick duration must be positive");
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) throw new IllegalArgumentException("Wheel size must be a power of two");
+        this.buckets = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.buckets[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * @return The monotonic time in milliseconds that all deadlines of this wheel are based on
+     */
+    public static long currentTimeMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    /**
+     * Schedules the timeout to fire once the deadline has passed. If the timeout is already scheduled, it is rescheduled to the new deadline.
+     * @param deadlineMillis The deadline, based on {@link #currentTimeMillis()}
+     */
+    public void schedule(Timeout timeout, long deadlineMillis) {
+        cancel(timeout);
+        // Round up, so the timeout never fires before its deadline
+        long deadlineTick = Math.floorDiv(deadlineMillis - this.startMillis + this.tickMillis - 1, this.tickMillis);
+        while (true) {
+            // Never use a tick that has already been processed, or the timeout would be missed for an entire rotation
+            long tick = Math.max(deadlineTick, this.nextTick);
+            Bucket bucket = this.buckets[(int) (tick & this.mask)];
+            synchronized (bucket) {
+                // The wheel might have processed the tick while we waited for the lock
+                if (tick < this.nextTick) continue;
+                timeout.deadlineTick = tick;
+                timeout.next = bucket.head;
+                if (bucket.head != null) {
+                    bucket.head.prev = timeout;
+                }
+                bucket.head = timeout;
+                timeout.bucket = bucket;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the timeout from the wheel, if it is scheduled
+     */
+    public void cancel(Timeout timeout) {
+        Bucket bucket;
+        while ((bucket = timeout.bucket) != null) {
+            synchronized (bucket) {
+                // The timeout might have been expired or rescheduled concurrently
+                if (timeout.bucket == bucket) {
+                    bucket.unlink(timeout);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fires all timeouts up to the specified time. Must only be called by a single thread at a time.
+     * @return The amount of fired timeouts
+     */
+    int expireTimeouts(long nowMillis) {
+        long targetTick = Math.floorDiv(nowMillis - this.startMillis, this.tickMillis);
+        long tick = this.nextTick;
+        // If we fell behind more than one rotation, processing each bucket once catches up on everything
+        tick = Math.max(tick, targetTick - this.mask);
+        int fired = 0;
+        ArrayList<Timeout> expired = this.expired;
+        for (; tick <= targetTick; tick++) {
+            Bucket bucket = this.buckets[(int) (tick & this.mask)];
+            // Advance before processing the bucket, so that concurrently scheduled timeouts go into the following ticks
+            this.nextTick = tick + 1;
+            synchronized (bucket) {
+                Timeout timeout = bucket.head;
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    if (timeout.deadlineTick <= tick) {
+                        bucket.unlink(timeout);
+                        expired.add(timeout);
+                    }
+                    timeout = next;
+                }
+            }
+            for (int i = 0; i < expired.size(); i++) {
+                expired.get(i).onTimeout();
+            }
+            fired += expired.size();
+            expired.clear();
+        }
+        return fired;
+    }
+
+    public void stop() {
+        this.stopped = true;
+    }
+
+    @Override
+    public void run() {
+        while (!this.stopped) {
+            expireTimeouts(currentTimeMillis());
+            long sleepTime = this.startMillis + this.nextTick * this.tickMillis - currentTimeMillis();
+            if (sleepTime > 0) {
+                try {
+                    Thread.sleep(sleepTime);
+                } catch (InterruptedException e) {
+                    // ignore - we check if we are stopped
+                }
+            }
+        }
+    }
+
+    /**
+     * An entry of the wheel. Each entry can only be scheduled once at a time, so connections can reuse their entry without allocating
+     */
+    public abstract static class Timeout {
+        private volatile Bucket bucket;
+        // Guarded by the lock of the bucket
+        private Timeout prev;
+        private Timeout next;
+        private long deadlineTick;
+
+        /**
+         * Called by the wheel thread once the deadline has passed.
+         * As the timeout might be rescheduled while this is called, implementations need to check if the timeout is still valid.
+         */
+        protected abstract void onTimeout();
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+
+        private void unlink(Timeout timeout) {
+            if (timeout.prev == null) {
+                this.head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
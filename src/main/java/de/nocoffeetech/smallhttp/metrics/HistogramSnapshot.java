@@ -0,0 +1,86 @@
+package de.nocoffeetech.smallhttp.metrics;
+
+/**
+ * An immutable copy of a {@link LatencyHistogram}. All values are in nanoseconds.
+ */
+public final class HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long sum, long max) {
+        this.counts = counts;
+        long count = 0;
+        for (long bucketCount : counts) {
+            count += bucketCount;
+        }
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * @return The amount of recorded values
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getSumNanos() {
+        return this.sum;
+    }
+
+    public long getMaxNanos() {
+        return this.max;
+    }
+
+    public double getMeanNanos() {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100
+     * @return An upper bound of the value at the percentile, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Invalid percentile " + percentile);
+        if (this.count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upperBoundOf(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * @return The amount of buckets, e.g. for exporting the histogram
+     */
+    public int getBucketCount() {
+        return this.counts.length;
+    }
+
+    /**
+     * @return The amount of values in the bucket
+     */
+    public long getCountInBucket(int index) {
+        return this.counts[index];
+    }
+
+    /**
+     * @return The largest value counted in the bucket
+     */
+    public long getBucketUpperBound(int index) {
+        if (index < 0 || index >= this.counts.length) throw new IndexOutOfBoundsException(index);
+        return LatencyHistogram.upperBoundOf(index);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", this.count, getMeanNanos() / 1000, getValueAtPercentile(50) / 1000D, getValueAtPercentile(99) / 1000D, this.max / 1000D);
+    }
+}
@@ -0,0 +1,67 @@
+package de.nocoffeetech.smallhttp.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A log-linear histogram of durations in nanoseconds that can be recorded into from many threads without locking or allocating.
+ * Each power of two is split into 16 linear buckets, so every recorded value is accurate to about 6%.
+ * Values of more than 2<sup>41</sup> nanoseconds (about 36 minutes) are put into the last bucket.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos The duration to record. Negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        this.buckets[indexFor(nanos)].increment();
+        this.sum.add(nanos);
+        this.max.accumulate(nanos);
+    }
+
+    /**
+     * Creates a copy of the current values. Values that are recorded while the snapshot is created might only be partially included.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets[i].sum();
+        }
+        return new HistogramSnapshot(counts, this.sum.sum(), this.max.get());
+    }
+
+    static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int shift = exponent - SUB_BUCKET_BITS;
+        // The top bit is always set, so the next bits select the linear bucket within this power of two
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * @return The largest value that is put into the bucket
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKET_COUNT) return index;
+        if (index == BUCKET_COUNT - 1) return Long.MAX_VALUE;
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
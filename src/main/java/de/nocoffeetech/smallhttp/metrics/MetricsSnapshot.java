@@ -0,0 +1,231 @@
+package de.nocoffeetech.smallhttp.metrics;
+
+/**
+ * An immutable copy of the metrics of a server at one point in time.
+ * Counters are totals since the server started, so exporters can compute rates from the difference between two snapshots.
+ */
+public final class MetricsSnapshot {
+    private final boolean draining;
+    private final long acceptedConnections;
+    private final long rejectedConnections;
+    private final long forceClosedConnections;
+    private final int activeConnections;
+    private final int idleConnections;
+    private final int queuedRequests;
+    private final long requests;
+    private final long[] responsesByStatusClass;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final long bufferPoolHits;
+    private final long bufferPoolMisses;
+    private final long outstandingBuffers;
+    private final int pooledBuffers;
+    private final long pooledBufferBytes;
+    private final long pathCacheHits;
+    private final long pathCacheMisses;
+    private final HistogramSnapshot parseLatency;
+    private final HistogramSnapshot handleLatency;
+    private final HistogramSnapshot writeLatency;
+
+    MetricsSnapshot(boolean draining, long acceptedConnections, long rejectedConnections, long forceClosedConnections, int activeConnections, int idleConnections, int queuedRequests,
+                    long requests, long[] responsesByStatusClass, long requestBytes, long responseBytes,
+                    long bufferPoolHits, long bufferPoolMisses, long outstandingBuffers, int pooledBuffers, long pooledBufferBytes, long pathCacheHits, long pathCacheMisses,
+                    HistogramSnapshot parseLatency, HistogramSnapshot handleLatency, HistogramSnapshot writeLatency) {
+        this.draining = draining;
+        this.acceptedConnections = acceptedConnections;
+        this.rejectedConnections = rejectedConnections;
+        this.forceClosedConnections = forceClosedConnections;
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.queuedRequests = queuedRequests;
+        this.requests = requests;
+        this.responsesByStatusClass = responsesByStatusClass;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.bufferPoolHits = bufferPoolHits;
+        this.bufferPoolMisses = bufferPoolMisses;
+        this.outstandingBuffers = outstandingBuffers;
+        this.pooledBuffers = pooledBuffers;
+        this.pooledBufferBytes = pooledBufferBytes;
+        this.pathCacheHits = pathCacheHits;
+        this.pathCacheMisses = pathCacheMisses;
+        this.parseLatency = parseLatency;
+        this.handleLatency = handleLatency;
+        this.writeLatency = writeLatency;
+    }
+
+    /**
+     * @return True if the server is draining. The active connections are the in-flight requests that have yet to finish
+     */
+    public boolean isDraining() {
+        return this.draining;
+    }
+
+    public long getAcceptedConnections() {
+        return this.acceptedConnections;
+    }
+
+    /**
+     * @return The amount of connections that were closed or answered with a 503 right away, as no thread was available to handle them
+     */
+    public long getRejectedConnections() {
+        return this.rejectedConnections;
+    }
+
+    /**
+     * @return The amount of connections that were closed while handling a request, as they didn't finish before the drain deadline
+     */
+    public long getForceClosedConnections() {
+        return this.forceClosedConnections;
+    }
+
+    /**
+     * @return The amount of connections that are currently reading or handling a request
+     */
+    public int getActiveConnections() {
+        return this.activeConnections;
+    }
+
+    /**
+     * @return The amount of open connections that are waiting for the next request
+     */
+    public int getIdleConnections() {
+        return this.idleConnections;
+    }
+
+    /**
+     * @return The amount of received requests that are waiting for a worker thread
+     */
+    public int getQueuedRequests() {
+        return this.queuedRequests;
+    }
+
+    /**
+     * @return The amount of requests whose head was parsed successfully
+     */
+    public long getRequests() {
+        return this.requests;
+    }
+
+    /**
+     * @param statusClass The first digit of the status code, from 1 to 5
+     * @return The amount of responses with a status code of this class
+     */
+    public long getResponses(int statusClass) {
+        if (statusClass < 1 || statusClass > this.responsesByStatusClass.length) throw new IllegalArgumentException("Invalid status class " + statusClass);
+        return this.responsesByStatusClass[statusClass - 1];
+    }
+
+    public long getTotalResponses() {
+        long total = 0;
+        for (long responses : this.responsesByStatusClass) {
+            total += responses;
+        }
+        return total;
+    }
+
+    /**
+     * @return The amount of bytes received from clients
+     */
+    public long getRequestBytes() {
+        return this.requestBytes;
+    }
+
+    /**
+     * @return The amount of bytes of all responses, including headers and the chunk framing
+     */
+    public long getResponseBytes() {
+        return this.responseBytes;
+    }
+
+    /**
+     * @return The amount of buffers that were taken from the buffer pool
+     */
+    public long getBufferPoolHits() {
+        return this.bufferPoolHits;
+    }
+
+    /**
+     * @return The amount of buffers that had to be allocated, as the buffer pool had none of the requested size
+     */
+    public long getBufferPoolMisses() {
+        return this.bufferPoolMisses;
+    }
+
+    /**
+     * @return The amount of buffers that are currently in use. If this stays above zero while there are no active connections, buffers are leaking
+     */
+    public long getOutstandingBuffers() {
+        return this.outstandingBuffers;
+    }
+
+    /**
+     * @return The amount of idle buffers retained by the buffer pool
+     */
+    public int getPooledBuffers() {
+        return this.pooledBuffers;
+    }
+
+    /**
+     * @return The memory retained by the idle buffers of the buffer pool
+     */
+    public long getPooledBufferBytes() {
+        return this.pooledBufferBytes;
+    }
+
+    /**
+     * @return The amount of request targets whose path was taken from the path cache
+     */
+    public long getPathCacheHits() {
+        return this.pathCacheHits;
+    }
+
+    /**
+     * @return The amount of request targets whose path had to be decoded, as it wasn't cached. Zero if the path cache is disabled
+     */
+    public long getPathCacheMisses() {
+        return this.pathCacheMisses;
+    }
+
+    /**
+     * @return The share of lookups that were answered by the path cache, from 0 to 1, or 0 if there were no lookups
+     */
+    public double getPathCacheHitRate() {
+        long lookups = this.pathCacheHits + this.pathCacheMisses;
+        return lookups == 0 ? 0 : (double) this.pathCacheHits / lookups;
+    }
+
+    /**
+     * @return The time from receiving the start of a request until its head was parsed
+     */
+    public HistogramSnapshot getParseLatency() {
+        return this.parseLatency;
+    }
+
+    /**
+     * @return The time the request handler took, including writing the response
+     */
+    public HistogramSnapshot getHandleLatency() {
+        return this.handleLatency;
+    }
+
+    /**
+     * @return The time from sending the response header until the response was complete
+     */
+    public HistogramSnapshot getWriteLatency() {
+        return this.writeLatency;
+    }
+
+    @Override
+    public String toString() {
+        return (this.draining ? "Draining\n" : "") +
+                "Connections: " + this.activeConnections + " active, " + this.idleConnections + " idle, " + this.acceptedConnections + " accepted, " + this.rejectedConnections + " rejected, " + this.forceClosedConnections + " force closed\n" +
+                "Requests: " + this.requests + " (" + this.requestBytes + " bytes), " + this.queuedRequests + " queued\n" +
+                "Responses: " + getTotalResponses() + " (" + this.responseBytes + " bytes), 1xx=" + getResponses(1) + " 2xx=" + getResponses(2) + " 3xx=" + getResponses(3) + " 4xx=" + getResponses(4) + " 5xx=" + getResponses(5) + "\n" +
+                "Buffers: " + this.outstandingBuffers + " outstanding, " + this.pooledBuffers + " pooled (" + this.pooledBufferBytes + " bytes), " + this.bufferPoolHits + " hits, " + this.bufferPoolMisses + " misses\n" +
+                "Path cache: " + this.pathCacheHits + " hits, " + this.pathCacheMisses + " misses\n" +
+                "Parse: " + this.parseLatency + "\n" +
+                "Handle: " + this.handleLatency + "\n" +
+                "Write: " + this.writeLatency;
+    }
+}
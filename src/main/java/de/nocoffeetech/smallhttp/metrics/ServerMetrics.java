@@ -0,0 +1,141 @@
+package de.nocoffeetech.smallhttp.metrics;
+
+import de.nocoffeetech.smallhttp.data.Status;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics registry of a server. All recording methods are lock-free and don't allocate, so they can be used on the hot path.
+ * Readers should only use {@link #snapshot(int, int, int, int, long)}, which the server exposes via {@link de.nocoffeetech.smallhttp.base.HTTPServer#getMetrics()}.
+ */
+public class ServerMetrics {
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder forceClosedConnections = new LongAdder();
+    private volatile boolean draining = false;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder bufferPoolHits = new LongAdder();
+    private final LongAdder bufferPoolMisses = new LongAdder();
+    private final LongAdder releasedBuffers = new LongAdder();
+    private final LongAdder pathCacheHits = new LongAdder();
+    private final LongAdder pathCacheMisses = new LongAdder();
+    /** Index 0 is 1xx, index 4 is 5xx */
+    private final LongAdder[] responsesByStatusClass = new LongAdder[5];
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram handleLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    public ServerMetrics() {
+        for (int i = 0; i < this.responsesByStatusClass.length; i++) {
+            this.responsesByStatusClass[i] = new LongAdder();
+        }
+    }
+
+    public void connectionAccepted() {
+        this.acceptedConnections.increment();
+    }
+
+    /**
+     * Records a connection that could not be handled as no thread was available
+     */
+    public void connectionRejected() {
+        this.rejectedConnections.increment();
+    }
+
+    /**
+     * Records connections that were closed while still handling a request, because they didn't finish before the drain deadline
+     */
+    public void connectionsForceClosed(int count) {
+        this.forceClosedConnections.add(count);
+    }
+
+    /**
+     * Marks the server as draining, so readers can tell that the active connections are the remaining in-flight requests
+     */
+    public void startDrain() {
+        this.draining = true;
+    }
+
+    /**
+     * @param parseNanos The time from receiving the start of the request until the head was parsed
+     */
+    public void requestParsed(long parseNanos) {
+        this.requests.increment();
+        this.parseLatency.record(parseNanos);
+    }
+
+    /**
+     * @param handleNanos The time the request handler took, including writing the response
+     */
+    public void requestHandled(long handleNanos) {
+        this.handleLatency.record(handleNanos);
+    }
+
+    /**
+     * @param bytes The amount of bytes of the response, including the header
+     * @param writeNanos The time from sending the header until the response was complete
+     */
+    public void responseSent(Status status, long bytes, long writeNanos) {
+        int statusClass = status.code / 100 - 1;
+        if (statusClass >= 0 && statusClass < this.responsesByStatusClass.length) {
+            this.responsesByStatusClass[statusClass].increment();
+        }
+        this.responseBytes.add(bytes);
+        this.writeLatency.record(writeNanos);
+    }
+
+    public void bytesReceived(long bytes) {
+        this.requestBytes.add(bytes);
+    }
+
+    /**
+     * @param pooled True if the buffer was taken from the pool, false if a new one had to be allocated
+     */
+    public void bufferAcquired(boolean pooled) {
+        if (pooled) {
+            this.bufferPoolHits.increment();
+        } else {
+            this.bufferPoolMisses.increment();
+        }
+    }
+
+    public void bufferReleased() {
+        this.releasedBuffers.increment();
+    }
+
+    /**
+     * @param hit True if the decoded path was found in the path cache
+     */
+    public void pathCacheLookup(boolean hit) {
+        if (hit) {
+            this.pathCacheHits.increment();
+        } else {
+            this.pathCacheMisses.increment();
+        }
+    }
+
+    /**
+     * Creates an immutable copy of the current values. The gauges are not tracked by the registry and must be provided by the caller.
+     * @param activeConnections The amount of connections currently reading or handling a request
+     * @param idleConnections The amount of connections currently waiting for the next request
+     * @param queuedRequests The amount of requests waiting for a worker thread
+     * @param pooledBuffers The amount of idle buffers retained by the buffer pool
+     * @param pooledBufferBytes The memory retained by the idle buffers
+     */
+    public MetricsSnapshot snapshot(int activeConnections, int idleConnections, int queuedRequests, int pooledBuffers, long pooledBufferBytes) {
+        long[] responses = new long[this.responsesByStatusClass.length];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = this.responsesByStatusClass[i].sum();
+        }
+        // Read the released buffers first, as a buffer is always acquired before it's released, the outstanding buffers can't get negative
+        long released = this.releasedBuffers.sum();
+        long hits = this.bufferPoolHits.sum();
+        long misses = this.bufferPoolMisses.sum();
+        return new MetricsSnapshot(this.draining, this.acceptedConnections.sum(), this.rejectedConnections.sum(), this.forceClosedConnections.sum(), activeConnections, idleConnections, queuedRequests,
+                this.requests.sum(), responses, this.requestBytes.sum(), this.responseBytes.sum(),
+                hits, misses, hits + misses - released, pooledBuffers, pooledBufferBytes, this.pathCacheHits.sum(), this.pathCacheMisses.sum(),
+                this.parseLatency.snapshot(), this.handleLatency.snapshot(), this.writeLatency.snapshot());
+    }
+}
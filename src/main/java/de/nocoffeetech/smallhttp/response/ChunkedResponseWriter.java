@@ -35,6 +35,16 @@ public interface ChunkedResponseWriter {
         }
     }
 
+    /**
+     * Sends all buffered data as a chunk to the client.
+     * This is only needed if the writer was created with {@link ResponseHeaderWriter#beginBodyWithUnknownSize(int)} and the client should receive the data written so far right now,
+     * for example for streamed events.
+     * @throws HTTPWriteException If the write operation fails
+     */
+    default void flush() throws HTTPWriteException {
+        // Nothing is buffered by default
+    }
+
     /**
      * Finalizes the response and flushes it to the client.
      * This must be called when the response is completed.
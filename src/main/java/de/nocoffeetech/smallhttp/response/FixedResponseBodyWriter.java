@@ -16,7 +16,7 @@ public interface FixedResponseBodyWriter {
 
     /**
      * Returns the raw underlying socket channel. Any data written to this stream might be sent immediately to the client.
-     * @return The raw output stream
+     * @return The raw socket channel, or null if the connection has no channel that can be written to directly, e.g. because it uses TLS or HTTP/2. Use {@link #getRawOutputStream()} in that case
      */
     SocketChannel getRawSocketChannel();
 
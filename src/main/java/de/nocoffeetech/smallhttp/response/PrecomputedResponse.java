@@ -0,0 +1,122 @@
+package de.nocoffeetech.smallhttp.response;
+
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.BuiltinHeaders;
+import de.nocoffeetech.smallhttp.header.CommonContentTypes;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
+import de.nocoffeetech.smallhttp.util.HTTPDateCache;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A complete response (status, headers and body) that is known in advance, e.g. for health checks, redirects or static error texts.
+ * Everything is encoded once on creation, only the HTTP version and the date header are filled in when sending, see {@link ResponseStartWriter#sendPrecomputed(PrecomputedResponse)}.
+ * Create these once and store them in a field.
+ */
+public class PrecomputedResponse {
+    private static final PrecomputedHeader SERVER_HEADER = PrecomputedHeader.create(BuiltinHeaders.SERVER.headerKey, "JSmallHTTP");
+    private static final PrecomputedHeader CONNECTION_CLOSE_HEADER = PrecomputedHeader.create("Connection", "close");
+
+    public final Status status;
+    /**
+     * The encoded response, starting right after the HTTP version of the status line.
+     * <strong>Must not be modified!</strong>
+     */
+    public final byte[] bytes;
+    /**
+     * Same as {@link #bytes}, but with an additional Connection: close header, for connections that are closed after this response.
+     * <strong>Must not be modified!</strong>
+     */
+    public final byte[] closingBytes;
+    /** The index of the date header in both byte arrays, which is replaced with the current date when sending */
+    public final int dateHeaderOffset;
+    /** The length of the body at the end of both byte arrays */
+    public final int bodyLength;
+
+    private PrecomputedResponse(Status status, PrecomputedHeader contentType, byte[] body, boolean withContentLength, PrecomputedHeader... headers) {
+        if (status == null || body == null || headers == null) throw new IllegalArgumentException();
+        boolean closing = false;
+        for (PrecomputedHeader header : headers) {
+            if (header == null) throw new IllegalArgumentException();
+            if (header == CONNECTION_CLOSE_HEADER) closing = true;
+        }
+        this.status = status;
+        // The date header always comes right after the status line
+        this.dateHeaderOffset = status.getHeaderLength();
+        this.bodyLength = body.length;
+        this.bytes = render(status, contentType, body, withContentLength, false, headers);
+        this.closingBytes = closing ? this.bytes : render(status, contentType, body, withContentLength, true, headers);
+    }
+
+    /**
+     * Constructs a new response with a body.
+     * @param status The response status
+     * @param contentType The content type of the body
+     * @param body The body, encoded as UTF-8
+     * @param headers Additional headers
+     */
+    public static PrecomputedResponse create(Status status, CommonContentTypes contentType, String body, PrecomputedHeader... headers) {
+        if (contentType == null || body == null) throw new IllegalArgumentException();
+        return new PrecomputedResponse(status, contentType.header, body.getBytes(StandardCharsets.UTF_8), true, headers);
+    }
+
+    /**
+     * Constructs a new response with a body.
+     * @param status The response status
+     * @param contentType The content type of the body
+     * @param body The body
+     * @param headers Additional headers
+     */
+    public static PrecomputedResponse create(Status status, CommonContentTypes contentType, byte[] body, PrecomputedHeader... headers) {
+        if (contentType == null) throw new IllegalArgumentException();
+        return new PrecomputedResponse(status, contentType.header, body.clone(), true, headers);
+    }
+
+    /**
+     * Constructs a new response with a body.
+     * @param status The response status
+     * @param contentType The content type of the body
+     * @param body The body
+     * @param headers Additional headers
+     */
+    public static PrecomputedResponse create(Status status, String contentType, byte[] body, PrecomputedHeader... headers) {
+        if (contentType == null) throw new IllegalArgumentException();
+        return new PrecomputedResponse(status, PrecomputedHeader.create(BuiltinHeaders.CONTENT_TYPE.headerKey, contentType), body.clone(), true, headers);
+    }
+
+    /**
+     * Constructs a new response without a body and without a content type, e.g. for redirects.
+     * Like {@link ResponseHeaderWriter#sendWithoutBody()}, this does not add a Content-Length header.
+     * @param status The response status
+     * @param headers Additional headers
+     */
+    public static PrecomputedResponse createWithoutBody(Status status, PrecomputedHeader... headers) {
+        return new PrecomputedResponse(status, null, new byte[0], false, headers);
+    }
+
+    private static byte[] render(Status status, PrecomputedHeader contentType, byte[] body, boolean withContentLength, boolean closing, PrecomputedHeader[] headers) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(256 + body.length);
+        byte[] statusLine = new byte[status.getHeaderLength()];
+        status.writeToHeader(statusLine, 0);
+        stream.writeBytes(statusLine);
+        // Only a placeholder with the correct length, it's replaced when sending
+        stream.writeBytes(HTTPDateCache.system().getDateHeaderBytes());
+        stream.writeBytes(SERVER_HEADER.asciiBytes);
+        if (contentType != null) {
+            stream.writeBytes(contentType.asciiBytes);
+        }
+        for (PrecomputedHeader header : headers) {
+            stream.writeBytes(header.asciiBytes);
+        }
+        if (closing) {
+            stream.writeBytes(CONNECTION_CLOSE_HEADER.asciiBytes);
+        }
+        if (withContentLength) {
+            stream.writeBytes(PrecomputedHeader.create(BuiltinHeaders.CONTENT_LENGTH.headerKey, String.valueOf(body.length)).asciiBytes);
+        }
+        stream.writeBytes("\r\n".getBytes(StandardCharsets.US_ASCII));
+        stream.writeBytes(body);
+        return stream.toByteArray();
+    }
+}
@@ -67,6 +67,16 @@ public interface ResponseHeaderWriter extends ResettableWriter {
      */
     ChunkedResponseWriter beginBodyWithUnknownSize() throws HTTPWriteException;
 
+    /**
+     * Same as {@link #beginBodyWithUnknownSize()}, but small chunks are collected in an internal buffer and sent as one larger chunk.
+     * The buffered data is sent once at least {@code bufferSize} bytes have been written, on {@link ChunkedResponseWriter#flush()} and when finalizing the response.
+     * Use this if the body is written in many small pieces, as every chunk sent on its own costs a write to the socket and a few bytes of framing.
+     * @param bufferSize The amount of bytes to collect before sending a chunk. Values larger than the internal buffer are limited to its size
+     * @return The new body writer
+     * @throws HTTPWriteException If the write operation fails
+     */
+    ChunkedResponseWriter beginBodyWithUnknownSize(int bufferSize) throws HTTPWriteException;
+
     /**
      * Sends the response to the client without any body
      * @throws HTTPWriteException If the write operation fails
@@ -30,4 +30,13 @@ public interface ResponseStartWriter extends ResettableWriter {
      * @return The new header writer.
      */
     ResponseHeaderWriter respondWithoutContentType(Status status);
+
+    /**
+     * Sends a complete response that has been encoded in advance and finishes the response.
+     * Only the HTTP version and the date header are filled in, so this does no per-request encoding.
+     *
+     * @param response The response to send
+     * @return The token that marks the response as completed
+     */
+    ResponseToken sendPrecomputed(PrecomputedResponse response) throws HTTPWriteException;
 }
@@ -0,0 +1,126 @@
+package de.nocoffeetech.smallhttp.util;
+
+import de.nocoffeetech.smallhttp.header.BuiltinHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Caches the HTTP date of the current second, as it only changes once a second but is required for every response.
+ * The cache is refreshed lazily by the first caller that notices that the second has changed.
+ */
+public class HTTPDateCache {
+    private static final byte[] DAY_NAMES = "MonTueWedThuFriSatSun".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MONTH_NAMES = "JanFebMarAprMayJunJulAugSepOctNovDec".getBytes(StandardCharsets.US_ASCII);
+    /** Length of a formatted date, e.g. <code>Sun, 06 Nov 1994 08:49:37 GMT</code> */
+    public static final int DATE_LENGTH = 29;
+    // Must be initialized after the name tables, as the constructor already formats the current date
+    private static final HTTPDateCache SYSTEM_CACHE = new HTTPDateCache(Clock.systemUTC());
+
+    private final Clock clock;
+    private volatile CachedDate current;
+
+    /**
+     * Creates a new cache. Use {@link #system()} instead unless a custom clock is required (e.g. for testing).
+     * @param clock The clock to get the current time from
+     */
+    public HTTPDateCache(Clock clock) {
+        this.clock = clock;
+        this.current = createFor(Math.floorDiv(clock.millis(), 1000));
+    }
+
+    /**
+     * @return The shared cache using the system clock
+     */
+    public static HTTPDateCache system() {
+        return SYSTEM_CACHE;
+    }
+
+    /**
+     * Gets the complete date header of the current second, including the trailing CR LF.
+     * <strong>The returned array must not be modified!</strong>
+     * @return The ascii bytes of the date header
+     */
+    public byte[] getDateHeaderBytes() {
+        return getCurrent().headerBytes;
+    }
+
+    /**
+     * @return The current date in the HTTP format
+     */
+    public String getDate() {
+        return getCurrent().value;
+    }
+
+    private CachedDate getCurrent() {
+        long epochSecond = Math.floorDiv(this.clock.millis(), 1000);
+        CachedDate current = this.current;
+        if (current.epochSecond != epochSecond) {
+            // Racing threads might both compute the new value, which is fine as the result is the same
+            current = createFor(epochSecond);
+            this.current = current;
+        }
+        return current;
+    }
+
+    /**
+     * Formats a point in time in the HTTP format (see <a href="https://www.rfc-editor.org/rfc/rfc9110#section-5.6.7">RFC 9110</a>)
+     * without going through a {@link java.time.format.DateTimeFormatter}.
+     * @param epochSecond The seconds since the epoch
+     * @return The formatted string
+     */
+    public static String format(long epochSecond) {
+        byte[] bytes = new byte[DATE_LENGTH];
+        formatTo(epochSecond, bytes, 0);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static CachedDate createFor(long epochSecond) {
+        byte[] key = BuiltinHeaders.DATE.headerKey.asciiBytes;
+        byte[] headerBytes = new byte[key.length + DATE_LENGTH + 2];
+        System.arraycopy(key, 0, headerBytes, 0, key.length);
+        formatTo(epochSecond, headerBytes, key.length);
+        headerBytes[headerBytes.length - 2] = '\r';
+        headerBytes[headerBytes.length - 1] = '\n';
+        return new CachedDate(epochSecond, headerBytes, new String(headerBytes, key.length, DATE_LENGTH, StandardCharsets.US_ASCII));
+    }
+
+    private static void formatTo(long epochSecond, byte[] target, int offset) {
+        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        int dayIndex = (dateTime.getDayOfWeek().getValue() - 1) * 3;
+        target[offset] = DAY_NAMES[dayIndex];
+        target[offset + 1] = DAY_NAMES[dayIndex + 1];
+        target[offset + 2] = DAY_NAMES[dayIndex + 2];
+        target[offset + 3] = ',';
+        target[offset + 4] = ' ';
+        writeTwoDigits(dateTime.getDayOfMonth(), target, offset + 5);
+        target[offset + 7] = ' ';
+        int monthIndex = (dateTime.getMonthValue() - 1) * 3;
+        target[offset + 8] = MONTH_NAMES[monthIndex];
+        target[offset + 9] = MONTH_NAMES[monthIndex + 1];
+        target[offset + 10] = MONTH_NAMES[monthIndex + 2];
+        target[offset + 11] = ' ';
+        int year = dateTime.getYear();
+        writeTwoDigits(year / 100, target, offset + 12);
+        writeTwoDigits(year % 100, target, offset + 14);
+        target[offset + 16] = ' ';
+        writeTwoDigits(dateTime.getHour(), target, offset + 17);
+        target[offset + 19] = ':';
+        writeTwoDigits(dateTime.getMinute(), target, offset + 20);
+        target[offset + 22] = ':';
+        writeTwoDigits(dateTime.getSecond(), target, offset + 23);
+        target[offset + 25] = ' ';
+        target[offset + 26] = 'G';
+        target[offset + 27] = 'M';
+        target[offset + 28] = 'T';
+    }
+
+    private static void writeTwoDigits(int value, byte[] target, int offset) {
+        target[offset] = (byte) ('0' + value / 10);
+        target[offset + 1] = (byte) ('0' + value % 10);
+    }
+
+    private record CachedDate(long epochSecond, byte[] headerBytes, String value) {}
+}
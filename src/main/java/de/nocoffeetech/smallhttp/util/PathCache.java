@@ -0,0 +1,114 @@
+package de.nocoffeetech.smallhttp.util;
+
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Caches the decoded paths of the request targets, keyed by their raw bytes, so frequently requested paths share one string instead of being decoded for every request.
+ * The cache is bounded and shared by all connections of a server. It's split into small sets, each evicting with the CLOCK algorithm:
+ * a hit marks an entry as referenced, and the clock hand of the set skips referenced entries once (clearing the mark) before it replaces one.
+ * New entries start unreferenced, so paths that are only requested once can't push out the hot ones.
+ * <br>
+ * Lookups don't lock. Racing inserts might replace each other or store a path twice, which only costs a few misses.
+ */
+public class PathCache {
+    /** Longer paths are never cached, so a few long targets can't retain a lot of memory */
+    public static final int MAX_KEY_LENGTH = 256;
+    private static final int WAYS = 4;
+    private final AtomicReferenceArray<Entry> entries;
+    /** The clock hand of each set. Not synchronized, a lost update only changes which entry is checked first */
+    private final byte[] hands;
+    private final int setMask;
+    private final ServerMetrics metrics;
+
+    /**
+     * Creates a new cache
+     * @param capacity The maximum amount of cached paths, which is rounded up to a power of two
+     * @param metrics The metrics to record hits and misses in
+     */
+    public PathCache(int capacity, ServerMetrics metrics) {
+        int minSets = Math.max(1, (capacity + WAYS - 1) / WAYS);
+        int sets = Integer.highestOneBit(minSets) == minSets ? minSets : Integer.highestOneBit(minSets) << 1;
+        this.entries = new AtomicReferenceArray<>(sets * WAYS);
+        this.hands = new byte[sets];
+        this.setMask = sets - 1;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Computes the hash of a key incrementally, while the key is being scanned
+     * @param hash The hash of the previous bytes, zero for the first byte
+     */
+    public static int hash(int hash, byte b) {
+        return 31 * hash + b;
+    }
+
+    public int getCapacity() {
+        return this.entries.length();
+    }
+
+    /**
+     * Looks up the path of the key
+     * @param hash The hash of the key, computed with {@link #hash(int, byte)}
+     * @return The cached path, or null if the key isn't cached
+     */
+    public String get(byte[] buf, int start, int end, int hash) {
+        int base = setIndex(hash) * WAYS;
+        for (int i = 0; i < WAYS; i++) {
+            Entry entry = this.entries.get(base + i);
+            if (entry != null && entry.hash == hash && Arrays.equals(entry.key, 0, entry.key.length, buf, start, end)) {
+                // Avoid writing to the shared entry if nothing changes
+                if (!entry.referenced) entry.referenced = true;
+                this.metrics.pathCacheLookup(true);
+                return entry.path;
+            }
+        }
+        this.metrics.pathCacheLookup(false);
+        return null;
+    }
+
+    /**
+     * Adds a path to the cache, replacing an entry of the set that hasn't been used since the clock hand passed it
+     * @param hash The hash of the key, computed with {@link #hash(int, byte)}
+     * @param path The decoded path
+     */
+    public void put(byte[] buf, int start, int end, int hash, String path) {
+        if (end - start > MAX_KEY_LENGTH) return;
+        int set = setIndex(hash);
+        int base = set * WAYS;
+        int hand = this.hands[set];
+        // After one round all marks are cleared, so this finds an entry within two rounds
+        for (int i = 0; i < WAYS * 2; i++) {
+            int slot = base + hand;
+            hand = (hand + 1) % WAYS;
+            Entry entry = this.entries.get(slot);
+            if (entry == null || !entry.referenced) {
+                this.entries.set(slot, new Entry(Arrays.copyOfRange(buf, start, end), hash, path));
+                break;
+            }
+            entry.referenced = false;
+        }
+        this.hands[set] = (byte) hand;
+    }
+
+    private int setIndex(int hash) {
+        // Mix the high bits in, as the sets are selected by the low bits
+        return (hash ^ (hash >>> 16)) & this.setMask;
+    }
+
+    private static final class Entry {
+        private final byte[] key;
+        private final int hash;
+        private final String path;
+        /** Set on every hit and cleared by the clock hand. Races only affect which entry is evicted */
+        private boolean referenced = false;
+
+        private Entry(byte[] key, int hash, String path) {
+            this.key = key;
+            this.hash = hash;
+            this.path = path;
+        }
+    }
+}
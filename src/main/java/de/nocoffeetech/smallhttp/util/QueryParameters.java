@@ -0,0 +1,201 @@
+package de.nocoffeetech.smallhttp.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only view of the query parameters that points into the header buffer, like the header index does for the headers.
+ * Parsing only locates the keys and values, they are decoded once they are requested. Keys without escapes are compared on the raw bytes.
+ * <br>
+ * Behaves like a {@link java.util.LinkedHashMap}: the order of the parameters is preserved, and if a key is present multiple times, the last value wins.
+ * As the buffer is reused for the next request, the view is only valid while the request is being handled.
+ */
+final class QueryParameters extends AbstractMap<String, String> {
+    // Each entry consists of keyStart, keyEnd, valueStart, valueEnd. The value start is -1 for keys without a value
+    private static final int ENTRY_SIZE = 4;
+    private final byte[] buf;
+    private int[] entries = new int[8 * ENTRY_SIZE];
+    /** Keys containing escapes, which can't be compared on the raw bytes */
+    private boolean[] escapedKeys = new boolean[8];
+    private String[] keys = new String[8];
+    private String[] values = new String[8];
+    private int count = 0;
+    private Set<Entry<String, String>> entrySet;
+
+    private QueryParameters(byte[] buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * Locates the parameters of a query, see <a href="https://www.rfc-editor.org/rfc/rfc3986#section-3.4">RFC 3986</a>
+     * @param start The index after the question mark
+     * @param end The end of the query, excluding the fragment
+     */
+    static QueryParameters parse(byte[] buf, int start, int end) {
+        QueryParameters parameters = new QueryParameters(buf);
+        int keyStart = start;
+        int keyEnd = -1;
+        boolean escaped = false;
+        for (int i = start; i <= end; i++) {
+            byte b = i == end ? (byte) '&' : buf[i];
+            if (b == '&') {
+                if (keyEnd == -1) {
+                    // Empty segments, e.g. from "a=1&&b=2", are skipped
+                    if (i > keyStart) parameters.add(keyStart, i, -1, -1, escaped);
+                } else {
+                    parameters.add(keyStart, keyEnd, keyEnd + 1, i, escaped);
+                }
+                keyStart = i + 1;
+                keyEnd = -1;
+                escaped = false;
+            } else if (b == '=' && keyEnd == -1) {
+                keyEnd = i;
+            } else if (keyEnd == -1 && (b == '%' || b == '+' || b < 0)) {
+                escaped = true;
+            }
+        }
+        return parameters;
+    }
+
+    private void add(int keyStart, int keyEnd, int valueStart, int valueEnd, boolean escaped) {
+        int index = this.count;
+        if (index == this.keys.length) {
+            this.entries = Arrays.copyOf(this.entries, this.entries.length * 2);
+            this.escapedKeys = Arrays.copyOf(this.escapedKeys, this.keys.length * 2);
+            this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+            this.values = Arrays.copyOf(this.values, this.values.length * 2);
+        }
+        int[] entries = this.entries;
+        int offset = index * ENTRY_SIZE;
+        entries[offset] = keyStart;
+        entries[offset + 1] = keyEnd;
+        entries[offset + 2] = valueStart;
+        entries[offset + 3] = valueEnd;
+        this.escapedKeys[index] = escaped;
+        // The target is limited in length, so comparing with the previous keys is cheaper than hashing them
+        for (int i = 0; i < index; i++) {
+            if (sameKey(i, index)) {
+                // Keep the position of the first occurrence, but the value of the last one
+                entries[i * ENTRY_SIZE + 2] = valueStart;
+                entries[i * ENTRY_SIZE + 3] = valueEnd;
+                // The slot is reused for the next parameter
+                this.keys[index] = null;
+                return;
+            }
+        }
+        this.count++;
+    }
+
+    private boolean sameKey(int first, int second) {
+        if (this.escapedKeys[first] || this.escapedKeys[second]) {
+            return getKey(first).equals(getKey(second));
+        }
+        int firstStart = this.entries[first * ENTRY_SIZE];
+        int secondStart = this.entries[second * ENTRY_SIZE];
+        return Arrays.equals(this.buf, firstStart, this.entries[first * ENTRY_SIZE + 1], this.buf, secondStart, this.entries[second * ENTRY_SIZE + 1]);
+    }
+
+    private boolean keyMatches(int index, String key) {
+        if (this.escapedKeys[index]) {
+            return getKey(index).equals(key);
+        }
+        int keyStart = this.entries[index * ENTRY_SIZE];
+        int length = this.entries[index * ENTRY_SIZE + 1] - keyStart;
+        if (key.length() != length) return false;
+        byte[] buf = this.buf;
+        for (int i = 0; i < length; i++) {
+            if (buf[keyStart + i] != key.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String stringKey)) return -1;
+        for (int i = 0; i < this.count; i++) {
+            if (keyMatches(i, stringKey)) return i;
+        }
+        return -1;
+    }
+
+    private String getKey(int index) {
+        String key = this.keys[index];
+        if (key == null) {
+            int keyStart = this.entries[index * ENTRY_SIZE];
+            int keyEnd = this.entries[index * ENTRY_SIZE + 1];
+            key = this.keys[index] = this.escapedKeys[index] ? decodeLenient(keyStart, keyEnd) : new String(this.buf, keyStart, keyEnd - keyStart, StandardCharsets.ISO_8859_1);
+        }
+        return key;
+    }
+
+    private String getValue(int index) {
+        int valueStart = this.entries[index * ENTRY_SIZE + 2];
+        if (valueStart == -1) return null;
+        String value = this.values[index];
+        if (value == null) {
+            value = this.values[index] = decodeLenient(valueStart, this.entries[index * ENTRY_SIZE + 3]);
+        }
+        return value;
+    }
+
+    /**
+     * Unlike the path, a parameter with an invalid escape doesn't make the request invalid, so it's kept as it is
+     */
+    private String decodeLenient(int start, int end) {
+        String decoded = URLParser.decode(this.buf, start, end);
+        return decoded == null ? new String(this.buf, start, end - start, StandardCharsets.ISO_8859_1) : decoded;
+    }
+
+    @Override
+    public int size() {
+        return this.count;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(key);
+        return index == -1 ? null : getValue(index);
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        Set<Entry<String, String>> entrySet = this.entrySet;
+        if (entrySet == null) {
+            entrySet = this.entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return this.next < count;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (this.next >= count) throw new NoSuchElementException();
+                            int index = this.next++;
+                            return new SimpleImmutableEntry<>(getKey(index), getValue(index));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+        return entrySet;
+    }
+}
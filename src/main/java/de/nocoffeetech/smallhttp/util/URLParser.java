@@ -1,26 +1,48 @@
 package de.nocoffeetech.smallhttp.util;
 
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * Parses the request target directly from the bytes of the header buffer.
+ * Paths without escapes are turned into a string without decoding, and the query parameters are only located until a value is requested, see {@link QueryParameters}.
+ * Like {@link URLDecoder}, a '+' is decoded as a space, and percent-encoded bytes are decoded as UTF-8.
+ * If a {@link PathCache} is given, the paths of frequently requested targets are not decoded again.
+ */
 public class URLParser {
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
     private final byte[] buf;
     private final int start;
     private final int end;
-    private int queryIndex;
-    private URL url;
+    private final PathCache pathCache;
+    private int queryStart = -1;
+    private int queryEnd;
     private Map<String, String> map;
     private boolean parsedTarget = false;
 
     public URLParser(byte[] buf, int start, int end) {
+        this(buf, start, end, null);
+    }
+
+    /**
+     * @param pathCache The cache to look up the decoded path in, or null to always decode it
+     */
+    public URLParser(byte[] buf, int start, int end, PathCache pathCache) {
         this.buf = buf;
         this.start = start;
         this.end = end;
+        this.pathCache = pathCache;
+    }
+
+    /**
+     * @return A parser for the same target that doesn't point into the buffer of this one, e.g. so the buffer can be reused
+     */
+    public URLParser copy() {
+        return new URLParser(Arrays.copyOfRange(this.buf, this.start, this.end), 0, this.end - this.start, this.pathCache);
     }
 
     public static Map<String, String> parseQuery(String query) {
@@ -61,36 +83,21 @@ public class URLParser {
         return map;
     }
 
+    /**
+     * @return The decoded path of the request target, or null if the target is neither in origin-form nor in absolute-form or contains invalid escapes
+     */
     public String parseRequestTarget() {
         // https://www.rfc-editor.org/rfc/rfc9112#name-request-target
         if (buf[start] == '/') {
             // https://www.rfc-editor.org/rfc/rfc9112#name-origin-form
-            // search the query split
-            int queryIndex = searchNext(start, end, '?');
-            int fragmentIndex = searchNext(start, end, '#');
-            int indexToUse;
-            if (fragmentIndex != -1 && (queryIndex > fragmentIndex || queryIndex == -1)) {
-                this.queryIndex = -1;
-                indexToUse = fragmentIndex;
-            } else {
-                this.queryIndex = queryIndex;
-                indexToUse = queryIndex;
-            }
-            int length = (indexToUse == -1 ? end : indexToUse) - start;
-            parsedTarget = true;
-            return URLDecoder.decode(new String(buf, start, length), StandardCharsets.UTF_8);
-        } else if (end > start + 4  && buf[start] == 'h' && buf[start + 1] == 't' && buf[start + 2] == 't' && buf[start + 3] == 'p') {
-            // most likely https://www.rfc-editor.org/rfc/rfc9112#name-absolute-form
-            // leverage the standard URL parser for this
-            try {
-                url = new URL(new String(buf, start, end - start));
-                parsedTarget = true;
-                return url.getPath();
-            } catch (MalformedURLException e) {
-                return null;
-            }
+            return parsePath(start);
+        }
+        // https://www.rfc-editor.org/rfc/rfc9112#name-absolute-form
+        int pathStart = findAbsolutePathStart();
+        if (pathStart == -1) {
+            return null;
         }
-        return null;
+        return parsePath(pathStart);
     }
 
     public Map<String, String> parseOrGetQuery() {
@@ -104,6 +111,90 @@ public class URLParser {
         return start + 1 == end && buf[start] == '*';
     }
 
+    /**
+     * Skips the scheme and authority of an absolute URI, see <a href="https://www.rfc-editor.org/rfc/rfc3986#section-3">RFC 3986</a>.
+     * Only the http and https schemes are accepted, as no other scheme can be served.
+     * @return The start of the path, which may be empty, or -1 if the target is not a valid absolute URI
+     */
+    private int findAbsolutePathStart() {
+        int index;
+        if (startsWithIgnoreCase("http://")) {
+            index = start + 7;
+        } else if (startsWithIgnoreCase("https://")) {
+            index = start + 8;
+        } else {
+            return -1;
+        }
+        int authorityStart = index;
+        byte[] buf = this.buf;
+        for (; index < end; index++) {
+            byte b = buf[index];
+            if (b == '/' || b == '?' || b == '#') {
+                break;
+            } else if (b <= ' ' || b == 0x7F) {
+                return -1;
+            }
+        }
+        return index == authorityStart ? -1 : index;
+    }
+
+    private boolean startsWithIgnoreCase(String prefix) {
+        if (end - start < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            char expected = prefix.charAt(i);
+            int actual = buf[start + i];
+            // Setting the 0x20 bit makes ascii letters lowercase
+            if (expected >= 'a' && expected <= 'z') actual |= 0x20;
+            if (actual != expected) return false;
+        }
+        return true;
+    }
+
+    private String parsePath(int pathStart) {
+        byte[] buf = this.buf;
+        int pathEnd = pathStart;
+        boolean escaped = false;
+        int hash = 0;
+        for (; pathEnd < end; pathEnd++) {
+            byte b = buf[pathEnd];
+            if (b == '?' || b == '#') {
+                break;
+            } else if (b == '%' || b == '+' || b < 0) {
+                escaped = true;
+            }
+            hash = PathCache.hash(hash, b);
+        }
+        if (pathEnd < end && buf[pathEnd] == '?') {
+            // The fragment is not part of the query, see https://www.rfc-editor.org/rfc/rfc3986#section-3.4
+            this.queryStart = pathEnd + 1;
+            int fragmentIndex = searchNext(this.queryStart, end, '#');
+            this.queryEnd = fragmentIndex == -1 ? end : fragmentIndex;
+        }
+        parsedTarget = true;
+        if (pathStart == pathEnd) {
+            // An absolute URI with an empty path, which means the same as "/", see https://www.rfc-editor.org/rfc/rfc3986#section-6.2.3
+            return "/";
+        }
+        PathCache pathCache = this.pathCache;
+        if (pathCache == null || pathEnd - pathStart > PathCache.MAX_KEY_LENGTH) {
+            return decodePath(pathStart, pathEnd, escaped);
+        }
+        String path = pathCache.get(buf, pathStart, pathEnd, hash);
+        if (path == null) {
+            path = decodePath(pathStart, pathEnd, escaped);
+            // Invalid paths are not cached, they are answered with an error anyway
+            if (path != null) pathCache.put(buf, pathStart, pathEnd, hash, path);
+        }
+        return path;
+    }
+
+    private String decodePath(int pathStart, int pathEnd, boolean escaped) {
+        if (!escaped) {
+            return new String(buf, pathStart, pathEnd - pathStart, StandardCharsets.ISO_8859_1);
+        }
+        return decode(buf, pathStart, pathEnd);
+    }
+
     private int searchNext(int start, int max, char toFind) {
         byte[] toSearch = this.buf;
         for (int i = start; i < max; i++) {
@@ -115,22 +206,99 @@ public class URLParser {
 
     private Map<String, String> parseQuery() {
         if (!parsedTarget) throw new IllegalStateException();
+        if (queryStart == -1 || queryStart == queryEnd) {
+            return Collections.emptyMap();
+        }
+        return QueryParameters.parse(buf, queryStart, queryEnd);
+    }
 
-        String query;
-        if (url != null) {
-            query = url.getQuery();
-            if (query == null) query = "";
-        } else if (queryIndex != -1) {
-            int startIndex = queryIndex + 1;
-            int length = end - startIndex;
-            if (length > 0) {
-                query = new String(buf, startIndex, length);
+    /**
+     * Decodes the percent-encoded UTF-8 of a part of the request target in a single pass, see <a href="https://www.rfc-editor.org/rfc/rfc3986#section-2.1">RFC 3986</a>.
+     * Invalid UTF-8 sequences are replaced with U+FFFD, just like {@link String#String(byte[], java.nio.charset.Charset)} does.
+     * @return The decoded string, or null if a percent sign is not followed by two hex digits
+     */
+    static String decode(byte[] buf, int start, int end) {
+        // Every char needs at least one byte, and supplementary chars need four
+        char[] chars = new char[end - start];
+        int length = 0;
+        int index = start;
+        while (index < end) {
+            int b;
+            byte raw = buf[index];
+            if (raw == '%') {
+                b = unescape(buf, index, end);
+                if (b == -1) return null;
+                index += 3;
             } else {
-                query = "";
+                b = raw == '+' ? ' ' : raw & 0xFF;
+                index++;
+            }
+            if (b < 0x80) {
+                chars[length++] = (char) b;
+                continue;
+            }
+            // The start of a multibyte sequence, see https://www.rfc-editor.org/rfc/rfc3629#section-4
+            int remaining;
+            int codePoint;
+            int lowerBound = 0x80;
+            int upperBound = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                remaining = 1;
+                codePoint = b & 0x1F;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                remaining = 2;
+                codePoint = b & 0x0F;
+                // No overlong encodings and no surrogates
+                if (b == 0xE0) lowerBound = 0xA0;
+                else if (b == 0xED) upperBound = 0x9F;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                remaining = 3;
+                codePoint = b & 0x07;
+                // No overlong encodings and nothing above U+10FFFF
+                if (b == 0xF0) lowerBound = 0x90;
+                else if (b == 0xF4) upperBound = 0x8F;
+            } else {
+                chars[length++] = REPLACEMENT_CHAR;
+                continue;
+            }
+            for (; remaining > 0 && index < end; remaining--) {
+                int next;
+                int width;
+                if (buf[index] == '%') {
+                    next = unescape(buf, index, end);
+                    if (next == -1) return null;
+                    width = 3;
+                } else {
+                    next = buf[index] & 0xFF;
+                    width = 1;
+                }
+                if (next < lowerBound || next > upperBound) break;
+                codePoint = (codePoint << 6) | (next & 0x3F);
+                index += width;
+                lowerBound = 0x80;
+                upperBound = 0xBF;
+            }
+            if (remaining > 0) {
+                // The byte that ended the sequence early is decoded on its own
+                chars[length++] = REPLACEMENT_CHAR;
+            } else if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[length++] = Character.highSurrogate(codePoint);
+                chars[length++] = Character.lowSurrogate(codePoint);
+            } else {
+                chars[length++] = (char) codePoint;
             }
-        } else {
-            query = "";
         }
-        return parseQuery(query);
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * @return The byte encoded by the percent sign at the index, or -1 if it's not followed by two hex digits
+     */
+    private static int unescape(byte[] buf, int index, int end) {
+        if (index + 3 > end) return -1;
+        int high = Character.digit(buf[index + 1], 16);
+        int low = Character.digit(buf[index + 2], 16);
+        if (high == -1 || low == -1) return -1;
+        return (high << 4) | low;
     }
 }
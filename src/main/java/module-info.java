@@ -2,6 +2,7 @@ module de.nocoffeetech.smallhttp {
     exports de.nocoffeetech.smallhttp.base;
     exports de.nocoffeetech.smallhttp.data;
     exports de.nocoffeetech.smallhttp.header;
+    exports de.nocoffeetech.smallhttp.metrics;
     exports de.nocoffeetech.smallhttp.response;
     exports de.nocoffeetech.smallhttp.util;
 }
\ No newline at end of file
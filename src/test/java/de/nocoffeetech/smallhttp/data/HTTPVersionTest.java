@@ -11,7 +11,7 @@ public class HTTPVersionTest {
 
     @Test
     public void testCommonBytes() {
-        for (HTTPVersion value : HTTPVersion.values()) {
+        for (HTTPVersion value : HTTPVersion.HTTP_1_VALUES) {
             Assertions.assertEquals(value.name, new String(HTTPVersion.COMMON_BYTES, StandardCharsets.US_ASCII) + ((char) value.lastByte));
         }
     }
@@ -42,6 +42,13 @@ public class HTTPVersionTest {
         Assertions.assertEquals(HTTPVersion.HTTP_1_1, matchingVersion);
     }
 
+    @Test
+    public void testHttp2IsNotParsed() {
+        byte[] data = "HTTP/1.2\r\n".getBytes(StandardCharsets.US_ASCII);
+        HTTPVersion matchingVersion = HTTPVersion.findMatchingVersion(data, 0);
+        Assertions.assertNull(matchingVersion);
+    }
+
     @Test
     public void testInvalidHttpName() {
         byte[] data = "ROFL/1.1\r\n".getBytes(StandardCharsets.US_ASCII);
@@ -0,0 +1,130 @@
+package de.nocoffeetech.smallhttp.internal.eventloop;
+
+import de.nocoffeetech.smallhttp.base.ConnectionEngine;
+import de.nocoffeetech.smallhttp.base.HTTPServer;
+import de.nocoffeetech.smallhttp.base.HTTPServerBuilder;
+import de.nocoffeetech.smallhttp.base.RequestHandler;
+import de.nocoffeetech.smallhttp.data.Method;
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.CommonContentTypes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+public class EventLoopRequestTest {
+    private static final int PORT = 6550;
+    private static final int HYBRID_PORT = 6553;
+    private static HTTPServer server;
+    private static HTTPServer hybridServer;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        RequestHandler handler = (request, responseWriter) -> {
+            if (request.getMethod() == Method.GET) return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Passt");
+            return responseWriter.respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN).writeBodyAndFlush("Ja ne kein plan");
+        };
+        // Deliberately tiny worker pool, idle connections must not occupy any of them
+        server = HTTPServerBuilder.create(PORT, handler)
+                .setConnectionEngine(ConnectionEngine.EVENT_LOOP)
+                .setThreadCount(2)
+                .setEventLoopCount(2)
+                .build();
+        hybridServer = HTTPServerBuilder.create(HYBRID_PORT, handler)
+                .setConnectionEngine(ConnectionEngine.HYBRID)
+                .setThreadCount(2)
+                .setEventLoopCount(1)
+                .build();
+    }
+
+    @AfterAll
+    public static void shutdown() throws IOException {
+        server.shutdown(true);
+        hybridServer.shutdown(true);
+    }
+
+    private static final String TO_SEND_CLOSE = "GET / HTTP/1.1\r\nConnection: close\r\nUser-Agent: Test\r\nHost:nocoffee.tech\r\n\r\n";
+    private static final String TO_SEND_KEEP_ALIVE = "GET / HTTP/1.1\r\nUser-Agent: Test\r\nHost:nocoffee.tech\r\n\r\n";
+
+    @Test
+    public void sendHttpRequestInDifferentChunks() throws Exception {
+        Assertions.assertTimeoutPreemptively(Duration.of(15, ChronoUnit.SECONDS), () -> {
+            for (int chunkSize = 1; chunkSize < TO_SEND_CLOSE.length() - 1; chunkSize += 3) {
+                try (Socket socket = new Socket("localhost", PORT)) {
+                    socket.setSoTimeout(200);
+                    for (int i = 0; i < TO_SEND_CLOSE.length(); i += chunkSize) {
+                        socket.getOutputStream().write(TO_SEND_CLOSE.substring(i, Math.min(i + chunkSize, TO_SEND_CLOSE.length())).getBytes(StandardCharsets.US_ASCII));
+                        socket.getOutputStream().flush();
+                        Thread.sleep((int) (Math.random() * 10));
+                    }
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0], "Failed at split " + chunkSize);
+                    Assertions.assertTrue(asString.endsWith("Passt"), "Failed at split " + chunkSize + ", reponse is: " + asString);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void idleConnectionsDoNotBlockWorkers() throws Exception {
+        testIdleConnections(PORT);
+    }
+
+    @Test
+    public void idleConnectionsDoNotBlockWorkersInHybridMode() throws Exception {
+        testIdleConnections(HYBRID_PORT);
+    }
+
+    private static void testIdleConnections(int port) {
+        Assertions.assertTimeoutPreemptively(Duration.of(15, ChronoUnit.SECONDS), () -> {
+            Socket[] idleSockets = new Socket[64];
+            try {
+                for (int i = 0; i < idleSockets.length; i++) {
+                    idleSockets[i] = new Socket("localhost", port);
+                    idleSockets[i].setSoTimeout(50);
+                }
+                // Every connection sends a request and then stays idle on keep-alive
+                for (Socket socket : idleSockets) {
+                    socket.getOutputStream().write(TO_SEND_KEEP_ALIVE.getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    String asString = readUntilTimeout(socket);
+                    Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0]);
+                    Assertions.assertTrue(asString.endsWith("Passt"), "Reponse is: " + asString);
+                }
+                // And the connections are still usable afterwards
+                for (Socket socket : idleSockets) {
+                    socket.getOutputStream().write(TO_SEND_KEEP_ALIVE.getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    Assertions.assertTrue(readUntilTimeout(socket).endsWith("Passt"));
+                }
+            } finally {
+                for (Socket idleSocket : idleSockets) {
+                    if (idleSocket != null) idleSocket.close();
+                }
+            }
+        });
+    }
+
+    private static String readUntilTimeout(Socket socket) throws IOException {
+        // Can't readAllBytes as connection stays open. So read until we time out, like in FullRequestTest
+        byte[] bytes = new byte[4096];
+        int available = 0;
+        int lastRead = 0;
+        do {
+            available += lastRead;
+            try {
+                lastRead = socket.getInputStream().read(bytes, available, bytes.length - available);
+            } catch (SocketTimeoutException e) {
+                break;
+            }
+        } while (lastRead != -1);
+        return new String(bytes, 0, available, StandardCharsets.US_ASCII);
+    }
+}
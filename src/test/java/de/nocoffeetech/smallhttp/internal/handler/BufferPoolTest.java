@@ -0,0 +1,83 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import de.nocoffeetech.smallhttp.metrics.MetricsSnapshot;
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        BufferPool pool = new BufferPool(20 * 1024, 4, new ServerMetrics());
+        Assertions.assertEquals(8 * 1024, pool.acquire(1).length);
+        Assertions.assertEquals(8 * 1024, pool.acquire(8 * 1024).length);
+        Assertions.assertEquals(16 * 1024, pool.acquire(8 * 1024 + 1).length);
+        // The largest class must be able to hold the max header size
+        Assertions.assertEquals(32 * 1024, pool.acquire(20 * 1024).length);
+        Assertions.assertEquals(32 * 1024, pool.getMaxBufferSize());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> pool.acquire(32 * 1024 + 1));
+    }
+
+    @Test
+    public void testReuseAndMetrics() {
+        ServerMetrics metrics = new ServerMetrics();
+        BufferPool pool = new BufferPool(16 * 1024, 1, metrics);
+        byte[] first = pool.acquire(100);
+        byte[] second = pool.acquire(100);
+        Assertions.assertFalse(first == second);
+        pool.release(first);
+        // Only one buffer is retained in the smallest class
+        pool.release(second);
+        Assertions.assertEquals(1, pool.getPooledBuffers());
+        Assertions.assertEquals(8 * 1024, pool.getPooledBytes());
+        Assertions.assertSame(first, pool.acquire(100));
+
+        MetricsSnapshot snapshot = metrics.snapshot(0, 0, 0, pool.getPooledBuffers(), pool.getPooledBytes());
+        Assertions.assertEquals(1, snapshot.getBufferPoolHits());
+        Assertions.assertEquals(2, snapshot.getBufferPoolMisses());
+        Assertions.assertEquals(1, snapshot.getOutstandingBuffers());
+        Assertions.assertEquals(0, snapshot.getPooledBuffers());
+    }
+
+    @Test
+    public void testResponseBuffers() {
+        ServerMetrics metrics = new ServerMetrics();
+        BufferPool pool = new BufferPool(16 * 1024, 4, metrics);
+        ReusableClientContext context = new ReusableClientContext(pool);
+        context.acquireBuffers(0);
+        // Pooled response buffers must have the same room for headers as the ones of contexts without a pool
+        Assertions.assertEquals(new ReusableClientContext().responseBuffer.length, context.responseBuffer.length);
+        Assertions.assertEquals(ResponseWriter.RESERVED_PREFIX_LENGTH + InternalConstants.MAX_HEADER_SIZE_BYTES, context.responseBuffer.length);
+        byte[] responseBuffer = context.responseBuffer;
+        context.releaseBuffers();
+        Assertions.assertEquals(2, pool.getPooledBuffers());
+        Assertions.assertEquals(8 * 1024 + BufferPool.RESPONSE_BUFFER_SIZE, pool.getPooledBytes());
+        context.acquireBuffers(0);
+        Assertions.assertSame(responseBuffer, context.responseBuffer);
+        Assertions.assertEquals(2, metrics.snapshot(0, 0, 0, 0, 0).getBufferPoolHits());
+    }
+
+    @Test
+    public void testGrowHeaderBuffer() {
+        ServerMetrics metrics = new ServerMetrics();
+        BufferPool pool = new BufferPool(32 * 1024, 4, metrics);
+        ReusableClientContext context = new ReusableClientContext(pool);
+        context.acquireBuffers(0);
+        byte[] initial = context.headerBuffer;
+        initial[0] = 'G';
+        Assertions.assertTrue(context.growHeaderBuffer(1));
+        Assertions.assertEquals(16 * 1024, context.headerBuffer.length);
+        Assertions.assertEquals('G', context.headerBuffer[0]);
+        Assertions.assertTrue(context.growHeaderBuffer(1));
+        Assertions.assertFalse(context.growHeaderBuffer(1));
+        // The replaced buffers are kept until the request is done
+        Assertions.assertEquals(4, metrics.snapshot(0, 0, 0, 0, 0).getOutstandingBuffers());
+        context.reset();
+        Assertions.assertEquals(2, metrics.snapshot(0, 0, 0, 0, 0).getOutstandingBuffers());
+        context.releaseBuffers();
+        Assertions.assertFalse(context.hasBuffers());
+        Assertions.assertEquals(0, metrics.snapshot(0, 0, 0, 0, 0).getOutstandingBuffers());
+        Assertions.assertEquals(4, pool.getPooledBuffers());
+    }
+}
@@ -0,0 +1,97 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+public class ChunkedBodyInputStreamTest {
+    private static final String HEADER = "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n";
+    private static final String BODY = "5\r\nHello\r\n7;ext=\"val\"\r\n, World\r\n19\r\n from a chunked request!!\r\n0\r\nTrailer: abc\r\n\r\n";
+    private static final String DECODED = "Hello, World from a chunked request!!";
+    private static final String NEXT_REQUEST = "GET / HTTP/1.1\r\n";
+
+    @Test
+    public void testDecodeWithDifferentSplits() throws IOException {
+        byte[] all = (HEADER + BODY + NEXT_REQUEST).getBytes(StandardCharsets.US_ASCII);
+        // Simulate everything from the entire request being buffered to only the header being buffered, with the socket returning small pieces
+        for (int buffered = HEADER.length(); buffered <= all.length; buffered++) {
+            for (int pieceSize = 1; pieceSize < 8; pieceSize++) {
+                byte[] headerBuffer = new byte[InternalConstants.MAX_HEADER_SIZE_BYTES];
+                System.arraycopy(all, 0, headerBuffer, 0, buffered);
+                InputStream socket = new PieceInputStream(all, buffered, pieceSize);
+                ChunkedBodyInputStream stream = new ChunkedBodyInputStream(headerBuffer, HEADER.length(), buffered, socket, 1000);
+                String decoded = new String(stream.readAllBytes(), StandardCharsets.US_ASCII);
+                Assertions.assertEquals(DECODED, decoded, "Failed with " + buffered + " buffered bytes");
+                Assertions.assertTrue(stream.isDrained());
+                // Everything of the next request that was read must be handed back
+                byte[] target = new byte[InternalConstants.MAX_HEADER_SIZE_BYTES];
+                int remaining = stream.moveRemainingBytes(target);
+                String next = new String(target, 0, remaining, StandardCharsets.US_ASCII) + new String(socket.readAllBytes(), StandardCharsets.US_ASCII);
+                Assertions.assertEquals(NEXT_REQUEST, next, "Failed with " + buffered + " buffered bytes");
+            }
+        }
+    }
+
+    @Test
+    public void testSmallWindow() throws IOException {
+        // The header nearly fills the entire buffer
+        byte[] headerBuffer = new byte[InternalConstants.MAX_HEADER_SIZE_BYTES];
+        byte[] body = BODY.getBytes(StandardCharsets.US_ASCII);
+        int headerEnd = headerBuffer.length - 3;
+        System.arraycopy(body, 0, headerBuffer, headerEnd, 3);
+        ChunkedBodyInputStream stream = new ChunkedBodyInputStream(headerBuffer, headerEnd, headerBuffer.length, new ByteArrayInputStream(body, 3, body.length - 3), 1000);
+        Assertions.assertEquals(DECODED, new String(stream.readAllBytes(), StandardCharsets.US_ASCII));
+        Assertions.assertTrue(stream.isDrained());
+    }
+
+    @Test
+    public void testMaxBodyLength() {
+        Assertions.assertThrows(IOException.class, () -> decode(BODY, DECODED.length() - 1));
+        Assertions.assertDoesNotThrow(() -> decode(BODY, DECODED.length()));
+    }
+
+    @Test
+    public void testInvalidFraming() {
+        Assertions.assertThrows(IOException.class, () -> decode("5\r\nHello!\r\n0\r\n\r\n", 1000));
+        Assertions.assertThrows(IOException.class, () -> decode("Z\r\nHello\r\n0\r\n\r\n", 1000));
+        Assertions.assertThrows(IOException.class, () -> decode("5\nHello\r\n0\r\n\r\n", 1000));
+        Assertions.assertThrows(IOException.class, () -> decode("5\r\nHello\r\n0\r\nNoColon\r\n\r\n", 1000));
+        Assertions.assertThrows(IOException.class, () -> decode("5\r\nHello\r\n", 1000));
+    }
+
+    private static String decode(String body, int maxLength) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+        ChunkedBodyInputStream stream = new ChunkedBodyInputStream(new byte[InternalConstants.MAX_HEADER_SIZE_BYTES], 0, 0, new ByteArrayInputStream(bytes), maxLength);
+        return new String(stream.readAllBytes(), StandardCharsets.US_ASCII);
+    }
+
+    private static class PieceInputStream extends InputStream {
+        private final byte[] data;
+        private final int pieceSize;
+        private int index;
+
+        private PieceInputStream(byte[] data, int index, int pieceSize) {
+            this.data = data;
+            this.index = index;
+            this.pieceSize = pieceSize;
+        }
+
+        @Override
+        public int read() {
+            return this.index < this.data.length ? this.data[this.index++] : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (this.index >= this.data.length) return -1;
+            int toRead = Math.min(Math.min(len, this.pieceSize), this.data.length - this.index);
+            System.arraycopy(this.data, this.index, b, off, toRead);
+            this.index += toRead;
+            return toRead;
+        }
+    }
+}
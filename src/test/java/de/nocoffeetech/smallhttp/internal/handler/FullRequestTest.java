@@ -1,31 +1,66 @@
 package de.nocoffeetech.smallhttp.internal.handler;
 
+import de.nocoffeetech.smallhttp.base.ConnectionEngine;
+import de.nocoffeetech.smallhttp.base.HTTPRequest;
 import de.nocoffeetech.smallhttp.base.HTTPServer;
 import de.nocoffeetech.smallhttp.base.HTTPServerBuilder;
 import de.nocoffeetech.smallhttp.base.RequestHandler;
 import de.nocoffeetech.smallhttp.data.Method;
 import de.nocoffeetech.smallhttp.data.Status;
 import de.nocoffeetech.smallhttp.header.CommonContentTypes;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
+import de.nocoffeetech.smallhttp.metrics.MetricsSnapshot;
+import de.nocoffeetech.smallhttp.response.FixedResponseBodyWriter;
+import de.nocoffeetech.smallhttp.response.HTTPWriteException;
+import de.nocoffeetech.smallhttp.response.ResponseStartWriter;
+import de.nocoffeetech.smallhttp.response.ResponseToken;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class FullRequestTest {
+    /** Fills the response buffer almost completely, see {@link BufferPool#RESPONSE_BUFFER_SIZE} */
+    private static final String LARGE_HEADER_VALUE = "a".repeat(InternalConstants.MAX_HEADER_SIZE_BYTES - 150);
+    private static final PrecomputedHeader LARGE_RESPONSE_HEADER = PrecomputedHeader.create("X-Large", LARGE_HEADER_VALUE);
     private static HTTPServer server;
 
     @BeforeAll
     public static void setup() throws IOException {
         RequestHandler handler = (request, responseWriter) -> {
+            if (request.getMethod() == Method.GET && request.getPath().equals("/channel")) {
+                try {
+                    FixedResponseBodyWriter bodyWriter = responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).beginBodyWithKnownSize(5);
+                    bodyWriter.getRawSocketChannel().write(ByteBuffer.wrap("Kanal".getBytes(StandardCharsets.US_ASCII)));
+                    return bodyWriter.finalizeResponse();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            if (request.getMethod() == Method.GET && request.getPath().equals("/large-header")) return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).addHeader(LARGE_RESPONSE_HEADER).writeBodyAndFlush("Passt");
             if (request.getMethod() == Method.GET) return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Passt");
+            if (request.getMethod() == Method.PUT) {
+                try {
+                    return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush(request.getInputStream().readAllBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
             if (request.getMethod() == Method.POST) return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Super");
             return responseWriter.respond(Status.BAD_REQUEST, CommonContentTypes.PLAIN).writeBodyAndFlush("Ja ne kein plan");
         };
@@ -93,6 +128,387 @@ public class FullRequestTest {
         });
     }
 
+    @Test
+    public void sendPipelinedRequests() throws Exception {
+        String bodyRequest = "POST / HTTP/1.1\r\nHost:nocoffee.tech\r\nContent-Length: 5\r\n\r\nHello";
+        String toSend = bodyRequest + TO_SEND_KEEP_ALIVE + bodyRequest + TO_SEND_CLOSE;
+        Assertions.assertTimeoutPreemptively(Duration.of(5, ChronoUnit.SECONDS), () -> {
+            // Send everything at once, so that the following requests are already buffered when the first one is parsed
+            try (Socket socket = new Socket("localhost", 6549)) {
+                socket.getOutputStream().write(toSend.getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                String[] responses = asString.split("HTTP/1.1 ");
+                Assertions.assertEquals(5, responses.length, "Response is: " + asString);
+                Assertions.assertTrue(responses[1].startsWith("200 Ok") && responses[1].endsWith("Super"), responses[1]);
+                Assertions.assertTrue(responses[2].startsWith("200 Ok") && responses[2].endsWith("Super"), responses[2]);
+                Assertions.assertTrue(responses[3].startsWith("200 Ok") && responses[3].endsWith("Super"), responses[3]);
+                Assertions.assertTrue(responses[4].startsWith("200 Ok") && responses[4].endsWith("Passt"), responses[4]);
+            }
+        });
+    }
+
+    @Test
+    public void sendPipelinedRequestsWithRawChannel() throws Exception {
+        String channelRequest = "GET /channel HTTP/1.1\r\nHost:nocoffee.tech\r\n\r\n";
+        String toSend = TO_SEND_KEEP_ALIVE + channelRequest + channelRequest + TO_SEND_CLOSE;
+        Assertions.assertTimeoutPreemptively(Duration.of(5, ChronoUnit.SECONDS), () -> {
+            try (Socket socket = new Socket("localhost", 6549)) {
+                socket.getOutputStream().write(toSend.getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                String[] responses = asString.split("HTTP/1.1 ");
+                Assertions.assertEquals(5, responses.length, "Response is: " + asString);
+                // The bodies written to the channel must not overtake the held back responses
+                Assertions.assertTrue(responses[1].startsWith("200 Ok") && responses[1].endsWith("Super"), responses[1]);
+                Assertions.assertTrue(responses[2].startsWith("200 Ok") && responses[2].endsWith("Kanal"), responses[2]);
+                Assertions.assertTrue(responses[3].startsWith("200 Ok") && responses[3].endsWith("Kanal"), responses[3]);
+                Assertions.assertTrue(responses[4].startsWith("200 Ok") && responses[4].endsWith("Passt"), responses[4]);
+            }
+        });
+    }
+
+    @Test
+    public void sendChunkedRequest() throws Exception {
+        String chunkedRequest = "PUT / HTTP/1.1\r\nHost:nocoffee.tech\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nHello\r\n8;ext=1\r\n, World!\r\n0\r\nTrailer: 1\r\n\r\n";
+        String toSend = chunkedRequest + TO_SEND_CLOSE;
+        Assertions.assertTimeoutPreemptively(Duration.of(5, ChronoUnit.SECONDS), () -> {
+            for (int chunkSize : new int[] {7, toSend.length()}) {
+                try (Socket socket = new Socket("localhost", 6549)) {
+                    for (int i = 0; i < toSend.length(); i += chunkSize) {
+                        socket.getOutputStream().write(toSend.substring(i, Math.min(i + chunkSize, toSend.length())).getBytes(StandardCharsets.US_ASCII));
+                        socket.getOutputStream().flush();
+                        Thread.sleep(5);
+                    }
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    String[] responses = asString.split("HTTP/1.1 ");
+                    Assertions.assertEquals(3, responses.length, "Response is: " + asString);
+                    Assertions.assertTrue(responses[1].startsWith("200 Ok") && responses[1].endsWith("\r\n\r\nHello, World!"), responses[1]);
+                    Assertions.assertTrue(responses[2].startsWith("200 Ok") && responses[2].endsWith("Passt"), responses[2]);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        HTTPServer metricsServer = HTTPServerBuilder.create(8343, (request, responseWriter) -> responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Passt")).build();
+        try {
+            byte[] response;
+            try (Socket socket = new Socket("localhost", 8343)) {
+                socket.getOutputStream().write(TO_SEND_CLOSE.getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                // The connection is closed after the metrics are recorded
+                response = socket.getInputStream().readAllBytes();
+            }
+            MetricsSnapshot metrics = metricsServer.getMetrics();
+            Assertions.assertEquals(1, metrics.getAcceptedConnections());
+            Assertions.assertEquals(1, metrics.getRequests());
+            Assertions.assertEquals(1, metrics.getResponses(2));
+            Assertions.assertEquals(1, metrics.getTotalResponses());
+            Assertions.assertEquals(TO_SEND_CLOSE.length(), metrics.getRequestBytes());
+            Assertions.assertEquals(response.length, metrics.getResponseBytes());
+            Assertions.assertEquals(1, metrics.getParseLatency().getCount());
+            Assertions.assertEquals(1, metrics.getHandleLatency().getCount());
+            Assertions.assertEquals(1, metrics.getWriteLatency().getCount());
+        } finally {
+            metricsServer.shutdown(true);
+        }
+    }
+
+    @Test
+    public void testOverloadShedding() throws Exception {
+        HTTPServer overloadedServer = HTTPServerBuilder.create(8344, (request, responseWriter) -> null)
+                .setThreadCount(1)
+                .setOverloadMaxWait(50)
+                .setOverloadRetryAfter(7)
+                .build();
+        try {
+            Assertions.assertTimeoutPreemptively(Duration.of(5, ChronoUnit.SECONDS), () -> {
+                // The only thread is blocked by waiting for the request of the first connection
+                try (Socket blocking = new Socket("localhost", 8344); Socket shed = new Socket("localhost", 8344)) {
+                    shed.getOutputStream().write(TO_SEND_CLOSE.getBytes(StandardCharsets.US_ASCII));
+                    String response = new String(shed.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertTrue(response.startsWith("HTTP/1.1 503 Service Timeout\r\n"), response);
+                    Assertions.assertTrue(response.contains("\r\nRetry-After: 7\r\n"), response);
+                    Assertions.assertTrue(response.endsWith("\r\n\r\n"), response);
+                }
+            });
+            Assertions.assertEquals(1, overloadedServer.getMetrics().getRejectedConnections());
+        } finally {
+            overloadedServer.shutdown(true);
+        }
+    }
+
+    @Test
+    public void testDrain() throws Exception {
+        HTTPServer drainedServer = HTTPServerBuilder.create(8345, (request, responseWriter) -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Passt");
+        }).build();
+        Assertions.assertTimeoutPreemptively(Duration.of(10, ChronoUnit.SECONDS), () -> {
+            try (Socket idle = new Socket("localhost", 8345); Socket busy = new Socket("localhost", 8345)) {
+                busy.getOutputStream().write(TO_SEND_KEEP_ALIVE.getBytes(StandardCharsets.US_ASCII));
+                busy.getOutputStream().flush();
+                // Make sure the request is being handled
+                Thread.sleep(100);
+                Assertions.assertTrue(drainedServer.drain(5000));
+                // The in-flight request has been answered, and the client is told that the connection is closed
+                String response = new String(busy.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                Assertions.assertTrue(response.startsWith("HTTP/1.1 200 Ok") && response.endsWith("Passt"), response);
+                Assertions.assertTrue(response.contains("\r\nConnection:close\r\n"), response);
+                Assertions.assertEquals(-1, idle.getInputStream().read());
+            }
+            MetricsSnapshot metrics = drainedServer.getMetrics();
+            Assertions.assertTrue(metrics.isDraining());
+            Assertions.assertEquals(0, metrics.getForceClosedConnections());
+        });
+    }
+
+    @Test
+    public void testDrainDeadline() throws Exception {
+        HTTPServer drainedServer = HTTPServerBuilder.create(8346, (request, responseWriter) -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Passt");
+        }).build();
+        Assertions.assertTimeoutPreemptively(Duration.of(10, ChronoUnit.SECONDS), () -> {
+            try (Socket busy = new Socket("localhost", 8346)) {
+                busy.getOutputStream().write(TO_SEND_KEEP_ALIVE.getBytes(StandardCharsets.US_ASCII));
+                busy.getOutputStream().flush();
+                Thread.sleep(100);
+                Assertions.assertFalse(drainedServer.drain(100));
+                Assertions.assertEquals(0, busy.getInputStream().readAllBytes().length);
+            }
+            Assertions.assertEquals(1, drainedServer.getMetrics().getForceClosedConnections());
+        });
+    }
+
+    @Test
+    public void testMultipleAcceptors() throws Exception {
+        HTTPServer shardedServer = HTTPServerBuilder.create(8347, (request, responseWriter) -> responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Passt"))
+                .setAcceptorCount(4)
+                .setShardExecutorPerAcceptor(true)
+                .setThreadCount(16)
+                .build();
+        try {
+            Assertions.assertTimeoutPreemptively(Duration.of(10, ChronoUnit.SECONDS), () -> {
+                for (int i = 0; i < 64; i++) {
+                    try (Socket socket = new Socket("localhost", 8347)) {
+                        socket.getOutputStream().write(TO_SEND_CLOSE.getBytes(StandardCharsets.US_ASCII));
+                        socket.getOutputStream().flush();
+                        String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                        Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0]);
+                        Assertions.assertTrue(asString.endsWith("Passt"), "Reponse is: " + asString);
+                    }
+                }
+                Assertions.assertEquals(64, shardedServer.getMetrics().getAcceptedConnections());
+            });
+        } finally {
+            shardedServer.shutdown(true);
+        }
+    }
+
+    @Test
+    public void testLargeBodyToFile() throws Exception {
+        Path file = Files.createTempFile("upload", ".bin");
+        RequestHandler uploadHandler = new RequestHandler() {
+            @Override
+            public ResponseToken answerRequest(HTTPRequest request, ResponseStartWriter responseWriter) throws HTTPWriteException {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    long written = request.getBody().transferTo(channel, 0);
+                    return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush(String.valueOf(written));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public long getMaxBodySizeBytes(HTTPRequest request) {
+                return request.getPath().equals("/upload") ? 64 * 1024 * 1024 : -1;
+            }
+        };
+        HTTPServer uploadServer = HTTPServerBuilder.create(8348, uploadHandler)
+                .setMaxClientBodyLengthBytes(1024)
+                .build();
+        try {
+            Assertions.assertTimeoutPreemptively(Duration.of(10, ChronoUnit.SECONDS), () -> {
+                byte[] body = new byte[4 * 1024 * 1024 + 17];
+                for (int i = 0; i < body.length; i++) {
+                    body[i] = (byte) (i * 31);
+                }
+                try (Socket socket = new Socket("localhost", 8348)) {
+                    socket.getOutputStream().write(("POST /upload HTTP/1.1\r\nConnection: close\r\nHost: nocoffee.tech\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().write(body);
+                    socket.getOutputStream().flush();
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0]);
+                    Assertions.assertTrue(asString.endsWith(String.valueOf(body.length)), "Reponse is: " + asString);
+                }
+                Assertions.assertArrayEquals(body, Files.readAllBytes(file));
+
+                // Other endpoints still use the limit of the server
+                try (Socket socket = new Socket("localhost", 8348)) {
+                    socket.getOutputStream().write("POST /other HTTP/1.1\r\nHost: nocoffee.tech\r\nContent-Length: 2048\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertEquals("HTTP/1.1 413 Content Too Large", asString.split("\r")[0]);
+                }
+            });
+        } finally {
+            uploadServer.shutdown(true);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testBodyAfterCopyWithNewPath() throws Exception {
+        // Strips the first path segment like webservices-core does, the body must still be readable from the copy
+        HTTPServer routingServer = HTTPServerBuilder.create(8353, (request, responseWriter) -> {
+            HTTPRequest routed = request.copyWithNewPath(request.getPath().substring(request.getPath().indexOf('/', 1)));
+            try {
+                Assertions.assertNotNull(routed.getBody());
+                String body = new String(routed.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush(routed.getPath() + " " + routed.getContentLengthLong() + " " + body);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).build();
+        try {
+            Assertions.assertTimeoutPreemptively(Duration.of(5, ChronoUnit.SECONDS), () -> {
+                try (Socket socket = new Socket("localhost", 8353)) {
+                    socket.getOutputStream().write("POST /service/upload HTTP/1.1\r\nConnection: close\r\nHost: nocoffee.tech\r\nContent-Length: 5\r\n\r\nHello".getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0]);
+                    Assertions.assertTrue(asString.endsWith("/upload 5 Hello"), "Reponse is: " + asString);
+                }
+            });
+        } finally {
+            routingServer.shutdown(true);
+        }
+    }
+
+    @Test
+    public void testExpectContinue() throws Exception {
+        RequestHandler continueHandler = new RequestHandler() {
+            @Override
+            public ResponseToken answerRequest(HTTPRequest request, ResponseStartWriter responseWriter) throws HTTPWriteException {
+                try {
+                    String body = new String(request.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush(body);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public ResponseToken precheckRequest(HTTPRequest request, ResponseStartWriter responseWriter) throws HTTPWriteException {
+                if (request.getPath().equals("/forbidden")) {
+                    return responseWriter.respond(Status.FORBIDDEN, CommonContentTypes.PLAIN).writeBodyAndFlush("Nope");
+                }
+                return null;
+            }
+        };
+        HTTPServer continueServer = HTTPServerBuilder.create(8349, continueHandler).build();
+        try {
+            Assertions.assertTimeoutPreemptively(Duration.of(10, ChronoUnit.SECONDS), () -> {
+                try (Socket socket = new Socket("localhost", 8349)) {
+                    socket.getOutputStream().write("POST /upload HTTP/1.1\r\nHost: nocoffee.tech\r\nConnection: close\r\nExpect: 100-continue\r\nContent-Length: 5\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    // The client only sends the body once the server asked for it
+                    String expected = "HTTP/1.1 100 Continue\r\n\r\n";
+                    Assertions.assertEquals(expected, new String(socket.getInputStream().readNBytes(expected.length()), StandardCharsets.US_ASCII));
+                    socket.getOutputStream().write("Passt".getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0]);
+                    Assertions.assertTrue(asString.endsWith("Passt"), "Reponse is: " + asString);
+                }
+
+                try (Socket socket = new Socket("localhost", 8349)) {
+                    socket.getOutputStream().write("POST /forbidden HTTP/1.1\r\nHost: nocoffee.tech\r\nExpect: 100-continue\r\nContent-Length: 100000\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertEquals("HTTP/1.1 403 Forbidden", asString.split("\r")[0]);
+                    Assertions.assertTrue(asString.contains("Connection:close"), "Reponse is: " + asString);
+                    Assertions.assertTrue(asString.endsWith("Nope"), "Reponse is: " + asString);
+                }
+
+                try (Socket socket = new Socket("localhost", 8349)) {
+                    socket.getOutputStream().write("POST /upload HTTP/1.1\r\nHost: nocoffee.tech\r\nExpect: something-else\r\nContent-Length: 5\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertEquals("HTTP/1.1 417 Expectation Failed", asString.split("\r")[0]);
+                }
+            });
+        } finally {
+            continueServer.shutdown(true);
+        }
+    }
+
+    @Test
+    public void testLargeHeaders() throws Exception {
+        HTTPServer largeHeaderServer = HTTPServerBuilder.create(8350, (request, responseWriter) -> {
+            String value = request.getSingleHeader("x-large");
+            return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush(String.valueOf(value == null ? -1 : value.length()));
+        }).setMaxRequestHeaderSizeBytes(32 * 1024).build();
+        try {
+            Assertions.assertTimeoutPreemptively(Duration.of(10, ChronoUnit.SECONDS), () -> {
+                // Doesn't fit into the initial header buffer, so it has to grow twice
+                try (Socket socket = new Socket("localhost", 8350)) {
+                    socket.getOutputStream().write(("GET / HTTP/1.1\r\nHost: nocoffee.tech\r\nX-Large: " + "a".repeat(20000) + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0]);
+                    Assertions.assertTrue(asString.endsWith("20000"), "Reponse is: " + asString);
+                }
+
+                try (Socket socket = new Socket("localhost", 8350)) {
+                    // Exactly the max size, as the connection would be reset if the server closes it with unread bytes
+                    String start = "GET / HTTP/1.1\r\nHost: nocoffee.tech\r\nX-Large: ";
+                    socket.getOutputStream().write((start + "a".repeat(32 * 1024 - start.length())).getBytes(StandardCharsets.US_ASCII));
+                    socket.getOutputStream().flush();
+                    String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    Assertions.assertEquals("HTTP/1.1 431 Request Header Fields Too Large", asString.split("\r")[0]);
+                    Assertions.assertTrue(asString.endsWith("32768 bytes!"), "Reponse is: " + asString);
+                }
+
+                // All buffers go back to the pool once the connections are closed
+                while (largeHeaderServer.getMetrics().getOutstandingBuffers() > 0) {
+                    Thread.sleep(10);
+                }
+                MetricsSnapshot metrics = largeHeaderServer.getMetrics();
+                Assertions.assertTrue(metrics.getPooledBuffers() > 0);
+                Assertions.assertTrue(metrics.getBufferPoolHits() > 0);
+            });
+        } finally {
+            largeHeaderServer.shutdown(true);
+        }
+    }
+
+    @Test
+    public void sendLargeResponseHeaders() throws Exception {
+        Assertions.assertTimeoutPreemptively(Duration.of(5, ChronoUnit.SECONDS), () -> {
+            // The response buffer comes from the pool of the server, it must have the same room for headers as the header buffer
+            try (Socket socket = new Socket("localhost", 6549)) {
+                socket.getOutputStream().write("GET /large-header HTTP/1.1\r\nConnection: close\r\nHost:nocoffee.tech\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                socket.getOutputStream().flush();
+                String asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0]);
+                Assertions.assertTrue(asString.contains("\r\nX-Large:" + LARGE_HEADER_VALUE + "\r\n"), "Reponse is: " + asString);
+                Assertions.assertTrue(asString.endsWith("Passt"), "Reponse is: " + asString);
+            }
+        });
+    }
+
     @Test
     public void testShutdownDuringRead() throws Exception {
         HTTPServer secondaryServer = HTTPServerBuilder.create(8342, (request, responseWriter) -> {
@@ -130,4 +546,69 @@ public class FullRequestTest {
         Assertions.assertFalse(serverShutdownThread.isAlive());
         Assertions.assertNull(reference.get());
     }
+
+    @Test
+    public void testVirtualThreadEngine() throws Exception {
+        Assumptions.assumeTrue(VirtualThreadFactory.isSupported(), "Virtual threads require Java 21 or newer");
+        HTTPServer virtualThreadServer = HTTPServerBuilder.create(8351, (request, responseWriter) -> responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Passt"))
+                .setConnectionEngine(ConnectionEngine.VIRTUAL_THREAD_PER_CONNECTION)
+                .setMaxConcurrentConnections(1)
+                .build();
+        try {
+            Assertions.assertTimeoutPreemptively(Duration.of(15, ChronoUnit.SECONDS), () -> {
+                try (Socket socket = new Socket("localhost", 8351)) {
+                    socket.setSoTimeout(200);
+                    // The buffers are borrowed from the pool and returned for every request on the connection
+                    for (int i = 0; i < 5; i++) {
+                        socket.getOutputStream().write(TO_SEND_KEEP_ALIVE.getBytes(StandardCharsets.US_ASCII));
+                        socket.getOutputStream().flush();
+                        byte[] bytes = new byte[4096];
+                        int available = 0;
+                        int lastRead = 0;
+                        do {
+                            available += lastRead;
+                            try {
+                                lastRead = socket.getInputStream().read(bytes, available, bytes.length - available);
+                            } catch (SocketTimeoutException e) {
+                                break; // most likely just no more data
+                            }
+                        } while (lastRead != -1);
+                        String asString = new String(bytes, 0, available, StandardCharsets.US_ASCII);
+                        Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0], "Failed at request " + i);
+                        Assertions.assertTrue(asString.endsWith("Passt"), "Failed at request " + i + ", reponse is: " + asString);
+                    }
+                    // The only allowed connection is still open, so the next one must be closed without an answer
+                    try (Socket rejectedSocket = new Socket("localhost", 8351)) {
+                        rejectedSocket.setSoTimeout(1000);
+                        Assertions.assertEquals(-1, rejectedSocket.getInputStream().read());
+                    }
+                }
+                // Once the first connection is closed, its thread ends and new connections are accepted again
+                String asString = "";
+                for (int i = 0; i < 20 && asString.isEmpty(); i++) {
+                    Thread.sleep(50);
+                    try (Socket socket = new Socket("localhost", 8351)) {
+                        socket.setSoTimeout(1000);
+                        socket.getOutputStream().write(TO_SEND_CLOSE.getBytes(StandardCharsets.US_ASCII));
+                        socket.getOutputStream().flush();
+                        asString = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                    }
+                }
+                Assertions.assertEquals("HTTP/1.1 200 Ok", asString.split("\r")[0]);
+                Assertions.assertTrue(asString.endsWith("Passt"), "Reponse is: " + asString);
+            });
+        } finally {
+            virtualThreadServer.shutdown(true);
+        }
+    }
+
+    @Test
+    public void testVirtualThreadEngineRequiresSupport() {
+        HTTPServerBuilder builder = HTTPServerBuilder.create(8352, (request, responseWriter) -> null);
+        if (VirtualThreadFactory.isSupported()) {
+            Assertions.assertSame(builder, builder.setConnectionEngine(ConnectionEngine.VIRTUAL_THREAD_PER_CONNECTION));
+        } else {
+            Assertions.assertThrows(IllegalStateException.class, () -> builder.setConnectionEngine(ConnectionEngine.VIRTUAL_THREAD_PER_CONNECTION));
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class HeaderByteScannerTest {
+    // Mostly regular header chars, with the occasional delimiter or forbidden char
+    private static final byte[] ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_.,;/=*".getBytes();
+    private static final byte[] SPECIAL = {':', ' ', '\t', '\r', '\n', 0, (byte) 0x80, (byte) 0xff, (byte) 0xba, (byte) 0x8d};
+
+    @Test
+    public void testMatchesSimpleScan() {
+        Random random = new Random(42);
+        for (int run = 0; run < 20000; run++) {
+            byte[] buffer = new byte[random.nextInt(100) + 1];
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = random.nextInt(40) == 0 ? SPECIAL[random.nextInt(SPECIAL.length)] : ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            int start = random.nextInt(buffer.length);
+            int end = start + random.nextInt(buffer.length - start + 1);
+            Assertions.assertEquals(simpleScan(buffer, start, end, true), HeaderByteScanner.findNameEnd(buffer, start, end));
+            Assertions.assertEquals(simpleScan(buffer, start, end, false), HeaderByteScanner.findValueEnd(buffer, start, end));
+        }
+    }
+
+    @Test
+    public void testEveryByteValue() {
+        for (int value = 0; value < 256; value++) {
+            for (int position = 0; position < 40; position++) {
+                byte[] buffer = new byte[40];
+                java.util.Arrays.fill(buffer, (byte) 'a');
+                buffer[position] = (byte) value;
+                boolean nameEnd = value == ':' || isForbidden(InternalConstants.FORBIDDEN_HEADER_NAME_CHARS, value);
+                boolean valueEnd = isForbidden(InternalConstants.FORBIDDEN_HEADER_VALUE_CHARS, value);
+                Assertions.assertEquals(nameEnd ? position : buffer.length, HeaderByteScanner.findNameEnd(buffer, 0, buffer.length));
+                Assertions.assertEquals(valueEnd ? position : buffer.length, HeaderByteScanner.findValueEnd(buffer, 0, buffer.length));
+            }
+        }
+    }
+
+    private static int simpleScan(byte[] buffer, int start, int end, boolean name) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            if (name ? (b == ':' || isForbidden(InternalConstants.FORBIDDEN_HEADER_NAME_CHARS, b)) : isForbidden(InternalConstants.FORBIDDEN_HEADER_VALUE_CHARS, b)) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static boolean isForbidden(char[] forbiddenChars, int b) {
+        for (char c : forbiddenChars) {
+            if (b == c) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,57 @@
+package de.nocoffeetech.smallhttp.internal.handler;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class HeaderIndexTest {
+
+    @Test
+    public void testLookupIsCaseInsensitive() {
+        HeaderIndex index = createIndex("Host: localhost\r\nCONTENT-LENGTH:12\r\nX-Custom-Header:  padded value \t\r\nEmpty:\r\n");
+        Assertions.assertEquals("localhost", index.getSingle("host"));
+        Assertions.assertEquals("12", index.getSingle("content-length"));
+        Assertions.assertEquals("padded value", index.getSingle("x-custom-header"));
+        Assertions.assertEquals("", index.getSingle("empty"));
+        Assertions.assertNull(index.getSingle("hos"));
+        Assertions.assertNull(index.getSingle("hostt"));
+        Assertions.assertNull(index.getAll("connection"));
+    }
+
+    @Test
+    public void testMultipleValues() {
+        HeaderIndex index = createIndex("Custom: 123\r\nHost: localhost\r\ncustom:423 \r\nCUSTOM: 555\r\n");
+        Assertions.assertNull(index.getSingle("custom"));
+        Assertions.assertEquals(List.of("123", "423", "555"), index.getAll("custom"));
+        Assertions.assertEquals(List.of("localhost"), index.getAll("host"));
+    }
+
+    @Test
+    public void testGrowAndReset() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.append("Header").append(i).append(": ").append(i).append("\r\n");
+        }
+        HeaderIndex index = createIndex(builder.toString());
+        Assertions.assertEquals(100, index.size());
+        Assertions.assertEquals("99", index.getSingle("header99"));
+        index.reset();
+        Assertions.assertEquals(0, index.size());
+        Assertions.assertNull(index.getSingle("header99"));
+    }
+
+    private static HeaderIndex createIndex(String headers) {
+        byte[] buffer = headers.getBytes(StandardCharsets.ISO_8859_1);
+        HeaderIndex index = new HeaderIndex(buffer);
+        int lineStart = 0;
+        while (lineStart < buffer.length) {
+            int colon = headers.indexOf(':', lineStart);
+            int lineEnd = headers.indexOf("\r\n", colon);
+            index.add(lineStart, colon - lineStart, colon + 1, lineEnd - colon - 1);
+            lineStart = lineEnd + 2;
+        }
+        return index;
+    }
+}
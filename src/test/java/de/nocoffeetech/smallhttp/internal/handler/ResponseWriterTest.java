@@ -3,10 +3,14 @@ package de.nocoffeetech.smallhttp.internal.handler;
 import de.nocoffeetech.smallhttp.data.HTTPVersion;
 import de.nocoffeetech.smallhttp.data.Status;
 import de.nocoffeetech.smallhttp.header.CommonContentTypes;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
 import de.nocoffeetech.smallhttp.header.PrecomputedHeaderKey;
+import de.nocoffeetech.smallhttp.response.ChunkedResponseWriter;
+import de.nocoffeetech.smallhttp.response.PrecomputedResponse;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 
@@ -64,4 +68,97 @@ public class ResponseWriterTest {
         String s = outputStream.toString(StandardCharsets.US_ASCII);
         Assertions.assertEquals("HTTP/1.1 500 Internal Server Error\r\nDate:" + TestDateFormatter.EXPECTED_VAL + "\r\nServer:JSmallHTTP\r\nContent-Type:text/plain;charset=UTF-8\r\nETag:Test2\r\nContent-Length:17\r\n\r\nDas ist ein Test!", s);
     }
+
+    @Test
+    public void testChunkedWriting() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ResponseWriter writer = new ResponseWriter(outputStream, null, new ReusableClientContext(TestDateFormatter.TEST_CLOCK), HTTPVersion.HTTP_1_1);
+        ChunkedResponseWriter chunkedWriter = writer.respond(Status.OK, CommonContentTypes.PLAIN).beginBodyWithUnknownSize();
+        chunkedWriter.writeChunk("Das ist".getBytes(StandardCharsets.US_ASCII));
+        chunkedWriter.writeChunk(new byte[0]);
+        chunkedWriter.writeChunk(" ein Test!".repeat(2).getBytes(StandardCharsets.US_ASCII));
+        chunkedWriter.finalizeResponse();
+
+        Assertions.assertEquals("7\r\nDas ist\r\n14\r\n ein Test! ein Test!\r\n0\r\n\r\n", getBody(outputStream));
+    }
+
+    @Test
+    public void testBufferedChunkedWriting() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ResponseWriter writer = new ResponseWriter(outputStream, null, new ReusableClientContext(TestDateFormatter.TEST_CLOCK), HTTPVersion.HTTP_1_1);
+        ChunkedResponseWriter chunkedWriter = writer.respond(Status.OK, CommonContentTypes.PLAIN).beginBodyWithUnknownSize(16);
+        chunkedWriter.writeChunk("Das ".getBytes(StandardCharsets.US_ASCII));
+        chunkedWriter.writeChunk("ist ".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertEquals("", getBody(outputStream));
+        // Reaching the threshold sends everything as one chunk
+        chunkedWriter.writeChunk("ein Test!".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertEquals("11\r\nDas ist ein Test!\r\n", getBody(outputStream));
+        chunkedWriter.writeChunk("Flush".getBytes(StandardCharsets.US_ASCII));
+        chunkedWriter.flush();
+        chunkedWriter.writeFromInputStream(new ByteArrayInputStream("Stream".getBytes(StandardCharsets.US_ASCII)));
+        chunkedWriter.finalizeResponse();
+
+        Assertions.assertEquals("11\r\nDas ist ein Test!\r\n5\r\nFlush\r\n6\r\nStream\r\n0\r\n\r\n", getBody(outputStream));
+    }
+
+    @Test
+    public void testLargeChunkWriting() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ResponseWriter writer = new ResponseWriter(outputStream, null, new ReusableClientContext(TestDateFormatter.TEST_CLOCK), HTTPVersion.HTTP_1_1);
+        ChunkedResponseWriter chunkedWriter = writer.respond(Status.OK, CommonContentTypes.PLAIN).beginBodyWithUnknownSize(100);
+        String large = "0123456789abcdef".repeat(4096);
+        chunkedWriter.writeChunk("Start".getBytes(StandardCharsets.US_ASCII));
+        chunkedWriter.writeChunk(large.getBytes(StandardCharsets.US_ASCII));
+        chunkedWriter.finalizeResponse();
+
+        Assertions.assertEquals("10005\r\nStart" + large + "\r\n0\r\n\r\n", getBody(outputStream));
+    }
+
+    @Test
+    public void testPrecomputedResponse() throws Exception {
+        PrecomputedResponse response = PrecomputedResponse.create(Status.OK, CommonContentTypes.PLAIN, "Das ist ein Test!", PrecomputedHeader.create(ETAG, "ABCTest"));
+        for (HTTPVersion version : HTTPVersion.values()) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            new ResponseWriter(outputStream, null, new ReusableClientContext(TestDateFormatter.TEST_CLOCK), version).sendPrecomputed(response);
+
+            String s = outputStream.toString(StandardCharsets.US_ASCII);
+            Assertions.assertEquals(version.name + " 200 Ok\r\nDate:" + TestDateFormatter.EXPECTED_VAL + "\r\nServer:JSmallHTTP\r\nContent-Type:text/plain;charset=UTF-8\r\nETag:ABCTest\r\nContent-Length:17\r\n\r\nDas ist ein Test!", s);
+        }
+    }
+
+    @Test
+    public void testLargePrecomputedResponse() throws Exception {
+        String large = "0123456789abcdef".repeat(4096);
+        PrecomputedResponse response = PrecomputedResponse.create(Status.OK, CommonContentTypes.PLAIN, large);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ResponseWriter(outputStream, null, new ReusableClientContext(TestDateFormatter.TEST_CLOCK), HTTPVersion.HTTP_1_1).sendPrecomputed(response);
+
+        String s = outputStream.toString(StandardCharsets.US_ASCII);
+        Assertions.assertTrue(s.startsWith("HTTP/1.1 200 Ok\r\nDate:" + TestDateFormatter.EXPECTED_VAL + "\r\n"), s);
+        Assertions.assertEquals(large, getBody(outputStream));
+    }
+
+    @Test
+    public void testPrecomputedResponseWithoutBody() throws Exception {
+        PrecomputedResponse response = PrecomputedResponse.createWithoutBody(Status.MOVED_PERMANENTLY, PrecomputedHeader.create("Location", "/new"));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new ResponseWriter(outputStream, null, new ReusableClientContext(TestDateFormatter.TEST_CLOCK), HTTPVersion.HTTP_1_1).sendPrecomputed(response);
+
+        String s = outputStream.toString(StandardCharsets.US_ASCII);
+        Assertions.assertEquals("HTTP/1.1 301 Moved Permanently\r\nDate:" + TestDateFormatter.EXPECTED_VAL + "\r\nServer:JSmallHTTP\r\nLocation:/new\r\n\r\n", s);
+    }
+
+    @Test
+    public void testHexEncoding() {
+        byte[] target = new byte[8];
+        for (int value : new int[] {0, 1, 15, 16, 255, 4096, 0xABCDEF, Integer.MAX_VALUE}) {
+            int start = ResponseWriter.writeHex(value, target, target.length);
+            Assertions.assertEquals(Integer.toHexString(value), new String(target, start, target.length - start, StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static String getBody(ByteArrayOutputStream outputStream) {
+        String s = outputStream.toString(StandardCharsets.US_ASCII);
+        return s.substring(s.indexOf("\r\n\r\n") + 4);
+    }
 }
@@ -0,0 +1,103 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+public class HPACKTest {
+
+    @Test
+    public void testRequestsWithoutHuffman() throws HTTP2Exception {
+        // See https://www.rfc-editor.org/rfc/rfc7541#appendix-C.3
+        HPACKDecoder decoder = new HPACKDecoder(4096);
+        Assertions.assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com"),
+                decode(decoder, "828684410f7777772e6578616d706c652e636f6d"));
+        Assertions.assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com", "cache-control", "no-cache"),
+                decode(decoder, "828684be58086e6f2d6361636865"));
+        Assertions.assertEquals(List.of(":method", "GET", ":scheme", "https", ":path", "/index.html", ":authority", "www.example.com", "custom-key", "custom-value"),
+                decode(decoder, "828785bf400a637573746f6d2d6b65790c637573746f6d2d76616c7565"));
+        Assertions.assertEquals(164, decoder.getTableSize());
+    }
+
+    @Test
+    public void testRequestsWithHuffman() throws HTTP2Exception {
+        // See https://www.rfc-editor.org/rfc/rfc7541#appendix-C.4
+        HPACKDecoder decoder = new HPACKDecoder(4096);
+        Assertions.assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com"),
+                decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+        Assertions.assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com", "cache-control", "no-cache"),
+                decode(decoder, "828684be5886a8eb10649cbf"));
+        Assertions.assertEquals(List.of(":method", "GET", ":scheme", "https", ":path", "/index.html", ":authority", "www.example.com", "custom-key", "custom-value"),
+                decode(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"));
+        Assertions.assertEquals(164, decoder.getTableSize());
+    }
+
+    @Test
+    public void testEviction() throws HTTP2Exception {
+        // See https://www.rfc-editor.org/rfc/rfc7541#appendix-C.5, the third response evicts the first entries
+        HPACKDecoder decoder = new HPACKDecoder(256);
+        decode(decoder, "4803333032580770726976617465611d4d6f6e2c203231204f637420323031332032303a31333a323120474d546e1768747470733a2f2f7777772e6578616d706c652e636f6d");
+        Assertions.assertEquals(222, decoder.getTableSize());
+        Assertions.assertEquals(List.of(":status", "307", "cache-control", "private", "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com"),
+                decode(decoder, "4803333037c1c0bf"));
+        Assertions.assertEquals(222, decoder.getTableSize());
+    }
+
+    @Test
+    public void testInvalidBlocks() {
+        HPACKDecoder decoder = new HPACKDecoder(4096);
+        // Index 0 is not a valid entry
+        Assertions.assertThrows(HTTP2Exception.class, () -> decode(decoder, "80"));
+        // The dynamic table is still empty
+        Assertions.assertThrows(HTTP2Exception.class, () -> decode(decoder, "be"));
+        // Size updates must not exceed the limit of the settings
+        Assertions.assertThrows(HTTP2Exception.class, () -> decode(decoder, "3fe21f"));
+        // The string is longer than the block
+        Assertions.assertThrows(HTTP2Exception.class, () -> decode(decoder, "410f7777"));
+    }
+
+    @Test
+    public void testHuffmanRoundTrip() throws HTTP2Exception {
+        byte[] input = "Mon, 21 Oct 2013 20:13:21 GMT / custom-value ~!ÿ".getBytes(StandardCharsets.ISO_8859_1);
+        byte[] encoded = new byte[Huffman.encodedLength(input, 0, input.length)];
+        Assertions.assertEquals(encoded.length, Huffman.encode(input, 0, input.length, encoded, 0));
+        byte[] decoded = new byte[input.length * 2];
+        int length = Huffman.decode(encoded, 0, encoded.length, decoded);
+        Assertions.assertEquals(new String(input, StandardCharsets.ISO_8859_1), new String(decoded, 0, length, StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testEncoderRoundTrip() throws HTTP2Exception {
+        HPACKEncoder encoder = new HPACKEncoder(16);
+        encoder.encodeStatus(Status.NOT_FOUND);
+        encoder.encodeHeader(PrecomputedHeader.create("Content-Type", "text/plain"));
+        encoder.encodeHeader(PrecomputedHeader.create("X-Custom", "Some Value"));
+        // Connection specific headers must not be sent in HTTP/2
+        encoder.encodeHeader(PrecomputedHeader.create("Connection", "close"));
+        HPACKDecoder decoder = new HPACKDecoder(4096);
+        List<String> fields = new ArrayList<>();
+        decoder.decode(encoder.getBuffer(), 0, encoder.getLength(), (name, value) -> {
+            fields.add(name);
+            fields.add(value);
+        });
+        Assertions.assertEquals(List.of(":status", "404", "content-type", "text/plain", "x-custom", "Some Value"), fields);
+        // The encoder never adds to the dynamic table
+        Assertions.assertEquals(0, decoder.getTableSize());
+    }
+
+    private static List<String> decode(HPACKDecoder decoder, String hex) throws HTTP2Exception {
+        byte[] block = HexFormat.of().parseHex(hex);
+        List<String> fields = new ArrayList<>();
+        decoder.decode(block, 0, block.length, (name, value) -> {
+            fields.add(name);
+            fields.add(value);
+        });
+        return fields;
+    }
+}
@@ -0,0 +1,246 @@
+package de.nocoffeetech.smallhttp.internal.http2;
+
+import de.nocoffeetech.smallhttp.base.ConnectionEngine;
+import de.nocoffeetech.smallhttp.base.HTTPServer;
+import de.nocoffeetech.smallhttp.base.HTTPServerBuilder;
+import de.nocoffeetech.smallhttp.base.RequestHandler;
+import de.nocoffeetech.smallhttp.data.HTTPVersion;
+import de.nocoffeetech.smallhttp.data.Method;
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.CommonContentTypes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class HTTP2RequestTest {
+    private static HTTPServer server;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        RequestHandler handler = (request, responseWriter) -> {
+            if (request.getMethod() == Method.PUT) {
+                try {
+                    return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush(request.getInputStream().readAllBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush(request.getVersion().name, " ", request.getPath(), " ", request.getSingleHeader("host"));
+        };
+        server = HTTPServerBuilder.create(6556, handler).setAllowHTTP2Cleartext(true).build();
+    }
+
+    @AfterAll
+    public static void shutdown() throws IOException {
+        server.shutdown(true);
+    }
+
+    @Test
+    public void testUpgrade() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        // The first request is sent with HTTP/1.1 and upgrades the connection
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:6556/upgrade")).build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals(HttpClient.Version.HTTP_2, response.version());
+        Assertions.assertEquals(HTTPVersion.HTTP_2.name + " /upgrade localhost:6556", response.body());
+
+        // The bodies are larger than the initial flow control window, in both directions
+        List<byte[]> bodies = new ArrayList<>();
+        List<CompletableFuture<HttpResponse<byte[]>>> futures = new ArrayList<>();
+        SecureRandom random = new SecureRandom();
+        for (int i = 0; i < 10; i++) {
+            byte[] body = new byte[100 * 1024 + i];
+            random.nextBytes(body);
+            bodies.add(body);
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:6556/echo")).PUT(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+            futures.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            HttpResponse<byte[]> echo = futures.get(i).get();
+            Assertions.assertEquals(HttpClient.Version.HTTP_2, echo.version());
+            Assertions.assertArrayEquals(bodies.get(i), echo.body());
+        }
+    }
+
+    @Test
+    public void testPriorKnowledge() throws IOException, HTTP2Exception {
+        try (Socket socket = new Socket("localhost", 6556)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(HTTP2Constants.CONNECTION_PREFACE);
+            writeFrame(out, HTTP2Constants.TYPE_SETTINGS, 0, 0, new byte[0]);
+            HPACKEncoder encoder = new HPACKEncoder(32);
+            // :method GET, :scheme http, :path / from the static table
+            encoder.append(new byte[]{(byte) 0x82, (byte) 0x86, (byte) 0x84}, 0, 3);
+            byte[] authority = "nocoffee.tech".getBytes(StandardCharsets.US_ASCII);
+            encoder.encodeHeader(1, authority, 0, authority.length);
+            byte[] block = new byte[encoder.getLength()];
+            System.arraycopy(encoder.getBuffer(), 0, block, 0, block.length);
+            writeFrame(out, HTTP2Constants.TYPE_HEADERS, HTTP2Constants.FLAG_END_HEADERS | HTTP2Constants.FLAG_END_STREAM, 1, block);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            HPACKDecoder decoder = new HPACKDecoder(4096);
+            Map<String, String> headers = new HashMap<>();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            boolean settingsAcknowledged = false;
+            boolean ended = false;
+            while (!ended) {
+                int length = in.readUnsignedShort() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int streamId = in.readInt() & 0x7FFFFFFF;
+                byte[] payload = in.readNBytes(length);
+                if (type == HTTP2Constants.TYPE_SETTINGS && (flags & HTTP2Constants.FLAG_ACK) != 0) {
+                    settingsAcknowledged = true;
+                } else if (type == HTTP2Constants.TYPE_HEADERS) {
+                    Assertions.assertEquals(1, streamId);
+                    decoder.decode(payload, 0, payload.length, headers::put);
+                    ended = (flags & HTTP2Constants.FLAG_END_STREAM) != 0;
+                } else if (type == HTTP2Constants.TYPE_DATA) {
+                    Assertions.assertEquals(1, streamId);
+                    body.write(payload);
+                    ended = (flags & HTTP2Constants.FLAG_END_STREAM) != 0;
+                }
+            }
+            Assertions.assertTrue(settingsAcknowledged);
+            Assertions.assertEquals("200", headers.get(":status"));
+            Assertions.assertEquals("text/plain;charset=UTF-8", headers.get("content-type"));
+            Assertions.assertEquals(HTTPVersion.HTTP_2.name + " / nocoffee.tech", body.toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void testHTTP1StillWorks() throws IOException {
+        try (Socket socket = new Socket("localhost", 6556)) {
+            socket.getOutputStream().write("POST / HTTP/1.1\r\nHost:nocoffee.tech\r\nContent-Length:0\r\nConnection:close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            Assertions.assertTrue(response.startsWith("HTTP/1.1 200 Ok\r\n"), response);
+            Assertions.assertTrue(response.endsWith("HTTP/1.1 / nocoffee.tech"), response);
+        }
+    }
+
+    @Test
+    public void testDrainKeepsActiveStreams() throws Exception {
+        byte[] largeResponse = new byte[100 * 1024];
+        RequestHandler handler = (request, responseWriter) -> {
+            try {
+                byte[] body = request.getInputStream().readAllBytes();
+                System.arraycopy(body, 0, largeResponse, 0, body.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush(largeResponse);
+        };
+        HTTPServer drainServer = HTTPServerBuilder.create(6558, handler).setAllowHTTP2Cleartext(true).build();
+        try (Socket socket = new Socket("localhost", 6558)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(HTTP2Constants.CONNECTION_PREFACE);
+            writeFrame(out, HTTP2Constants.TYPE_SETTINGS, 0, 0, new byte[0]);
+            // Stream 1 is a PUT whose body is not complete yet once the server starts draining
+            writeFrame(out, HTTP2Constants.TYPE_HEADERS, HTTP2Constants.FLAG_END_HEADERS, 1, requestHeaders("PUT"));
+            writeFrame(out, HTTP2Constants.TYPE_DATA, 0, 1, "Hello".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            Thread.sleep(200);
+            CompletableFuture<Boolean> drained = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return drainServer.drain(5000);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            Thread.sleep(200);
+
+            // New streams are refused, but the active one continues
+            writeFrame(out, HTTP2Constants.TYPE_HEADERS, HTTP2Constants.FLAG_END_HEADERS | HTTP2Constants.FLAG_END_STREAM, 3, requestHeaders("GET"));
+            writeFrame(out, HTTP2Constants.TYPE_DATA, HTTP2Constants.FLAG_END_STREAM, 1, "World".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            boolean refused = false;
+            boolean goAway = false;
+            boolean ended = false;
+            int received = 0;
+            while (!ended) {
+                int length = in.readUnsignedShort() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int streamId = in.readInt() & 0x7FFFFFFF;
+                byte[] payload = in.readNBytes(length);
+                if (type == HTTP2Constants.TYPE_RST_STREAM && streamId == 3) {
+                    refused = true;
+                    Assertions.assertEquals(HTTP2Constants.REFUSED_STREAM, payload[3]);
+                } else if (type == HTTP2Constants.TYPE_GOAWAY) {
+                    goAway = true;
+                } else if (type == HTTP2Constants.TYPE_DATA) {
+                    Assertions.assertEquals(1, streamId);
+                    body.write(payload);
+                    ended = (flags & HTTP2Constants.FLAG_END_STREAM) != 0;
+                    received += length;
+                    if (received == HTTP2Constants.DEFAULT_WINDOW_SIZE) {
+                        // The response is larger than the initial window, so the server waits for these and has to read them
+                        byte[] increment = {0, 0x10, 0, 0};
+                        writeFrame(out, HTTP2Constants.TYPE_WINDOW_UPDATE, 0, 0, increment);
+                        writeFrame(out, HTTP2Constants.TYPE_WINDOW_UPDATE, 0, 1, increment);
+                        out.flush();
+                    }
+                }
+            }
+            Assertions.assertTrue(refused);
+            Assertions.assertTrue(goAway);
+            Assertions.assertEquals(largeResponse.length, body.size());
+            Assertions.assertEquals("HelloWorld", body.toString(StandardCharsets.US_ASCII).substring(0, 10));
+            Assertions.assertTrue(drained.get());
+        } finally {
+            drainServer.shutdown(true);
+        }
+    }
+
+    @Test
+    public void testUnsupportedEngine() {
+        HTTPServerBuilder builder = HTTPServerBuilder.create(6557, (request, responseWriter) -> null).setAllowHTTP2Cleartext(true).setConnectionEngine(ConnectionEngine.EVENT_LOOP);
+        Assertions.assertThrows(IllegalStateException.class, builder::build);
+    }
+
+    private static byte[] requestHeaders(String method) {
+        HPACKEncoder encoder = new HPACKEncoder(32);
+        // :scheme http and :path / from the static table
+        encoder.append(new byte[]{(byte) 0x86, (byte) 0x84}, 0, 2);
+        byte[] methodBytes = method.getBytes(StandardCharsets.US_ASCII);
+        encoder.encodeHeader(2, methodBytes, 0, methodBytes.length);
+        byte[] authority = "nocoffee.tech".getBytes(StandardCharsets.US_ASCII);
+        encoder.encodeHeader(1, authority, 0, authority.length);
+        byte[] block = new byte[encoder.getLength()];
+        System.arraycopy(encoder.getBuffer(), 0, block, 0, block.length);
+        return block;
+    }
+
+    private static void writeFrame(OutputStream out, int type, int flags, int streamId, byte[] payload) throws IOException {
+        out.write(new byte[]{
+                (byte) (payload.length >>> 16), (byte) (payload.length >>> 8), (byte) payload.length,
+                (byte) type, (byte) flags,
+                (byte) (streamId >>> 24), (byte) (streamId >>> 16), (byte) (streamId >>> 8), (byte) streamId
+        });
+        out.write(payload);
+    }
+}
@@ -0,0 +1,216 @@
+package de.nocoffeetech.smallhttp.internal.tls;
+
+import de.nocoffeetech.smallhttp.base.ConnectionEngine;
+import de.nocoffeetech.smallhttp.base.HTTPServer;
+import de.nocoffeetech.smallhttp.base.HTTPServerBuilder;
+import de.nocoffeetech.smallhttp.base.RequestHandler;
+import de.nocoffeetech.smallhttp.base.TLSConfig;
+import de.nocoffeetech.smallhttp.data.Method;
+import de.nocoffeetech.smallhttp.data.Status;
+import de.nocoffeetech.smallhttp.header.CommonContentTypes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+public class TLSRequestTest {
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static Path tempDir;
+    private static Path keyStore;
+    private static TLSConfig config;
+    private static HTTPServer server;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        tempDir = Files.createTempDirectory("smallhttp-tls");
+        keyStore = tempDir.resolve("server.p12");
+        createKeyStore(keyStore, "localhost");
+        RequestHandler handler = (request, responseWriter) -> {
+            if (request.getMethod() == Method.PUT) {
+                try {
+                    return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush(request.getInputStream().readAllBytes());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return responseWriter.respond(Status.OK, CommonContentTypes.PLAIN).writeBodyAndFlush("Passt");
+        };
+        config = TLSConfig.fromKeyStore(keyStore, PASSWORD).setReloadCheckInterval(-1);
+        server = HTTPServerBuilder.create(6554, handler).setTLSConfig(config).build();
+    }
+
+    @AfterAll
+    public static void shutdown() throws IOException {
+        server.shutdown(true);
+        try (var files = Files.list(tempDir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(tempDir);
+    }
+
+    @Test
+    public void testRequests() throws Exception {
+        byte[] body = new byte[100 * 1024];
+        new SecureRandom().nextBytes(body);
+        try (SSLSocket socket = connect(createClientContext(), "TLSv1.3", "h2", "http/1.1")) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write("GET / HTTP/1.1\r\nHost:nocoffee.tech\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            Assertions.assertEquals("Passt", new String(readResponse(in), StandardCharsets.US_ASCII));
+            Assertions.assertEquals("http/1.1", socket.getApplicationProtocol());
+
+            // Spans multiple records in both directions
+            out.write(("PUT / HTTP/1.1\r\nHost:nocoffee.tech\r\nContent-Length:" + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body);
+            out.flush();
+            Assertions.assertArrayEquals(body, readResponse(in));
+        }
+        // All TLS buffers are back in the pool once the connection is closed
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getMetrics().getOutstandingBuffers() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, server.getMetrics().getOutstandingBuffers());
+    }
+
+    @Test
+    public void testSessionResumption() throws Exception {
+        SSLContext clientContext = createClientContext();
+        byte[] firstId;
+        try (SSLSocket socket = connect(clientContext, "TLSv1.2")) {
+            sendGet(socket);
+            firstId = socket.getSession().getId();
+        }
+        try (SSLSocket socket = connect(clientContext, "TLSv1.2")) {
+            sendGet(socket);
+            // A resumed session keeps its id
+            Assertions.assertTrue(Arrays.equals(firstId, socket.getSession().getId()));
+        }
+    }
+
+    @Test
+    public void testUnsupportedApplicationProtocol() throws Exception {
+        try (SSLSocket socket = connect(createClientContext(), "TLSv1.3", "h2")) {
+            Assertions.assertThrows(SSLHandshakeException.class, socket::startHandshake);
+        }
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        SSLContext clientContext = createClientContext();
+        try (SSLSocket socket = connect(clientContext, "TLSv1.3")) {
+            sendGet(socket);
+            Assertions.assertEquals("CN=localhost", getPeerName(socket));
+        }
+        Path replacement = tempDir.resolve("replacement.p12");
+        createKeyStore(replacement, "reloaded");
+        Files.move(replacement, keyStore, StandardCopyOption.REPLACE_EXISTING);
+        config.reload();
+        try (SSLSocket socket = connect(clientContext, "TLSv1.3")) {
+            sendGet(socket);
+            Assertions.assertEquals("CN=reloaded", getPeerName(socket));
+        }
+    }
+
+    @Test
+    public void testUnsupportedEngine() {
+        HTTPServerBuilder builder = HTTPServerBuilder.create(6555, (request, responseWriter) -> null).setTLSConfig(config).setConnectionEngine(ConnectionEngine.EVENT_LOOP);
+        Assertions.assertThrows(IllegalStateException.class, builder::build);
+    }
+
+    private static void sendGet(SSLSocket socket) throws IOException {
+        socket.getOutputStream().write("GET / HTTP/1.1\r\nHost:nocoffee.tech\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+        Assertions.assertEquals("Passt", new String(readResponse(socket.getInputStream()), StandardCharsets.US_ASCII));
+    }
+
+    private static String getPeerName(SSLSocket socket) throws IOException {
+        return ((X509Certificate) socket.getSession().getPeerCertificates()[0]).getSubjectX500Principal().getName();
+    }
+
+    /**
+     * Reads a response with a content length
+     * @return The body of the response
+     */
+    private static byte[] readResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (true) {
+            int b = in.read();
+            if (b == -1) throw new IOException("Premature end of response");
+            head.write(b);
+            byte[] bytes = head.toByteArray();
+            int length = bytes.length;
+            if (length >= 4 && bytes[length - 4] == '\r' && bytes[length - 3] == '\n' && bytes[length - 2] == '\r' && bytes[length - 1] == '\n') break;
+        }
+        String headString = head.toString(StandardCharsets.US_ASCII);
+        Assertions.assertTrue(headString.startsWith("HTTP/1.1 200 Ok\r\n"), headString);
+        int contentLengthStart = headString.indexOf("Content-Length:") + "Content-Length:".length();
+        int contentLength = Integer.parseInt(headString.substring(contentLengthStart, headString.indexOf('\r', contentLengthStart)).trim());
+        return in.readNBytes(contentLength);
+    }
+
+    private static SSLSocket connect(SSLContext context, String protocol, String... applicationProtocols) throws IOException {
+        SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket("localhost", 6554);
+        socket.setSoTimeout(5000);
+        SSLParameters parameters = socket.getSSLParameters();
+        parameters.setProtocols(new String[] {protocol});
+        if (applicationProtocols.length > 0) {
+            parameters.setApplicationProtocols(applicationProtocols);
+        }
+        socket.setSSLParameters(parameters);
+        return socket;
+    }
+
+    private static SSLContext createClientContext() throws GeneralSecurityException {
+        // The certificates are self-signed, so trust everyone
+        TrustManager trustAll = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[] {trustAll}, null);
+        return context;
+    }
+
+    private static void createKeyStore(Path path, String commonName) throws IOException, InterruptedException {
+        Path keytool = Path.of(System.getProperty("java.home"), "bin", "keytool");
+        Process process = new ProcessBuilder(keytool.toString(), "-genkeypair", "-alias", "server", "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=" + commonName, "-validity", "1", "-storetype", "PKCS12", "-keystore", path.toString(),
+                "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+                .redirectErrorStream(true)
+                .start();
+        byte[] output = process.getInputStream().readAllBytes();
+        if (process.waitFor() != 0) throw new IOException("keytool failed: " + new String(output));
+    }
+}
@@ -0,0 +1,91 @@
+package de.nocoffeetech.smallhttp.internal.watchdog;
+
+import de.nocoffeetech.smallhttp.internal.handler.HTTPClientHandler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+public class ClientHandlerTrackerTest {
+
+    @Test
+    public void testRegisterAndDeregister() {
+        ClientHandlerTracker tracker = new ClientHandlerTracker();
+        List<HTTPClientHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            handlers.add(newHandler(tracker));
+        }
+        Assertions.assertEquals(1000, tracker.getHandlerCount());
+        Assertions.assertEquals(Set.copyOf(handlers), collect(tracker));
+
+        for (int i = 0; i < handlers.size(); i += 2) {
+            handlers.get(i).deregister();
+        }
+        Assertions.assertEquals(500, tracker.getHandlerCount());
+        for (HTTPClientHandler handler : collect(tracker)) {
+            Assertions.assertEquals(1, handlers.indexOf(handler) % 2);
+        }
+    }
+
+    @Test
+    public void testDeregisterTwice() {
+        ClientHandlerTracker tracker = new ClientHandlerTracker();
+        List<HTTPClientHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            handlers.add(newHandler(tracker));
+        }
+        for (HTTPClientHandler handler : handlers) {
+            handler.deregister();
+        }
+        // The new handlers reuse the slots of the old ones, which must not be affected when the old ones are deregistered again
+        List<HTTPClientHandler> newHandlers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            newHandlers.add(newHandler(tracker));
+        }
+        for (HTTPClientHandler handler : handlers) {
+            handler.deregister();
+        }
+        Assertions.assertEquals(Set.copyOf(newHandlers), collect(tracker));
+    }
+
+    @Test
+    public void testConcurrentRegistration() throws InterruptedException {
+        ClientHandlerTracker tracker = new ClientHandlerTracker();
+        HTTPClientHandler keptHandler = newHandler(tracker);
+        Thread[] threads = new Thread[8];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                for (int j = 0; j < 10_000; j++) {
+                    newHandler(tracker).deregister();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(Set.of(keptHandler), collect(tracker));
+    }
+
+    private static Set<HTTPClientHandler> collect(ClientHandlerTracker tracker) {
+        Set<HTTPClientHandler> handlers = Collections.newSetFromMap(new IdentityHashMap<>());
+        tracker.forEachHandler(handler -> Assertions.assertTrue(handlers.add(handler), "Handler returned twice"));
+        return handlers;
+    }
+
+    private static HTTPClientHandler newHandler(ClientHandlerTracker tracker) {
+        return new HTTPClientHandler(null, null, null, null, tracker, false, true, 0, null, false, null, null);
+    }
+}
@@ -0,0 +1,83 @@
+package de.nocoffeetech.smallhttp.internal.watchdog;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TimeoutWheelTest {
+
+    @Test
+    public void testFiresAfterDeadline() {
+        TimeoutWheel wheel = new TimeoutWheel(10, 8, 0);
+        CountingTimeout timeout = new CountingTimeout();
+        wheel.schedule(timeout, 35);
+        Assertions.assertEquals(0, wheel.expireTimeouts(30));
+        Assertions.assertEquals(0, wheel.expireTimeouts(39));
+        Assertions.assertEquals(1, wheel.expireTimeouts(40));
+        Assertions.assertEquals(1, timeout.fired);
+        // Fired timeouts are removed from the wheel
+        Assertions.assertEquals(0, wheel.expireTimeouts(1000));
+        Assertions.assertEquals(1, timeout.fired);
+    }
+
+    @Test
+    public void testDeadlineAfterMultipleRotations() {
+        TimeoutWheel wheel = new TimeoutWheel(10, 8, 0);
+        CountingTimeout timeout = new CountingTimeout();
+        // One rotation takes 80ms, so this shares the bucket with timeouts at 20ms, 100ms, ...
+        wheel.schedule(timeout, 180);
+        for (long now = 0; now < 180; now += 5) {
+            Assertions.assertEquals(0, wheel.expireTimeouts(now), "Fired early at " + now);
+        }
+        Assertions.assertEquals(1, wheel.expireTimeouts(180));
+    }
+
+    @Test
+    public void testCancelAndReschedule() {
+        TimeoutWheel wheel = new TimeoutWheel(10, 8, 0);
+        CountingTimeout cancelled = new CountingTimeout();
+        CountingTimeout rescheduled = new CountingTimeout();
+        wheel.schedule(cancelled, 20);
+        wheel.schedule(rescheduled, 20);
+        wheel.cancel(cancelled);
+        // Cancelling twice is fine
+        wheel.cancel(cancelled);
+        wheel.schedule(rescheduled, 50);
+        Assertions.assertEquals(0, wheel.expireTimeouts(40));
+        Assertions.assertEquals(1, wheel.expireTimeouts(50));
+        Assertions.assertEquals(0, cancelled.fired);
+        Assertions.assertEquals(1, rescheduled.fired);
+    }
+
+    @Test
+    public void testCatchUpAfterDelay() {
+        TimeoutWheel wheel = new TimeoutWheel(10, 8, 0);
+        CountingTimeout[] timeouts = new CountingTimeout[20];
+        for (int i = 0; i < timeouts.length; i++) {
+            timeouts[i] = new CountingTimeout();
+            wheel.schedule(timeouts[i], i * 25L);
+        }
+        // The wheel thread was not able to run for multiple rotations
+        Assertions.assertEquals(timeouts.length, wheel.expireTimeouts(10_000));
+        for (CountingTimeout timeout : timeouts) {
+            Assertions.assertEquals(1, timeout.fired);
+        }
+    }
+
+    @Test
+    public void testDeadlineInThePast() {
+        TimeoutWheel wheel = new TimeoutWheel(10, 8, 0);
+        wheel.expireTimeouts(100);
+        CountingTimeout timeout = new CountingTimeout();
+        wheel.schedule(timeout, 50);
+        Assertions.assertEquals(1, wheel.expireTimeouts(110));
+    }
+
+    private static class CountingTimeout extends TimeoutWheel.Timeout {
+        private int fired = 0;
+
+        @Override
+        protected void onTimeout() {
+            fired++;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package de.nocoffeetech.smallhttp.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBounds() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 33, 1000, 123_456, 999_999_999, 1L << 40, (1L << 41) - 1};
+        for (long value : values) {
+            int index = LatencyHistogram.indexFor(value);
+            Assertions.assertTrue(value <= LatencyHistogram.upperBoundOf(index), "Value " + value + " above bound of bucket " + index);
+            if (index > 0) {
+                Assertions.assertTrue(value > LatencyHistogram.upperBoundOf(index - 1), "Value " + value + " fits into previous bucket " + (index - 1));
+            }
+        }
+        Assertions.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.indexFor(Long.MAX_VALUE));
+        // Buckets must be continuous, so every value is in exactly one of them
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            Assertions.assertEquals(i, LatencyHistogram.indexFor(LatencyHistogram.upperBoundOf(i - 1) + 1));
+        }
+    }
+
+    @Test
+    public void testRelativeError() {
+        for (long value = 16; value < 1L << 40; value = value * 3 + 7) {
+            long bound = LatencyHistogram.upperBoundOf(LatencyHistogram.indexFor(value));
+            Assertions.assertTrue((bound - value) / (double) value < 1D / 16, "Bound " + bound + " too far from " + value);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-5);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(1001, snapshot.getCount());
+        Assertions.assertEquals(1_000_000, snapshot.getMaxNanos());
+        Assertions.assertEquals(500_500_000, snapshot.getSumNanos());
+        long p50 = snapshot.getValueAtPercentile(50);
+        Assertions.assertTrue(p50 >= 500_000 && p50 < 500_000 * 17 / 16, "p50 is " + p50);
+        long p99 = snapshot.getValueAtPercentile(99);
+        Assertions.assertTrue(p99 >= 990_000 && p99 <= 1_000_000, "p99 is " + p99);
+        Assertions.assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+        Assertions.assertEquals(0, snapshot.getValueAtPercentile(0));
+        // Recording after the snapshot doesn't change it
+        histogram.record(5);
+        Assertions.assertEquals(1001, snapshot.getCount());
+    }
+
+    @Test
+    public void testEmpty() {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+        Assertions.assertEquals(0, snapshot.getCount());
+        Assertions.assertEquals(0, snapshot.getValueAtPercentile(99));
+        Assertions.assertEquals(0D, snapshot.getMeanNanos());
+    }
+}
@@ -0,0 +1,79 @@
+package de.nocoffeetech.smallhttp.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class HTTPDateCacheTest {
+
+    @Test
+    public void testFormatMatchesFormatter() {
+        long[] fixedTimes = {0, 784111777, 951782400, 1709164799, 4102444799L};
+        for (long epochSecond : fixedTimes) {
+            assertFormatMatches(epochSecond);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertFormatMatches(ThreadLocalRandom.current().nextLong(0, 4102444800L));
+        }
+    }
+
+    @Test
+    public void testDateHeaderBytes() {
+        Instant instant = Instant.ofEpochSecond(784111777);
+        HTTPDateCache cache = new HTTPDateCache(Clock.fixed(instant, ZoneOffset.UTC));
+        Assertions.assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", cache.getDate());
+        Assertions.assertEquals("Date:Sun, 06 Nov 1994 08:49:37 GMT\r\n", new String(cache.getDateHeaderBytes(), StandardCharsets.US_ASCII));
+        // Same second, same instance
+        Assertions.assertSame(cache.getDateHeaderBytes(), cache.getDateHeaderBytes());
+    }
+
+    @Test
+    public void testRefreshOnNextSecond() {
+        MutableClock clock = new MutableClock(784111777_000L);
+        HTTPDateCache cache = new HTTPDateCache(clock);
+        byte[] first = cache.getDateHeaderBytes();
+        clock.millis = 784111777_999L;
+        Assertions.assertSame(first, cache.getDateHeaderBytes());
+        clock.millis = 784111778_000L;
+        Assertions.assertEquals("Sun, 06 Nov 1994 08:49:38 GMT", cache.getDate());
+    }
+
+    private static void assertFormatMatches(long epochSecond) {
+        String expected = ResponseDateFormatter.format(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC));
+        Assertions.assertEquals(expected, HTTPDateCache.format(epochSecond));
+    }
+
+    private static class MutableClock extends Clock {
+        private long millis;
+
+        private MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
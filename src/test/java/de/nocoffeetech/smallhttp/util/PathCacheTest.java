@@ -0,0 +1,77 @@
+package de.nocoffeetech.smallhttp.util;
+
+import de.nocoffeetech.smallhttp.metrics.MetricsSnapshot;
+import de.nocoffeetech.smallhttp.metrics.ServerMetrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class PathCacheTest {
+
+    @Test
+    public void testCapacity() {
+        Assertions.assertEquals(4, new PathCache(1, new ServerMetrics()).getCapacity());
+        Assertions.assertEquals(128, new PathCache(100, new ServerMetrics()).getCapacity());
+        Assertions.assertEquals(256, new PathCache(256, new ServerMetrics()).getCapacity());
+    }
+
+    @Test
+    public void testParserUsesCache() {
+        ServerMetrics metrics = new ServerMetrics();
+        PathCache cache = new PathCache(64, metrics);
+        String first = parse("/api/k%C3%B6nig?user=dieter", cache);
+        Assertions.assertEquals("/api/könig", first);
+        // The query and the authority are not part of the key
+        Assertions.assertSame(first, parse("/api/k%C3%B6nig?user=k%C3%B6nig#fragment", cache));
+        Assertions.assertSame(first, parse("http://www.example.org/api/k%C3%B6nig", cache));
+        Assertions.assertEquals("/api/konig", parse("/api/konig", cache));
+        // Invalid paths are never cached
+        Assertions.assertNull(parse("/api/%zz", cache));
+        Assertions.assertNull(parse("/api/%zz", cache));
+
+        MetricsSnapshot snapshot = metrics.snapshot(0, 0, 0, 0, 0);
+        Assertions.assertEquals(2, snapshot.getPathCacheHits());
+        Assertions.assertEquals(4, snapshot.getPathCacheMisses());
+        Assertions.assertEquals(2 / 6D, snapshot.getPathCacheHitRate());
+    }
+
+    @Test
+    public void testClockEviction() {
+        // A single set, so all paths compete for the same four entries
+        PathCache cache = new PathCache(4, new ServerMetrics());
+        String a = parse("/a", cache);
+        String b = parse("/b", cache);
+        parse("/c", cache);
+        parse("/d", cache);
+        Assertions.assertSame(a, parse("/a", cache));
+        // The hand passes /a as it was referenced, and evicts /b instead
+        parse("/e", cache);
+        Assertions.assertSame(a, parse("/a", cache));
+        Assertions.assertNotNull(lookup(cache, "/e"));
+        Assertions.assertNull(lookup(cache, "/b"));
+        Assertions.assertFalse(b == parse("/b", cache));
+    }
+
+    @Test
+    public void testLongPathsAreNotCached() {
+        PathCache cache = new PathCache(16, new ServerMetrics());
+        String path = "/" + "a".repeat(PathCache.MAX_KEY_LENGTH);
+        Assertions.assertEquals(path, parse(path, cache));
+        Assertions.assertNull(lookup(cache, path));
+    }
+
+    private static String parse(String target, PathCache cache) {
+        byte[] bytes = target.getBytes(StandardCharsets.UTF_8);
+        return new URLParser(bytes, 0, bytes.length, cache).parseRequestTarget();
+    }
+
+    private static String lookup(PathCache cache, String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        int hash = 0;
+        for (byte b : bytes) {
+            hash = PathCache.hash(hash, b);
+        }
+        return cache.get(bytes, 0, bytes.length, hash);
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class URLParserTest {
@@ -174,6 +175,53 @@ public class URLParserTest {
         Assertions.assertEquals(params, parser.parseOrGetQuery());
     }
 
+    @Test
+    public void testPathDecoding() {
+        Assertions.assertEquals("/api/könig und/100%", createParser("/api/k%C3%B6nig+und/100%25").parseRequestTarget());
+        // Raw UTF-8 is not allowed by the RFC, but sent by some clients anyway
+        Assertions.assertEquals("/api/könig", createParser("/api/könig").parseRequestTarget());
+        Assertions.assertEquals("/emoji/\uD83D\uDE00", createParser("/emoji/%F0%9F%98%80").parseRequestTarget());
+        // Invalid UTF-8 is replaced, just like new String does
+        Assertions.assertEquals("/invalid/\uFFFDa/\uFFFD\uFFFD\uFFFD", createParser("/invalid/%C3a/%ED%A0%80").parseRequestTarget());
+        Assertions.assertNull(createParser("/invalid/%zz").parseRequestTarget());
+        Assertions.assertNull(createParser("/invalid/%4").parseRequestTarget());
+    }
+
+    @Test
+    public void testAbsoluteFormVariants() {
+        URLParser parser = createParser("HTTPS://www.example.org:8443?login=true");
+        Assertions.assertEquals("/", parser.parseRequestTarget());
+        Assertions.assertEquals(Map.of("login", "true"), parser.parseOrGetQuery());
+        Assertions.assertEquals("/a b", createParser("http://www.example.org/a%20b#fragment").parseRequestTarget());
+        Assertions.assertNull(createParser("http:///path").parseRequestTarget());
+        Assertions.assertNull(createParser("ftp://www.example.org/path").parseRequestTarget());
+        Assertions.assertNull(createParser("www.example.org:443").parseRequestTarget());
+    }
+
+    @Test
+    public void testQueryView() {
+        URLParser parser = createParser("/api?a=1&b=%zz&a=2&&k%C3%B6nig=ja&c");
+        Assertions.assertEquals("/api", parser.parseRequestTarget());
+        Map<String, String> query = parser.parseOrGetQuery();
+        LinkedHashMap<String, String> expected = new LinkedHashMap<>();
+        // The last value of a duplicate key wins, invalid escapes are kept as they are
+        expected.put("a", "2");
+        expected.put("b", "%zz");
+        expected.put("könig", "ja");
+        expected.put("c", null);
+        Assertions.assertEquals(expected, query);
+        Assertions.assertEquals(List.copyOf(expected.keySet()), List.copyOf(query.keySet()));
+        Assertions.assertTrue(query.containsKey("c"));
+        Assertions.assertFalse(query.containsKey("d"));
+        Assertions.assertEquals("ja", query.get("könig"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> query.put("d", "1"));
+    }
+
+    private static URLParser createParser(String target) {
+        byte[] bytes = target.getBytes(StandardCharsets.UTF_8);
+        return new URLParser(bytes, 0, bytes.length);
+    }
+
     private static URLParser createParser(String base, LinkedHashMap<String, String> params, String post, int offset) {
         StringBuilder finalString = new StringBuilder(base);
         boolean first = true;
@@ -61,7 +61,10 @@ public abstract class BaseEndpoint<T extends WebserviceBase> {
         return responseStartWriter.respondWithoutContentType(Status.NO_CONTENT).addHeader(EndpointModule.ALLOWED_HEADER, getValidMethodsString()).sendWithoutBody();
     }
 
-    public int getMaxBodySizeBytes() {
+    /**
+     * @return The maximum length of a request body for this endpoint in bytes. Larger bodies are rejected before they are read, chunked bodies once they exceed it
+     */
+    public long getMaxBodySizeBytes() {
         return Short.MAX_VALUE;
     }
 
@@ -36,30 +36,27 @@ public class EndpointModule<SRV extends WebserviceBase, T extends BaseEndpoint<S
         return request.getPath().startsWith(prefix);
     }
 
-    public ResponseToken handleRequest(HTTPRequest request, ResponseStartWriter responseStartWriter) throws HTTPWriteException {
-        String shortUri = request.getPath().substring(prefix.length());
-        T endpoint = endpoints.get(shortUri);
-
-        if (endpoint == null) {
-            return responseStartWriter.respond(Status.NOT_FOUND, CommonContentTypes.PLAIN).writeBodyAndFlush("Endpoint not found!");
-        }
-
-        Method[] allowedMethods = endpoint.getAllowedMethods();
+    /**
+     * @return The maximum body length of the endpoint the request is for, or -1 if there is no such endpoint
+     */
+    public long getMaxBodySizeBytes(HTTPRequest request) {
+        T endpoint = getEndpoint(request);
+        return endpoint == null ? -1 : endpoint.getMaxBodySizeBytes();
+    }
 
-        if (allowedMethods != null) {
-            boolean ok = false;
-            for (Method method : allowedMethods) {
-                ok |= method == request.getMethod();
-            }
-            if (!ok) {
-                return responseStartWriter.respond(Status.METHOD_NOT_ALLOWED, CommonContentTypes.PLAIN)
-                        .addHeader(ALLOWED_HEADER, endpoint.getValidMethodsString())
-                        .writeBodyAndFlush("Wrong method, expected one of [", endpoint.getValidMethodsString(), "] but got ", request.getMethod().toString());
-            }
-        }
+    /**
+     * Rejects requests that would be rejected by {@link #handleRequest(HTTPRequest, ResponseStartWriter)} anyway before the client sends the body
+     * @return Null if the body should be received, or the token of the response that rejects the request
+     */
+    public ResponseToken precheckRequest(HTTPRequest request, ResponseStartWriter responseStartWriter) throws HTTPWriteException {
+        return checkEndpoint(request, responseStartWriter, getEndpoint(request));
+    }
 
-        if (request.getContentLength() > endpoint.getMaxBodySizeBytes()) {
-            return responseStartWriter.respond(Status.CONTENT_TOO_LARGE, CommonContentTypes.PLAIN).writeBodyAndFlush("Body size too long, max size for this is endpoint is ", Integer.toString(endpoint.getMaxBodySizeBytes()), " bytes");
+    public ResponseToken handleRequest(HTTPRequest request, ResponseStartWriter responseStartWriter) throws HTTPWriteException {
+        T endpoint = getEndpoint(request);
+        ResponseToken rejected = checkEndpoint(request, responseStartWriter, endpoint);
+        if (rejected != null) {
+            return rejected;
         }
 
         for (Validator<SRV, T> validator : validators) {
@@ -84,6 +81,40 @@ public class EndpointModule<SRV extends WebserviceBase, T extends BaseEndpoint<S
         }
     }
 
+    /**
+     * Checks the parts of the request that are known before the body is read
+     * @return Null if the endpoint accepts the request, or the token of the response that rejects it
+     */
+    private ResponseToken checkEndpoint(HTTPRequest request, ResponseStartWriter responseStartWriter, T endpoint) throws HTTPWriteException {
+        if (endpoint == null) {
+            return responseStartWriter.respond(Status.NOT_FOUND, CommonContentTypes.PLAIN).writeBodyAndFlush("Endpoint not found!");
+        }
+
+        Method[] allowedMethods = endpoint.getAllowedMethods();
+
+        if (allowedMethods != null) {
+            boolean ok = false;
+            for (Method method : allowedMethods) {
+                ok |= method == request.getMethod();
+            }
+            if (!ok) {
+                return responseStartWriter.respond(Status.METHOD_NOT_ALLOWED, CommonContentTypes.PLAIN)
+                        .addHeader(ALLOWED_HEADER, endpoint.getValidMethodsString())
+                        .writeBodyAndFlush("Wrong method, expected one of [", endpoint.getValidMethodsString(), "] but got ", request.getMethod().toString());
+            }
+        }
+
+        // Chunked bodies have no known length, the server enforces the limit while they are read
+        if (request.getContentLengthLong() > endpoint.getMaxBodySizeBytes()) {
+            return responseStartWriter.respond(Status.CONTENT_TOO_LARGE, CommonContentTypes.PLAIN).writeBodyAndFlush("Body size too long, max size for this is endpoint is ", Long.toString(endpoint.getMaxBodySizeBytes()), " bytes");
+        }
+        return null;
+    }
+
+    private T getEndpoint(HTTPRequest request) {
+        return endpoints.get(request.getPath().substring(prefix.length()));
+    }
+
     public void fillContext(WebserviceBase webserviceBase) {
         SRV castedService = this.serviceType.cast(webserviceBase);
         for (T value : this.endpoints.values()) {
@@ -8,7 +8,7 @@ import de.nocoffeetech.smallhttp.header.CommonContentTypes;
 import de.nocoffeetech.smallhttp.header.PrecomputedHeader;
 import de.nocoffeetech.smallhttp.header.PrecomputedHeaderKey;
 import de.nocoffeetech.smallhttp.response.*;
-import de.nocoffeetech.smallhttp.util.ResponseDateFormatter;
+import de.nocoffeetech.smallhttp.util.HTTPDateCache;
 import de.nocoffeetech.webservices.core.file.compress.CompressionStrategy;
 import de.nocoffeetech.webservices.core.file.compress.FileCompressor;
 import de.nocoffeetech.webservices.core.internal.util.TempDirHelper;
@@ -18,12 +18,12 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -32,7 +32,6 @@ public class FileServerModule {
     private static final Logger LOGGER = LogManager.getLogger(FileServerModule.class);
     private static final PrecomputedHeader ALLOW_HEADER = PrecomputedHeader.create("Allow", Stream.of(Method.OPTIONS, Method.GET, Method.HEAD).map(Enum::name).collect(Collectors.joining(", ")));
     private static final PrecomputedHeaderKey LAST_MODIFIED = PrecomputedHeaderKey.create("Last-Modified");
-    private static final ZoneId GMT = ZoneId.of("GMT");
     protected final Path baseDirToServe;
     protected final String prefixToServe;
     protected final FileCompressor compressor;
@@ -105,7 +104,7 @@ public class FileServerModule {
                     .writeBodyAndFlush("An error occurred while reading the file");
         }
         String ifModifiedSince = request.getSingleHeader("if-modified-since");
-        String lastModified = ResponseDateFormatter.format(LocalDateTime.ofInstant(srcLastModifiedTime.toInstant(), GMT));
+        String lastModified = HTTPDateCache.format(srcLastModifiedTime.toInstant().getEpochSecond());
         if (ifModifiedSince != null && ifModifiedSince.equals(lastModified)) {
             // See https://httpwg.org/specs/rfc9110.html#status.304
             return writer.respondWithoutContentType(Status.NOT_MODIFIED).sendWithoutBody();
@@ -140,10 +139,15 @@ public class FileServerModule {
                 return headerWriter.addHeader(BuiltinHeaders.CONTENT_LENGTH.headerKey, String.valueOf(size)).sendWithoutBody();
             } else {
                 FixedResponseBodyWriter bodyWriter = headerWriter.beginBodyWithKnownSize(size);
+                WritableByteChannel target = bodyWriter.getRawSocketChannel();
+                if (target == null) {
+                    // There is no channel to the socket e.g. with TLS or HTTP/2, so the file has to go through the stream of the connection
+                    target = Channels.newChannel(bodyWriter.getRawOutputStream());
+                }
                 long transferred = 0;
                 long leftToTransfer = size;
                 do {
-                    long currentChunkTransferred = channel.transferTo(transferred, leftToTransfer, bodyWriter.getRawSocketChannel());
+                    long currentChunkTransferred = channel.transferTo(transferred, leftToTransfer, target);
                     leftToTransfer -= currentChunkTransferred;
                     transferred += currentChunkTransferred;
                 } while (leftToTransfer > 0);
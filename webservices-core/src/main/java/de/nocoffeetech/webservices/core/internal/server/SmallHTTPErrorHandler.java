@@ -88,4 +88,9 @@ public class SmallHTTPErrorHandler implements ErrorHandler {
     public void onExternalTimeoutCloseFailed(HTTPServer server, Socket socket, Exception e) {
         LOGGER.error("Timeout close failed for service {}", instanceName, e);
     }
+
+    @Override
+    public void onCertificateReloadFailed(HTTPServer server, Exception e) {
+        LOGGER.error("Failed to reload the certificates for service {} - keeping the previous ones", instanceName, e);
+    }
 }
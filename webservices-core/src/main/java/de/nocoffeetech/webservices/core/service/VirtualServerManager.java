@@ -16,10 +16,15 @@ import org.apache.logging.log4j.Logger;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class VirtualServerManager implements RequestHandler {
     private static final Logger LOGGER = LogManager.getLogger(VirtualServerManager.class);
+    /** Most traffic goes to a few paths, so this is enough to skip the prefix search for them */
+    private static final int MAX_CACHED_ROUTES = 1024;
     private final Map<String, WebserviceBase> runningServices = new HashMap<>();
+    /** Replaced whenever the mappings change, so routes that are still computed with the old mappings end up in the discarded cache */
+    private volatile Map<String, Route> routeCache = new ConcurrentHashMap<>();
     private final int port;
     private HTTPServer runningServer;
 
@@ -30,6 +35,7 @@ public class VirtualServerManager implements RequestHandler {
 
     public synchronized void mapServiceToServer(String prefix, WebserviceBase serviceToStart) throws IOException {
         this.runningServices.put(prefix, serviceToStart);
+        this.routeCache = new ConcurrentHashMap<>();
         if (!isRunning()) {
             this.runningServer = HTTPServerBuilder
                     .create(port, this)
@@ -41,6 +47,7 @@ public class VirtualServerManager implements RequestHandler {
     public synchronized void unmapServiceFromServer(String prefix) {
         WebserviceBase removed = this.runningServices.remove(prefix);
         if (removed == null) throw new RuntimeException("Failed to find prefix \"" + prefix + "\", what?");
+        this.routeCache = new ConcurrentHashMap<>();
         if (runningServices.isEmpty()) {
             try {
                 runningServer.shutdown(true);
@@ -58,21 +65,52 @@ public class VirtualServerManager implements RequestHandler {
 
     @Override
     public ResponseToken answerRequest(HTTPRequest request, ResponseStartWriter responseWriter) throws HTTPWriteException {
-        String path = request.getPath();
-        String newPath = null;
-        WebserviceBase responsibleService = null;
+        Route route = findRoute(request.getPath());
+        if (route == null) {
+            return responseWriter.respond(Status.NOT_FOUND, CommonContentTypes.PLAIN).writeBodyAndFlush("Failed to find service for mapping!");
+        }
+        return route.service().answerRequest(request.copyWithNewPath(route.newPath()), responseWriter);
+    }
+
+    @Override
+    public ResponseToken precheckRequest(HTTPRequest request, ResponseStartWriter responseWriter) throws HTTPWriteException {
+        Route route = findRoute(request.getPath());
+        // Without a service, answerRequest rejects the request without reading the body anyway
+        return route == null ? null : route.service().precheckRequest(request.copyWithNewPath(route.newPath()), responseWriter);
+    }
+
+    @Override
+    public long getMaxBodySizeBytes(HTTPRequest request) {
+        Route route = findRoute(request.getPath());
+        return route == null ? -1 : route.service().getMaxBodySizeBytes(request.copyWithNewPath(route.newPath()));
+    }
+
+    /**
+     * @return The service responsible for the path together with the path relative to its prefix, or null if no service is mapped for it
+     */
+    private Route findRoute(String path) {
+        Map<String, Route> routeCache = this.routeCache;
+        Route route = routeCache.get(path);
+        if (route == null) {
+            route = computeRoute(path);
+            // Unknown paths are not cached, and once the cache is full, the paths that are already in it are kept
+            if (route != null && routeCache.size() < MAX_CACHED_ROUTES) {
+                routeCache.put(path, route);
+            }
+        }
+        return route;
+    }
+
+    private Route computeRoute(String path) {
         for (Map.Entry<String, WebserviceBase> entry : runningServices.entrySet()) {
             if (path.startsWith(entry.getKey())) {
-                responsibleService = entry.getValue();
                 // -1 to keep the last slash. We validate this earlier on.
                 assert entry.getKey().endsWith("/");
-                newPath = path.substring(entry.getKey().length() - 1);
-                break;
+                return new Route(entry.getValue(), path.substring(entry.getKey().length() - 1));
             }
         }
-        if (responsibleService == null) {
-            return responseWriter.respond(Status.NOT_FOUND, CommonContentTypes.PLAIN).writeBodyAndFlush("Failed to find service for mapping!");
-        }
-        return responsibleService.answerRequest(request.copyWithNewPath(newPath), responseWriter);
+        return null;
     }
+
+    private record Route(WebserviceBase service, String newPath) {}
 }
@@ -94,6 +94,22 @@ public abstract class WebserviceBase implements RequestHandler {
         return notHandled(request, responseWriter);
     }
 
+    @Override
+    public ResponseToken precheckRequest(HTTPRequest request, ResponseStartWriter responseWriter) throws HTTPWriteException {
+        if (this.endpointModule != null && this.endpointModule.handles(request)) {
+            return this.endpointModule.precheckRequest(request, responseWriter);
+        }
+        return null;
+    }
+
+    @Override
+    public long getMaxBodySizeBytes(HTTPRequest request) {
+        if (this.endpointModule != null && this.endpointModule.handles(request)) {
+            return this.endpointModule.getMaxBodySizeBytes(request);
+        }
+        return -1;
+    }
+
     protected ResponseToken notHandled(HTTPRequest request, ResponseStartWriter responseStartWriter) throws HTTPWriteException {
         return responseStartWriter
                 .respond(Status.NOT_FOUND, CommonContentTypes.PLAIN)